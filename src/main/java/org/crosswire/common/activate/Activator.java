@@ -21,7 +21,10 @@
  */
 package org.crosswire.common.activate;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -50,14 +53,14 @@ public final class Activator {
      *            The thing to activate
      */
     public static void activate(Activatable subject) {
-        if (!activated.contains(subject) && subject != null) {
+        if (subject != null && activated.add(subject)) {
             subject.activate(lock);
-            activated.add(subject);
         }
     }
 
     /**
-     * If we need to tighten things up a bit we can save memory with this
+     * If we need to tighten things up a bit we can save memory with this.
+     * Anything that is deactivated is activated again when it is next used.
      */
     public static void reduceMemoryUsage(Kill amount) {
         amount.reduceMemoryUsage();
@@ -73,22 +76,28 @@ public final class Activator {
      *            The thing to deactivate
      */
     public static void deactivate(Activatable subject) {
-        if (activated.contains(subject) && subject != null) {
+        if (subject != null && activated.remove(subject)) {
             subject.deactivate(lock);
-            activated.remove(subject);
         }
     }
 
     public static void deactivateAll() {
-        for (Activatable item : activated) {
+        // Work on a copy as deactivate removes from activated
+        List<Activatable> items;
+        synchronized (activated) {
+            items = new ArrayList<Activatable>(activated);
+        }
+        for (Activatable item : items) {
             deactivate(item);
         }
     }
 
     /**
-     * The list of things that we have activated
+     * The list of things that we have activated. The subjects are activated
+     * and deactivated outside of the lock on this, so that a subject may
+     * safely hold its own lock when it activates itself.
      */
-    private static Set<Activatable> activated = new HashSet<Activatable>();
+    private static Set<Activatable> activated = Collections.synchronizedSet(new HashSet<Activatable>());
 
     /**
      * The object we use to prevent others from
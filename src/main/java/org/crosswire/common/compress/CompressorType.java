@@ -22,6 +22,7 @@
 package org.crosswire.common.compress;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 
 /**
  * An Enumeration of the possible Compressions.
@@ -36,6 +37,11 @@ public enum CompressorType {
         public Compressor getCompressor(byte[] input) {
             return new Zip(new ByteArrayInputStream(input));
         }
+
+        @Override
+        public byte[] uncompress(byte[] input, int offset, int length, int expectedLength) throws IOException {
+            return Zip.uncompress(input, offset, length, expectedLength);
+        }
     },
 
     LZSS {
@@ -44,6 +50,11 @@ public enum CompressorType {
         public Compressor getCompressor(byte[] input) {
             return new LZSS(new ByteArrayInputStream(input));
         }
+
+        @Override
+        public byte[] uncompress(byte[] input, int offset, int length, int expectedLength) {
+            return org.crosswire.common.compress.LZSS.uncompress(input, offset, length, expectedLength);
+        }
     };
 
     /**
@@ -52,6 +63,28 @@ public enum CompressorType {
      */
     public abstract Compressor getCompressor(byte[] input);
 
+    /**
+     * Uncompress a region of a byte array.
+     * 
+     * @param input
+     *            the array holding the compressed data
+     * @param offset
+     *            the start of the compressed data
+     * @param length
+     *            the length of the compressed data
+     * @param expectedLength
+     *            the expected length of the uncompressed data
+     * @return the uncompressed data
+     */
+    public byte[] uncompress(byte[] input, int offset, int length, int expectedLength) throws IOException {
+        byte[] data = input;
+        if (offset != 0 || length != input.length) {
+            data = new byte[length];
+            System.arraycopy(input, offset, data, 0, length);
+        }
+        return getCompressor(data).uncompress(expectedLength).toByteArray();
+    }
+
     /**
      * Get a CompressorType from a String
      * 
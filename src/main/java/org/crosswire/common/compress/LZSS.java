@@ -465,6 +465,109 @@ public class LZSS extends AbstractCompressor {
         return out;
     }
 
+    /**
+     * Uncompress a region of a byte array straight into a new byte array,
+     * giving the same result as {@link #uncompress(int)}. Rather than keeping
+     * a ring buffer, each position and length pair is copied from what has
+     * already been uncompressed, so a byte costs a few array accesses and no
+     * method calls.
+     * 
+     * @param input
+     *            the array holding the compressed data
+     * @param offset
+     *            the start of the compressed data
+     * @param length
+     *            the length of the compressed data
+     * @param expectedLength
+     *            the expected length of the uncompressed data. When it is
+     *            right, the result is not copied.
+     * @return the uncompressed data
+     */
+    public static byte[] uncompress(byte[] input, int offset, int length, int expectedLength) {
+        byte[] output = new byte[expectedLength > 0 ? expectedLength : BUF_SIZE];
+        int count = 0;
+        int in = offset;
+        int end = offset + length;
+        int flags = 0;
+
+        while (true) {
+            // Each flag byte holds 8 flags, taken low bit first. The 0x100
+            // marks when they have all been taken.
+            flags >>= 1;
+            if ((flags & 0x100) == 0) {
+                if (in >= end) {
+                    break;
+                }
+                flags = (input[in++] & 0xFF) | 0xFF00;
+            }
+
+            if ((flags & 1) != 0) {
+                // A single, unencoded character
+                if (in >= end) {
+                    break;
+                }
+                if (count == output.length) {
+                    output = resize(output, count, count * 2);
+                }
+                output[count++] = input[in++];
+            } else {
+                // A <position,length> pair
+                if (in + 2 > end) {
+                    break;
+                }
+                int pos = (input[in] & 0xFF) | ((input[in + 1] & 0xF0) << 4);
+                int len = (input[in + 1] & 0x0F) + THRESHOLD;
+                in += 2;
+
+                if (count + len > output.length) {
+                    output = resize(output, count, Math.max(count * 2, count + len));
+                }
+
+                // The ring buffer position of the next character is
+                // RING_START + count. The position refers to the character
+                // that was put there most recently, even if that is where the
+                // next character is to go.
+                int distance = (RING_START + count - pos) & RING_WRAP;
+                if (distance == 0) {
+                    distance = RING_SIZE;
+                }
+
+                // The copy is forwards a byte at a time, as the characters
+                // being copied may be ones that this pair has just put there.
+                int from = count - distance;
+                if (from >= 0) {
+                    for (int k = 0; k < len; k++) {
+                        output[count++] = output[from + k];
+                    }
+                } else {
+                    for (int k = 0; k < len; k++) {
+                        int source = from + k;
+                        if (source >= 0) {
+                            output[count++] = output[source];
+                        } else {
+                            // Still the ring buffer as it started out
+                            output[count++] = ((RING_START + source) & RING_WRAP) < RING_START ? (byte) ' ' : 0;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (count < output.length) {
+            output = resize(output, count, count);
+        }
+        return output;
+    }
+
+    /**
+     * Copy the start of an array into a new array of a different size.
+     */
+    private static byte[] resize(byte[] data, int count, int size) {
+        byte[] resized = new byte[size];
+        System.arraycopy(data, 0, resized, 0, count);
+        return resized;
+    }
+
     /**
      * Initializes the tree nodes to "empty" states.
      */
@@ -670,6 +773,13 @@ public class LZSS extends AbstractCompressor {
      */
     private static final int THRESHOLD = 3;
 
+    /**
+     * The position in the ring buffer of the first character that is
+     * uncompressed. The ring buffer before it starts out filled with spaces,
+     * and after it with zeros.
+     */
+    private static final int RING_START = RING_SIZE - MAX_STORE_LENGTH;
+
     /**
      * Used to mark nodes as not used.
      */
@@ -24,12 +24,17 @@ package org.crosswire.common.compress;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 /**
  * Zip manages the compression and uncompression of Zip files.
@@ -57,15 +62,21 @@ public class Zip extends AbstractCompressor {
     public ByteArrayOutputStream compress() throws IOException {
         BufferedInputStream in = new BufferedInputStream(input);
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DeflaterOutputStream out = new DeflaterOutputStream(bos, new Deflater(), BUF_SIZE);
-        byte[] buf = new byte[BUF_SIZE];
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater, BUF_SIZE);
+            byte[] buf = new byte[BUF_SIZE];
 
-        for (int count = in.read(buf); count != -1; count = in.read(buf)) {
-            out.write(buf, 0, count);
+            for (int count = in.read(buf); count != -1; count = in.read(buf)) {
+                out.write(buf, 0, count);
+            }
+            in.close();
+            out.flush();
+            out.close();
+        } finally {
+            // Free the native memory now rather than on finalization
+            deflater.end();
         }
-        in.close();
-        out.flush();
-        out.close();
         return bos;
     }
 
@@ -84,17 +95,162 @@ public class Zip extends AbstractCompressor {
      * @see org.crosswire.common.compress.Compressor#uncompress(int)
      */
     public ByteArrayOutputStream uncompress(int expectedLength) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream(expectedLength);
-        InflaterInputStream in = new InflaterInputStream(input, new Inflater(), expectedLength);
-        byte[] buf = new byte[expectedLength];
+        int bufSize = expectedLength > 0 ? expectedLength : BUF_SIZE;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bufSize);
+        Inflater inflater = getInflater();
+        try {
+            InflaterInputStream in = new InflaterInputStream(input, inflater, bufSize);
+            byte[] buf = new byte[bufSize];
 
-        for (int count = in.read(buf); count != -1; count = in.read(buf)) {
-            out.write(buf, 0, count);
+            for (int count = in.read(buf); count != -1; count = in.read(buf)) {
+                out.write(buf, 0, count);
+            }
+            in.close();
+        } finally {
+            releaseInflater(inflater);
         }
-        in.close();
         out.flush();
         out.close();
         return out;
     }
 
+    /**
+     * Uncompress a region of a byte array straight into a new byte array.
+     * When the expected length is right, as it is when it comes from the
+     * index of a book, the result is inflated into place and is not copied.
+     * 
+     * @param input
+     *            the array holding the compressed data
+     * @param offset
+     *            the start of the compressed data
+     * @param length
+     *            the length of the compressed data
+     * @param expectedLength
+     *            the expected length of the uncompressed data
+     * @return the uncompressed data
+     * @throws IOException
+     *             if the compressed data is corrupt or is cut short
+     */
+    public static byte[] uncompress(byte[] input, int offset, int length, int expectedLength) throws IOException {
+        byte[] output = new byte[expectedLength > 0 ? expectedLength : BUF_SIZE];
+        int count = 0;
+        Inflater inflater = getInflater();
+        try {
+            inflater.setInput(input, offset, length);
+            while (true) {
+                if (count == output.length) {
+                    // The expected length was too short.
+                    output = resize(output, count, output.length * 2);
+                }
+                int inflated = inflater.inflate(output, count, output.length - count);
+                count += inflated;
+                if (inflater.finished() || inflater.needsDictionary()) {
+                    break;
+                }
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+            }
+        } catch (DataFormatException e) {
+            String msg = e.getMessage();
+            throw new ZipException(msg != null ? msg : "Invalid ZLIB data format");
+        } finally {
+            releaseInflater(inflater);
+        }
+
+        if (count < output.length) {
+            output = resize(output, count, count);
+        }
+        return output;
+    }
+
+    /**
+     * Uncompress a region of a byte array into a region of a caller provided
+     * byte array, such as one that is reused from block to block.
+     * 
+     * @param input
+     *            the array holding the compressed data
+     * @param offset
+     *            the start of the compressed data
+     * @param length
+     *            the length of the compressed data
+     * @param output
+     *            the array to hold the uncompressed data
+     * @param outputOffset
+     *            where to put the uncompressed data
+     * @param outputLength
+     *            the room there is for the uncompressed data
+     * @return the length of the uncompressed data, or -1 if there was not
+     *         room for all of it
+     * @throws IOException
+     *             if the compressed data is corrupt or is cut short
+     */
+    public static int uncompress(byte[] input, int offset, int length, byte[] output, int outputOffset, int outputLength) throws IOException {
+        int count = 0;
+        Inflater inflater = getInflater();
+        try {
+            inflater.setInput(input, offset, length);
+            while (true) {
+                int inflated = inflater.inflate(output, outputOffset + count, outputLength - count);
+                count += inflated;
+                if (inflater.finished() || inflater.needsDictionary()) {
+                    return count;
+                }
+                if (count == outputLength) {
+                    return -1;
+                }
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+            }
+        } catch (DataFormatException e) {
+            String msg = e.getMessage();
+            throw new ZipException(msg != null ? msg : "Invalid ZLIB data format");
+        } finally {
+            releaseInflater(inflater);
+        }
+    }
+
+    /**
+     * Copy the start of an array into a new array of a different size.
+     */
+    private static byte[] resize(byte[] data, int count, int size) {
+        byte[] resized = new byte[size];
+        System.arraycopy(data, 0, resized, 0, count);
+        return resized;
+    }
+
+    /**
+     * Get an Inflater from the pool, or a new one if the pool is empty.
+     */
+    private static Inflater getInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        return inflater;
+    }
+
+    /**
+     * Return an Inflater to the pool. If the pool is full, the native memory
+     * of the Inflater is freed at once, rather than on finalization.
+     */
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The most Inflaters to keep for reuse. Each holds on to a fair amount of
+     * native memory, so only enough for the threads that read at once are
+     * kept.
+     */
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * The Inflaters that are free for reuse.
+     */
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
 }
@@ -476,7 +476,7 @@ package org.crosswire.common.crypt;
  * @author DM Smith [ dmsmith555 at yahoo dot com] Java port from Sword's C++
  *         implementation
  */
-public class Sapphire {
+public class Sapphire implements Cloneable {
 
     /**
      * Construct a Sapphire Stream Cipher from a key, possibly null or empty.
@@ -537,6 +537,66 @@ public class Sapphire {
         return (byte) lastPlain;
     }
 
+    /**
+     * Decipher a region of bytes in place, as if each were passed in turn to
+     * {@link #cipher(byte)}.
+     * 
+     * @param data
+     *            the bytes to decipher
+     * @param offset
+     *            the index of the first byte to decipher
+     * @param length
+     *            the number of bytes to decipher
+     */
+    public void cipher(byte[] data, int offset, int length) {
+        // Work with the state in locals, writing it back at the end.
+        int[] deck = cards;
+        int rot = rotor;
+        int rat = ratchet;
+        int ava = avalanche;
+        int plain = lastPlain;
+        int ciph = lastCipher;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int bVal = data[i] & 0xFF;
+            rat = (rat + deck[rot]) & 0xFF;
+            rot = (rot + 1) & 0xFF;
+            int swaptemp = deck[ciph];
+            deck[ciph] = deck[rat];
+            deck[rat] = deck[plain];
+            deck[plain] = deck[rot];
+            deck[rot] = swaptemp;
+            ava = (ava + deck[swaptemp]) & 0xFF;
+            plain = bVal ^ deck[(deck[rat] + deck[rot]) & 0xFF] ^ deck[deck[(deck[plain] + deck[ciph] + deck[ava]) & 0xFF]];
+            ciph = bVal;
+            data[i] = (byte) plain;
+        }
+        rotor = rot;
+        ratchet = rat;
+        avalanche = ava;
+        lastPlain = plain;
+        lastCipher = ciph;
+    }
+
+    /**
+     * Copy this cipher in its current state. Setting up a cipher from a key is
+     * far more costly than deciphering a short text, so a cipher that has just
+     * been keyed can be kept and a copy of it used for each text.
+     * 
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public Sapphire clone() {
+        Sapphire clone = null;
+        try {
+            clone = (Sapphire) super.clone();
+            clone.cards = cards.clone();
+        } catch (CloneNotSupportedException e) {
+            assert false : e;
+        }
+        return clone;
+    }
+
     public void burn() {
         // Destroy the key and state information in RAM.
         for (int i = 0; i < 256; i++) {
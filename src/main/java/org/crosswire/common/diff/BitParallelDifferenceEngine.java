@@ -0,0 +1,257 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the differences between two texts from a longest common subsequence
+ * of their characters, which is computed 64 characters at a time using the
+ * bit-parallel algorithm of Allison and Dix, as improved by Hyyr&ouml;.
+ *
+ * <p>
+ * Each character of the target is a step, which updates one bit for each
+ * character of the source with a handful of operations on longs. So the time
+ * taken is proportional to the length of the target times the length of the
+ * source divided by 64, and a step allocates nothing. The bits of each step
+ * are kept, as they are needed to trace the subsequence back, so this is
+ * meant for texts of the size of a verse rather than of a book. For texts that
+ * would need more than {@link #getMaxWords()} longs, no differences are
+ * generated.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link DifferenceEngine} the result is a longest common subsequence
+ * and not a shortest edit script, so the two can differ in how an edit is
+ * placed, but not in how much is kept as equal.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class BitParallelDifferenceEngine {
+    /**
+     * Find the differences between two texts.
+     *
+     * @param source
+     *            Old string to be diffed
+     * @param target
+     *            New string to be diffed
+     */
+    public BitParallelDifferenceEngine(final String source, final String target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Compute the longest common subsequence of the two texts and turn it into
+     * differences.
+     *
+     * @return List of Difference objects or null if the texts are too large
+     */
+    public List<Difference> generate() {
+        int sourceLength = source.length();
+        int targetLength = target.length();
+        List<Difference> diffs = new ArrayList<Difference>();
+
+        if (sourceLength == 0 || targetLength == 0) {
+            if (sourceLength > 0) {
+                diffs.add(new Difference(EditType.DELETE, source));
+            }
+            if (targetLength > 0) {
+                diffs.add(new Difference(EditType.INSERT, target));
+            }
+            return diffs;
+        }
+
+        int words = (sourceLength + 63) >>> 6;
+        if ((long) words * (targetLength + 1) > maxWords) {
+            return null;
+        }
+
+        // For each distinct character of the source, the bits of the
+        // positions at which it is found.
+        char[] alphabet = source.toCharArray();
+        Arrays.sort(alphabet);
+        int distinct = 0;
+        for (int i = 0; i < alphabet.length; i++) {
+            if (i == 0 || alphabet[i] != alphabet[i - 1]) {
+                alphabet[distinct++] = alphabet[i];
+            }
+        }
+        long[][] matches = new long[distinct][words];
+        for (int i = 0; i < sourceLength; i++) {
+            int c = Arrays.binarySearch(alphabet, 0, distinct, source.charAt(i));
+            matches[c][i >>> 6] |= 1L << i;
+        }
+
+        // Row j holds the bits after the first j characters of the target.
+        // Bit i is clear when the common subsequence of the target so far and
+        // the first i + 1 characters of the source is one longer than with the
+        // first i characters. All bits start out set.
+        long[] rows = new long[words * (targetLength + 1)];
+        Arrays.fill(rows, 0, words, -1L);
+        for (int j = 0; j < targetLength; j++) {
+            int prev = j * words;
+            int next = prev + words;
+            int c = Arrays.binarySearch(alphabet, 0, distinct, target.charAt(j));
+            if (c < 0) {
+                // Nothing matches, so nothing changes.
+                System.arraycopy(rows, prev, rows, next, words);
+                continue;
+            }
+
+            long[] match = matches[c];
+            long carry = 0;
+            for (int k = 0; k < words; k++) {
+                long v = rows[prev + k];
+                long u = v & match[k];
+                long sum = v + u + carry;
+                carry = ((v & u) | ((v | u) & ~sum)) >>> 63;
+                rows[next + k] = sum | (v & ~u);
+            }
+        }
+
+        // Trace the subsequence back from the ends of the texts.
+        byte[] ops = new byte[sourceLength + targetLength];
+        int count = 0;
+        int i = sourceLength - 1;
+        int j = targetLength - 1;
+        while (i >= 0 && j >= 0) {
+            if (source.charAt(i) == target.charAt(j)) {
+                ops[count++] = OP_EQUAL;
+                i--;
+                j--;
+            } else if ((rows[(j + 1) * words + (i >>> 6)] & (1L << i)) != 0) {
+                // The subsequence is as long without this character of the source.
+                ops[count++] = OP_DELETE;
+                i--;
+            } else {
+                ops[count++] = OP_INSERT;
+                j--;
+            }
+        }
+        while (i >= 0) {
+            ops[count++] = OP_DELETE;
+            i--;
+        }
+        while (j >= 0) {
+            ops[count++] = OP_INSERT;
+            j--;
+        }
+
+        // Walk the edits forwards, putting the deletions of each change before
+        // its insertions.
+        StringBuilder equal = new StringBuilder();
+        StringBuilder deleted = new StringBuilder();
+        StringBuilder inserted = new StringBuilder();
+        int x = 0;
+        int y = 0;
+        while (count > 0) {
+            byte op = ops[--count];
+            if (op == OP_EQUAL) {
+                addChange(diffs, deleted, inserted);
+                equal.append(source.charAt(x++));
+                y++;
+            } else {
+                addEqual(diffs, equal);
+                if (op == OP_DELETE) {
+                    deleted.append(source.charAt(x++));
+                } else {
+                    inserted.append(target.charAt(y++));
+                }
+            }
+        }
+        addChange(diffs, deleted, inserted);
+        addEqual(diffs, equal);
+
+        return diffs;
+    }
+
+    /**
+     * Add the text that has been kept, if any, and start again.
+     */
+    private static void addEqual(List<Difference> diffs, StringBuilder equal) {
+        if (equal.length() > 0) {
+            diffs.add(new Difference(EditType.EQUAL, equal.toString()));
+            equal.setLength(0);
+        }
+    }
+
+    /**
+     * Add the text that has been deleted and inserted, if any, and start
+     * again.
+     */
+    private static void addChange(List<Difference> diffs, StringBuilder deleted, StringBuilder inserted) {
+        if (deleted.length() > 0) {
+            diffs.add(new Difference(EditType.DELETE, deleted.toString()));
+            deleted.setLength(0);
+        }
+        if (inserted.length() > 0) {
+            diffs.add(new Difference(EditType.INSERT, inserted.toString()));
+            inserted.setLength(0);
+        }
+    }
+
+    /**
+     * Set the most longs that may be used to hold the bits of all the steps.
+     * Texts that need more are left to {@link DifferenceEngine}. The default
+     * is a million, which is 8MB, or two texts of about 8000 characters.
+     *
+     * @param newMaxWords
+     *            the most longs to use
+     */
+    public static void setMaxWords(int newMaxWords) {
+        maxWords = newMaxWords;
+    }
+
+    /**
+     * @return the most longs that may be used to hold the bits of all the
+     *         steps
+     */
+    public static int getMaxWords() {
+        return maxWords;
+    }
+
+    private static final byte OP_EQUAL = 0;
+    private static final byte OP_DELETE = 1;
+    private static final byte OP_INSERT = 2;
+
+    /**
+     * The most longs to use for the bits of all the steps.
+     */
+    private static final int MAXWORDS = 1024 * 1024;
+    private static volatile int maxWords = MAXWORDS;
+
+    /**
+     * The baseline text.
+     */
+    private String source;
+
+    /**
+     * The changed text.
+     */
+    private String target;
+}
@@ -172,7 +172,14 @@ public class Diff {
             target = lineMap.getTargetMap();
         }
 
-        diffs = new DifferenceEngine(source, target).generate();
+        diffs = null;
+        if (bitParallel) {
+            diffs = new BitParallelDifferenceEngine(source, target).generate();
+        }
+
+        if (diffs == null) {
+            diffs = new DifferenceEngine(source, target).generate();
+        }
 
         if (diffs == null) {
             // No acceptable result.
@@ -314,6 +321,33 @@ public class Diff {
         return buf.toString();
     }
 
+    /**
+     * Set whether differences are found with the
+     * {@link BitParallelDifferenceEngine}, which is faster on texts the size
+     * of a verse, rather than with the {@link DifferenceEngine}. Texts that are
+     * too large for it are still left to the DifferenceEngine. The default is
+     * false.
+     *
+     * @param newBitParallel
+     *            whether to use the bit-parallel engine
+     */
+    public static void setBitParallel(boolean newBitParallel) {
+        bitParallel = newBitParallel;
+    }
+
+    /**
+     * @return whether differences are found with the
+     *         {@link BitParallelDifferenceEngine}
+     */
+    public static boolean isBitParallel() {
+        return bitParallel;
+    }
+
+    /**
+     * Whether differences are found with the bit-parallel engine.
+     */
+    private static volatile boolean bitParallel;
+
     /**
      * The baseline text.
      */
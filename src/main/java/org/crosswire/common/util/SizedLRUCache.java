@@ -0,0 +1,187 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache that is bounded by the total size of the values it holds rather
+ * than by their number, and which evicts the least recently used values
+ * first. How a value is measured, e.g. in bytes or in characters, is up to
+ * the subclass.
+ *
+ * <p>
+ * The cache is thread safe. Its lock is the cache itself, so a caller that
+ * needs to do more than one thing at once, e.g. look for a value and note
+ * that it is being loaded, can synchronize on the cache.
+ * </p>
+ *
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values, which are shared and must not be
+ *            modified
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public abstract class SizedLRUCache<K, V> {
+    /**
+     * Create a cache holding no more than the given size of values.
+     *
+     * @param maxSize
+     *            the ceiling, 0 for no cache
+     */
+    public SizedLRUCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, V>(64, 0.75f, true);
+    }
+
+    /**
+     * Get a value from the cache, making it the most recently used.
+     *
+     * @param key
+     *            the key of the value
+     * @return the value or null if it is not cached
+     */
+    public synchronized V get(K key) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Add a value to the cache, evicting the least recently used values to
+     * make room for it. A value that is larger than the cache is not added.
+     *
+     * @param key
+     *            the key of the value
+     * @param value
+     *            the value
+     */
+    public synchronized void put(K key, V value) {
+        long valueSize = sizeOf(key, value);
+        if (maxSize <= 0 || valueSize > maxSize) {
+            return;
+        }
+
+        V old = entries.put(key, value);
+        if (old != null) {
+            size -= sizeOf(key, old);
+        }
+        size += valueSize;
+        trim(maxSize);
+    }
+
+    /**
+     * Remove all the values from the cache. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Set the maximum total size of the values to cache, evicting the least
+     * recently used values to get down to it. Setting it to 0 turns the cache
+     * off.
+     *
+     * @param newMaxSize
+     *            the ceiling
+     */
+    public synchronized void setMaxSize(long newMaxSize) {
+        maxSize = newMaxSize;
+        trim(maxSize);
+    }
+
+    /**
+     * @return the maximum total size of the values to cache
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the total size of the values now in the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of times a value was found in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of times a value was not found in the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Measure a value. A value must measure the same each time.
+     *
+     * @param key
+     *            the key of the value
+     * @param value
+     *            the value
+     * @return the size of the value
+     */
+    protected abstract long sizeOf(K key, V value);
+
+    /**
+     * Evict the least recently used values until the cache holds no more than
+     * the ceiling. The caller must hold the lock on this cache.
+     */
+    private void trim(long ceiling) {
+        Iterator<Map.Entry<K, V>> iter = entries.entrySet().iterator();
+        while (size > ceiling && iter.hasNext()) {
+            Map.Entry<K, V> entry = iter.next();
+            size -= sizeOf(entry.getKey(), entry.getValue());
+            iter.remove();
+        }
+    }
+
+    /**
+     * The values, in least recently used order.
+     */
+    private final Map<K, V> entries;
+
+    private volatile long maxSize;
+    private long size;
+    private long hits;
+    private long misses;
+}
@@ -25,7 +25,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.crosswire.common.util.FileUtil;
 import org.crosswire.common.util.Logger;
@@ -161,72 +160,7 @@ public final class XMLUtil {
      * @return the string with entities appropriately fixed up
      */
     public static String cleanAllEntities(String broken) {
-        if (broken == null) {
-            return null;
-        }
-
-        String working = broken;
-        int cleanfrom = 0;
-
-        while (true) {
-            int amp = working.indexOf('&', cleanfrom);
-
-            // If there are no more amps then we are done
-            if (amp == -1) {
-                break;
-            }
-
-            // Skip references of the kind &#ddd;
-            if (validCharacterEntityPattern.matcher(working.substring(amp)).find()) {
-                cleanfrom = working.indexOf(';', amp) + 1;
-                continue;
-            }
-
-            int i = amp + 1;
-            while (true) {
-                // if we are at the end of the string then just escape the '&';
-                if (i >= working.length()) {
-                    // String entity = working.substring(amp);
-                    // String replace = guessEntity(entity);
-                    // DataPolice.report("replacing unterminated entity: '" +
-                    // entity + "' with: '" + replace + "'");
-
-                    return working.substring(0, amp) + "&amp;" + working.substring(amp + 1);
-                }
-
-                // if we have come to a ; then we have an entity
-                // If it is something that xml can't handle then replace it.
-                char c = working.charAt(i);
-                if (c == ';') {
-                    String entity = working.substring(amp, i + 1);
-                    String replace = handleEntity(entity);
-                    // log.warn("replacing entity: '" + entity + "' with: '" +
-                    // replace + "'");
-
-                    working = working.substring(0, amp) + replace + working.substring(i + 1);
-                    break;
-                }
-
-                // Did we end an entity without finding a closing ;
-                // Then treat it as an '&' that needs to be replaced with &amp;
-                if (!Character.isLetterOrDigit(c)) {
-                    // String entity = working.substring(amp, i);
-                    // String replace = "&amp;" + working.substring(amp + 1, i);
-                    // log.warn("replacing invalid entity: '" + entity +
-                    // "' with: '" + replace + "': " + broken);
-
-                    working = working.substring(0, amp) + "&amp;" + working.substring(amp + 1);
-                    amp = i + 4; // account for the 4 extra characters
-                    break;
-                }
-
-                i++;
-            }
-
-            cleanfrom = amp + 1;
-        }
-
-        return working;
+        return sanitize(broken, true, false, false);
     }
 
     /**
@@ -234,30 +168,46 @@ public final class XMLUtil {
      * requirements as to which characters are or are not allowed. The set of
      * allowable characters are:<br />
      * #x9 | #xA | #xD | [#x20-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]<br/>
-     * Note: Java handles to \uFFFF
+     * Note: Java holds the last of these as surrogate pairs, which are kept
+     * when they are whole.
      * 
      * @param broken
      *            the string to be cleaned
      * @return the cleaned string
      */
     public static String cleanAllCharacters(String broken) {
-        return invalidCharacterPattern.matcher(broken).replaceAll(" ");
+        return sanitize(broken, false, true, false);
     }
 
     /**
      * Common HTML tags such as &lt;br&gt;,&lt;hr&gt; and &lt;img&gt; may be
-     * left open causing XML parsing to fail. This method closes these tags.
+     * left open causing XML parsing to fail. This method closes these tags,
+     * unless the string has an end tag for them.
      * 
      * @param broken
      *            the string to be cleaned
      * @return the cleaned string
      */
     public static String closeEmptyTags(String broken) {
-        if (broken == null) {
-            return null;
-        }
+        return sanitize(broken, false, false, true);
+    }
 
-        return openHTMLTagPattern.matcher(broken).replaceAll("<$1$2/>");
+    /**
+     * Repair the commonest faults that make a fragment of XML fail to parse,
+     * in a single pass over it. This does what {@link #cleanAllEntities},
+     * {@link #cleanAllCharacters} and {@link #closeEmptyTags} do one after the
+     * other, except that an empty tag is only closed if the fragment has no
+     * end tag for it, so that well formed input is left alone. It does not
+     * throw any markup away, so when the result still fails to parse the next
+     * step is {@link #cleanAllTags}.
+     * 
+     * @param broken
+     *            the string to be repaired
+     * @return the repaired string, which is the same string if nothing needed
+     *         doing
+     */
+    public static String repair(String broken) {
+        return sanitize(broken, true, true, true);
     }
 
     /**
@@ -329,6 +279,205 @@ public final class XMLUtil {
         return working;
     }
 
+    /**
+     * Make a single pass over a string, fixing entities, characters and open
+     * empty tags as requested. Entities and characters are fixed on the
+     * input, empty tags on what that leaves.
+     * 
+     * @param broken
+     *            the string to be cleaned
+     * @param entities
+     *            whether to fix entities, as does {@link #cleanAllEntities}
+     * @param characters
+     *            whether to replace invalid characters with a space
+     * @param emptyTags
+     *            whether to close open &lt;br&gt;, &lt;hr&gt; and
+     *            &lt;img&gt; tags that have no end tag
+     * @return the cleaned string, which is the same string if nothing needed
+     *         doing
+     */
+    private static String sanitize(String broken, boolean entities, boolean characters, boolean emptyTags) {
+        if (broken == null) {
+            return null;
+        }
+
+        int length = broken.length();
+        StringBuilder buf = new StringBuilder(length + 16);
+        boolean changed = false;
+
+        // The position of a character that ends a bare &. Like the rest of
+        // the non entity, it is passed over rather than taken to start an
+        // entity.
+        int skipEntityAt = -1;
+
+        // Whether we are within an empty tag that needs closing
+        boolean inEmptyTag = false;
+
+        // Which empty tags have been looked for and which have end tags
+        int endTagsSought = 0;
+        int endTagsFound = 0;
+
+        int i = 0;
+        while (i < length) {
+            char c = broken.charAt(i);
+
+            if (c == '&' && entities && i != skipEntityAt) {
+                // Leave references of the kind &#ddd; as they are
+                int end = characterReferenceEnd(broken, i);
+                if (end != -1) {
+                    buf.append(broken, i, end);
+                    i = end;
+                    continue;
+                }
+
+                int j = i + 1;
+                while (j < length && Character.isLetterOrDigit(broken.charAt(j))) {
+                    j++;
+                }
+
+                // if we have come to a ; then we have an entity
+                // If it is something that xml can't handle then replace it.
+                if (j < length && broken.charAt(j) == ';') {
+                    String entity = broken.substring(i, j + 1);
+                    String replace = handleEntity(entity);
+                    changed |= !replace.equals(entity);
+                    buf.append(replace);
+                    i = j + 1;
+                    continue;
+                }
+
+                // Otherwise treat it as an '&' that needs to be replaced with &amp;
+                buf.append("&amp;");
+                changed = true;
+                skipEntityAt = j;
+                i++;
+                continue;
+            }
+
+            if (characters && !isValidCharacter(c)) {
+                // A surrogate pair is a valid character above #xFFFF
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(broken.charAt(i + 1))) {
+                    buf.append(c).append(broken.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                buf.append(' ');
+                changed = true;
+                i++;
+                continue;
+            }
+
+            if (emptyTags) {
+                if (c == '<') {
+                    inEmptyTag = false;
+                    int tag = emptyTag(broken, i + 1);
+                    if (tag != -1) {
+                        int mask = 1 << tag;
+                        if ((endTagsSought & mask) == 0) {
+                            endTagsSought |= mask;
+                            if (hasEndTag(broken, EMPTY_TAGS[tag])) {
+                                endTagsFound |= mask;
+                            }
+                        }
+                        inEmptyTag = (endTagsFound & mask) == 0;
+                    }
+                } else if (c == '>' && inEmptyTag) {
+                    inEmptyTag = false;
+                    if (buf.charAt(buf.length() - 1) != '/') {
+                        buf.append('/');
+                        changed = true;
+                    }
+                }
+            }
+
+            buf.append(c);
+            i++;
+        }
+
+        return changed ? buf.toString() : broken;
+    }
+
+    /**
+     * Determine whether a character is allowed in XML. The set of allowable
+     * characters are:<br />
+     * #x9 | #xA | #xD | [#x20-#xD7FF] | [#xE000-#xFFFD] | [#x10000-#x10FFFF]<br/>
+     * The last of these are made of surrogate pairs, which are not allowed on
+     * their own.
+     */
+    private static boolean isValidCharacter(char c) {
+        if (c < 0x20) {
+            return c == '\t' || c == '\n' || c == '\r';
+        }
+        return c <= 0xD7FF || c >= 0xE000 && c <= 0xFFFD;
+    }
+
+    /**
+     * Find the end of a numeric entity of the kind &amp;#ddd; or
+     * &amp;#xddd; with 2 to 4 digits, starting at the given &amp;.
+     * 
+     * @return the position after the ; or -1 if there is no such entity
+     */
+    private static int characterReferenceEnd(String text, int amp) {
+        int length = text.length();
+        int i = amp + 1;
+        if (i >= length || text.charAt(i) != '#') {
+            return -1;
+        }
+        i++;
+        if (i < length && text.charAt(i) == 'x') {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && digits < 4 && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+            digits++;
+        }
+        if (digits < 2 || i >= length || text.charAt(i) != ';') {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Find which of the empty tags, if any, has its name at the given position,
+     * ignoring case.
+     * 
+     * @return the index of the tag in EMPTY_TAGS or -1
+     */
+    private static int emptyTag(String text, int start) {
+        for (int tag = 0; tag < EMPTY_TAGS.length; tag++) {
+            String name = EMPTY_TAGS[tag];
+            int end = start + name.length();
+            if (text.regionMatches(true, start, name, 0, name.length()) && end < text.length()) {
+                char c = text.charAt(end);
+                if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                    return tag;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determine whether there is an end tag anywhere in the text for the
+     * given name, ignoring case. The name must be followed by &gt; or white
+     * space, so that &lt;/bread&gt; is not taken to end &lt;br&gt;.
+     */
+    private static boolean hasEndTag(String text, String name) {
+        int from = text.indexOf("</");
+        while (from != -1) {
+            int end = from + 2 + name.length();
+            if (text.regionMatches(true, from + 2, name, 0, name.length()) && end < text.length()) {
+                char c = text.charAt(end);
+                if (c == '>' || Character.isWhitespace(c)) {
+                    return true;
+                }
+            }
+            from = text.indexOf("</", from + 2);
+        }
+        return false;
+    }
+
     /**
      * Replace entity with its unicode equivalent, if it is not a valid XML
      * entity. Otherwise strip it out. XML only allows 4 entities: &amp;amp;,
@@ -473,19 +622,9 @@ public final class XMLUtil {
     private static final Logger log = Logger.getLogger(XMLUtil.class);
 
     /**
-     * Pattern for numeric entities.
-     */
-    private static Pattern validCharacterEntityPattern = Pattern.compile("^&#x?\\d{2,4};");
-
-    /**
-     * Pattern that negates the allowable XML 4 byte unicode characters. Valid
-     * are: #x9 | #xA | #xD | [#x20-#xD7FF] | [#xE000-#xFFFD] |
-     * [#x10000-#x10FFFF]
-     */
-    private static Pattern invalidCharacterPattern = Pattern.compile("[^\t\r\n\u0020-\uD7FF\uE000-\uFFFD]");
-
-    /**
-     * Pattern that matches open &lt;br&gt;,&lt;hr&gt; and &lt;img&gt; tags.
+     * The HTML tags that are often left open, although they have no content.
      */
-    private static Pattern openHTMLTagPattern = Pattern.compile("<(img|hr|br)([^>]*)(?<!/)>");
+    private static final String[] EMPTY_TAGS = {
+            "br", "hr", "img"
+    };
 }
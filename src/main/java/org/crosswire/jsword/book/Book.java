@@ -103,10 +103,20 @@ public interface Book extends Activatable, Comparable<Book> {
     /**
      * Return an iterator that returns each key's OSIS in turn.
      * 
+     * <p>
+     * A book may read its content as the iterator is used. A failure to read
+     * the first part is thrown from here. As an Iterator cannot throw a
+     * checked exception, a later failure is thrown from hasNext() or next()
+     * as a LucidRuntimeException whose cause is the BookException.
+     * {@link BookData} unwraps it, so it is simplest to read through that.
+     * </p>
+     * 
      * @param key
      *            the Items to locate
      * @param allowEmpty
      *            indicates whether empty keys should be present.
+     * @throws BookException
+     *             if the start of the content could not be read
      */
     Iterator<Content> getOsisIterator(Key key, boolean allowEmpty) throws BookException;
 
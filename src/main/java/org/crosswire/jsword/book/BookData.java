@@ -24,11 +24,14 @@ package org.crosswire.jsword.book;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import org.crosswire.common.diff.Diff;
-import org.crosswire.common.diff.DiffCleanup;
 import org.crosswire.common.diff.Difference;
 import org.crosswire.common.util.Language;
+import org.crosswire.common.util.LucidRuntimeException;
 import org.crosswire.common.xml.JDOMSAXEventProvider;
 import org.crosswire.common.xml.SAXEventProvider;
 import org.crosswire.jsword.passage.Key;
@@ -99,7 +102,16 @@ public class BookData implements BookProvider {
      */
     public Element getOsisFragment() throws BookException {
         if (fragment == null) {
-            fragment = getOsisContent();
+            try {
+                fragment = getOsisContent();
+            } catch (LucidRuntimeException e) {
+                // The OSIS iterators are read on demand, so they report a
+                // failure to read the book this way.
+                if (e.getCause() instanceof BookException) {
+                    throw (BookException) e.getCause();
+                }
+                throw e;
+            }
         }
 
         return fragment;
@@ -206,6 +218,9 @@ public class BookData implements BookProvider {
 
             Content content = null;
 
+            // The differences are worked out once all the rows are built
+            List<DiffTask> diffTasks = new ArrayList<DiffTask>();
+
             int cellCount = 0;
             int rowCount = 0;
             while (true) {
@@ -241,9 +256,8 @@ public class BookData implements BookProvider {
                             }
                             
                             if (i > 0 && showDiffs[i - 1]) {
-                                List<Difference> diffs = new Diff(lastText, thisText, false).compare();
-                                DiffCleanup.cleanupSemantic(diffs);
-                                cell.addContent(OSISUtil.diffToOsis(diffs));
+                                String osisID = content instanceof Element ? ((Element) content).getAttributeValue(OSISUtil.OSIS_ATTR_OSISID) : null;
+                                diffTasks.add(new DiffTask(cell, books[i - 1], book, osisID, lastText, thisText));
 
                                 // Since we used that cell create another
                                 cell = OSISUtil.factory().createCell();
@@ -265,6 +279,9 @@ public class BookData implements BookProvider {
                 table.addContent(row);
                 rowCount++;
             }
+
+            addDifferences(diffTasks);
+
             if (rowCount > 0) {
                 div.addContent(table);
             }
@@ -273,6 +290,62 @@ public class BookData implements BookProvider {
         return div;
     }
 
+    /**
+     * Work out the differences that are not cached, on the diff executor if
+     * there is one, and then add all of them to their cells in order.
+     */
+    private void addDifferences(List<DiffTask> tasks) {
+        List<DiffTask> pending = new ArrayList<DiffTask>();
+        for (DiffTask task : tasks) {
+            task.diffs = DiffCache.get(task.from, task.to, task.osisID, task.fromText, task.toText);
+            if (task.diffs == null) {
+                pending.add(task);
+            }
+        }
+
+        ExecutorService executor = diffExecutor;
+        if (executor != null && pending.size() > 1) {
+            List<Future<List<Difference>>> futures = new ArrayList<Future<List<Difference>>>(pending.size());
+            for (DiffTask task : pending) {
+                futures.add(executor.submit(task));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).diffs = getDiffs(futures.get(i));
+            }
+        }
+
+        for (DiffTask task : pending) {
+            if (task.diffs == null) {
+                task.diffs = task.call();
+            }
+            DiffCache.put(task.from, task.to, task.osisID, task.fromText, task.toText, task.diffs);
+        }
+
+        for (DiffTask task : tasks) {
+            task.cell.addContent(OSISUtil.diffToOsis(task.diffs));
+        }
+    }
+
+    /**
+     * Wait for differences being worked out on the diff executor.
+     * 
+     * @return the differences or null if they could not be had, in which case
+     *         they should be worked out on this thread
+     */
+    private List<Difference> getDiffs(Future<List<Difference>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new LucidRuntimeException(e.getMessage(), e.getCause());
+        }
+        return null;
+    }
+
     private boolean isNextVerse(Content content) {
         if(content instanceof Element) {
             return OSISUtil.OSIS_ELEMENT_VERSE.equals(((Element) content).getName());
@@ -304,6 +377,57 @@ public class BookData implements BookProvider {
         this.unaccenter = unaccenter;
     }
 
+    /**
+     * Set the executor on which the differences between the verses of compared
+     * books are worked out. The differences for a comparison are independent
+     * of each other, so they can be worked out in parallel. By default there is
+     * no executor, and they are worked out one after another on the thread
+     * building the comparison.
+     * 
+     * @param executor
+     *            the executor, or null to work them out on the calling thread
+     */
+    public static void setDiffExecutor(ExecutorService executor) {
+        diffExecutor = executor;
+    }
+
+    /**
+     * @return the executor on which differences are worked out, or null
+     */
+    public static ExecutorService getDiffExecutor() {
+        return diffExecutor;
+    }
+
+    /**
+     * The differences to be shown in a cell, between the text of a verse in
+     * one book and in the next.
+     */
+    private static final class DiffTask implements Callable<List<Difference>> {
+        DiffTask(Element cell, Book from, Book to, String osisID, String fromText, String toText) {
+            this.cell = cell;
+            this.from = from;
+            this.to = to;
+            this.osisID = osisID;
+            this.fromText = fromText;
+            this.toText = toText;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        public List<Difference> call() {
+            return DiffCache.compare(fromText, toText);
+        }
+
+        final Element cell;
+        final Book from;
+        final Book to;
+        final String osisID;
+        final String fromText;
+        final String toText;
+        List<Difference> diffs;
+    }
+
     /**
      * What key was used to create this data
      */
@@ -330,4 +454,9 @@ public class BookData implements BookProvider {
     private Element fragment;
     
     private UnAccenter unaccenter;
+
+    /**
+     * The executor on which differences are worked out, if any.
+     */
+    private static volatile ExecutorService diffExecutor;
 }
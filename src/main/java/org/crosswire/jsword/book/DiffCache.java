@@ -0,0 +1,202 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.crosswire.common.diff.Diff;
+import org.crosswire.common.diff.DiffCleanup;
+import org.crosswire.common.diff.Difference;
+import org.crosswire.common.util.SizedLRUCache;
+
+/**
+ * A process wide cache of the differences between the verses of two books,
+ * as shown when books are compared. Working out the differences is by far the
+ * most expensive part of a comparison, and the same verses tend to be
+ * compared again and again as a reader moves about.
+ *
+ * <p>
+ * The differences are kept by the pair of books, the verse and the text
+ * that was compared, so a change in how the text is gathered, e.g. whether it
+ * is unaccented, cannot give the wrong answer. The cache is bounded by the
+ * number of characters it holds, and evicts the least recently used
+ * differences first.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class DiffCache {
+    /**
+     * Prevent instantiation
+     */
+    private DiffCache() {
+    }
+
+    /**
+     * Get the cached differences between the text of a verse in one book and
+     * in another.
+     *
+     * @return the differences, which must not be modified, or null if they
+     *         are not cached
+     */
+    public static List<Difference> get(Book from, Book to, String osisID, String fromText, String toText) {
+        if (osisID == null) {
+            return null;
+        }
+        return entries.get(new DiffKey(from, to, osisID, fromText, toText));
+    }
+
+    /**
+     * Add the differences between the text of a verse in one book and in
+     * another to the cache, evicting the least recently used differences to
+     * make room for them.
+     */
+    public static void put(Book from, Book to, String osisID, String fromText, String toText, List<Difference> diffs) {
+        if (osisID == null) {
+            return;
+        }
+        entries.put(new DiffKey(from, to, osisID, fromText, toText), Collections.unmodifiableList(diffs));
+    }
+
+    /**
+     * Work out the differences between two texts, as they are shown.
+     *
+     * @param fromText
+     *            the text that is compared from
+     * @param toText
+     *            the text that is compared to
+     * @return the differences
+     */
+    public static List<Difference> compare(String fromText, String toText) {
+        List<Difference> diffs = new Diff(fromText, toText, false).compare();
+        DiffCleanup.cleanupSemantic(diffs);
+        return diffs;
+    }
+
+    /**
+     * Remove all the differences from the cache. The hit and miss counts are
+     * kept.
+     */
+    public static void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Set the maximum number of characters, of text and differences, to cache.
+     * Setting it to 0 turns the cache off.
+     *
+     * @param newMaxSize
+     *            the ceiling in characters
+     */
+    public static void setMaxSize(long newMaxSize) {
+        entries.setMaxSize(newMaxSize);
+    }
+
+    /**
+     * @return the maximum number of characters to cache
+     */
+    public static long getMaxSize() {
+        return entries.getMaxSize();
+    }
+
+    /**
+     * @return the number of characters now in the cache
+     */
+    public static long getSize() {
+        return entries.getSize();
+    }
+
+    /**
+     * @return the number of times the differences were found in the cache
+     */
+    public static long getHits() {
+        return entries.getHits();
+    }
+
+    /**
+     * @return the number of times the differences were not found in the cache
+     */
+    public static long getMisses() {
+        return entries.getMisses();
+    }
+
+    /**
+     * Identifies the text of a verse compared between two books. The books
+     * are compared by identity.
+     */
+    private static final class DiffKey {
+        DiffKey(Book from, Book to, String osisID, String fromText, String toText) {
+            this.from = from;
+            this.to = to;
+            this.osisID = osisID;
+            this.fromText = fromText;
+            this.toText = toText;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(from);
+            result = 31 * result + System.identityHashCode(to);
+            result = 31 * result + osisID.hashCode();
+            result = 31 * result + fromText.hashCode();
+            return 31 * result + toText.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DiffKey)) {
+                return false;
+            }
+            DiffKey that = (DiffKey) obj;
+            return from == that.from && to == that.to && osisID.equals(that.osisID) && fromText.equals(that.fromText) && toText.equals(that.toText);
+        }
+
+        private final Book from;
+        private final Book to;
+        private final String osisID;
+        private final String fromText;
+        private final String toText;
+    }
+
+    /**
+     * The default ceiling, enough for the verses of a few hundred chapters.
+     */
+    private static final long DEFAULT_MAX_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * The differences, measured in characters of the compared text and of the
+     * differences.
+     */
+    private static final SizedLRUCache<DiffKey, List<Difference>> entries = new SizedLRUCache<DiffKey, List<Difference>>(DEFAULT_MAX_SIZE) {
+        @Override
+        protected long sizeOf(DiffKey key, List<Difference> diffs) {
+            long chars = key.fromText.length() + key.toText.length();
+            for (Difference diff : diffs) {
+                chars += diff.getText().length();
+            }
+            return chars;
+        }
+    };
+}
@@ -37,9 +37,11 @@ import org.crosswire.common.diff.EditType;
 import org.crosswire.common.util.Logger;
 import org.crosswire.common.util.StringUtil;
 import org.crosswire.jsword.JSOtherMsg;
+import org.crosswire.jsword.passage.BitwisePassage;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.OsisRefParser;
 import org.crosswire.jsword.passage.PassageKeyFactory;
 import org.crosswire.jsword.passage.Verse;
 import org.crosswire.jsword.passage.VerseFactory;
@@ -767,11 +769,17 @@ public final class OSISUtil {
     public static String getReferences(Versification v11n, Element root) {
         PassageKeyFactory keyf = PassageKeyFactory.instance();
         Key collector = keyf.createEmptyKeyList(v11n);
+        BitwisePassage bitwise = collector instanceof BitwisePassage ? (BitwisePassage) collector : null;
 
         for (Content content : getDeepContent(root, OSISUtil.OSIS_ELEMENT_REFERENCE)) {
             Element ele = (Element) content;
             String attr = ele.getAttributeValue(OSISUtil.OSIS_ATTR_REF);
             if (attr != null) {
+                // Most references are simple lists of verses
+                if (bitwise != null && OsisRefParser.parse(attr, bitwise)) {
+                    continue;
+                }
+
                 try {
                     Key key = keyf.getKey(v11n, attr);
                     collector.addAll(key);
@@ -21,10 +21,13 @@
  */
 package org.crosswire.jsword.book.basic;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.crosswire.common.util.Logger;
+import org.crosswire.common.util.LucidRuntimeException;
 import org.crosswire.jsword.book.BookData;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.BookMetaData;
@@ -63,7 +66,6 @@ public abstract class AbstractPassageBook extends AbstractBook {
      */
     public Iterator<Content> getOsisIterator(Key key, final boolean allowEmpty) throws BookException {
         // Note: allowEmpty indicates parallel view
-        // TODO(DMS): make the iterator be demand driven
         final Filter filter = getFilter();
 
         // For all the ranges in this Passage
@@ -94,7 +96,72 @@ public abstract class AbstractPassageBook extends AbstractBook {
             }
         };
 
-        return getOsis(ref, processor).iterator();
+        return new OsisIterator(ref.rangeIterator(RestrictionType.CHAPTER), processor);
+    }
+
+    /**
+     * Reads the OSIS of a passage one range of verses at a time, as it is
+     * asked for. The ranges are restricted to a chapter, so no more than a
+     * chapter is held at once however much of the book is read. A failure to
+     * read a later range is thrown as described by
+     * {@link org.crosswire.jsword.book.Book#getOsisIterator(Key, boolean)}.
+     */
+    private final class OsisIterator implements Iterator<Content> {
+        /**
+         * The first range is read straight away, so that a book that cannot
+         * be read is reported as soon as possible.
+         */
+        OsisIterator(Iterator<Key> ranges, RawTextToXmlProcessor processor) throws BookException {
+            this.ranges = ranges;
+            this.processor = processor;
+            fill();
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            if (!contents.hasNext()) {
+                try {
+                    fill();
+                } catch (BookException e) {
+                    // An Iterator cannot throw the checked exception
+                    throw new LucidRuntimeException(e.getMessage(), e);
+                }
+            }
+            return contents.hasNext();
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        public Content next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return contents.next();
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Read ranges until there is some content or there are no more
+         * ranges.
+         */
+        private void fill() throws BookException {
+            while (!contents.hasNext() && ranges.hasNext()) {
+                contents = getOsis(ranges.next(), processor).iterator();
+            }
+        }
+
+        private Iterator<Key> ranges;
+        private RawTextToXmlProcessor processor;
+        private Iterator<Content> contents = Collections.<Content>emptyList().iterator();
     }
 
     
@@ -181,7 +248,7 @@ public abstract class AbstractPassageBook extends AbstractBook {
      * @see org.crosswire.jsword.passage.KeyFactory#createEmptyKeyList()
      */
     public final Key createEmptyKeyList() {
-        return keyf.createEmptyKeyList(Versifications.instance().getVersification(versification));
+        return keyf.createEmptyKeyList(getVersification());
     }
 
     /* (non-Javadoc)
@@ -189,7 +256,7 @@ public abstract class AbstractPassageBook extends AbstractBook {
      */
     public final Key getGlobalKeyList() {
         if (global == null) {
-            Versification v11n = Versifications.instance().getVersification(versification);
+            Versification v11n = getVersification();
             global = keyf.createEmptyKeyList(v11n);
             Key all = keyf.getGlobalKeyList(v11n);
             for (Key key : all) {
@@ -216,7 +283,7 @@ public abstract class AbstractPassageBook extends AbstractBook {
      * @see org.crosswire.jsword.passage.KeyFactory#getKey(java.lang.String)
      */
     public final Key getKey(String text) throws NoSuchKeyException {
-        return PassageKeyFactory.instance().getKey(Versifications.instance().getVersification(versification), text);
+        return PassageKeyFactory.instance().getKey(getVersification(), text);
     }
 
     public Versification getVersification() {
@@ -239,7 +306,7 @@ public abstract class AbstractPassageBook extends AbstractBook {
     /**
      * Versification system, created lazily, so use getter
      */
-    private Versification versificationSystem;
+    private volatile Versification versificationSystem;
     
     /**
      * Our key manager
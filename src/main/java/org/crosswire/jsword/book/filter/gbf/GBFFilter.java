@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.crosswire.common.xml.XMLUtil;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.DataPolice;
 import org.crosswire.jsword.book.OSISUtil;
@@ -49,20 +50,28 @@ public class GBFFilter implements Filter {
      */
     public List<Content> toOSIS(Book book, Key key, String plain) {
         Element ele = OSISUtil.factory().createDiv();
-        LinkedList<Content> stack = new LinkedList<Content>();
-        stack.addFirst(ele);
+        String text = plain.trim();
+
+        // Without a < or > there are no tags, just text.
+        if (text.indexOf('<') == -1 && text.indexOf('>') == -1) {
+            ele.addContent(XMLUtil.escape(text));
+        } else {
+            LinkedList<Content> stack = new LinkedList<Content>();
+            stack.addFirst(ele);
+
+            List<Tag> taglist = parseTags(book, key, text);
+            while (true) {
+                if (taglist.isEmpty()) {
+                    break;
+                }
 
-        List<Tag> taglist = parseTags(book, key, plain.trim());
-        while (true) {
-            if (taglist.isEmpty()) {
-                break;
+                Tag tag = taglist.remove(0);
+                tag.updateOsisStack(book, key, stack);
             }
 
-            Tag tag = taglist.remove(0);
-            tag.updateOsisStack(book, key, stack);
+            stack.removeFirst();
         }
 
-        stack.removeFirst();
         return ele.removeContent();
     }
 
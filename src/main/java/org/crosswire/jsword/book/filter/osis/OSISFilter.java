@@ -73,7 +73,8 @@ public class OSISFilter implements Filter {
         }
 
         if (ele == null) {
-            clean = XMLUtil.cleanAllEntities(clean);
+            // Fix the entities, characters and open empty tags at one go
+            clean = XMLUtil.repair(clean);
 
             try {
                 ele = parse(clean);
@@ -23,7 +23,10 @@ package org.crosswire.jsword.book.filter.thml;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -60,6 +63,16 @@ public class THMLFilter implements Filter {
      * @see org.crosswire.jsword.book.filter.Filter#toOSIS(org.crosswire.jsword.book.Book, org.crosswire.jsword.passage.Key, java.lang.String)
      */
     public List<Content> toOSIS(Book book, Key key, String plain) {
+        // Most verses of most ThML books have no markup at all, and there is
+        // no need to parse them.
+        if (isPlainText(plain)) {
+            List<Content> content = new ArrayList<Content>(1);
+            if (plain.length() > 0) {
+                content.add(OSISUtil.factory().createText(plain));
+            }
+            return content;
+        }
+
         Element ele = cleanParse(book, key, plain);
 
         if (ele == null) {
@@ -91,26 +104,30 @@ public class THMLFilter implements Filter {
         return clone;
     }
 
-    private Element cleanParse(Book book, Key key, String plain) {
-        // So just try to strip out all XML looking things
-        String clean = XMLUtil.cleanAllEntities(plain);
-        Element ele = parse(book, key, clean, "cleaning entities");
-
-        if (ele == null) {
-            ele = cleanText(book, key, clean);
+    /**
+     * Determine whether the text would be parsed as nothing more than
+     * character data. That is, it has no markup, no entities, nothing that
+     * the parser would normalize and nothing that is not allowed in XML.
+     */
+    private static boolean isPlainText(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x20) {
+                if (c != '\t' && c != '\n') {
+                    return false;
+                }
+            } else if (c == '<' || c == '>' || c == '&' || c >= 0xD800 && (c < 0xE000 || c >= 0xFFFE)) {
+                return false;
+            }
         }
-
-        return ele;
+        return true;
     }
 
-    private Element cleanText(Book book, Key key, String plain) {
-        // So just try to strip out all XML looking things
-        String clean = XMLUtil.cleanAllCharacters(plain);
-        Element ele = parse(book, key, clean, "cleaning text");
-
-        if (ele == null) {
-            ele = parse(book, key, XMLUtil.closeEmptyTags(clean), "closing empty tags");
-        }
+    private Element cleanParse(Book book, Key key, String plain) {
+        // Fix the entities, characters and open empty tags at one go
+        String clean = XMLUtil.repair(plain);
+        Element ele = parse(book, key, clean, "repairing");
 
         if (ele == null) {
             ele = cleanTags(book, key, clean);
@@ -132,11 +149,11 @@ public class THMLFilter implements Filter {
         StringBuilder buf = new StringBuilder(15 + plain.length());
         buf.append('<').append(RootTag.TAG_ROOT).append('>').append(plain).append("</").append(RootTag.TAG_ROOT).append('>');
         finalInput = buf.toString();
+        SAXParser parser = null;
         try {
             StringReader in = new StringReader(finalInput);
             InputSource is = new InputSource(in);
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            SAXParser parser = spf.newSAXParser();
+            parser = getParser();
             CustomHandler handler = new CustomHandler(book, key);
 
             parser.parse(is, handler);
@@ -155,6 +172,14 @@ public class THMLFilter implements Filter {
         } catch (RuntimeException e) {
             // Catch everything else so that we handle the exception properly within a Sw*ng callback
             ex = e;
+        } finally {
+            if (parser != null) {
+                // Whether the parse worked or not, the parser is good for
+                // another go once it has been reset. Ignore the return value
+                // as we don't care whether the parser is going to be re-used
+                parser.reset();
+                parsers.offer(parser);
+            }
         }
 
         errorMessage = failMessage;
@@ -162,6 +187,28 @@ public class THMLFilter implements Filter {
         return null;
     }
 
+    /**
+     * Get a parser from the pool, creating one if none is free.
+     */
+    private SAXParser getParser() throws ParserConfigurationException, SAXException {
+        SAXParser parser = parsers.poll();
+        if (parser == null) {
+            // The factory is not thread safe, but creating parsers is rare
+            synchronized (PARSER_FACTORY) {
+                parser = PARSER_FACTORY.newSAXParser();
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Get the parsers that are free to be used again. The pool is shared by
+     * this filter and its clones.
+     */
+    BlockingQueue<SAXParser> getParsers() {
+        return parsers;
+    }
+
     private String errorMessage;
     private Exception error;
     private String finalInput;
@@ -170,4 +217,12 @@ public class THMLFilter implements Filter {
      * The log stream
      */
     private static final Logger log = Logger.getLogger(THMLFilter.class);
+
+    /**
+     * Looking up the factory searches the classpath, so it is only done once.
+     */
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+    //space for 32 re-usable sax parsers, but doesn't bound the number available to the callers
+    private BlockingQueue<SAXParser> parsers = new ArrayBlockingQueue<SAXParser>(32);
 }
@@ -38,7 +38,6 @@ import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Passage;
 import org.crosswire.jsword.passage.RestrictionType;
-import org.crosswire.jsword.passage.Verse;
 import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
@@ -84,17 +83,67 @@ public abstract class AbstractBackend<T extends OpenFileState> implements Statef
      *            the data to unlock
      */
     public void decipher(byte[] data) {
-        String cipherKeyString = (String) getBookMetaData().getProperty(ConfigEntryType.CIPHER_KEY);
-        if (cipherKeyString != null) {
-            Sapphire cipherEngine = new Sapphire(cipherKeyString.getBytes());
-            for (int i = 0; i < data.length; i++) {
-                data[i] = cipherEngine.cipher(data[i]);
-            }
+        decipher(data, 0, data.length);
+    }
+
+    /**
+     * Decipher a region of the data in place, if it is enciphered and there
+     * is a key to unlock it.
+     * 
+     * @param data
+     *            the data to unlock
+     * @param offset
+     *            the index of the first byte to unlock
+     * @param length
+     *            the number of bytes to unlock
+     */
+    public void decipher(byte[] data, int offset, int length) {
+        Sapphire cipherEngine = getCipher();
+        if (cipherEngine != null) {
+            cipherEngine.cipher(data, offset, length);
             // destroy any evidence!
             cipherEngine.burn();
         }
     }
 
+    /**
+     * Get a cipher, ready to decipher the start of a text, if the book is
+     * enciphered and there is a key to unlock it. Keying a cipher is costly,
+     * so the keyed cipher is kept and a copy of it is handed out, until the
+     * key changes.
+     * 
+     * @return a cipher for the sole use of the caller, or null
+     */
+    protected Sapphire getCipher() {
+        String cipherKeyString = (String) getBookMetaData().getProperty(ConfigEntryType.CIPHER_KEY);
+        if (cipherKeyString == null) {
+            return null;
+        }
+
+        synchronized (cipherLock) {
+            if (!cipherKeyString.equals(cipherKey)) {
+                if (keyedCipher != null) {
+                    keyedCipher.burn();
+                }
+                keyedCipher = new Sapphire(getCipherKeyBytes(cipherKeyString));
+                cipherKey = cipherKeyString;
+            }
+            return keyedCipher.clone();
+        }
+    }
+
+    /**
+     * Convert the key that unlocks the book into the bytes that key the
+     * cipher.
+     * 
+     * @param cipherKeyString
+     *            the key to unlock the book
+     * @return the bytes of the key
+     */
+    protected byte[] getCipherKeyBytes(String cipherKeyString) {
+        return cipherKeyString.getBytes();
+    }
+
     /**
      * Encipher the data in place, if there is a key to unlock it.
      * 
@@ -196,31 +245,102 @@ public abstract class AbstractBackend<T extends OpenFileState> implements Statef
      * @throws BookException
      *             a book exception if we failed to read the book
      */
-    private Verse readPassageOsis(Key key, RawTextToXmlProcessor processor, final List<Content> content, T openFileState) throws BookException {
-        Verse currentVerse = null;
-        try {
-            
-            
+    private void readPassageOsis(Key key, RawTextToXmlProcessor processor, final List<Content> content, T openFileState) throws BookException {
+        Iterator<Key> rit = null;
+        if (key instanceof VerseRange) {
+            // Read a single range without making it into a Passage
+            rit = ((VerseRange) key).rangeIterator(RestrictionType.CHAPTER);
+        } else {
             final Passage ref = (key instanceof Passage ? (Passage) key : KeyUtil.getPassage(key, getVersification()));
-            final Iterator<Key> rit = ref.rangeIterator(RestrictionType.CHAPTER);
-            while (rit.hasNext()) {
-                VerseRange range = (VerseRange) rit.next();
-                processor.preRange(range, content);
-
-                // FIXME(CJB): can this now be optmized since we can calculate
-                // the buffer size of what to read?
-                // now iterate through all verses in range
-                for (Key verseInRange : range) {
-                    currentVerse = KeyUtil.getVerse(verseInRange, getVersification());
-                    final String keyName = verseInRange.getName();
-                    String rawText = readRawContent(openFileState, currentVerse, keyName);
-                    processor.postVerse(verseInRange, content, rawText);
-                }
+            rit = ref.rangeIterator(RestrictionType.CHAPTER);
+        }
+        while (rit.hasNext()) {
+            VerseRange range = (VerseRange) rit.next();
+            processor.preRange(range, content);
+
+            // read the whole range at one go and then hand out the verses
+            String[] rawTexts;
+            try {
+                rawTexts = readRawContent(openFileState, range);
+            } catch (IOException e) {
+                // Read it again a verse at a time to find the verse that fails
+                rawTexts = readFailedRange(key, openFileState, range);
+            }
+            int i = 0;
+            for (Key verseInRange : range) {
+                processor.postVerse(verseInRange, content, rawTexts[i++]);
+            }
+        }
+    }
+
+    /**
+     * Read the raw text of each of the verses in a range that could not be
+     * read at one go, so that an error reports the verse that failed rather
+     * than the whole range.
+     * 
+     * @param key
+     *            the given key
+     * @param openFileState
+     *            the open file state, from which we read things
+     * @param range
+     *            the verses that are sought
+     * @return the raw text of each verse of the range, in order
+     * @throws BookException
+     *             naming the verse that could not be read
+     */
+    private String[] readFailedRange(Key key, T openFileState, VerseRange range) throws BookException {
+        String[] rawTexts = new String[range.getCardinality()];
+        int i = 0;
+        for (Key verseInRange : range) {
+            try {
+                rawTexts[i++] = readRawContent(openFileState, verseInRange, verseInRange.getName());
+            } catch (IOException e) {
+                throwFailedKeyException(key, verseInRange, e);
             }
-        } catch (IOException e) {
-            throwFailedKeyException(key, currentVerse, e);
         }
-        return currentVerse;
+        return rawTexts;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.StatefulFileBackedBackend#readRawContent(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.VerseRange)
+     */
+    public String[] readRawContent(T state, VerseRange range) throws BookException, IOException {
+        return readRawVerses(state, range);
+    }
+
+    /**
+     * Read the raw text of each of the verses in a range, one verse at a time.
+     * This is for backends that can do no better.
+     * 
+     * @param state
+     *            the state object containing all the open random access files
+     * @param range
+     *            the verses that are sought
+     * @return the raw text of each verse of the range, in order
+     * @throws IOException
+     *             something went wrong when reading a verse
+     */
+    protected String[] readRawVerses(T state, VerseRange range) throws BookException, IOException {
+        String[] rawTexts = new String[range.getCardinality()];
+        int i = 0;
+        for (Key verseInRange : range) {
+            rawTexts[i++] = readRawContent(state, verseInRange, verseInRange.getName());
+        }
+        return rawTexts;
+    }
+
+    /**
+     * Whether all the verses of a range are in one testament, and so can be
+     * read from one set of files. A range that is not has to be read verse by
+     * verse.
+     * 
+     * @param range
+     *            the verses that are sought
+     * @return true if the range starts and ends in the same testament
+     */
+    protected boolean isInOneTestament(VerseRange range) {
+        Versification v11n = getVersification();
+        return v11n.getTestament(v11n.getOrdinal(range.getStart())) == v11n.getTestament(v11n.getOrdinal(range.getEnd()));
     }
 
     /**
@@ -281,6 +401,12 @@ public abstract class AbstractBackend<T extends OpenFileState> implements Statef
         return false;
     }
 
+    /**
+     * Get the versification of the book. It is looked up once and kept, so
+     * that it can be used freely when reading each verse.
+     * 
+     * @return the versification of the book
+     */
     public Versification getVersification() {
         if(this.versificationSystem == null) {
             this.versificationSystem = Versifications.instance().getVersification((String) getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION)); 
@@ -289,5 +415,24 @@ public abstract class AbstractBackend<T extends OpenFileState> implements Statef
     }
     
     private SwordBookMetaData bmd;
-    private Versification versificationSystem;
+    /**
+     * The versification of the book, set when first needed. Versifications
+     * are shared and never change, so a racing lookup is harmless.
+     */
+    private volatile Versification versificationSystem;
+
+    /**
+     * Guards the keyed cipher, which is shared by all the readers of the book.
+     */
+    private final Object cipherLock = new Object();
+
+    /**
+     * The key that the kept cipher was keyed with.
+     */
+    private String cipherKey;
+
+    /**
+     * A cipher that has been keyed but not used, from which copies are made.
+     */
+    private Sapphire keyedCipher;
 }
@@ -0,0 +1,297 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.crosswire.common.util.SizedLRUCache;
+import org.crosswire.jsword.versification.Testament;
+
+/**
+ * A process wide cache of uncompressed blocks of compressed books, shared by
+ * all the readers of all the books. Each open file state remembers the last
+ * block that it uncompressed, but the states are pooled per caller, so
+ * without this concurrent requests for the same chapter would each uncompress
+ * the same block.
+ *
+ * <p>
+ * Blocks should be got with {@link #getOrLoad(SwordBookMetaData, Testament, long, Loader)}.
+ * While one reader uncompresses a block, others that want the same block wait
+ * for it rather than uncompressing it too.
+ * </p>
+ *
+ * <p>
+ * The cache is bounded by the total number of bytes of the blocks it holds,
+ * and evicts the least recently used blocks first. Cached blocks are shared,
+ * so they must never be modified by the caller.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class BlockCache {
+    /**
+     * Prevent instantiation
+     */
+    private BlockCache() {
+    }
+
+    /**
+     * Get an uncompressed block from the cache.
+     *
+     * @param bmd
+     *            the book to which the block belongs
+     * @param testament
+     *            the testament of the block, or null if the book is not
+     *            verse based
+     * @param blockNum
+     *            the number of the block
+     * @return the uncompressed block or null if it is not cached
+     */
+    public static byte[] get(SwordBookMetaData bmd, Testament testament, long blockNum) {
+        return blocks.get(new BlockKey(bmd, testament, blockNum));
+    }
+
+    /**
+     * Get an uncompressed block from the cache, loading it if it is not there.
+     * Only one reader loads a block at a time. Others that want the same block
+     * while it is being loaded wait for that load and share its result, or its
+     * failure. A block that is loaded is added to the cache.
+     *
+     * @param bmd
+     *            the book to which the block belongs
+     * @param testament
+     *            the testament of the block, or null if the book is not
+     *            verse based
+     * @param blockNum
+     *            the number of the block
+     * @param loader
+     *            reads and uncompresses the block when it is not cached
+     * @return the uncompressed block, or null if the loader found no block
+     * @throws IOException
+     *             if the block could not be loaded
+     */
+    public static byte[] getOrLoad(SwordBookMetaData bmd, Testament testament, long blockNum, final Loader loader) throws IOException {
+        BlockKey key = new BlockKey(bmd, testament, blockNum);
+        FutureTask<byte[]> task = null;
+        boolean owner = false;
+        synchronized (blocks) {
+            byte[] block = blocks.get(key);
+            if (block != null) {
+                return block;
+            }
+
+            task = loading.get(key);
+            if (task == null) {
+                task = new FutureTask<byte[]>(new Callable<byte[]>() {
+                    public byte[] call() throws IOException {
+                        return loader.load();
+                    }
+                });
+                loading.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            task.run();
+            synchronized (blocks) {
+                loading.remove(key);
+                byte[] block = getLoaded(task);
+                if (block != null) {
+                    blocks.put(key, block);
+                }
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Add an uncompressed block to the cache, evicting the least recently
+     * used blocks to make room for it. A block that is larger than the cache
+     * is not added.
+     *
+     * @param bmd
+     *            the book to which the block belongs
+     * @param testament
+     *            the testament of the block, or null if the book is not
+     *            verse based
+     * @param blockNum
+     *            the number of the block
+     * @param block
+     *            the uncompressed block
+     */
+    public static void put(SwordBookMetaData bmd, Testament testament, long blockNum, byte[] block) {
+        blocks.put(new BlockKey(bmd, testament, blockNum), block);
+    }
+
+    /**
+     * Remove all the blocks from the cache. The hit and miss counts are kept.
+     */
+    public static void clear() {
+        blocks.clear();
+    }
+
+    /**
+     * Set the maximum number of bytes of uncompressed blocks to cache. Setting
+     * it to 0 turns the cache off.
+     *
+     * @param newMaxSize
+     *            the ceiling in bytes
+     */
+    public static void setMaxSize(long newMaxSize) {
+        blocks.setMaxSize(newMaxSize);
+    }
+
+    /**
+     * @return the maximum number of bytes of uncompressed blocks to cache
+     */
+    public static long getMaxSize() {
+        return blocks.getMaxSize();
+    }
+
+    /**
+     * @return the number of bytes of uncompressed blocks now in the cache
+     */
+    public static long getSize() {
+        return blocks.getSize();
+    }
+
+    /**
+     * @return the number of times a block was found in the cache
+     */
+    public static long getHits() {
+        return blocks.getHits();
+    }
+
+    /**
+     * @return the number of times a block was not found in the cache
+     */
+    public static long getMisses() {
+        return blocks.getMisses();
+    }
+
+    /**
+     * Reads and uncompresses a block that is not in the cache.
+     */
+    public interface Loader {
+        /**
+         * @return the uncompressed block, or null if there is no such block
+         * @throws IOException
+         *             if the block could not be read
+         */
+        byte[] load() throws IOException;
+    }
+
+    /**
+     * Get the block of a load that has finished.
+     *
+     * @return the block, or null if the load failed or found no block
+     */
+    private static byte[] getLoaded(FutureTask<byte[]> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            // Cannot happen, as the task has run
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies a block within a book. The book is compared by identity so
+     * that the blocks of a book that has been re-installed are not confused
+     * with those of the book it replaced.
+     */
+    private static final class BlockKey {
+        BlockKey(SwordBookMetaData bmd, Testament testament, long blockNum) {
+            this.bmd = bmd;
+            this.testament = testament;
+            this.blockNum = blockNum;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(bmd);
+            result = 31 * result + (testament == null ? 0 : testament.ordinal());
+            return 31 * result + (int) (blockNum ^ (blockNum >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey that = (BlockKey) obj;
+            return bmd == that.bmd && testament == that.testament && blockNum == that.blockNum;
+        }
+
+        private final SwordBookMetaData bmd;
+        private final Testament testament;
+        private final long blockNum;
+    }
+
+    /**
+     * The default ceiling, enough for a few hundred chapter blocks.
+     */
+    private static final long DEFAULT_MAX_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * The blocks, measured in bytes. Its lock also guards the loads that are
+     * under way.
+     */
+    private static final SizedLRUCache<BlockKey, byte[]> blocks = new SizedLRUCache<BlockKey, byte[]>(DEFAULT_MAX_SIZE) {
+        @Override
+        protected long sizeOf(BlockKey key, byte[] block) {
+            return block.length;
+        }
+    };
+
+    /**
+     * The loads that are under way, guarded by the lock on blocks.
+     */
+    private static final Map<BlockKey, FutureTask<byte[]>> loading = new HashMap<BlockKey, FutureTask<byte[]>>();
+}
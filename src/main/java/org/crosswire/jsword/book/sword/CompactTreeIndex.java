@@ -0,0 +1,290 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The whole tree of a general book, held in memory as flat arrays, so that a
+ * node can be found by its path, and the tree walked, without reading the
+ * files of the book. Each node is known by its number, which is its position
+ * in the index file. The root is node 0.
+ * 
+ * <p>
+ * Once built, the index is not changed, so it can be used by any number of
+ * threads at once. Its {@link FileStamp} tells when the files of the tree
+ * have changed.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+final class CompactTreeIndex {
+    /**
+     * Start an index of the tree of a book. The files are stamped now, before
+     * they are read, so a change while they are being read is not missed.
+     * 
+     * @param idxFile
+     *            the index file of the tree
+     * @param datFile
+     *            the data file of the tree
+     */
+    CompactTreeIndex(File idxFile, File datFile) {
+        stamp = new FileStamp(idxFile, datFile);
+        names = new String[0];
+        parents = new int[0];
+        firstChildren = new int[0];
+        nextSiblings = new int[0];
+        offsets = new int[0];
+        sizes = new int[0];
+        paths = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Build the index from the contents of the files of the tree. The index
+     * file holds, for each node, the offset of its record in the data file.
+     * A record holds the index file offsets of the parent, next sibling and
+     * first child of the node, its name ending in a 0 and then its user data,
+     * preceded by its length. The user data of a node with a body is the
+     * offset and size of the body.
+     * 
+     * @param idx
+     *            the contents of the index file
+     * @param dat
+     *            the contents of the data file
+     * @param bookName
+     *            the name of the book, for reporting errors in decoding
+     * @param charset
+     *            the character set of the names
+     */
+    void build(byte[] idx, byte[] dat, String bookName, String charset) {
+        int count = idx.length / 4;
+        names = new String[count];
+        parents = new int[count];
+        firstChildren = new int[count];
+        nextSiblings = new int[count];
+        offsets = new int[count];
+        sizes = new int[count];
+        Arrays.fill(offsets, -1);
+
+        for (int i = 0; i < count; i++) {
+            names[i] = "";
+            parents[i] = -1;
+            firstChildren[i] = -1;
+            nextSiblings[i] = -1;
+
+            int pos = SwordUtil.decodeLittleEndian32(idx, i * 4);
+            if (pos < 0 || pos + 12 > dat.length) {
+                continue;
+            }
+            parents[i] = toNode(SwordUtil.decodeLittleEndian32(dat, pos), count);
+            nextSiblings[i] = toNode(SwordUtil.decodeLittleEndian32(dat, pos + 4), count);
+            firstChildren[i] = toNode(SwordUtil.decodeLittleEndian32(dat, pos + 8), count);
+
+            int start = pos + 12;
+            int end = start;
+            while (end < dat.length && dat[end] != 0) {
+                end++;
+            }
+            // Some of the keys have extraneous whitespace, so remove it.
+            names[i] = SwordUtil.decode(bookName, dat, start, end - start, charset).trim();
+
+            int userData = end + 1;
+            if (userData + 2 <= dat.length && SwordUtil.decodeLittleEndian16(dat, userData) == 8 && userData + 10 <= dat.length) {
+                offsets[i] = SwordUtil.decodeLittleEndian32(dat, userData + 2);
+                sizes[i] = SwordUtil.decodeLittleEndian32(dat, userData + 6);
+            }
+        }
+
+        buildPaths();
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Find a node by its path. The path is the names of the node and its
+     * ancestors below the root, each preceded by a '/', e.g. /a/b/c.
+     * Where siblings share a name, the first of them is found.
+     * 
+     * @param path
+     *            the path of the node
+     * @return the node or -1 if there is none
+     */
+    int find(String path) {
+        Integer node = paths.get(path);
+        return node == null ? -1 : node.intValue();
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the name of the node
+     */
+    String getName(int node) {
+        return names[node];
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the parent of the node, or -1 for the root
+     */
+    int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the first child of the node, or -1 if it has none
+     */
+    int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the next sibling of the node, or -1 if it is the last
+     */
+    int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return where the body of the node starts in the body file, or -1 if
+     *         the node has no body
+     */
+    int getDataOffset(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the size of the body of the node
+     */
+    int getDataSize(int node) {
+        return sizes[node];
+    }
+
+    /**
+     * @return the stamp of the files the index was built from
+     */
+    FileStamp getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Work out the path of each node that can be reached from the root, a
+     * level at a time, so that of siblings with the same name, the first is
+     * the one that is kept.
+     */
+    private void buildPaths() {
+        int count = names.length;
+        paths = new HashMap<String, Integer>(count * 2);
+        if (count == 0) {
+            return;
+        }
+
+        String[] nodePaths = new String[count];
+        nodePaths[0] = "";
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        BitSet seen = new BitSet(count);
+        seen.set(0);
+        while (head < tail) {
+            int parent = queue[head++];
+            // A damaged tree may loop, so each node is only visited once.
+            for (int child = firstChildren[parent]; child >= 0 && !seen.get(child); child = nextSiblings[child]) {
+                seen.set(child);
+                String path = nodePaths[parent] + '/' + names[child];
+                nodePaths[child] = path;
+                if (!paths.containsKey(path)) {
+                    paths.put(path, Integer.valueOf(child));
+                }
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Turn an offset in the index file into a node number.
+     */
+    private static int toNode(int idxOffset, int count) {
+        if (idxOffset < 0 || (idxOffset & 3) != 0 || idxOffset / 4 >= count) {
+            return -1;
+        }
+        return idxOffset / 4;
+    }
+
+    private final FileStamp stamp;
+
+    /**
+     * The name of each node.
+     */
+    private String[] names;
+
+    /**
+     * The parent of each node.
+     */
+    private int[] parents;
+
+    /**
+     * The first child of each node.
+     */
+    private int[] firstChildren;
+
+    /**
+     * The next sibling of each node.
+     */
+    private int[] nextSiblings;
+
+    /**
+     * Where the body of each node starts, or -1.
+     */
+    private int[] offsets;
+
+    /**
+     * The size of the body of each node.
+     */
+    private int[] sizes;
+
+    /**
+     * Each path and the node it leads to.
+     */
+    private Map<String, Integer> paths;
+}
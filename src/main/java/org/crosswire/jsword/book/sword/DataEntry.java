@@ -74,18 +74,38 @@ public class DataEntry {
                 return "";
             }
 
-            key = SwordUtil.decode(name, data, keyEnd, charset).trim();
-
-            // for some weird reason plain text dictionaries
-            // all get \ added to the ends of the index entries.
-            if (key.endsWith("\\")) {
-                key = key.substring(0, key.length() - 1);
-            }
+            key = decodeKey(name, data, 0, keyEnd, charset);
         }
 
         return key;
     }
 
+    /**
+     * Decode the key at the start of an entry.
+     * 
+     * @param name
+     *            A name used for diagnostics.
+     * @param data
+     *            The data holding the key.
+     * @param offset
+     *            The start of the key.
+     * @param length
+     *            The length of the key, not counting the separator.
+     * @param charset
+     *            The character encoding for the key.
+     * @return the key
+     */
+    static String decodeKey(String name, byte[] data, int offset, int length, String charset) {
+        String key = SwordUtil.decode(name, data, offset, length, charset).trim();
+
+        // for some weird reason plain text dictionaries
+        // all get \ added to the ends of the index entries.
+        if (key.endsWith("\\")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
     /**
      * Determine whether this entry is an alias for another.
      * 
@@ -121,8 +141,24 @@ public class DataEntry {
      * @return the raw text
      */
     public String getRawText(byte[] cipherKey) {
+        return decipherRawText(cipherKey != null && cipherKey.length > 0 ? new Sapphire(cipherKey) : null);
+    }
+
+    /**
+     * Get the raw text from this entry, using a cipher that is already keyed.
+     * 
+     * @param cipher
+     *            a cipher, ready to (un)lock the start of the text, or null if
+     *            the text is not enciphered. It is burnt once used.
+     * @return the raw text
+     */
+    public String decipherRawText(Sapphire cipher) {
         int textStart = getKeyEnd() + 1;
-        cipher(cipherKey, textStart);
+        if (cipher != null) {
+            cipher.cipher(data, textStart, data.length - textStart);
+            // destroy any evidence!
+            cipher.burn();
+        }
         return SwordUtil.decode(name, data, textStart, data.length - textStart, charset).trim();
     }
 
@@ -171,9 +207,7 @@ public class DataEntry {
     public void cipher(byte[] cipherKey, int offset) {
         if (cipherKey != null && cipherKey.length > 0) {
             Sapphire cipherEngine = new Sapphire(cipherKey);
-            for (int i = offset; i < data.length; i++) {
-                data[i] = cipherEngine.cipher(data[i]);
-            }
+            cipherEngine.cipher(data, offset, data.length - offset);
             // destroy any evidence!
             cipherEngine.burn();
         }
@@ -183,7 +217,7 @@ public class DataEntry {
      * Used to separate the key name from the key value Note: it may be \r\n or
      * just \n, so only need \n. ^M=CR=13=0x0d=\r ^J=LF=10=0x0a=\n
      */
-    private static final byte SEPARATOR = 10;
+    static final byte SEPARATOR = 10;
 
     /**
      * A diagnostic name.
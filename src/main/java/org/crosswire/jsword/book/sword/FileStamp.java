@@ -0,0 +1,122 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+
+/**
+ * The size and modification time of the files that something held in memory
+ * was built from, e.g. the index of a book, so that it can tell when they
+ * have changed, as they do when the book is re-installed.
+ * 
+ * <p>
+ * Looking at the files takes two calls to the file system for each file, too
+ * many to make on every use of what was built from them. So once the files
+ * have been found unchanged, they are taken to be unchanged until the check
+ * interval has passed.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+final class FileStamp {
+    /**
+     * Stamp the files as they are now. This should be done before they are
+     * read, so that a change while they are being read is not missed.
+     * 
+     * @param files
+     *            the files to stamp
+     */
+    FileStamp(File... files) {
+        this.files = files.clone();
+        lengths = new long[files.length];
+        modified = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lengths[i] = files[i].length();
+            modified[i] = files[i].lastModified();
+        }
+        checked = System.currentTimeMillis();
+    }
+
+    /**
+     * Determine whether it is time to check that the files have not changed.
+     * Until then they are taken to be unchanged.
+     * 
+     * @return true if {@link #isCurrent()} should be called
+     */
+    boolean isCheckDue() {
+        return System.currentTimeMillis() - checked >= checkInterval;
+    }
+
+    /**
+     * Determine whether the files are as they were when they were stamped.
+     * The next check is not due until the check interval has passed again.
+     * 
+     * @return true if the files have not changed
+     */
+    boolean isCurrent() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].length() != lengths[i] || files[i].lastModified() != modified[i]) {
+                return false;
+            }
+        }
+        checked = now;
+        return true;
+    }
+
+    /**
+     * Set how long, in milliseconds, files are taken to be unchanged before
+     * they are checked again. Setting it to 0 checks them every time.
+     * 
+     * @param newCheckInterval
+     *            the interval in milliseconds
+     */
+    static void setCheckInterval(long newCheckInterval) {
+        checkInterval = newCheckInterval;
+    }
+
+    /**
+     * @return how long, in milliseconds, files are taken to be unchanged
+     *         before they are checked again
+     */
+    static long getCheckInterval() {
+        return checkInterval;
+    }
+
+    private final File[] files;
+    private final long[] lengths;
+    private final long[] modified;
+
+    /**
+     * When the files were last found to be unchanged.
+     */
+    private volatile long checked;
+
+    /**
+     * The default check interval, in milliseconds.
+     */
+    private static final long DEFAULT_CHECK_INTERVAL = 1000;
+
+    private static volatile long checkInterval = DEFAULT_CHECK_INTERVAL;
+}
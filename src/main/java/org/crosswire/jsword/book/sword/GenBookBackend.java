@@ -57,6 +57,9 @@ public class GenBookBackend extends AbstractBackend<GenBookBackendState> {
     @Override
     public boolean contains(Key key) {
         try {
+            if (treeInMemory) {
+                return getCompactIndex().find(getPath(key)) != -1;
+            }
             return null != find(key);
         } catch (IOException e) {
             return false;
@@ -64,6 +67,10 @@ public class GenBookBackend extends AbstractBackend<GenBookBackendState> {
     }
 
     public String readRawContent(GenBookBackendState state, Key key, String keyName) throws IOException, BookException {
+        if (treeInMemory) {
+            return readRawContent(state, getCompactIndex(), key, keyName);
+        }
+
         TreeNode node = find(key);
 
         if (node == null) {
@@ -88,6 +95,77 @@ public class GenBookBackend extends AbstractBackend<GenBookBackendState> {
         return "";
     }
 
+    /**
+     * Read the body of a key, finding it in the tree held in memory.
+     */
+    private String readRawContent(GenBookBackendState state, CompactTreeIndex tree, Key key, String keyName) throws IOException, BookException {
+        int node = tree.find(getPath(key));
+
+        if (node == -1) {
+            // TRANSLATOR: Error condition: Indicates that something could
+            // not be found in the book.
+            // {0} is a placeholder for the unknown key.
+            // {1} is the short name of the book
+            throw new BookException(JSMsg.gettext("No entry for '{0}' in {1}.", keyName, getBookMetaData().getInitials()));
+        }
+
+        // Some entries may be empty.
+        int start = tree.getDataOffset(node);
+        if (start != -1) {
+            byte[] data = SwordUtil.readRAF(state.getBdtRaf(), start, tree.getDataSize(node));
+            decipher(data);
+            return SwordUtil.decode(keyName, data, getBookMetaData().getBookCharset());
+        }
+
+        return "";
+    }
+
+    /**
+     * Get the path of a key in the tree, as the names of the key and its
+     * ancestors, each preceded by a '/'.
+     * 
+     * @param key
+     *            The key
+     * @return the path of the key
+     */
+    private static String getPath(Key key) {
+        List<String> path = new ArrayList<String>();
+        for (Key parentKey = key; parentKey != null && parentKey.getName().length() > 0; parentKey = parentKey.getParent()) {
+            path.add(parentKey.getName());
+        }
+
+        StringBuilder buf = new StringBuilder();
+        for (int i = path.size() - 1; i >= 0; i--) {
+            buf.append('/').append(path.get(i));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Get the tree held in memory, reading it when first needed and again if
+     * the files of the tree change. Most calls neither take a lock nor look
+     * at the files, as the files are only checked when the check of the
+     * tree's stamp is due.
+     * 
+     * @return the tree
+     * @throws IOException
+     */
+    private CompactTreeIndex getCompactIndex() throws IOException {
+        CompactTreeIndex tree = compactIndex;
+        if (tree != null && !tree.getStamp().isCheckDue()) {
+            return tree;
+        }
+
+        synchronized (this) {
+            tree = compactIndex;
+            if (tree == null || !tree.getStamp().isCurrent()) {
+                tree = index.loadCompact();
+                compactIndex = tree;
+            }
+            return tree;
+        }
+    }
+
     /**
      * Given a Key, find the TreeNode for it.
      * 
@@ -143,6 +221,15 @@ public class GenBookBackend extends AbstractBackend<GenBookBackendState> {
         Key reply = new DefaultKeyList(null, bmd.getName());
 
         try {
+            if (treeInMemory) {
+                CompactTreeIndex tree = getCompactIndex();
+                if (tree.size() > 0) {
+                    reply = new TreeKey(tree.getName(0), null);
+                    doReadIndex(tree, 0, reply);
+                }
+                return reply;
+            }
+
             TreeNode node = index.getRoot();
             reply = new TreeKey(node.getName(), null);
             doReadIndex(node, reply);
@@ -195,11 +282,64 @@ public class GenBookBackend extends AbstractBackend<GenBookBackendState> {
         }
     }
 
+    /**
+     * A helper function to recursively build the keys of the tree held in
+     * memory.
+     * 
+     * @param tree
+     *            the tree
+     * @param parentNode
+     *            the current node whose children are being sought
+     * @param parentKey
+     *            the key of the current node
+     */
+    private void doReadIndex(CompactTreeIndex tree, int parentNode, Key parentKey) {
+        for (int childNode = tree.getFirstChild(parentNode); childNode != -1; childNode = tree.getNextSibling(childNode)) {
+            TreeKey childKey = new TreeKey(tree.getName(childNode), parentKey);
+            parentKey.addAll(childKey);
+
+            // Build the tree as deep as possible
+            doReadIndex(tree, childNode, childKey);
+        }
+    }
+
+    /**
+     * Whether the trees of general books are read into memory when first
+     * used, rather than read from their files a node at a time. A key is
+     * then found by its path, without searching or reading, and without
+     * sharing the open files of the tree, so lookups can be made by several
+     * threads at once. Only the bodies are read from disk.
+     * 
+     * @param newTreeInMemory
+     *            whether to hold the trees in memory
+     */
+    public static void setTreeInMemory(boolean newTreeInMemory) {
+        treeInMemory = newTreeInMemory;
+    }
+
+    /**
+     * @return whether the trees of general books are held in memory
+     */
+    public static boolean isTreeInMemory() {
+        return treeInMemory;
+    }
+
     /**
      * The raw index file
      */
     private final TreeKeyIndex index;
 
+    /**
+     * The tree held in memory, when it is. It is only replaced under the
+     * lock on this backend.
+     */
+    private volatile CompactTreeIndex compactIndex;
+
+    /**
+     * Whether the trees are held in memory
+     */
+    private static volatile boolean treeInMemory = false;
+
     /**
      * The log stream
      */
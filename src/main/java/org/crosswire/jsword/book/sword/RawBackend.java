@@ -23,6 +23,8 @@ package org.crosswire.jsword.book.sword;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.crosswire.common.util.IOUtil;
 import org.crosswire.common.util.Logger;
@@ -32,9 +34,9 @@ import org.crosswire.jsword.book.sword.state.RawBackendState;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
-import org.crosswire.jsword.versification.system.Versifications;
 
 /**
  * Both Books and Commentaries seem to use the same format so this class
@@ -62,29 +64,43 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
      */
     @Override
     public boolean contains(Key key) {
-        String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-        Versification v11n = Versifications.instance().getVersification(v11nName);
+        Versification v11n = getVersification();
         Verse verse = KeyUtil.getVerse(key, v11n);
 
+        RawBackendState initState = null;
         try {
             int index = v11n.getOrdinal(verse);
             Testament testament = v11n.getTestament(index);
             index = v11n.getTestamentOrdinal(index);
-            RawBackendState initState = initState();
-            RandomAccessFile idxRaf = testament == Testament.NEW ? initState.getNtIdxRaf() : initState.getOtIdxRaf();
-
-            // If this is a single testament Bible, return nothing.
-            if (idxRaf == null) {
-                return false;
+            initState = initState();
+            DataIndex dataIndex;
+            if (initState.isMapped()) {
+                ByteBuffer idxBuffer = testament == Testament.NEW ? initState.getNtIdxBuffer() : initState.getOtIdxBuffer();
+
+                // If this is a single testament Bible, return nothing.
+                if (idxBuffer == null) {
+                    return false;
+                }
+
+                dataIndex = getIndex(idxBuffer, index);
+            } else {
+                RandomAccessFile idxRaf = testament == Testament.NEW ? initState.getNtIdxRaf() : initState.getOtIdxRaf();
+
+                // If this is a single testament Bible, return nothing.
+                if (idxRaf == null) {
+                    return false;
+                }
+
+                dataIndex = getIndex(idxRaf, index);
             }
 
-            DataIndex dataIndex = getIndex(idxRaf, index);
-
             return dataIndex.getSize() > 0;
         } catch (IOException ex) {
             return false;
         } catch (BookException e) {
             return false;
+        } finally {
+            IOUtil.close(initState);
         }
     }
 
@@ -101,24 +117,146 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
      * @see org.crosswire.jsword.book.sword.AbstractBackend#getRawText(org.crosswire.jsword.passage.Key)
      */
     public String readRawContent(RawBackendState state, Key key, String keyName) throws IOException {
-            String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-            Versification v11n = Versifications.instance().getVersification(v11nName);
+            Versification v11n = getVersification();
             Verse verse = KeyUtil.getVerse(key, v11n);
             
             int index = v11n.getOrdinal(verse);
 
             Testament testament = v11n.getTestament(index);
             index = v11n.getTestamentOrdinal(index);
-            RandomAccessFile idxRaf = testament == Testament.NEW ? state.getNtIdxRaf() : state.getOtIdxRaf();
+            boolean hasTestament;
+            if (state.isMapped()) {
+                hasTestament = (testament == Testament.NEW ? state.getNtIdxBuffer() : state.getOtIdxBuffer()) != null;
+            } else {
+                hasTestament = (testament == Testament.NEW ? state.getNtIdxRaf() : state.getOtIdxRaf()) != null;
+            }
 
             // If this is a single testament Bible, return nothing.
-            if (idxRaf == null) {
+            if (!hasTestament) {
                 return "";
             }
 
             return getEntry(state, verse.getName(), testament, index);
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#readRawContent(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.VerseRange)
+     */
+    @Override
+    public String[] readRawContent(RawBackendState state, VerseRange range) throws BookException, IOException {
+        // The testaments are in separate files
+        if (!isInOneTestament(range)) {
+            return readRawVerses(state, range);
+        }
+
+        Versification v11n = getVersification();
+        int ordinal = v11n.getOrdinal(range.getStart());
+        int count = range.getCardinality();
+        Testament testament = v11n.getTestament(ordinal);
+        long index = v11n.getTestamentOrdinal(ordinal);
+
+        String[] rawTexts = new String[count];
+        Arrays.fill(rawTexts, "");
+
+        final ByteBuffer idxBuffer;
+        final ByteBuffer txtBuffer;
+        final RandomAccessFile idxRaf;
+        final RandomAccessFile txtRaf;
+        if (state.isMapped()) {
+            idxBuffer = testament == Testament.NEW ? state.getNtIdxBuffer() : state.getOtIdxBuffer();
+            txtBuffer = testament == Testament.NEW ? state.getNtTextBuffer() : state.getOtTextBuffer();
+            idxRaf = null;
+            txtRaf = null;
+            // If this is a single testament Bible, return nothing.
+            if (idxBuffer == null) {
+                return rawTexts;
+            }
+        } else {
+            idxBuffer = null;
+            txtBuffer = null;
+            idxRaf = testament == Testament.NEW ? state.getNtIdxRaf() : state.getOtIdxRaf();
+            txtRaf = testament == Testament.NEW ? state.getNtTextRaf() : state.getOtTextRaf();
+            // If this is a single testament Bible, return nothing.
+            if (idxRaf == null) {
+                return rawTexts;
+            }
+        }
+
+        // Read the index entries for the whole range.
+        byte[] idx = SwordUtil.read(idxRaf, idxBuffer, index * entrysize, count * entrysize);
+
+        // Entries past the end of the index are empty verses.
+        int entries = idx.length / entrysize;
+        int[] offsets = new int[entries];
+        int[] sizes = new int[entries];
+        long spanStart = Long.MAX_VALUE;
+        long spanEnd = 0;
+        long total = 0;
+        // Whether each verse follows the one before it without overlapping it
+        boolean disjoint = true;
+        long lastEnd = 0;
+        for (int i = 0; i < entries; i++) {
+            int pos = i * entrysize;
+            offsets[i] = SwordUtil.decodeLittleEndian32(idx, pos);
+            sizes[i] = datasize == 2 ? SwordUtil.decodeLittleEndian16(idx, pos + OFFSETSIZE) : SwordUtil.decodeLittleEndian32(idx, pos + OFFSETSIZE);
+            if (sizes[i] < 0) {
+                log.error("In " + getBookMetaData().getInitials() + ": Verse " + v11n.decodeOrdinal(ordinal + i).getName() + " has a bad index size of " + sizes[i]);
+            } else if (sizes[i] > 0) {
+                spanStart = Math.min(spanStart, offsets[i]);
+                spanEnd = Math.max(spanEnd, (long) offsets[i] + sizes[i]);
+                total += sizes[i];
+                disjoint &= offsets[i] >= lastEnd;
+                lastEnd = (long) offsets[i] + sizes[i];
+            }
+        }
+
+        if (total == 0) {
+            return rawTexts;
+        }
+
+        // Verses are normally stored one after another, but a verse that has
+        // been moved or linked may be far away from the rest. Rather than
+        // read a lot of text that is not needed, read such ranges verse by
+        // verse.
+        long spanSize = spanEnd - spanStart;
+        if (spanSize > 2 * total + MAX_SPAN_GAP) {
+            return readRawVerses(state, range);
+        }
+
+        byte[] span = SwordUtil.read(txtRaf, txtBuffer, spanStart, (int) spanSize);
+
+        String charset = getBookMetaData().getBookCharset();
+        for (int i = 0; i < entries; i++) {
+            int size = sizes[i];
+            if (size <= 0) {
+                continue;
+            }
+
+            // A short read of the text leaves the verses at the end truncated
+            int start = (int) (offsets[i] - spanStart);
+            int available = Math.max(0, Math.min(size, span.length - start));
+            if (available == 0) {
+                continue;
+            }
+
+            // Each verse is enciphered on its own, so unless verses share
+            // their text, as linked verses do, each can be unlocked where it
+            // is.
+            byte[] data = span;
+            if (!disjoint) {
+                data = new byte[available];
+                System.arraycopy(span, start, data, 0, available);
+                start = 0;
+            }
+
+            decipher(data, start, available);
+
+            rawTexts[i] = SwordUtil.decode(v11n.decodeOrdinal(ordinal + i).getName(), data, start, available, charset);
+        }
+
+        return rawTexts;
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.AbstractBackend#setRawText(org.crosswire.jsword.passage.Key, java.lang.String)
      */
@@ -176,6 +314,37 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
         return new DataIndex(entryOffset, entrySize);
     }
 
+    /**
+     * Get the Index (that is offset and size) for an entry, decoding it in
+     * place from the memory map of the index.
+     * 
+     * @param buffer
+     *            the mapped index
+     * @param entry
+     * @return the index for the entry
+     */
+    protected DataIndex getIndex(ByteBuffer buffer, long entry) {
+        long offset = entry * entrysize;
+        if (offset < 0 || offset + entrysize > buffer.limit()) {
+            return new DataIndex(0, 0);
+        }
+
+        int pos = (int) offset;
+        int entryOffset = buffer.getInt(pos);
+        int entrySize = -1;
+        switch (datasize) {
+        case 2:
+            entrySize = buffer.getShort(pos + 4) & 0xFFFF;
+            break;
+        case 4:
+            entrySize = buffer.getInt(pos + 4);
+            break;
+        default:
+            assert false : datasize;
+        }
+        return new DataIndex(entryOffset, entrySize);
+    }
+
     /**
      * Get the text for an indexed entry in the book.
      * @param state 
@@ -191,6 +360,10 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
      *             on a IO problem
      */
     protected String getEntry(RawBackendState state, String name, Testament testament, long index) throws IOException {
+        if (state.isMapped()) {
+            return getMappedEntry(state, name, testament, index);
+        }
+
         final RandomAccessFile idxRaf;
         final RandomAccessFile txtRaf;
         if (testament == Testament.NEW) {
@@ -220,6 +393,40 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
         return SwordUtil.decode(name, data, getBookMetaData().getBookCharset());
     }
 
+    /**
+     * Get the text for an indexed entry in the book, reading through the
+     * memory maps of the state.
+     */
+    private String getMappedEntry(RawBackendState state, String name, Testament testament, long index) {
+        final ByteBuffer idxBuffer;
+        final ByteBuffer txtBuffer;
+        if (testament == Testament.NEW) {
+            idxBuffer = state.getNtIdxBuffer();
+            txtBuffer = state.getNtTextBuffer();
+        } else {
+            idxBuffer = state.getOtIdxBuffer();
+            txtBuffer = state.getOtTextBuffer();
+        }
+
+        DataIndex dataIndex = getIndex(idxBuffer, index);
+
+        int size = dataIndex.getSize();
+        if (size == 0) {
+            return "";
+        }
+
+        if (size < 0) {
+            log.error("In " + getBookMetaData().getInitials() + ": Verse " + name + " has a bad index size of " + size);
+            return "";
+        }
+
+        byte[] data = SwordUtil.readBuffer(txtBuffer, dataIndex.getOffset(), size);
+
+        decipher(data);
+
+        return SwordUtil.decode(name, data, getBookMetaData().getBookCharset());
+    }
+
 
     /**
      * How many bytes in the size count in the index
@@ -236,6 +443,12 @@ public class RawBackend<T extends RawBackendState> extends AbstractBackend<RawBa
      */
     protected static final int OFFSETSIZE = 4;
 
+    /**
+     * How many bytes, beyond the text of a range, may lie between the verses
+     * before it is cheaper to read them one at a time.
+     */
+    private static final int MAX_SPAN_GAP = 4096;
+
     /**
      * The log stream
      */
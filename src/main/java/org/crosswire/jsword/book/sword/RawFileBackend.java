@@ -41,9 +41,9 @@ import org.crosswire.jsword.book.sword.state.RawFileBackendState;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
-import org.crosswire.jsword.versification.system.Versifications;
 
 /**
  * A Raw File format that allows for each verse to have it's own storage. The
@@ -115,14 +115,22 @@ public class RawFileBackend extends RawBackend<RawFileBackendState> {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.RawBackend#readRawContent(org.crosswire.jsword.book.sword.state.RawBackendState, org.crosswire.jsword.passage.VerseRange)
+     */
+    @Override
+    public String[] readRawContent(RawBackendState state, VerseRange range) throws BookException, IOException {
+        // Each verse is in a file of its own, so there is no span to read.
+        return readRawVerses(state, range);
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.book.sword.RawBackend#setRawText(org.crosswire.jsword.passage.Key, java.lang.String)
      * 
      */
     public void setRawText(RawFileBackendState state, Key key, String text) throws BookException, IOException {
 
-        String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-        Versification v11n = Versifications.instance().getVersification(v11nName);
+        Versification v11n = getVersification();
         Verse verse = KeyUtil.getVerse(key, v11n);
         int index = v11n.getOrdinal(verse);
         Testament testament = v11n.getTestament(index);
@@ -158,8 +166,7 @@ public class RawFileBackend extends RawBackend<RawFileBackendState> {
     }
 
     public void setAliasKey(RawFileBackendState state, Key alias, Key source) throws IOException {
-        String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-        Versification v11n = Versifications.instance().getVersification(v11nName);
+        Versification v11n = getVersification();
         Verse aliasVerse = KeyUtil.getVerse(alias, v11n);
         Verse sourceVerse = KeyUtil.getVerse(source, v11n);
         int aliasIndex = v11n.getOrdinal(aliasVerse);
@@ -328,8 +335,7 @@ public class RawFileBackend extends RawBackend<RawFileBackendState> {
 
     private void prepopulateIndexFiles(RawFileBackendState state) throws IOException {
 
-        String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-        Versification v11n = Versifications.instance().getVersification(v11nName);
+        Versification v11n = getVersification();
         int otCount = v11n.getCount(Testament.OLD);
         int ntCount = v11n.getCount(Testament.NEW) + 1;
         BufferedOutputStream otIdxBos = new BufferedOutputStream(new FileOutputStream(state.getOtIdxFile(), false));
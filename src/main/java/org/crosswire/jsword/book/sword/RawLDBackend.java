@@ -23,6 +23,7 @@ package org.crosswire.jsword.book.sword;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
@@ -34,6 +35,7 @@ import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.crosswire.common.crypt.Sapphire;
 import org.crosswire.common.icu.DateFormatter;
 import org.crosswire.common.util.IOUtil;
 import org.crosswire.common.util.Logger;
@@ -102,11 +104,24 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
     }
 
     protected String getRawText(RawLDBackendState state, DataEntry entry) {
+        // An empty key means that the book is not enciphered.
         String cipherKeyString = (String) getBookMetaData().getProperty(ConfigEntryType.CIPHER_KEY);
+        Sapphire cipher = null;
+        if (cipherKeyString != null && cipherKeyString.length() > 0) {
+            cipher = getCipher();
+        }
+        return entry.decipherRawText(cipher);
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#getCipherKeyBytes(java.lang.String)
+     */
+    @Override
+    protected byte[] getCipherKeyBytes(String cipherKeyString) {
         try {
-            return entry.getRawText((cipherKeyString != null) ? cipherKeyString.getBytes(getBookMetaData().getBookCharset()) : null);
+            return cipherKeyString.getBytes(getBookMetaData().getBookCharset());
         } catch (UnsupportedEncodingException e) {
-            return entry.getRawText(cipherKeyString.getBytes());
+            return cipherKeyString.getBytes();
         }
     }
 
@@ -166,7 +181,7 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
      * .Key)
      */
     public int indexOf(Key that) {
-        RawLDBackendState state;
+        RawLDBackendState state = null;
         try {
             state = initState();
             return search(state, that.getName());
@@ -174,6 +189,8 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
             return -getCardinality() - 1;
         } catch (BookException e) {
             return -getCardinality() - 1;
+        } finally {
+            IOUtil.close(state);
         }
     }
 
@@ -228,9 +245,10 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
      */
     private int search(RawLDBackendState state, String key) throws IOException {
             String target = external2internal(key);
+            RawLDKeyIndex keys = getKeyIndex(state);
 
             // Initialize to one beyond both ends.
-            int total = getCardinality();
+            int total = keys.size();
             // Note: In some dictionaries, the first element is out of order and
             // represents the title of the work.
             // So, do the bin search from 1 to end and if not found, check the
@@ -246,7 +264,7 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
                 int mid = (low + high) >>> 1;
 
                 // Get the key for the item at "mid"
-                int cmp = normalizeForSearch(getEntry(state, key, mid).getKey()).compareTo(target);
+                int cmp = keys.compareTo(mid, target);
                 if (cmp < 0) {
                     low = mid;
                 } else if (cmp > 0) {
@@ -265,13 +283,123 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
             // Strong's Greek And Hebrew dictionaries have an introductory
             // entry, so
             // check it for a match.
-            if (normalizeForSearch(getEntry(state, key, 0).getKey()).compareTo(target) == 0) {
+            if (total > 0 && keys.compareTo(0, target) == 0) {
                 return 0;
             }
 
             return -(high + 1);
     }
 
+    /**
+     * Get the keys of the dictionary, normalized for searching, building them
+     * when first needed and again if the files of the dictionary change. Most
+     * lookups neither take a lock nor look at the files, as the files are
+     * only checked when the check of the index's stamp is due.
+     * 
+     * @return the keys of the dictionary
+     * @throws IOException
+     */
+    private RawLDKeyIndex getKeyIndex(RawLDBackendState state) throws IOException {
+        RawLDKeyIndex keys = keyIndex;
+        if (keys != null && !keys.getStamp().isCheckDue()) {
+            return keys;
+        }
+
+        synchronized (this) {
+            keys = keyIndex;
+            if (keys == null || !keys.getStamp().isCurrent()) {
+                keys = buildKeyIndex(state);
+                keyIndex = keys;
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Read all the keys of the dictionary. The whole index is read at once.
+     * The keys are read from the data file through a window, so that when the
+     * entries are small, as they are for lexicons, the file is read in large
+     * pieces rather than entry by entry.
+     * 
+     * @return the keys of the dictionary
+     * @throws IOException
+     */
+    private RawLDKeyIndex buildKeyIndex(RawLDBackendState state) throws IOException {
+        RandomAccessFile idxRaf = state.getIdxRaf();
+        RandomAccessFile datRaf = state.getDatRaf();
+        int count = (int) (idxRaf.length() / entrysize);
+        RawLDKeyIndex keys = new RawLDKeyIndex(state.getIdxFile(), state.getDatFile(), count);
+        if (count == 0) {
+            return keys;
+        }
+
+        byte[] idx = SwordUtil.readRAF(idxRaf, 0, count * entrysize);
+        count = idx.length / entrysize;
+
+        String charset = getBookMetaData().getBookCharset();
+        String name = getBookMetaData().getInitials();
+        long datLength = datRaf.length();
+        byte[] window = new byte[0];
+        long windowStart = 0;
+        for (int i = 0; i < count; i++) {
+            int pos = i * entrysize;
+            int offset = SwordUtil.decodeLittleEndian32(idx, pos);
+            int size = datasize == 2 ? SwordUtil.decodeLittleEndian16(idx, pos + OFFSETSIZE) : SwordUtil.decodeLittleEndian32(idx, pos + OFFSETSIZE);
+
+            // Only what is in the file can be read.
+            int available = (int) Math.max(0, Math.min(size, datLength - offset));
+            if (offset < 0 || available == 0) {
+                keys.add("");
+                continue;
+            }
+
+            byte[] data = window;
+            int start = (int) (offset - windowStart);
+            if (start < 0 || offset + Math.min(available, KEY_SPAN) > windowStart + window.length) {
+                if (available < WINDOW_SIZE) {
+                    window = SwordUtil.readRAF(datRaf, offset, (int) Math.min(WINDOW_SIZE, datLength - offset));
+                    windowStart = offset;
+                    data = window;
+                } else {
+                    // Rather than read a large entry, read where the key is.
+                    data = SwordUtil.readRAF(datRaf, offset, KEY_SPAN);
+                }
+                start = 0;
+            }
+
+            int end = Math.min(start + available, data.length);
+            int keyEnd = findSeparator(data, start, end);
+            if (keyEnd < 0 && end - start < available) {
+                // A key that is longer than was read
+                data = SwordUtil.readRAF(datRaf, offset, available);
+                start = 0;
+                end = data.length;
+                keyEnd = findSeparator(data, start, end);
+            }
+
+            if (keyEnd < 0) {
+                keys.add("");
+            } else {
+                keys.add(normalizeForSearch(DataEntry.decodeKey(name, data, start, keyEnd - start, charset)));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Find the separator that ends a key.
+     * 
+     * @return the position of the separator, or -1 if it is not found
+     */
+    private static int findSeparator(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == DataEntry.SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Convert the supplied key to something that can be understood by the
      * module.
@@ -429,6 +557,23 @@ public class RawLDBackend<T extends RawLDBackendState> extends AbstractKeyBacken
      */
     private static final int OFFSETSIZE = 4;
 
+    /**
+     * How much of the data file to read at once when reading the keys.
+     */
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    /**
+     * How much of an entry to read to get its key, when the entry is too
+     * large to read whole.
+     */
+    private static final int KEY_SPAN = 1024;
+
+    /**
+     * The keys of the dictionary, built when first needed. It is only
+     * replaced under the lock on this backend.
+     */
+    private transient volatile RawLDKeyIndex keyIndex;
+
     /**
      * The log stream
      */
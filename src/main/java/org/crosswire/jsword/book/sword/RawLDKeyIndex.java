@@ -0,0 +1,136 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+
+/**
+ * The keys of a dictionary, held in memory in the order of its index, so
+ * that a key can be found by a binary search that does not read the files of
+ * the dictionary. The keys are normalized for searching, and are packed
+ * together into one array of characters.
+ * 
+ * <p>
+ * Once built, the index is not changed, so it can be shared by readers
+ * without a lock, provided it is published safely. Its {@link FileStamp}
+ * tells when the files of the dictionary have changed.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+final class RawLDKeyIndex {
+    /**
+     * Start an index of the keys of a dictionary. The files are stamped now,
+     * before any of the keys are read, so a change while they are being read
+     * is not missed.
+     * 
+     * @param idxFile
+     *            the index file of the dictionary
+     * @param datFile
+     *            the data file of the dictionary
+     * @param capacity
+     *            the number of keys expected
+     */
+    RawLDKeyIndex(File idxFile, File datFile, int capacity) {
+        stamp = new FileStamp(idxFile, datFile);
+        starts = new int[capacity + 1];
+        chars = new char[capacity * 8];
+    }
+
+    /**
+     * Add the next key.
+     * 
+     * @param key
+     *            the key, normalized for searching
+     */
+    void add(String key) {
+        int start = starts[size];
+        int end = start + key.length();
+        if (end > chars.length) {
+            char[] more = new char[Math.max(end, chars.length * 2)];
+            System.arraycopy(chars, 0, more, 0, start);
+            chars = more;
+        }
+        key.getChars(0, key.length(), chars, start);
+        size++;
+        starts[size] = end;
+    }
+
+    /**
+     * @return the number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Compare a key with a target, as {@link String#compareTo(String)} does.
+     * 
+     * @param index
+     *            the position of the key
+     * @param target
+     *            the normalized key that is sought
+     * @return less than, equal to or greater than 0 as the key is less than,
+     *         equal to or greater than the target
+     */
+    int compareTo(int index, String target) {
+        int start = starts[index];
+        int length = starts[index + 1] - start;
+        int targetLength = target.length();
+        int limit = Math.min(length, targetLength);
+        for (int i = 0; i < limit; i++) {
+            char c = chars[start + i];
+            char t = target.charAt(i);
+            if (c != t) {
+                return c - t;
+            }
+        }
+        return length - targetLength;
+    }
+
+    /**
+     * @return the stamp of the files the index was built from
+     */
+    FileStamp getStamp() {
+        return stamp;
+    }
+
+    private final FileStamp stamp;
+
+    /**
+     * The number of keys.
+     */
+    private int size;
+
+    /**
+     * Where each key starts in chars, with one more for the end of the last.
+     */
+    private final int[] starts;
+
+    /**
+     * The characters of all the keys.
+     */
+    private char[] chars;
+
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.sword.state.OpenFileState;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.VerseRange;
 
 /**
  * Indicates that there is a stateful backend
@@ -39,6 +40,23 @@ public interface StatefulFileBackedBackend<T extends OpenFileState> {
      *             something whent wrong when reading the verse
      */
      String readRawContent(T state, Key key, String keyName) throws BookException, IOException;
+
+    /**
+     * Read the raw text of each of the verses in a range. Backends that store
+     * verses contiguously read the index entries of the whole range, and then
+     * the text they refer to, at one go. A range that crosses from one
+     * testament to the other, which a range restricted to a chapter never
+     * does, is read verse by verse.
+     * 
+     * @param state
+     *            the state object containing all the open random access files
+     * @param range
+     *            the verses that are sought
+     * @return the raw text of each verse of the range, in order
+     * @throws IOException
+     *             something went wrong when reading the range
+     */
+     String[] readRawContent(T state, VerseRange range) throws BookException, IOException;
  
      /**
       * Set the text allotted for the given verse
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 import org.crosswire.common.util.Logger;
 import org.crosswire.common.util.NetUtil;
@@ -100,6 +101,75 @@ public final class SwordUtil {
         return read;
     }
 
+    /**
+     * Read from the memory map of a file if there is one, otherwise from the
+     * file itself.
+     *
+     * @param raf
+     *            The file to read, used when there is no memory map
+     * @param buffer
+     *            The view of the mapped file to read, or null
+     * @param offset
+     *            The start of the record to read
+     * @param theSize
+     *            The number of bytes to read
+     * @return the read data
+     * @throws IOException
+     *             on error
+     */
+    protected static byte[] read(RandomAccessFile raf, ByteBuffer buffer, long offset, int theSize) throws IOException {
+        if (buffer != null) {
+            return readBuffer(buffer, offset, theSize);
+        }
+        return readRAF(raf, offset, theSize);
+    }
+
+    /**
+     * Read from a memory mapped file. The same checks are made as for
+     * {@link #readRAF(RandomAccessFile, long, int)}. The read is made through
+     * a view of the buffer, so the buffer's own position is not moved and it
+     * can be shared by concurrent readers.
+     *
+     * @param buffer
+     *            The view of the mapped file to read
+     * @param offset
+     *            The start of the record to read
+     * @param theSize
+     *            The number of bytes to read
+     * @return the read data
+     */
+    protected static byte[] readBuffer(ByteBuffer buffer, long offset, int theSize) {
+        int size = theSize;
+        int bufferSize = buffer.limit();
+
+        if (offset < 0) {
+            log.error("Attempt to read before start. offset=" + offset + " size=" + size);
+            return new byte[0];
+        }
+
+        if (offset >= bufferSize) {
+            log.error("Attempt to read beyond end. offset=" + offset + " size=" + size + " but buffer.limit=" + bufferSize);
+            return new byte[0];
+        }
+
+        if (offset + size > bufferSize) {
+            log.error("Need to reduce size to avoid BufferUnderflowException. offset=" + offset + " size=" + size + " but buffer.limit=" + bufferSize);
+            size = (int) (bufferSize - offset);
+        }
+
+        if (size < 1) {
+            log.error("Nothing to read at offset = " + offset + " returning empty because size=" + size);
+            return new byte[0];
+        }
+
+        byte[] read = new byte[size];
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.get(read);
+
+        return read;
+    }
+
     /**
      * Writes "data" to a RandomAccessFile at the "offset" position
      * 
@@ -331,7 +401,7 @@ public final class SwordUtil {
      */
     public static String decode(String key, byte[] data, int offset, int length, String charset) {
         if ("WINDOWS-1252".equals(charset)) {
-            clean1252(key, data, length);
+            clean1252(key, data, offset, length);
         }
         String txt = "";
         try {
@@ -360,14 +430,24 @@ public final class SwordUtil {
      * characters in the range of 0-32.
      */
     public static void clean1252(String key, byte[] data, int length) {
-        for (int i = 0; i < length; i++) {
+        clean1252(key, data, 0, length);
+    }
+
+    /**
+     * Remove rogue characters in a portion of the source starting at an
+     * offset. These are characters that are not valid in cp1252 aka
+     * WINDOWS-1252 and in UTF-8 or are non-printing control characters in the
+     * range of 0-32.
+     */
+    public static void clean1252(String key, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
             // between 0-32 only allow whitespace
             // characters 0x81, 0x8D, 0x8F, 0x90 and 0x9D are undefined in
             // cp1252
             int c = data[i] & 0xFF;
             if ((c >= 0x00 && c < 0x20 && c != 0x09 && c != 0x0A && c != 0x0D) || (c == 0x81 || c == 0x8D || c == 0x8F || c == 0x90 || c == 0x9D)) {
                 data[i] = 0x20;
-                log.error(key + " has bad character 0x" + Integer.toString(c, 16) + " at position " + i + " in input.");
+                log.error(key + " has bad character 0x" + Integer.toString(c, 16) + " at position " + (i - offset) + " in input.");
             }
         }
     }
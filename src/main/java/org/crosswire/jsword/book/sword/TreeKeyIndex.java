@@ -102,6 +102,26 @@ public class TreeKeyIndex implements Activatable {
         return getTreeNode(getOffset(node.getNextSibling()));
     }
 
+    /**
+     * Read the whole tree into memory, so that it can be searched without
+     * further reads.
+     * 
+     * @return the tree
+     * @throws IOException
+     */
+    synchronized CompactTreeIndex loadCompact() throws IOException {
+        checkActive();
+        if (idxRaf == null || datRaf == null) {
+            throw new IOException("Could not open the tree of " + bmd.getInitials());
+        }
+
+        CompactTreeIndex tree = new CompactTreeIndex(idxFile, datFile);
+        byte[] idx = SwordUtil.readRAF(idxRaf, 0, (int) idxRaf.length());
+        byte[] dat = SwordUtil.readRAF(datRaf, 0, (int) datRaf.length());
+        tree.build(idx, dat, bmd.getName(), bmd.getBookCharset());
+        return tree;
+    }
+
     /**
      * The idx file contains offsets into the dat file.
      * 
@@ -24,6 +24,7 @@ package org.crosswire.jsword.book.sword;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 
+import org.crosswire.common.compress.Compressor;
 import org.crosswire.common.compress.CompressorType;
 import org.crosswire.common.util.Logger;
 import org.crosswire.jsword.book.BookException;
@@ -64,7 +65,7 @@ public class ZLDBackend extends RawLDBackend<ZLDBackendState> {
         }
         
         DataIndex blockIndex = entry.getBlockIndex();
-        long blockNum = blockIndex.getOffset();
+        final long blockNum = blockIndex.getOffset();
         int blockEntry = blockIndex.getSize();
 
         // Can we get the data from the cache
@@ -72,23 +73,31 @@ public class ZLDBackend extends RawLDBackend<ZLDBackendState> {
         if (blockNum == state.getLastBlockNum()) {
             uncompressed = state.getLastUncompressed();
         } else {
-            byte[] temp;
+            final ZLDBackendState zState = state;
             try {
-                temp = SwordUtil.readRAF(state.getZdxRaf(), blockNum * ZDX_ENTRY_SIZE, ZDX_ENTRY_SIZE);
-                if (temp == null || temp.length == 0) {
+                // Unless another reader has already uncompressed it
+                uncompressed = BlockCache.getOrLoad(getBookMetaData(), null, blockNum, new BlockCache.Loader() {
+                    public byte[] load() throws IOException {
+                        byte[] temp = SwordUtil.readRAF(zState.getZdxRaf(), blockNum * ZDX_ENTRY_SIZE, ZDX_ENTRY_SIZE);
+                        if (temp == null || temp.length == 0) {
+                            return null;
+                        }
+
+                        int blockStart = SwordUtil.decodeLittleEndian32(temp, 0);
+                        int blockSize = SwordUtil.decodeLittleEndian32(temp, 4);
+
+                        temp = SwordUtil.readRAF(zState.getZdtRaf(), blockStart, blockSize);
+
+                        decipher(temp);
+
+                        String compressType = (String) getBookMetaData().getProperty(ConfigEntryType.COMPRESS_TYPE);
+                        return CompressorType.fromString(compressType).uncompress(temp, 0, temp.length, Compressor.BUF_SIZE);
+                    }
+                });
+                if (uncompressed == null) {
                     return "";
                 }
 
-                int blockStart = SwordUtil.decodeLittleEndian32(temp, 0);
-                int blockSize = SwordUtil.decodeLittleEndian32(temp, 4);
-
-                temp = SwordUtil.readRAF(state.getZdtRaf(), blockStart, blockSize);
-
-                decipher(temp);
-
-                String compressType = (String) getBookMetaData().getProperty(ConfigEntryType.COMPRESS_TYPE);
-                uncompressed = CompressorType.fromString(compressType).getCompressor(temp).uncompress().toByteArray();
-
                 // cache the uncompressed data for next time
                 state.setLastBlockNum(blockNum);
                 state.setLastUncompressed(uncompressed);
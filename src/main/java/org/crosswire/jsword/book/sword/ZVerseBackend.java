@@ -23,6 +23,12 @@ package org.crosswire.jsword.book.sword;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.crosswire.common.compress.CompressorType;
 import org.crosswire.common.util.IOUtil;
@@ -33,9 +39,9 @@ import org.crosswire.jsword.book.sword.state.ZVerseBackendState;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
-import org.crosswire.jsword.versification.system.Versifications;
 
 /**
  * A backend to read compressed data verse based files. While the text file
@@ -120,14 +126,25 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
         try {
             rafBook = OpenFileStateManager.getZVerseBackendState(getBookMetaData(), blockType);
 
-            String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-            Versification v11n = Versifications.instance().getVersification(v11nName);
+            Versification v11n = getVersification();
             Verse verse = KeyUtil.getVerse(key, v11n);
 
             int index = v11n.getOrdinal(verse);
             Testament testament = v11n.getTestament(index);
             index = v11n.getTestamentOrdinal(index);
 
+            if (rafBook.isMapped()) {
+                ByteBuffer compBuffer = testament == Testament.NEW ? rafBook.getNtCompBuffer() : rafBook.getOtCompBuffer();
+                int compOffset = index * COMP_ENTRY_SIZE;
+
+                // If Bible does not contain the desired testament or verse, then false
+                if (compBuffer == null || compOffset + COMP_ENTRY_SIZE > compBuffer.limit()) {
+                    return false;
+                }
+
+                return (compBuffer.getShort(compOffset + 8) & 0xFFFF) > 0;
+            }
+
             RandomAccessFile compRaf = testament == Testament.NEW ? rafBook.getNtCompRaf() : rafBook.getOtCompRaf();
 
             // If Bible does not contain the desired testament, then false
@@ -168,88 +185,298 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
     }
 
     public String readRawContent(ZVerseBackendState rafBook, Key key, String keyName) throws IOException {
+        final String charset = getBookMetaData().getBookCharset();
 
-        SwordBookMetaData bookMetaData = getBookMetaData();
-        final String charset = bookMetaData.getBookCharset();
-        final String compressType = (String) bookMetaData.getProperty(ConfigEntryType.COMPRESS_TYPE);
-
-        final String v11nName = getBookMetaData().getProperty(ConfigEntryType.VERSIFICATION).toString();
-        final Versification v11n = Versifications.instance().getVersification(v11nName);
+        final Versification v11n = getVersification();
         Verse verse = KeyUtil.getVerse(key, v11n);
 
         int index = v11n.getOrdinal(verse);
         final Testament testament = v11n.getTestament(index);
         index = v11n.getTestamentOrdinal(index);
-        final RandomAccessFile compRaf;
-        final RandomAccessFile idxRaf;
-        final RandomAccessFile textRaf;
-
-        if (testament == Testament.OLD) {
-            compRaf = rafBook.getOtCompRaf();
-            idxRaf = rafBook.getOtIdxRaf();
-            textRaf = rafBook.getOtTextRaf();
-        } else {
-            compRaf = rafBook.getNtCompRaf();
-            idxRaf = rafBook.getNtIdxRaf();
-            textRaf = rafBook.getNtTextRaf();
-        }
-
-        // If Bible does not contain the desired testament, return nothing.
-        if (compRaf == null) {
-            return "";
-        }
 
         // 10 because the index is 10 bytes long for each verse
-        byte[] temp = SwordUtil.readRAF(compRaf, 1L * index * COMP_ENTRY_SIZE, COMP_ENTRY_SIZE);
+        byte[] temp = readComp(rafBook, testament, 1L * index * COMP_ENTRY_SIZE, COMP_ENTRY_SIZE);
 
-        // If the Bible does not contain the desired verse, return nothing.
-        // Some Bibles have different versification, so the requested verse
-        // may not exist.
-        if (temp == null || temp.length == 0) {
+        // If the Bible does not contain the desired testament or verse,
+        // return nothing. Some Bibles have different versification, so the
+        // requested verse may not exist.
+        if (temp == null || temp.length < COMP_ENTRY_SIZE) {
             return "";
         }
 
         // The data is little endian - extract the blockNum, verseStart
-        // and
-        // verseSize
+        // and verseSize
         final long blockNum = SwordUtil.decodeLittleEndian32(temp, 0);
         final int verseStart = SwordUtil.decodeLittleEndian32(temp, 4);
         final int verseSize = SwordUtil.decodeLittleEndian16(temp, 8);
 
-        // Can we get the data from the cache
-        byte[] uncompressed = null;
-        if (blockNum == rafBook.getLastBlockNum() && testament == rafBook.getLastTestament()) {
-            uncompressed = rafBook.getLastUncompressed();
-        } else {
-            // Then seek using this index into the idx file
-            temp = SwordUtil.readRAF(idxRaf, blockNum * IDX_ENTRY_SIZE, IDX_ENTRY_SIZE);
-            if (temp == null || temp.length == 0) {
+        // Can we get the data from the cache, unless another reader has
+        // already uncompressed it
+        byte[] uncompressed = getCachedBlock(rafBook, testament, blockNum);
+        if (uncompressed == null) {
+            uncompressed = loadBlocks(rafBook, testament, blockNum, 1, new HashMap<Long, byte[]>());
+            if (uncompressed == null) {
                 return "";
             }
+        }
+
+        // cache the uncompressed data for next time
+        rafBook.setLastBlockNum(blockNum);
+        rafBook.setLastTestament(testament);
+        rafBook.setLastUncompressed(uncompressed);
+
+        // and cut out the required section.
+        final byte[] chopped = new byte[verseSize];
+        System.arraycopy(uncompressed, verseStart, chopped, 0, verseSize);
+
+        return SwordUtil.decode(keyName, chopped, charset);
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#readRawContent(org.crosswire.jsword.book.sword.state.OpenFileState, org.crosswire.jsword.passage.VerseRange)
+     */
+    @Override
+    public String[] readRawContent(ZVerseBackendState rafBook, VerseRange range) throws BookException, IOException {
+        // The testaments are in separate files
+        if (!isInOneTestament(range)) {
+            return readRawVerses(rafBook, range);
+        }
 
-            final int blockStart = SwordUtil.decodeLittleEndian32(temp, 0);
-            final int blockSize = SwordUtil.decodeLittleEndian32(temp, 4);
-            final int uncompressedSize = SwordUtil.decodeLittleEndian32(temp, 8);
+        final String charset = getBookMetaData().getBookCharset();
 
-            // Read from the data file.
-            final byte[] data = SwordUtil.readRAF(textRaf, blockStart, blockSize);
+        final Versification v11n = getVersification();
+        final int ordinal = v11n.getOrdinal(range.getStart());
+        final int count = range.getCardinality();
+        final Testament testament = v11n.getTestament(ordinal);
+        final long index = v11n.getTestamentOrdinal(ordinal);
 
-            decipher(data);
+        String[] rawTexts = new String[count];
+        Arrays.fill(rawTexts, "");
 
-            uncompressed = CompressorType.fromString(compressType).getCompressor(data).uncompress(uncompressedSize).toByteArray();
+        // Read the (block number, verse start, verse size) of every verse in
+        // the range. Verses past the end of the index do not exist in this
+        // Bible's versification, so they are left empty.
+        final byte[] comp = readComp(rafBook, testament, index * COMP_ENTRY_SIZE, count * COMP_ENTRY_SIZE);
+
+        // If Bible does not contain the desired testament, return nothing.
+        if (comp == null) {
+            return rawTexts;
+        }
+        final int entries = comp.length / COMP_ENTRY_SIZE;
+        final long[] blockNums = new long[entries];
+        final int[] verseStarts = new int[entries];
+        final int[] verseSizes = new int[entries];
+
+        // Find the blocks that are needed, and which of them are not yet
+        // uncompressed.
+        Map<Long, byte[]> blocks = new HashMap<Long, byte[]>();
+        List<Long> missing = new ArrayList<Long>();
+        for (int i = 0; i < entries; i++) {
+            int pos = i * COMP_ENTRY_SIZE;
+            blockNums[i] = SwordUtil.decodeLittleEndian32(comp, pos);
+            verseStarts[i] = SwordUtil.decodeLittleEndian32(comp, pos + 4);
+            verseSizes[i] = SwordUtil.decodeLittleEndian16(comp, pos + 8);
+            if (verseSizes[i] == 0) {
+                continue;
+            }
+
+            Long blockNum = Long.valueOf(blockNums[i]);
+            if (!blocks.containsKey(blockNum)) {
+                byte[] uncompressed = getCachedBlock(rafBook, testament, blockNums[i]);
+                blocks.put(blockNum, uncompressed);
+                if (uncompressed == null) {
+                    missing.add(blockNum);
+                }
+            }
+        }
+
+        // Uncompress the missing blocks, reading each run of consecutive
+        // blocks at one go.
+        int first = 0;
+        while (first < missing.size()) {
+            int last = first + 1;
+            while (last < missing.size() && missing.get(last).longValue() == missing.get(last - 1).longValue() + 1) {
+                last++;
+            }
+            for (int i = first; i < last; i++) {
+                // The block may have been read with an earlier one of the run
+                Long blockNum = missing.get(i);
+                if (blocks.get(blockNum) == null) {
+                    blocks.put(blockNum, loadBlocks(rafBook, testament, blockNum.longValue(), last - i, blocks));
+                }
+            }
+            first = last;
+        }
+
+        // and cut out the required sections.
+        byte[] uncompressed = null;
+        for (int i = 0; i < entries; i++) {
+            if (verseSizes[i] == 0) {
+                continue;
+            }
+
+            uncompressed = blocks.get(Long.valueOf(blockNums[i]));
+            if (uncompressed == null) {
+                continue;
+            }
+
+            final byte[] chopped = new byte[verseSizes[i]];
+            System.arraycopy(uncompressed, verseStarts[i], chopped, 0, verseSizes[i]);
+            rawTexts[i] = SwordUtil.decode(v11n.decodeOrdinal(ordinal + i).getName(), chopped, charset);
 
             // cache the uncompressed data for next time
-            rafBook.setLastBlockNum(blockNum);
+            rafBook.setLastBlockNum(blockNums[i]);
             rafBook.setLastTestament(testament);
             rafBook.setLastUncompressed(uncompressed);
         }
 
-        // and cut out the required section.
-        final byte[] chopped = new byte[verseSize];
-        System.arraycopy(uncompressed, verseStart, chopped, 0, verseSize);
+        return rawTexts;
+    }
 
-        return SwordUtil.decode(keyName, chopped, charset);
+    /**
+     * Read verse entries from the comp file of a testament, through its memory
+     * map if the state has one.
+     *
+     * @return the entries or null if the Bible does not contain the testament
+     */
+    private byte[] readComp(ZVerseBackendState rafBook, Testament testament, long offset, int size) throws IOException {
+        if (rafBook.isMapped()) {
+            ByteBuffer compBuffer = testament == Testament.OLD ? rafBook.getOtCompBuffer() : rafBook.getNtCompBuffer();
+            return compBuffer == null ? null : SwordUtil.read(null, compBuffer, offset, size);
+        }
+        RandomAccessFile compRaf = testament == Testament.OLD ? rafBook.getOtCompRaf() : rafBook.getNtCompRaf();
+        return compRaf == null ? null : SwordUtil.read(compRaf, null, offset, size);
+    }
 
+    /**
+     * Get a block that has already been uncompressed, either by this state or
+     * by another reader.
+     *
+     * @return the uncompressed block or null if it is not cached
+     */
+    private byte[] getCachedBlock(ZVerseBackendState rafBook, Testament testament, long blockNum) {
+        if (blockNum == rafBook.getLastBlockNum() && testament == rafBook.getLastTestament()) {
+            return rafBook.getLastUncompressed();
+        }
+        return BlockCache.get(getBookMetaData(), testament, blockNum);
+    }
+
+    /**
+     * Get a block from the block cache, or, if it is not there, read and
+     * uncompress it along with the blocks that follow it in a run. Other
+     * readers that want the first block of the run meanwhile wait for it.
+     *
+     * @return the uncompressed block or null if it is not in the index
+     */
+    private byte[] loadBlocks(final ZVerseBackendState rafBook, final Testament testament, final long firstBlock, final int count, final Map<Long, byte[]> blocks) throws IOException {
+        return BlockCache.getOrLoad(getBookMetaData(), testament, firstBlock, new BlockCache.Loader() {
+            public byte[] load() throws IOException {
+                readBlocks(rafBook, testament, firstBlock, count, blocks);
+                return blocks.get(Long.valueOf(firstBlock));
+            }
+        });
+    }
+
+    /**
+     * Read and uncompress a run of consecutive blocks. The index entries of
+     * the blocks are read at one go, as is the compressed text when the blocks
+     * lie together in the text file. The uncompressed blocks are added to the
+     * given map, and all but the first, which is left to the caller, to the
+     * block cache. A block that is not in the index is left out.
+     *
+     * @param rafBook
+     *            the state holding the open files
+     * @param testament
+     *            the testament of the blocks
+     * @param firstBlock
+     *            the number of the first block of the run
+     * @param count
+     *            the number of blocks in the run
+     * @param blocks
+     *            the map, by block number, to which the blocks are added
+     */
+    private void readBlocks(ZVerseBackendState rafBook, Testament testament, long firstBlock, int count, Map<Long, byte[]> blocks) throws IOException {
+        final RandomAccessFile idxRaf;
+        final RandomAccessFile textRaf;
+        final ByteBuffer idxBuffer;
+        final ByteBuffer textBuffer;
+        if (rafBook.isMapped()) {
+            idxRaf = null;
+            textRaf = null;
+            idxBuffer = testament == Testament.OLD ? rafBook.getOtIdxBuffer() : rafBook.getNtIdxBuffer();
+            textBuffer = testament == Testament.OLD ? rafBook.getOtTextBuffer() : rafBook.getNtTextBuffer();
+        } else {
+            idxRaf = testament == Testament.OLD ? rafBook.getOtIdxRaf() : rafBook.getNtIdxRaf();
+            textRaf = testament == Testament.OLD ? rafBook.getOtTextRaf() : rafBook.getNtTextRaf();
+            idxBuffer = null;
+            textBuffer = null;
+        }
+
+        final byte[] idx = SwordUtil.read(idxRaf, idxBuffer, firstBlock * IDX_ENTRY_SIZE, count * IDX_ENTRY_SIZE);
+        final int found = idx.length / IDX_ENTRY_SIZE;
+        if (found == 0) {
+            return;
+        }
+
+        final int[] blockStarts = new int[found];
+        final int[] blockSizes = new int[found];
+        final int[] uncompressedSizes = new int[found];
+        long spanStart = Long.MAX_VALUE;
+        long spanEnd = 0;
+        long total = 0;
+        // Whether each block follows the one before it without overlapping it
+        boolean disjoint = true;
+        long lastEnd = 0;
+        for (int i = 0; i < found; i++) {
+            int pos = i * IDX_ENTRY_SIZE;
+            blockStarts[i] = SwordUtil.decodeLittleEndian32(idx, pos);
+            blockSizes[i] = SwordUtil.decodeLittleEndian32(idx, pos + 4);
+            uncompressedSizes[i] = SwordUtil.decodeLittleEndian32(idx, pos + 8);
+            spanStart = Math.min(spanStart, blockStarts[i]);
+            spanEnd = Math.max(spanEnd, (long) blockStarts[i] + blockSizes[i]);
+            total += blockSizes[i];
+            disjoint &= blockStarts[i] >= lastEnd;
+            lastEnd = (long) blockStarts[i] + blockSizes[i];
+        }
+
+        // Blocks are written one after another, so a run of them can be read
+        // at one go, unless they are scattered through the file.
+        byte[] span = null;
+        if (found > 1 && spanEnd - spanStart <= 2 * total + MAX_SPAN_GAP) {
+            span = SwordUtil.read(textRaf, textBuffer, spanStart, (int) (spanEnd - spanStart));
+        }
+
+        final CompressorType compressor = CompressorType.fromString((String) getBookMetaData().getProperty(ConfigEntryType.COMPRESS_TYPE));
+        for (int i = 0; i < found; i++) {
+            byte[] data;
+            int start = 0;
+            int available;
+            if (span == null) {
+                data = SwordUtil.read(textRaf, textBuffer, blockStarts[i], blockSizes[i]);
+                available = data.length;
+            } else {
+                // A short read of the text leaves the blocks at the end
+                // truncated
+                data = span;
+                start = (int) (blockStarts[i] - spanStart);
+                available = Math.max(0, Math.min(blockSizes[i], span.length - start));
+                if (!disjoint) {
+                    // Blocks that share text cannot be unlocked where they are
+                    data = new byte[available];
+                    System.arraycopy(span, start, data, 0, available);
+                    start = 0;
+                }
+            }
+
+            decipher(data, start, available);
+
+            byte[] uncompressed = compressor.uncompress(data, start, available, uncompressedSizes[i]);
+
+            if (i > 0) {
+                BlockCache.put(getBookMetaData(), testament, firstBlock + i, uncompressed);
+            }
+            blocks.put(Long.valueOf(firstBlock + i), uncompressed);
+        }
     }
 
     /* (non-Javadoc)
@@ -281,6 +508,12 @@ public class ZVerseBackend extends AbstractBackend<ZVerseBackendState> {
      */
     private static final int IDX_ENTRY_SIZE = 12;
 
+    /**
+     * How many bytes, beyond the blocks of a run, may lie between the blocks
+     * before it is cheaper to read them one at a time.
+     */
+    private static final int MAX_SPAN_GAP = 4096;
+
     /**
      * The log stream
      */
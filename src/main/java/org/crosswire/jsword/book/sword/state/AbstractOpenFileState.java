@@ -15,4 +15,23 @@ public abstract class AbstractOpenFileState implements OpenFileState {
     public void close() {
         OpenFileStateManager.release(this);
     }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.OpenFileState#getLastAccess()
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.state.OpenFileState#setLastAccess(long)
+     */
+    public void setLastAccess(long lastAccess) {
+        this.lastAccess = lastAccess;
+    }
+
+    /**
+     * When the state was last released
+     */
+    private volatile long lastAccess;
 }
@@ -0,0 +1,125 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword.state;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.IOUtil;
+
+/**
+ * Holds a single read-only memory map for each module file, shared by all the
+ * {@link OpenFileState}s of a book, whichever thread they are used on. The
+ * file is mapped once and the file handle is closed straight away, so mapped
+ * states do not hold open file descriptors.
+ *
+ * <p>
+ * Every caller is handed the same buffer. It is only read with absolute gets
+ * or through {@link java.nio.ByteBuffer#duplicate()}, neither of which moves
+ * its position, so it is safe to share between threads. A mapping is dropped
+ * and the file mapped again when the file's length or modification time
+ * changes, e.g. when a module is re-installed.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+final class MappedFileCache {
+    /**
+     * Prevent instantiation
+     */
+    private MappedFileCache() {
+    }
+
+    /**
+     * Get the little endian memory map of the file, mapping it if this has not
+     * yet been done. The buffer is shared, so its position must not be moved.
+     *
+     * @param file
+     *            the file to map
+     * @return the file's content
+     * @throws IOException
+     *             if the file could not be mapped
+     */
+    static ByteBuffer getBuffer(File file) throws IOException {
+        Mapping mapping = mappings.get(file);
+        if (mapping == null || mapping.isStale(file)) {
+            mapping = new Mapping(file);
+            mappings.put(file, mapping);
+        }
+        return mapping.buffer;
+    }
+
+    /**
+     * Forget all the mappings. The memory is released once the last state
+     * holding each mapping is garbage collected.
+     */
+    static void clear() {
+        mappings.clear();
+    }
+
+    /**
+     * A memory map and the file attributes it was built from.
+     */
+    private static final class Mapping {
+        Mapping(File file) throws IOException {
+            lastModified = file.lastModified();
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(file, FileUtil.MODE_READ);
+                length = raf.length();
+                // A buffer cannot hold more, so such a file is read as it is
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Unable to map " + file + ", it is too large: " + length);
+                }
+                // The map stays valid after the file is closed.
+                MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+                map.order(ByteOrder.LITTLE_ENDIAN);
+                buffer = map;
+            } finally {
+                IOUtil.close(raf);
+            }
+        }
+
+        boolean isStale(File file) {
+            return file.length() != length || file.lastModified() != lastModified;
+        }
+
+        final ByteBuffer buffer;
+        final long length;
+        final long lastModified;
+    }
+
+    /**
+     * The mappings, by file.
+     */
+    private static final ConcurrentMap<File, Mapping> mappings = new ConcurrentHashMap<File, Mapping>();
+}
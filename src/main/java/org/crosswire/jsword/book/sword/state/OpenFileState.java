@@ -17,4 +17,15 @@ public interface OpenFileState extends Closeable {
     SwordBookMetaData getBookMetaData();
 
     void releaseResources();
+
+    /**
+     * @return when the state was last released, in milliseconds
+     */
+    long getLastAccess();
+
+    /**
+     * @param lastAccess
+     *            when the state was last released, in milliseconds
+     */
+    void setLastAccess(long lastAccess);
 }
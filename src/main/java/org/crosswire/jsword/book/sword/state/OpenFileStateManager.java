@@ -1,11 +1,16 @@
 package org.crosswire.jsword.book.sword.state;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import org.crosswire.common.util.Logger;
 import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.BlockCache;
 import org.crosswire.jsword.book.sword.BlockType;
 import org.crosswire.jsword.book.sword.SwordBookMetaData;
 
@@ -22,14 +27,21 @@ import org.crosswire.jsword.book.sword.SwordBookMetaData;
  * lookup by {@link SwordBookMetaData}, which then gives us a pool of available
  * file states... We create some more if none are available.
  * 
- * We may want to set a maximum to prevent leaking resources on heavy concurrent
- * usage. However, at the current time, with single thread access, we are
- * bounded to having 1 open file per module installed, which should be acceptable across platforms.
+ * <p>
+ * As each state holds open files, the pool is bounded. No more than
+ * {@link #getMaxOpen()} states may be open at once, across all books. When
+ * that many are open, the state that has been idle the longest is closed to
+ * make room, and if none is idle, the caller waits for one to be released.
+ * No more than {@link #getMaxIdle()} states of a book are kept idle, and a
+ * background reaper closes those that have been idle for longer than
+ * {@link #getIdleTimeout()}, keeping at least {@link #getMinIdle()} of each
+ * book. The most recently released state of a book is the one that is
+ * handed out again, so that the others age and are closed. States are
+ * closed after they have been taken from the pool, without holding its lock,
+ * so a slow close does not hold up other readers.
+ * </p>
  */
 public class OpenFileStateManager {
-    private static volatile Map<SwordBookMetaData,Queue<OpenFileState>> metaToStates = new HashMap<SwordBookMetaData,Queue<OpenFileState>>();
-    private static volatile boolean shuttingDown = false;
-
     /**
      * prevent instantiation
      */
@@ -42,7 +54,11 @@ public class OpenFileStateManager {
         
         RawBackendState state = getInstance(metadata);
         if (state == null) {
-            state = new RawBackendState(metadata);
+            try {
+                state = new RawBackendState(metadata, mapped);
+            } finally {
+                opened(state);
+            }
         }
 
         return state;
@@ -53,7 +69,11 @@ public class OpenFileStateManager {
 
         RawFileBackendState state = getInstance(metadata);
         if (state == null) {
-            state = new RawFileBackendState(metadata);
+            try {
+                state = new RawFileBackendState(metadata);
+            } finally {
+                opened(state);
+            }
         }
 
         return state;
@@ -65,7 +85,11 @@ public class OpenFileStateManager {
         
         GenBookBackendState state = getInstance(metadata);
         if (state == null) {
-            state = new GenBookBackendState(metadata);
+            try {
+                state = new GenBookBackendState(metadata);
+            } finally {
+                opened(state);
+            }
         }
         return state;
     }
@@ -75,7 +99,11 @@ public class OpenFileStateManager {
 
         RawLDBackendState state = getInstance(metadata);
         if (state == null) {
-            state = new RawLDBackendState(metadata);
+            try {
+                state = new RawLDBackendState(metadata);
+            } finally {
+                opened(state);
+            }
         }
 
         return state;
@@ -86,7 +114,11 @@ public class OpenFileStateManager {
 
         ZLDBackendState state = getInstance(metadata);
         if (state == null) {
-            state = new ZLDBackendState(metadata);
+            try {
+                state = new ZLDBackendState(metadata);
+            } finally {
+                opened(state);
+            }
         }
 
         return state;
@@ -97,54 +129,458 @@ public class OpenFileStateManager {
 
         ZVerseBackendState state = getInstance(metadata);
         if (state == null) {
-            state = new ZVerseBackendState(metadata, blockType);
+            try {
+                state = new ZVerseBackendState(metadata, blockType, mapped);
+            } finally {
+                opened(state);
+            }
         }
 
         return state;
     }
 
+    /**
+     * Get an idle state of the book. If there is none, room is made for a new
+     * one, which the caller must then create and report with
+     * {@link #opened(OpenFileState)}.
+     * 
+     * @return the idle state, or null if one is to be created
+     * @throws BookException
+     *             if there is no room for a new state within the wait
+     */
     @SuppressWarnings("unchecked")
-    private static <T extends OpenFileState> T getInstance(SwordBookMetaData metadata) {
-        Queue<OpenFileState> availableStates = getQueueForMeta(metadata);
-
-        return (T) availableStates.poll();
+    private static <T extends OpenFileState> T getInstance(SwordBookMetaData metadata) throws BookException {
+        List<OpenFileState> evictedStates = new ArrayList<OpenFileState>();
+        try {
+            return (T) getInstance(metadata, evictedStates);
+        } finally {
+            close(evictedStates);
+        }
     }
 
-    private static Queue<OpenFileState> getQueueForMeta(SwordBookMetaData metadata) {
-        Queue<OpenFileState> availableStates = metaToStates.get(metadata);
-        if (availableStates == null) {
-            synchronized (OpenFileState.class) {
-                if (availableStates == null) {
-                    availableStates = new ConcurrentLinkedQueue<OpenFileState>();
-                    metaToStates.put(metadata, availableStates);
+    /**
+     * Get an idle state of the book, or make room for a new one, adding the
+     * states that were evicted to make room to the list, for the caller to
+     * close once the lock is released.
+     * 
+     * @return the idle state, or null if one is to be created
+     * @throws BookException
+     *             if there is no room for a new state within the wait
+     */
+    private static OpenFileState getInstance(SwordBookMetaData metadata, List<OpenFileState> evictedStates) throws BookException {
+        synchronized (metaToStates) {
+            boolean waited = false;
+            long start = 0;
+            try {
+                while (true) {
+                    LinkedList<OpenFileState> availableStates = metaToStates.get(metadata);
+                    if (availableStates != null && !availableStates.isEmpty()) {
+                        idle--;
+                        return availableStates.removeLast();
+                    }
+
+                    if (maxOpen <= 0 || open < maxOpen) {
+                        open++;
+                        return null;
+                    }
+
+                    OpenFileState oldest = evictOldest();
+                    if (oldest != null) {
+                        evictedStates.add(oldest);
+                        continue;
+                    }
+
+                    // Wait for a state to be released
+                    long now = System.nanoTime();
+                    if (!waited) {
+                        waited = true;
+                        start = now;
+                        waits++;
+                    }
+                    long remaining = maxWait - (now - start) / 1000000L;
+                    if (remaining <= 0) {
+                        throw new BookException("Unable to read book, too many files are open.");
+                    }
+                    metaToStates.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BookException("Unable to read book, interrupted while waiting for files to be closed.", e);
+            } finally {
+                if (waited) {
+                    waitTime += System.nanoTime() - start;
                 }
             }
         }
-        return availableStates;
+    }
+
+    /**
+     * Account for a state that has been created in the room made by
+     * {@link #getInstance(SwordBookMetaData)}, or give the room back if it
+     * could not be created.
+     * 
+     * @param state
+     *            the new state or null
+     */
+    private static void opened(OpenFileState state) {
+        synchronized (metaToStates) {
+            if (state == null) {
+                open--;
+                metaToStates.notifyAll();
+            } else {
+                created++;
+            }
+        }
     }
 
     public static void release(OpenFileState fileState)  {
+        if (fileState == null) {
+            return;
+        }
+
         // instead of releasing, we add to our queue
-        Queue<OpenFileState> queueForMeta = getQueueForMeta(fileState.getBookMetaData());
-        boolean offered = queueForMeta.offer(fileState);
+        fileState.setLastAccess(System.currentTimeMillis());
+        synchronized (metaToStates) {
+            if (!shuttingDown) {
+                LinkedList<OpenFileState> queueForMeta = metaToStates.get(fileState.getBookMetaData());
+                if (queueForMeta == null) {
+                    queueForMeta = new LinkedList<OpenFileState>();
+                    metaToStates.put(fileState.getBookMetaData(), queueForMeta);
+                }
+                if (maxIdle <= 0 || queueForMeta.size() < maxIdle) {
+                    queueForMeta.addLast(fileState);
+                    idle++;
+                    metaToStates.notifyAll();
+                    startReaper();
+                    return;
+                }
+                evicted++;
+            }
+            open--;
+            metaToStates.notifyAll();
+        }
+
+        // There are enough idle already
+        fileState.releaseResources();
+    }
+
+    /**
+     * Take the state that has been idle the longest, of any book, out of the
+     * pool. It is no longer counted as open, and the caller must close it
+     * after releasing the lock on metaToStates, which it must hold.
+     * 
+     * @return the evicted state, or null if there was no idle state
+     */
+    private static OpenFileState evictOldest() {
+        LinkedList<OpenFileState> oldest = null;
+        for (LinkedList<OpenFileState> states : metaToStates.values()) {
+            if (!states.isEmpty() && (oldest == null || states.getFirst().getLastAccess() < oldest.getFirst().getLastAccess())) {
+                oldest = states;
+            }
+        }
+
+        if (oldest == null) {
+            return null;
+        }
+
+        idle--;
+        open--;
+        evicted++;
+        return oldest.removeFirst();
+    }
+
+    /**
+     * Close all the idle states of all books now, e.g. to free their files
+     * before a book is re-installed. States in use are not affected.
+     */
+    public static void closeIdle() {
+        List<OpenFileState> idleStates = new ArrayList<OpenFileState>();
+        synchronized (metaToStates) {
+            OpenFileState oldest = evictOldest();
+            while (oldest != null) {
+                idleStates.add(oldest);
+                oldest = evictOldest();
+            }
+            metaToStates.notifyAll();
+        }
+        close(idleStates);
+    }
+
+    /**
+     * Close the states that have been idle for too long, keeping the minimum
+     * for each book.
+     */
+    private static void reap() {
+        List<OpenFileState> expiredStates = new ArrayList<OpenFileState>();
+        synchronized (metaToStates) {
+            long limit = System.currentTimeMillis() - idleTimeout;
+            for (LinkedList<OpenFileState> states : metaToStates.values()) {
+                while (states.size() > minIdle && states.getFirst().getLastAccess() <= limit) {
+                    expiredStates.add(states.removeFirst());
+                    idle--;
+                    open--;
+                    evicted++;
+                }
+            }
+            if (!expiredStates.isEmpty()) {
+                metaToStates.notifyAll();
+            }
+        }
+        close(expiredStates);
+    }
+
+    /**
+     * Close states that have been taken out of the pool. The caller must not
+     * hold the lock on metaToStates. A state that fails to close is logged,
+     * so that the others are still closed.
+     * 
+     * @param states
+     *            the states to close
+     */
+    private static void close(List<OpenFileState> states) {
+        for (OpenFileState state : states) {
+            try {
+                state.releaseResources();
+            } catch (RuntimeException e) {
+                log.error("Unable to close " + state.getBookMetaData().getInitials(), e);
+            }
+        }
+    }
+
+    /**
+     * Start the reaper, if it is not running and there is an idle timeout.
+     * The caller must hold the lock on metaToStates.
+     */
+    private static void startReaper() {
+        if (reaper != null || idleTimeout <= 0 || shuttingDown) {
+            return;
+        }
+
+        // Look often enough that no state is idle for much longer than allowed
+        long period = Math.max(MIN_REAP_PERIOD, idleTimeout / 2);
+        reaper = new Timer("OpenFileStateManager reaper", true);
+        reaper.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                // An exception would kill the timer, and the reaper with it
+                try {
+                    reap();
+                } catch (RuntimeException e) {
+                    log.error("Unable to close idle files", e);
+                }
+            }
+        }, period, period);
+    }
+
+    /**
+     * Stop the reaper, if it is running. The caller must hold the lock on
+     * metaToStates.
+     */
+    private static void stopReaper() {
+        if (reaper != null) {
+            reaper.cancel();
+            reaper = null;
+        }
+    }
+
+    /**
+     * Whether verse based books (raw and compressed) are read through memory
+     * maps of their files. The maps are shared by all the states of a book,
+     * so no file handles are held and reading a verse does not need a seek
+     * and a read for each index entry. States that are already pooled keep
+     * the mode they were created with.
+     * 
+     * @param newMapped
+     *            whether to map the files
+     */
+    public static void setMapped(boolean newMapped) {
+        mapped = newMapped;
+    }
+
+    /**
+     * @return whether verse based books are read through memory maps
+     */
+    public static boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Set the most states that may be open at once, across all books, which
+     * bounds the number of open files. Setting it to 0 removes the bound.
+     * States that are already open are not closed until they are idle.
+     * 
+     * @param newMaxOpen
+     *            the most open states
+     */
+    public static void setMaxOpen(int newMaxOpen) {
+        synchronized (metaToStates) {
+            maxOpen = newMaxOpen;
+            metaToStates.notifyAll();
+        }
+    }
+
+    /**
+     * @return the most states that may be open at once, or 0 for no bound
+     */
+    public static int getMaxOpen() {
+        return maxOpen;
+    }
+
+    /**
+     * Set how long to wait, in milliseconds, for a state to be released when
+     * as many as are allowed are open and none are idle. After that, reading
+     * fails.
+     * 
+     * @param newMaxWait
+     *            the longest wait in milliseconds
+     */
+    public static void setMaxWait(long newMaxWait) {
+        maxWait = newMaxWait;
+    }
+
+    /**
+     * @return the longest wait for a state in milliseconds
+     */
+    public static long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Set the most idle states to keep for each book. A state that is
+     * released when there are already this many is closed. Setting it to 0
+     * removes the bound.
+     * 
+     * @param newMaxIdle
+     *            the most idle states of a book
+     */
+    public static void setMaxIdle(int newMaxIdle) {
+        maxIdle = newMaxIdle;
+    }
+
+    /**
+     * @return the most idle states to keep for each book, or 0 for no bound
+     */
+    public static int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Set the number of idle states of each book that the reaper leaves open,
+     * however long they have been idle.
+     * 
+     * @param newMinIdle
+     *            the fewest idle states of a book to keep
+     */
+    public static void setMinIdle(int newMinIdle) {
+        minIdle = newMinIdle;
+    }
+
+    /**
+     * @return the fewest idle states of a book the reaper keeps
+     */
+    public static int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Set how long, in milliseconds, a state may be idle before the reaper
+     * closes it. Setting it to 0 stops the reaper.
+     * 
+     * @param newIdleTimeout
+     *            the idle time in milliseconds
+     */
+    public static void setIdleTimeout(long newIdleTimeout) {
+        synchronized (metaToStates) {
+            idleTimeout = newIdleTimeout;
+            stopReaper();
+            if (idle > 0) {
+                startReaper();
+            }
+        }
+    }
+
+    /**
+     * @return how long a state may be idle before it is closed, in
+     *         milliseconds, or 0 if they are not closed
+     */
+    public static long getIdleTimeout() {
+        return idleTimeout;
+    }
 
-        // ignore if we couldn't offer to the queue
-        if (!offered) {
-            fileState.releaseResources();
+    /**
+     * @return the number of states now open, whether in use or idle
+     */
+    public static int getOpenCount() {
+        synchronized (metaToStates) {
+            return open;
+        }
+    }
+
+    /**
+     * @return the number of states now idle
+     */
+    public static int getIdleCount() {
+        synchronized (metaToStates) {
+            return idle;
+        }
+    }
+
+    /**
+     * @return the number of states that have been created
+     */
+    public static long getCreated() {
+        synchronized (metaToStates) {
+            return created;
+        }
+    }
+
+    /**
+     * @return the number of states that have been closed to bound the pool
+     */
+    public static long getEvicted() {
+        synchronized (metaToStates) {
+            return evicted;
+        }
+    }
+
+    /**
+     * @return the number of times a caller had to wait for a state
+     */
+    public static long getWaits() {
+        synchronized (metaToStates) {
+            return waits;
         }
     }
-    
+
+    /**
+     * @return the total time callers have waited for a state, in milliseconds
+     */
+    public static long getWaitTime() {
+        synchronized (metaToStates) {
+            return waitTime / 1000000L;
+        }
+    }
+
     /**
      * Shuts down all open files
      */
     public static void shutDown() {
-        shuttingDown  = true;
-        for(Queue<OpenFileState> e : metaToStates.values()) {
-            OpenFileState state = null;
-            while((state = e.poll()) != null) {
-                state.releaseResources();
+        List<OpenFileState> idleStates = new ArrayList<OpenFileState>();
+        synchronized (metaToStates) {
+            shuttingDown  = true;
+            stopReaper();
+            for (LinkedList<OpenFileState> e : metaToStates.values()) {
+                while (!e.isEmpty()) {
+                    idleStates.add(e.removeFirst());
+                    idle--;
+                    open--;
+                }
             }
+            metaToStates.notifyAll();
         }
+        close(idleStates);
+        MappedFileCache.clear();
+        BlockCache.clear();
     }
 
 
@@ -153,4 +589,36 @@ public class OpenFileStateManager {
             throw new BookException("Unable to read book, application is shutting down.");
         }
     }
+
+    /**
+     * The reaper looks no more often than this, in milliseconds.
+     */
+    private static final long MIN_REAP_PERIOD = 1000L;
+
+    /**
+     * The idle states of each book, the longest idle first. This is also the
+     * lock for all that follows.
+     */
+    private static final Map<SwordBookMetaData, LinkedList<OpenFileState>> metaToStates = new HashMap<SwordBookMetaData, LinkedList<OpenFileState>>();
+    private static volatile boolean shuttingDown = false;
+    private static volatile boolean mapped = false;
+
+    private static volatile int maxOpen = 0;
+    private static volatile long maxWait = 30000L;
+    private static volatile int maxIdle = 8;
+    private static volatile int minIdle = 0;
+    private static volatile long idleTimeout = 5 * 60 * 1000L;
+    private static Timer reaper;
+
+    private static int open;
+    private static int idle;
+    private static long created;
+    private static long evicted;
+    private static long waits;
+    private static long waitTime;
+
+    /**
+     * The log stream
+     */
+    private static final Logger log = Logger.getLogger(OpenFileStateManager.class);
 }
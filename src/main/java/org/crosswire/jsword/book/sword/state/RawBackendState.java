@@ -2,8 +2,10 @@ package org.crosswire.jsword.book.sword.state;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 import org.crosswire.common.util.FileUtil;
 import org.crosswire.common.util.IOUtil;
@@ -39,6 +41,16 @@ public class RawBackendState extends AbstractOpenFileState {
     protected File otIdxFile;
     protected File otTextFile;
 
+    /**
+     * Views of the shared memory maps of the index and data files, used
+     * instead of the random access files when mapped.
+     */
+    protected ByteBuffer otIdxBuffer;
+    protected ByteBuffer ntIdxBuffer;
+    protected ByteBuffer otTextBuffer;
+    protected ByteBuffer ntTextBuffer;
+    protected boolean mapped;
+
     private SwordBookMetaData bookMetaData;
 
     /**
@@ -52,6 +64,20 @@ public class RawBackendState extends AbstractOpenFileState {
      *            the appropriate metadata for the book
      */
     RawBackendState(SwordBookMetaData bookMetaData) throws BookException {
+        this(bookMetaData, false);
+    }
+
+    /**
+     * This is default package access for forcing the use of the
+     * OpenFileStateManager to manage the creation.
+     * 
+     * @param bookMetaData
+     *            the appropriate metadata for the book
+     * @param mapped
+     *            whether to read through memory maps rather than random
+     *            access files. Only read-only books are mapped.
+     */
+    RawBackendState(SwordBookMetaData bookMetaData, boolean mapped) throws BookException {
         this.bookMetaData = bookMetaData;
         URI path = SwordUtil.getExpandedDataPath(bookMetaData);
 
@@ -74,6 +100,25 @@ public class RawBackendState extends AbstractOpenFileState {
 
         String fileMode = isWritable() ? FileUtil.MODE_WRITE : FileUtil.MODE_READ;
 
+        if (mapped && FileUtil.MODE_READ.equals(fileMode)) {
+            try {
+                if (otIdxFile.canRead()) {
+                    otIdxBuffer = MappedFileCache.getBuffer(otIdxFile);
+                    otTextBuffer = MappedFileCache.getBuffer(otTextFile);
+                }
+                if (ntIdxFile.canRead()) {
+                    ntIdxBuffer = MappedFileCache.getBuffer(ntIdxFile);
+                    ntTextBuffer = MappedFileCache.getBuffer(ntTextFile);
+                }
+                this.mapped = true;
+                return;
+            } catch (IOException ex) {
+                // Fall back to random access files
+                log.error("Could not map files for " + bookMetaData.getInitials(), ex);
+                releaseResources();
+            }
+        }
+
         if (otIdxFile.canRead()) {
             try {
                 otIdxRaf = new RandomAccessFile(otIdxFile, fileMode);
@@ -133,6 +178,46 @@ public class RawBackendState extends AbstractOpenFileState {
         ntTextRaf = null;
         otIdxRaf = null;
         otTextRaf = null;
+        ntIdxBuffer = null;
+        ntTextBuffer = null;
+        otIdxBuffer = null;
+        otTextBuffer = null;
+        mapped = false;
+    }
+
+    /**
+     * @return whether the files are read through memory maps
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * @return the otIdxBuffer
+     */
+    public ByteBuffer getOtIdxBuffer() {
+        return otIdxBuffer;
+    }
+
+    /**
+     * @return the ntIdxBuffer
+     */
+    public ByteBuffer getNtIdxBuffer() {
+        return ntIdxBuffer;
+    }
+
+    /**
+     * @return the otTextBuffer
+     */
+    public ByteBuffer getOtTextBuffer() {
+        return otTextBuffer;
+    }
+
+    /**
+     * @return the ntTextBuffer
+     */
+    public ByteBuffer getNtTextBuffer() {
+        return ntTextBuffer;
     }
 
     /**
@@ -132,6 +132,13 @@ public class RawLDBackendState extends AbstractOpenFileState  {
         return idxFile;
     }
 
+    /**
+     * @return the datFile
+     */
+    public File getDatFile() {
+        return datFile;
+    }
+
     /**
      * @return the idxRaf
      */
@@ -2,8 +2,10 @@ package org.crosswire.jsword.book.sword.state;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 import org.crosswire.common.util.FileUtil;
 import org.crosswire.common.util.IOUtil;
@@ -54,6 +56,18 @@ public class ZVerseBackendState extends AbstractOpenFileState {
      */
     private RandomAccessFile otCompRaf;
     private RandomAccessFile ntCompRaf;
+
+    /**
+     * Views of the shared memory maps of the index, data and compressed
+     * files, used instead of the random access files when mapped.
+     */
+    private ByteBuffer otIdxBuffer;
+    private ByteBuffer ntIdxBuffer;
+    private ByteBuffer otTextBuffer;
+    private ByteBuffer ntTextBuffer;
+    private ByteBuffer otCompBuffer;
+    private ByteBuffer ntCompBuffer;
+    private boolean mapped;
     private Testament lastTestament;
     private long lastBlockNum = -1;
     private byte[] lastUncompressed;
@@ -67,8 +81,9 @@ public class ZVerseBackendState extends AbstractOpenFileState {
      * would result in leakage
      * 
      * @param bookMetaData the appropriate metadata for the book
+     * @param mapped whether to read through memory maps rather than random access files
      */
-     ZVerseBackendState(SwordBookMetaData bookMetaData, BlockType blockType) throws BookException {
+     ZVerseBackendState(SwordBookMetaData bookMetaData, BlockType blockType, boolean mapped) throws BookException {
         this.bookMetaData = bookMetaData;
         URI path = SwordUtil.getExpandedDataPath(bookMetaData);
         String otAllButLast = NetUtil.lengthenURI(path, File.separator + SwordConstants.FILE_OT + '.' + blockType.getIndicator() + SUFFIX_PART1).getPath();
@@ -81,6 +96,27 @@ public class ZVerseBackendState extends AbstractOpenFileState {
         File ntTextFile = new File(ntAllButLast + SUFFIX_TEXT);
         File ntCompFile = new File(ntAllButLast + SUFFIX_COMP);
 
+        if (mapped) {
+            try {
+                if (otIdxFile.canRead()) {
+                    otIdxBuffer = MappedFileCache.getBuffer(otIdxFile);
+                    otTextBuffer = MappedFileCache.getBuffer(otTextFile);
+                    otCompBuffer = MappedFileCache.getBuffer(otCompFile);
+                }
+                if (ntIdxFile.canRead()) {
+                    ntIdxBuffer = MappedFileCache.getBuffer(ntIdxFile);
+                    ntTextBuffer = MappedFileCache.getBuffer(ntTextFile);
+                    ntCompBuffer = MappedFileCache.getBuffer(ntCompFile);
+                }
+                this.mapped = true;
+                return;
+            } catch (IOException ex) {
+                // Fall back to random access files
+                log.error("Could not map files for " + bookMetaData.getInitials(), ex);
+                releaseResources();
+            }
+        }
+
         // check whether exists to swallow any exception as befor
         if (otIdxFile.canRead()) {
             try {
@@ -120,6 +156,20 @@ public class ZVerseBackendState extends AbstractOpenFileState {
         otIdxRaf = null;
         otTextRaf = null;
         otCompRaf = null;
+        ntIdxBuffer = null;
+        ntTextBuffer = null;
+        ntCompBuffer = null;
+        otIdxBuffer = null;
+        otTextBuffer = null;
+        otCompBuffer = null;
+        mapped = false;
+    }
+
+    /**
+     * @return whether the files are read through memory maps
+     */
+    public boolean isMapped() {
+        return mapped;
     }
 
     /**
@@ -164,6 +214,48 @@ public class ZVerseBackendState extends AbstractOpenFileState {
         return ntCompRaf;
     }
 
+    /**
+     * @return the otIdxBuffer
+     */
+    public ByteBuffer getOtIdxBuffer() {
+        return otIdxBuffer;
+    }
+
+    /**
+     * @return the ntIdxBuffer
+     */
+    public ByteBuffer getNtIdxBuffer() {
+        return ntIdxBuffer;
+    }
+
+    /**
+     * @return the otTextBuffer
+     */
+    public ByteBuffer getOtTextBuffer() {
+        return otTextBuffer;
+    }
+
+    /**
+     * @return the ntTextBuffer
+     */
+    public ByteBuffer getNtTextBuffer() {
+        return ntTextBuffer;
+    }
+
+    /**
+     * @return the otCompBuffer
+     */
+    public ByteBuffer getOtCompBuffer() {
+        return otCompBuffer;
+    }
+
+    /**
+     * @return the ntCompBuffer
+     */
+    public ByteBuffer getNtCompBuffer() {
+        return ntCompBuffer;
+    }
+
     /**
      * @return the lastTestament
      */
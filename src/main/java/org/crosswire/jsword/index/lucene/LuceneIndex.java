@@ -25,7 +25,13 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
@@ -36,7 +42,6 @@ import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -61,10 +66,12 @@ import org.crosswire.jsword.index.IndexStatus;
 import org.crosswire.jsword.index.lucene.analysis.LuceneAnalyzer;
 import org.crosswire.jsword.index.search.SearchModifier;
 import org.crosswire.jsword.passage.AbstractPassage;
+import org.crosswire.jsword.passage.BitwisePassage;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.NoSuchVerseException;
 import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.Verse;
 import org.crosswire.jsword.passage.VerseFactory;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
@@ -87,6 +94,14 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
      */
     public static final String FIELD_KEY = "key";
 
+    /**
+     * The Lucene field for the ordinal of a verse in its versification. It
+     * is indexed but not stored so that search results can be gathered from
+     * the FieldCache without loading each document. Older indexes do not have
+     * it.
+     */
+    public static final String FIELD_ORDINAL = "ordinal";
+
     /**
      * The Lucene field for the text contents
      */
@@ -176,31 +191,55 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
                 // IndexWriter writer = new
                 // IndexWriter(tempPath.getCanonicalPath(), analyzer, true);
 
-                // Create the index in core.
-                final RAMDirectory ramDir = new RAMDirectory();
-                IndexWriter writer = new IndexWriter(ramDir, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
+                final Directory destination = FSDirectory.open(new File(tempPath.getCanonicalPath()));
+                RAMDirectory ramDir = null;
+                IndexWriter writer = null;
+                if (buildOnDisk) {
+                    // Write the index straight to disk. Memory use is bounded
+                    // by the buffer, which is flushed to a new segment when full.
+                    writer = new IndexWriter(destination, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
+                    writer.setRAMBufferSizeMB(ramBufferSize);
+                    // The index is optimized at the end, so merging fewer,
+                    // larger segments on the way saves rewriting them.
+                    writer.setMergeFactor(MERGE_FACTOR);
+                } else {
+                    // Create the index in core.
+                    ramDir = new RAMDirectory();
+                    writer = new IndexWriter(ramDir, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
+                }
 
-                generateSearchIndexImpl(job, errors, writer, book.getGlobalKeyList(), 0);
+                int threads = indexThreads;
+                if (threads > 1) {
+                    generateSearchIndexParallel(job, errors, writer, book.getGlobalKeyList(), threads);
+                } else {
+                    generateSearchIndexImpl(job, errors, writer, book.getGlobalKeyList(), 0);
+                }
 
                 // TRANSLATOR: Progress label for optimizing a search index. This may take a bit of time, so we have a label for it.
                 job.setSectionName(JSMsg.gettext("Optimizing"));
                 job.setWork(95);
 
-                // Consolidate the index into the minimum number of files.
-                // writer.optimize(); /* Optimize is done by addIndexes */
-                writer.close();
-
-                // Write the core index to disk.
-                final Directory destination = FSDirectory.open(new File(tempPath.getCanonicalPath()));
-                IndexWriter fsWriter = new IndexWriter(destination, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
-                fsWriter.addIndexesNoOptimize(new Directory[] {
-                    ramDir
-                });
-                fsWriter.optimize();
-                fsWriter.close();
-
-                // Free up the space used by the ram directory
-                ramDir.close();
+                if (ramDir == null) {
+                    // Consolidate the index into the minimum number of files.
+                    writer.optimize();
+                    writer.close();
+                } else {
+                    // Consolidate the index into the minimum number of files.
+                    // writer.optimize(); /* Optimize is done by addIndexes */
+                    writer.close();
+
+                    // Write the core index to disk.
+                    IndexWriter fsWriter = new IndexWriter(destination, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
+                    fsWriter.addIndexesNoOptimize(new Directory[] {
+                        ramDir
+                    });
+                    fsWriter.optimize();
+                    fsWriter.close();
+
+                    // Free up the space used by the ram directory
+                    ramDir.close();
+                }
+                destination.close();
 
                 job.setCancelable(false);
                 if (!job.isFinished()) {
@@ -249,21 +288,16 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
      * @see org.crosswire.jsword.index.search.Index#findWord(java.lang.String)
      */
     public Key find(String search) throws BookException {
-        checkActive();
-        String v11nName = book.getBookMetaData().getProperty("Versification").toString();
-        Versification v11n = Versifications.instance().getVersification(v11nName);
+        Versification v11n = getVersification();
 
         SearchModifier modifier = getSearchModifier();
         Key results = null;
 
         if (search != null) {
+            IndexHolder index = acquireIndex();
+            IndexSearcher activeSearcher = index.getSearcher();
             try {
-                Analyzer analyzer = new LuceneAnalyzer(book);
-
-                QueryParser parser = new QueryParser(Version.LUCENE_29, LuceneIndex.FIELD_BODY, analyzer);
-                parser.setAllowLeadingWildcard(true);
-                Query query = parser.parse(search);
-                log.info("ParsedQuery-" + query.toString());
+                Query query = parse(search);
 
                 // For ranking we use a PassageTally
                 if (modifier != null && modifier.isRanked()) {
@@ -273,12 +307,12 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
                     results = tally;
 
                     TopScoreDocCollector collector = TopScoreDocCollector.create(modifier.getMaxResults(), false);
-                    searcher.search(query, collector);
+                    activeSearcher.search(query, collector);
                     tally.setTotal(collector.getTotalHits());
                     ScoreDoc[] hits = collector.topDocs().scoreDocs;
                     for (int i = 0; i < hits.length; i++) {
                         int docId = hits[i].doc;
-                        Document doc = searcher.doc(docId);
+                        Document doc = activeSearcher.doc(docId);
                         Key key = VerseFactory.fromString(v11n, doc.get(LuceneIndex.FIELD_KEY));
                         // PassageTally understands a score of 0 as the verse
                         // not participating
@@ -297,7 +331,7 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
                         passage.raiseEventSuppresion();
                         passage.raiseNormalizeProtection();
                     }
-                    searcher.search(query, new VerseCollector(v11n, searcher, results));
+                    activeSearcher.search(query, new VerseCollector(v11n, activeSearcher, results));
                     if (passage != null) {
                         passage.lowerNormalizeProtection();
                         passage.lowerEventSuppresionAndTest();
@@ -321,7 +355,7 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
                 // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
                 throw new BookException(JSMsg.gettext("Search failed."), e);
             } finally {
-                Activator.deactivate(this);
+                releaseIndex(index);
             }
         }
 
@@ -335,6 +369,113 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
         return results;
     }
 
+    /**
+     * Find the ordinals of the verses that satisfy the query. This allows a
+     * compound query to be evaluated with bit operations, without building a
+     * Key for each of its parts. The search modifier is ignored, so the
+     * results are never ranked.
+     * 
+     * @param search
+     *            The text to search for
+     * @return the ordinals of the matching verses
+     * @throws BookException
+     *             if the search failed
+     */
+    BitSet findOrdinals(String search) throws BookException {
+        Versification v11n = getVersification();
+        BitSet results = new BitSet(v11n.maximumOrdinal() + 1);
+        if (search == null) {
+            return results;
+        }
+
+        IndexHolder index = acquireIndex();
+        try {
+            IndexSearcher activeSearcher = index.getSearcher();
+            activeSearcher.search(parse(search), new VerseCollector(v11n, activeSearcher, results));
+        } catch (IOException e) {
+            // The VerseCollector may throw IOExceptions that merely wrap a
+            // NoSuchVerseException
+            Throwable cause = e.getCause();
+            if (cause instanceof NoSuchVerseException) {
+                // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
+                throw new BookException(JSMsg.gettext("Search failed."), cause);
+            }
+
+            // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
+            throw new BookException(JSMsg.gettext("Search failed."), e);
+        } catch (ParseException e) {
+            // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
+            throw new BookException(JSMsg.gettext("Search failed."), e);
+        } finally {
+            releaseIndex(index);
+        }
+        return results;
+    }
+
+    /**
+     * Create a key list of the book holding the verses with the given
+     * ordinals.
+     * 
+     * @param ordinals
+     *            the ordinals of the verses
+     * @return the verses
+     */
+    Key createKey(BitSet ordinals) {
+        Key results = book.createEmptyKeyList();
+        AbstractPassage passage = null;
+        if (results instanceof AbstractPassage) {
+            passage = (AbstractPassage) results;
+            passage.raiseEventSuppresion();
+            passage.raiseNormalizeProtection();
+        }
+
+        Versification v11n = getVersification();
+        BitwisePassage bitwise = results instanceof BitwisePassage ? (BitwisePassage) results : null;
+        for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+            if (bitwise != null) {
+                bitwise.addOrdinal(i);
+            } else {
+                results.addAll(v11n.decodeOrdinal(i));
+            }
+        }
+
+        if (passage != null) {
+            passage.lowerNormalizeProtection();
+            passage.lowerEventSuppresionAndTest();
+        }
+        return results;
+    }
+
+    /**
+     * @return the versification of the indexed book
+     */
+    Versification getVersification() {
+        if (v11n == null) {
+            String v11nName = book.getBookMetaData().getProperty("Versification").toString();
+            v11n = Versifications.instance().getVersification(v11nName);
+        }
+        return v11n;
+    }
+
+    /**
+     * Parse a search into a Lucene query on the body of the verses.
+     * 
+     * @param search
+     *            the search
+     * @return the query
+     * @throws ParseException
+     *             if the search is not valid
+     */
+    private Query parse(String search) throws ParseException {
+        Analyzer analyzer = new LuceneAnalyzer(book);
+
+        QueryParser parser = new QueryParser(Version.LUCENE_29, LuceneIndex.FIELD_BODY, analyzer);
+        parser.setAllowLeadingWildcard(true);
+        Query query = parser.parse(search);
+        log.info("ParsedQuery-" + query.toString());
+        return query;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -351,10 +492,11 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
      * org.crosswire.common.activate.Activatable#activate(org.crosswire.common
      * .activate.Lock)
      */
-    public final void activate(Lock lock) {
+    public final synchronized void activate(Lock lock) {
         try {
             directory = FSDirectory.open(new File(path));
             searcher = new IndexSearcher(directory, true);
+            holder = new IndexHolder(directory, searcher);
         } catch (IOException ex) {
             log.warn("second load failure", ex);
         }
@@ -369,16 +511,15 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
      * org.crosswire.common.activate.Activatable#deactivate(org.crosswire.common
      * .activate.Lock)
      */
-    public final void deactivate(Lock lock) {
-        try {
-            searcher.close();
-            directory.close();
-        } catch (IOException ex) {
-            Reporter.informUser(this, ex);
-        } finally {
-            searcher = null;
-            directory = null;
+    public final synchronized void deactivate(Lock lock) {
+        // Searches that have acquired the index keep it open until they
+        // release it.
+        if (holder != null) {
+            holder.release();
         }
+        holder = null;
+        searcher = null;
+        directory = null;
 
         active = false;
     }
@@ -392,82 +533,136 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
         }
     }
 
+    /**
+     * Get the open index, opening it if it is not open, and take a reference
+     * on it. The index stays open until the reference is released, even if it
+     * is deactivated meanwhile, so any number of threads can search at once
+     * while the index is kept open between searches.
+     * 
+     * @return the index, which must be given back with
+     *         {@link #releaseIndex(IndexHolder)}
+     * @throws BookException
+     *             if the index could not be opened
+     */
+    synchronized IndexHolder acquireIndex() throws BookException {
+        checkActive();
+        if (holder == null) {
+            // Allow the next search to try again
+            Activator.deactivate(this);
+            // TRANSLATOR: Error condition: An unexpected error happened that caused search to fail.
+            throw new BookException(JSMsg.gettext("Search failed."));
+        }
+        holder.acquire();
+        return holder;
+    }
+
+    /**
+     * Give back an index gotten from {@link #acquireIndex()}. Unless the
+     * index is to be kept open between searches, it is deactivated, and it is
+     * closed as soon as no search is using it.
+     * 
+     * @param index
+     *            the index to give back
+     */
+    void releaseIndex(IndexHolder index) {
+        index.release();
+
+        if (!keepOpen) {
+            Activator.deactivate(this);
+        }
+    }
+
+    /**
+     * An open index and its searcher. It is counted as in use by the index
+     * while it is active, and by each search that has acquired it. The last
+     * to release it closes the searcher and the directory, so an index can be
+     * deactivated while searches are still reading it.
+     */
+    static final class IndexHolder {
+        IndexHolder(Directory directory, IndexSearcher searcher) {
+            this.directory = directory;
+            this.searcher = searcher;
+            this.refs = 1;
+        }
+
+        IndexSearcher getSearcher() {
+            return searcher;
+        }
+
+        Directory getDirectory() {
+            return directory;
+        }
+
+        synchronized void acquire() {
+            refs++;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (--refs > 0) {
+                    return;
+                }
+            }
+
+            try {
+                searcher.close();
+                directory.close();
+            } catch (IOException ex) {
+                log.warn("Failed to close index", ex);
+            }
+        }
+
+        private final Directory directory;
+        private final IndexSearcher searcher;
+        private int refs;
+    }
+
+    /**
+     * Whether the index is kept open between searches. If it is, it remains
+     * open until the index is closed or memory is reclaimed with
+     * {@link Activator#reduceMemoryUsage(org.crosswire.common.activate.Kill)}.
+     * Otherwise it is opened for each search. The default is true.
+     * 
+     * @param newKeepOpen
+     *            whether to keep indexes open
+     */
+    public static void setKeepOpen(boolean newKeepOpen) {
+        keepOpen = newKeepOpen;
+    }
+
+    /**
+     * @return whether indexes are kept open between searches
+     */
+    public static boolean isKeepOpen() {
+        return keepOpen;
+    }
+
     /**
      * Dig down into a Key indexing as we go.
      */
     private void generateSearchIndexImpl(Progress job, List<Key> errors, IndexWriter writer, Key key, int count) throws BookException, IOException {
-        String v11nName = book.getBookMetaData().getProperty("Versification").toString();
-        Versification v11n = Versifications.instance().getVersification(v11nName);
-        boolean hasStrongs = book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS);
-        boolean hasXRefs = book.getBookMetaData().hasFeature(FeatureType.SCRIPTURE_REFERENCES);
-        boolean hasNotes = book.getBookMetaData().hasFeature(FeatureType.FOOTNOTES);
-        boolean hasHeadings = book.getBookMetaData().hasFeature(FeatureType.HEADINGS);
-        boolean hasMorphology = book.getBookMetaData().hasFeature(FeatureType.MORPHOLOGY);
-        
+        DocumentBuilder builder = new DocumentBuilder();
+
         String oldRootName = "";
         int percent = 0;
         String rootName = "";
-        BookData data = null;
-        Element osis = null;
 
-        // Set up for reuse.
-        Document doc = new Document();
-        Field keyField = new Field(FIELD_KEY, "", Field.Store.YES, Field.Index.NOT_ANALYZED, Field.TermVector.NO);
-        Field bodyField = new Field(FIELD_BODY, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field strongField = new Field(FIELD_STRONG, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field xrefField = new Field(FIELD_XREF, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field noteField = new Field(FIELD_NOTE, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field headingField = new Field(FIELD_HEADING, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        Field morphologyField  = new Field(FIELD_MORPHOLOGY , "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
-        
         int size = key.getCardinality();
         int subCount = count;
         for (Key subkey : key) {
             if (subkey.canHaveChildren()) {
                 generateSearchIndexImpl(job, errors, writer, subkey, subCount);
             } else {
-                data = new BookData(book, subkey);
-                osis = null;
-
+                Document doc = null;
                 try {
-                    osis = data.getOsisFragment();
+                    doc = builder.build(subkey);
                 } catch (BookException e) {
                     errors.add(subkey);
                     continue;
                 }
 
-                // Remove all fields from the document
-                doc.getFields().clear();
-
-                // Do the actual indexing
-                // Always add the key
-                keyField.setValue(subkey.getOsisRef());
-                doc.add(keyField);
-
-                addField(doc, bodyField, OSISUtil.getCanonicalText(osis));
-
-                if (hasStrongs) {
-                    addField(doc, strongField, OSISUtil.getStrongsNumbers(osis));
-                }
-
-                if (hasXRefs) {
-                    addField(doc, xrefField, OSISUtil.getReferences(v11n, osis));
-                }
-
-                if (hasNotes) {
-                    addField(doc, noteField, OSISUtil.getNotes(osis));
-                }
-
-                if (hasHeadings) {
-                    addField(doc, headingField, OSISUtil.getHeadings(osis));
-                }
-
-                if(hasMorphology) {
-                    addField(doc, morphologyField, OSISUtil.getMorphologiesWithStrong(osis));
-                }
-                
                 // Add the document if we added more than just the key.
-                if (doc.getFields().size() > 1) {
+                if (doc != null) {
                     writer.addDocument(doc);
                 }
 
@@ -495,11 +690,357 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
         }
     }
 
-    private void addField(Document doc, Field field, String text) {
-        if (text != null && text.length() > 0) {
-            field.setValue(text);
-            doc.add(field);
+    /**
+     * Index the keys using a pool of threads. This thread walks the keys and
+     * hands them in chunks to the pool. Each thread of the pool reads and
+     * parses its keys and adds their documents to the writer, which may be
+     * shared by threads.
+     */
+    private void generateSearchIndexParallel(Progress job, List<Key> errors, IndexWriter writer, Key key, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ParallelIndexer indexer = new ParallelIndexer(job, errors, writer, pool, key.getCardinality(), threads);
+        try {
+            indexer.walk(key);
+            indexer.flush();
+        } finally {
+            pool.shutdown();
+            indexer.await();
+        }
+        indexer.checkFailure();
+    }
+
+    /**
+     * Build the Lucene document for a key. A builder reuses its fields, so it
+     * must only be used by one thread at a time, and a document must be added
+     * to the index before the next is built.
+     */
+    private final class DocumentBuilder {
+        DocumentBuilder() {
+            v11n = getVersification();
+            hasStrongs = book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS);
+            hasXRefs = book.getBookMetaData().hasFeature(FeatureType.SCRIPTURE_REFERENCES);
+            hasNotes = book.getBookMetaData().hasFeature(FeatureType.FOOTNOTES);
+            hasHeadings = book.getBookMetaData().hasFeature(FeatureType.HEADINGS);
+            hasMorphology = book.getBookMetaData().hasFeature(FeatureType.MORPHOLOGY);
+            ordinalField.setOmitTermFreqAndPositions(true);
+        }
+
+        /**
+         * Build the document for a key.
+         * 
+         * @param subkey
+         *            the key to index
+         * @return the document or null if there is nothing but the key to index
+         * @throws BookException
+         *             if the key could not be read
+         */
+        Document build(Key subkey) throws BookException {
+            BookData data = new BookData(book, subkey);
+            Element osis = data.getOsisFragment();
+
+            // Remove all fields from the document
+            doc.getFields().clear();
+
+            // Do the actual indexing
+            // Always add the key
+            keyField.setValue(subkey.getOsisRef());
+            doc.add(keyField);
+            int keyFields = 1;
+            if (subkey instanceof Verse) {
+                ordinalField.setValue(Integer.toString(v11n.getOrdinal((Verse) subkey)));
+                doc.add(ordinalField);
+                keyFields++;
+            }
+
+            addField(doc, bodyField, OSISUtil.getCanonicalText(osis));
+
+            if (hasStrongs) {
+                addField(doc, strongField, OSISUtil.getStrongsNumbers(osis));
+            }
+
+            if (hasXRefs) {
+                addField(doc, xrefField, OSISUtil.getReferences(v11n, osis));
+            }
+
+            if (hasNotes) {
+                addField(doc, noteField, OSISUtil.getNotes(osis));
+            }
+
+            if (hasHeadings) {
+                addField(doc, headingField, OSISUtil.getHeadings(osis));
+            }
+
+            if (hasMorphology) {
+                addField(doc, morphologyField, OSISUtil.getMorphologiesWithStrong(osis));
+            }
+
+            return doc.getFields().size() > keyFields ? doc : null;
+        }
+
+        private void addField(Document document, Field field, String text) {
+            if (text != null && text.length() > 0) {
+                field.setValue(text);
+                document.add(field);
+            }
+        }
+
+        private final Versification v11n;
+        private final boolean hasStrongs;
+        private final boolean hasXRefs;
+        private final boolean hasNotes;
+        private final boolean hasHeadings;
+        private final boolean hasMorphology;
+
+        // Set up for reuse.
+        private final Document doc = new Document();
+        private final Field keyField = new Field(FIELD_KEY, "", Field.Store.YES, Field.Index.NOT_ANALYZED, Field.TermVector.NO);
+        private final Field ordinalField = new Field(FIELD_ORDINAL, "", Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO);
+        private final Field bodyField = new Field(FIELD_BODY, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+        private final Field strongField = new Field(FIELD_STRONG, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+        private final Field xrefField = new Field(FIELD_XREF, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+        private final Field noteField = new Field(FIELD_NOTE, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+        private final Field headingField = new Field(FIELD_HEADING, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+        private final Field morphologyField = new Field(FIELD_MORPHOLOGY, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
+    }
+
+    /**
+     * Walks the keys, handing them in chunks to a pool of threads, and
+     * gathers the progress and the errors of the threads. At most a couple of
+     * chunks per thread are waiting at any time, so memory is bounded no
+     * matter how big the book is.
+     */
+    private final class ParallelIndexer {
+        ParallelIndexer(Progress job, List<Key> errors, IndexWriter writer, ExecutorService pool, int size, int threads) {
+            this.job = job;
+            this.errors = errors;
+            this.writer = writer;
+            this.pool = pool;
+            this.size = size;
+            this.slots = new Semaphore(2 * threads);
+            this.chunk = new ArrayList<Key>(CHUNK_SIZE);
         }
+
+        /**
+         * Dig down into a Key, queuing its leaves for indexing.
+         */
+        void walk(Key key) throws IOException {
+            for (Key subkey : key) {
+                if (stopped()) {
+                    return;
+                }
+
+                if (subkey.canHaveChildren()) {
+                    walk(subkey);
+                    continue;
+                }
+
+                // report progress
+                String rootName = subkey.getRootName();
+                if (!rootName.equals(oldRootName)) {
+                    oldRootName = rootName;
+                    job.setSectionName(rootName);
+                }
+
+                chunk.add(subkey);
+                if (chunk.size() == CHUNK_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Hand the queued keys to the pool, waiting for a thread to be free if
+         * enough are already waiting.
+         */
+        void flush() throws IOException {
+            if (chunk.isEmpty() || stopped()) {
+                return;
+            }
+
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            final List<Key> keys = chunk;
+            chunk = new ArrayList<Key>(CHUNK_SIZE);
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        index(keys);
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Wait for the pool to finish the keys it has been handed. If this
+         * thread is interrupted, the pool is interrupted as well, and this
+         * still waits for its threads to stop, so that none of them is
+         * adding to the writer once this returns.
+         */
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    pool.shutdownNow();
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Rethrow the first error that stopped a thread of the pool.
+         */
+        void checkFailure() throws IOException {
+            Exception e = failure;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+        }
+
+        /**
+         * Index a chunk of keys. This runs on a thread of the pool.
+         */
+        void index(List<Key> keys) {
+            DocumentBuilder builder = new DocumentBuilder();
+            for (Key subkey : keys) {
+                if (failure != null || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                try {
+                    Document doc = builder.build(subkey);
+                    // Add the document if we added more than just the key.
+                    if (doc != null) {
+                        writer.addDocument(doc);
+                    }
+                } catch (BookException e) {
+                    synchronized (errors) {
+                        errors.add(subkey);
+                    }
+                } catch (IOException e) {
+                    fail(e);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+
+                // report progress
+                int percent = 95 * done.incrementAndGet() / size;
+                synchronized (this) {
+                    if (percent != lastPercent) {
+                        lastPercent = percent;
+                        job.setWork(percent);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remember the error that stopped a thread of the pool, unless
+         * another thread has already failed.
+         */
+        private synchronized void fail(Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        private boolean stopped() throws IOException {
+            checkFailure();
+            return Thread.currentThread().isInterrupted();
+        }
+
+        private final Progress job;
+        private final List<Key> errors;
+        private final IndexWriter writer;
+        private final ExecutorService pool;
+        private final int size;
+        private final Semaphore slots;
+        private final AtomicInteger done = new AtomicInteger();
+        private List<Key> chunk;
+        private String oldRootName = "";
+        private int lastPercent;
+        /**
+         * An IOException or a RuntimeException
+         */
+        private volatile Exception failure;
+    }
+
+    /**
+     * The number of threads used to build an index. When it is more than one,
+     * the reading and parsing of the book, which is where most of the time
+     * goes, is spread over the threads. The default is one, which builds the
+     * index on the calling thread.
+     * 
+     * @param newIndexThreads
+     *            the number of threads
+     */
+    public static void setIndexThreads(int newIndexThreads) {
+        indexThreads = Math.max(1, newIndexThreads);
+    }
+
+    /**
+     * @return the number of threads used to build an index
+     */
+    public static int getIndexThreads() {
+        return indexThreads;
+    }
+
+    /**
+     * Whether an index is built directly in its temporary location on disk.
+     * Otherwise it is built in memory and then copied to disk, which needs
+     * memory in proportion to the size of the book. Either way the index is
+     * only moved to its final location once it is complete. The default is
+     * false.
+     * 
+     * @param newBuildOnDisk
+     *            whether to build indexes on disk
+     */
+    public static void setBuildOnDisk(boolean newBuildOnDisk) {
+        buildOnDisk = newBuildOnDisk;
+    }
+
+    /**
+     * @return whether indexes are built directly on disk
+     */
+    public static boolean isBuildOnDisk() {
+        return buildOnDisk;
+    }
+
+    /**
+     * The number of megabytes of documents to buffer in memory before they
+     * are flushed to disk when building on disk.
+     * 
+     * @param newRamBufferSize
+     *            the size of the buffer in MB
+     */
+    public static void setRamBufferSize(double newRamBufferSize) {
+        ramBufferSize = newRamBufferSize;
+    }
+
+    /**
+     * @return the size in MB of the buffer used when building on disk
+     */
+    public static double getRamBufferSize() {
+        return ramBufferSize;
     }
 
     /**
@@ -508,10 +1049,41 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
      */
     private static final Object CREATING = new Object();
 
+    /**
+     * The number of keys handed to an indexing thread at a time
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * The number of threads used to build an index
+     */
+    private static volatile int indexThreads = 1;
+
+    /**
+     * The number of segments of a size that are merged at a time when
+     * building on disk
+     */
+    private static final int MERGE_FACTOR = 20;
+
+    /**
+     * Whether indexes are built directly on disk
+     */
+    private static volatile boolean buildOnDisk;
+
+    /**
+     * The size in MB of the buffer used when building on disk
+     */
+    private static volatile double ramBufferSize = 32.0;
+
+    /**
+     * Whether indexes are kept open between searches
+     */
+    private static volatile boolean keepOpen = true;
+
     /**
      * Are we active
      */
-    private boolean active;
+    private volatile boolean active;
 
     /**
      * The log stream
@@ -523,6 +1095,11 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
      */
     protected Book book;
 
+    /**
+     * The versification of the book, looked up when first needed
+     */
+    private volatile Versification v11n;
+
     /**
      * The location of this index
      */
@@ -536,5 +1113,10 @@ public class LuceneIndex extends AbstractIndex implements Activatable {
     /**
      * The Lucene search engine
      */
-    protected Searcher searcher;
+    protected IndexSearcher searcher;
+
+    /**
+     * The open directory and searcher, shared with the searches using them
+     */
+    private IndexHolder holder;
 }
@@ -97,6 +97,13 @@ public class LuceneSearcher implements Searcher {
      * .index.query.Query)
      */
     public Key search(Query query) throws BookException {
+        // Combine the parts of the query as sets of verse ordinals when we can
+        if (index instanceof LuceneIndex) {
+            Key results = new OrdinalQueryEvaluator((LuceneIndex) index).find(query);
+            if (results != null) {
+                return results;
+            }
+        }
         return query.find(index);
     }
 
@@ -0,0 +1,196 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.util.BitSet;
+import java.util.Iterator;
+
+import org.crosswire.jsword.JSMsg;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.index.query.AndNotQuery;
+import org.crosswire.jsword.index.query.AndQuery;
+import org.crosswire.jsword.index.query.BaseQuery;
+import org.crosswire.jsword.index.query.BinaryQuery;
+import org.crosswire.jsword.index.query.BlurQuery;
+import org.crosswire.jsword.index.query.NullQuery;
+import org.crosswire.jsword.index.query.OrQuery;
+import org.crosswire.jsword.index.query.Query;
+import org.crosswire.jsword.index.query.RangeQuery;
+import org.crosswire.jsword.index.search.SearchModifier;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.RestrictionType;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * Evaluates a query built by a QueryBuilder as operations on sets of verse
+ * ordinals. Each part of the query is searched for once and the parts are
+ * combined with bit operations, so no Key is built until the final result.
+ * Ranked searches need the scores that only Keys carry, so they, and queries
+ * with parts that are not understood here, are left to {@link Query#find}.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+final class OrdinalQueryEvaluator {
+    /**
+     * Create an evaluator of queries against an index.
+     * 
+     * @param index
+     *            the index to search
+     */
+    OrdinalQueryEvaluator(LuceneIndex index) {
+        this.index = index;
+        this.v11n = index.getVersification();
+    }
+
+    /**
+     * Find the verses that match the query.
+     * 
+     * @param query
+     *            the query to evaluate
+     * @return the matching verses or null if the query cannot be evaluated
+     *         here
+     * @throws BookException
+     *             if the search failed
+     */
+    Key find(Query query) throws BookException {
+        SearchModifier modifier = index.getSearchModifier();
+        if (modifier != null && modifier.isRanked()) {
+            return null;
+        }
+
+        if (!isSupported(query)) {
+            return null;
+        }
+
+        return index.createKey(evaluate(query));
+    }
+
+    /**
+     * Determine whether every part of the query can be evaluated here.
+     */
+    private boolean isSupported(Query query) {
+        if (query instanceof AndQuery || query instanceof OrQuery || query instanceof AndNotQuery || query instanceof BlurQuery) {
+            BinaryQuery binary = (BinaryQuery) query;
+            return isSupported(binary.getLeftQuery()) && isSupported(binary.getRightQuery());
+        }
+        return query instanceof BaseQuery || query instanceof RangeQuery || query instanceof NullQuery;
+    }
+
+    /**
+     * Evaluate the query. This follows the find methods of the queries,
+     * including not searching for the right side when the left is enough.
+     */
+    private BitSet evaluate(Query query) throws BookException {
+        if (query instanceof BaseQuery) {
+            return index.findOrdinals(((BaseQuery) query).getQuery());
+        }
+
+        if (query instanceof RangeQuery) {
+            return getRange(((RangeQuery) query).getQuery());
+        }
+
+        if (query instanceof NullQuery) {
+            return new BitSet(v11n.maximumOrdinal() + 1);
+        }
+
+        BinaryQuery binary = (BinaryQuery) query;
+        BitSet left = evaluate(binary.getLeftQuery());
+        if (left.isEmpty() && !(query instanceof OrQuery)) {
+            return left;
+        }
+
+        BitSet right = evaluate(binary.getRightQuery());
+        if (query instanceof AndQuery) {
+            left.and(right);
+        } else if (query instanceof OrQuery) {
+            left.or(right);
+        } else if (query instanceof AndNotQuery) {
+            left.andNot(right);
+        } else {
+            left.and(blur(right, ((BlurQuery) query).getFactor(), RestrictionType.getDefaultBlurRestriction()));
+        }
+        return left;
+    }
+
+    /**
+     * Get the ordinals of the verses of a range specification.
+     */
+    private BitSet getRange(String range) throws BookException {
+        Passage passage = null;
+        try {
+            passage = KeyUtil.getPassage(index.getKey(range), v11n);
+        } catch (NoSuchKeyException e) {
+            // TRANSLATOR: User error condition: The passage range could not be understood. {0} is a placeholder for the passage.
+            throw new BookException(JSMsg.gettext("Syntax Error: Invalid passage \"{0}\"", range), e);
+        }
+
+        BitSet ordinals = new BitSet(v11n.maximumOrdinal() + 1);
+        Iterator<Key> iter = passage.rangeIterator(RestrictionType.NONE);
+        while (iter.hasNext()) {
+            VerseRange verses = (VerseRange) iter.next();
+            ordinals.set(v11n.getOrdinal(verses.getStart()), v11n.getOrdinal(verses.getEnd()) + 1);
+        }
+        return ordinals;
+    }
+
+    /**
+     * Widen each run of verses by the given number of verses either side, in
+     * the same way as {@link RestrictionType#blur(Versification, VerseRange, int, int)}.
+     * Each run is widened with a single range operation on the bits.
+     */
+    private BitSet blur(BitSet ordinals, int verses, RestrictionType restrict) {
+        int maximumOrdinal = v11n.maximumOrdinal();
+        BitSet blurred = new BitSet(maximumOrdinal + 1);
+        int start = ordinals.nextSetBit(0);
+        while (start >= 0) {
+            int end = ordinals.nextClearBit(start) - 1;
+            int low = Math.max(0, start - verses);
+            int high = Math.min(maximumOrdinal, end + verses);
+            if (restrict == RestrictionType.CHAPTER) {
+                Verse first = v11n.decodeOrdinal(start);
+                low = Math.max(low, v11n.getOrdinal(new Verse(first.getBook(), first.getChapter(), 0)));
+                Verse last = v11n.decodeOrdinal(end);
+                high = Math.min(high, v11n.getOrdinal(v11n.getLastVerseInChapter(last)));
+            }
+            blurred.set(low, high + 1);
+            start = ordinals.nextSetBit(end + 1);
+        }
+        return blurred;
+    }
+
+    /**
+     * The index to search
+     */
+    private final LuceneIndex index;
+
+    /**
+     * The versification of the indexed book
+     */
+    private final Versification v11n;
+}
@@ -22,19 +22,32 @@
 package org.crosswire.jsword.index.lucene;
 
 import java.io.IOException;
+import java.util.BitSet;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Searcher;
+import org.crosswire.jsword.passage.BitwisePassage;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.Verse;
 import org.crosswire.jsword.passage.VerseFactory;
 import org.crosswire.jsword.versification.Versification;
 
 /**
- * A simple collector of verses that stores the verses in a Key.
+ * A simple collector of verses that stores the verses in a Key, or their
+ * ordinals in a BitSet.
+ * 
+ * <p>
+ * When the index has verse ordinals, these are read for each segment from the
+ * FieldCache, so that hits are collected without loading or parsing the
+ * stored key of each document. Hits are then set directly in a
+ * BitwisePassage. Indexes built before ordinals were added, and documents
+ * that have no ordinal, are read the slow way.
+ * </p>
  * 
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's authors.
@@ -49,6 +62,19 @@ public class VerseCollector extends Collector {
         this.v11n = refSystem;
         this.searcher = searcher;
         this.results = results;
+        if (results instanceof BitwisePassage) {
+            this.bitwise = (BitwisePassage) results;
+        }
+    }
+
+    /**
+     * Create a collector for the searcher that sets the ordinals of the
+     * verses that are hit.
+     */
+    public VerseCollector(Versification refSystem, Searcher searcher, BitSet hits) {
+        this.v11n = refSystem;
+        this.searcher = searcher;
+        this.hits = hits;
     }
 
     /*
@@ -69,10 +95,31 @@ public class VerseCollector extends Collector {
      */
     @Override
     public void collect(int docId) throws IOException {
+        // A document without an ordinal reads as 0 from the FieldCache, so
+        // such a hit is read from its stored key. This is also done for the
+        // one verse that really has the ordinal 0.
+        if (ordinals != null && ordinals[docId] != 0) {
+            int ordinal = ordinals[docId];
+            if (hits != null) {
+                hits.set(ordinal);
+            } else if (bitwise != null) {
+                bitwise.addOrdinal(ordinal);
+            } else {
+                results.addAll(v11n.decodeOrdinal(ordinal));
+            }
+            return;
+        }
+
         Document doc = searcher.doc(docBase + docId);
         try {
             Key key = VerseFactory.fromString(v11n, doc.get(LuceneIndex.FIELD_KEY));
-            results.addAll(key);
+            if (hits != null) {
+                for (Key verse : key) {
+                    hits.set(v11n.getOrdinal((Verse) verse));
+                }
+            } else {
+                results.addAll(key);
+            }
         } catch (NoSuchVerseException e) {
             // Wrap the NoSuchVerseException in an IOException so it can be
             // gotten.
@@ -94,6 +141,10 @@ public class VerseCollector extends Collector {
     @Override
     public void setNextReader(IndexReader reader, int docBase) throws IOException {
         this.docBase = docBase;
+        ordinals = null;
+        if (reader.getFieldNames(IndexReader.FieldOption.INDEXED).contains(LuceneIndex.FIELD_ORDINAL)) {
+            ordinals = FieldCache.DEFAULT.getInts(reader, LuceneIndex.FIELD_ORDINAL);
+        }
     }
 
     /*
@@ -109,7 +160,10 @@ public class VerseCollector extends Collector {
     }
 
     private int docBase;
+    private int[] ordinals;
+    private BitwisePassage bitwise;
     private Versification v11n;
     private Searcher searcher;
     private Key results;
+    private BitSet hits;
 }
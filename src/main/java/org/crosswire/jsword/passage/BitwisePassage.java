@@ -28,12 +28,13 @@ import java.util.BitSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import org.crosswire.jsword.JSOtherMsg;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.system.Versifications;
 
 /**
- * A Passage that is implemented using a BitSet - one for each verse. The
- * attributes of the style are:
+ * A Passage that is implemented using an OrdinalBitSet - one bit for each
+ * verse. The attributes of the style are:
  * <ul>
  * <li>Fairly fast manipulation
  * <li>Fairly getName()
@@ -41,11 +42,17 @@ import org.crosswire.jsword.versification.system.Versifications;
  * </ul>
  * 
  * <p>
- * The BitSet has one more bit than the number of verses in the Bible. This
- * would waste 1 bit per BitSet but since this doesn't cause BitSet to need an
+ * The set has one more bit than the number of verses in the Bible. This
+ * would waste 1 bit per set but since this doesn't cause it to need an
  * extra long it doesn't, and it saves us some maths.
  * </p>
  * 
+ * <p>
+ * When both sides of an operation are BitwisePassages of the same
+ * versification, the work is done on the bits, a long at a time, without
+ * visiting each verse.
+ * </p>
+ * 
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's authors.
  * @author Joe Walker [joe at eireneh dot com]
@@ -61,7 +68,7 @@ public class BitwisePassage extends AbstractPassage {
      */
     protected BitwisePassage(Versification v11n) {
         super(v11n);
-        store = new BitSet(v11n.maximumOrdinal() + 1);
+        store = new OrdinalBitSet(v11n.maximumOrdinal() + 1);
     }
 
     /**
@@ -84,7 +91,7 @@ public class BitwisePassage extends AbstractPassage {
      */
     protected BitwisePassage(Versification v11n, String refs) throws NoSuchVerseException {
         super(v11n, refs);
-        store = new BitSet(v11n.maximumOrdinal() + 1);
+        store = new OrdinalBitSet(v11n.maximumOrdinal() + 1);
         addVerses(refs);
     }
 
@@ -93,7 +100,7 @@ public class BitwisePassage extends AbstractPassage {
         // This gets us a shallow copy
         BitwisePassage copy = (BitwisePassage) super.clone();
 
-        copy.store = (BitSet) store.clone();
+        copy.store = store.clone();
 
         return copy;
     }
@@ -115,8 +122,23 @@ public class BitwisePassage extends AbstractPassage {
         return new VerseIterator();
     }
 
+    @Override
+    public Verse getVerseAt(int offset) throws ArrayIndexOutOfBoundsException {
+        int ordinal = store.select(offset);
+        if (ordinal < 0) {
+            throw new ArrayIndexOutOfBoundsException(JSOtherMsg.lookupText("Index out of range (Given {0,number,integer}, Max {1,number,integer}).", Integer.valueOf(offset), Integer.valueOf(countVerses())));
+        }
+
+        return getVersification().decodeOrdinal(ordinal);
+    }
+
     @Override
     public boolean contains(Key obj) {
+        OrdinalBitSet thatStore = getStore(obj);
+        if (thatStore != null) {
+            return containsOrdinals(thatStore);
+        }
+
         Versification v11n = getVersification();
         for (Key aKey : obj) {
             Verse verse = (Verse) aKey;
@@ -133,6 +155,16 @@ public class BitwisePassage extends AbstractPassage {
         return true;
     }
 
+    @Override
+    public boolean containsAll(Passage that) {
+        OrdinalBitSet thatStore = getStore(that);
+        if (thatStore != null) {
+            return containsOrdinals(thatStore);
+        }
+
+        return super.containsAll(that);
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.passage.Passage#add(org.crosswire.jsword.passage.Key)
      */
@@ -157,6 +189,27 @@ public class BitwisePassage extends AbstractPassage {
         }
     }
 
+    /**
+     * Add the verse with the given ordinal in this Passage's versification.
+     * This is a cheap way to add many verses one at a time, e.g. from search
+     * results, as no Verse need be built.
+     * 
+     * @param ordinal
+     *            the ordinal of the verse to add
+     */
+    public void addOrdinal(int ordinal) {
+        optimizeWrites();
+
+        store.set(ordinal);
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (suppressEvents == 0) {
+            Verse verse = getVersification().decodeOrdinal(ordinal);
+            fireIntervalAdded(this, verse, verse);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.crosswire.jsword.passage.Passage#remove(org.crosswire.jsword.passage.Key)
      */
@@ -187,9 +240,9 @@ public class BitwisePassage extends AbstractPassage {
 
         optimizeWrites();
 
-        if (that instanceof BitwisePassage) {
-            BitwisePassage thatRef = (BitwisePassage) that;
-            store.or(thatRef.store);
+        OrdinalBitSet thatStore = getStore(that);
+        if (thatStore != null) {
+            store.or(thatStore);
         } else {
             super.addAll(that);
         }
@@ -207,10 +260,9 @@ public class BitwisePassage extends AbstractPassage {
 
         optimizeWrites();
 
-        if (that instanceof BitwisePassage) {
-            BitwisePassage thatRef = (BitwisePassage) that;
-
-            store.andNot(thatRef.store);
+        OrdinalBitSet thatStore = getStore(that);
+        if (thatStore != null) {
+            store.andNot(thatStore);
         } else {
             super.removeAll(key);
         }
@@ -229,11 +281,9 @@ public class BitwisePassage extends AbstractPassage {
 
         optimizeWrites();
 
-        BitSet thatStore = null;
-        if (that instanceof BitwisePassage) {
-            thatStore = ((BitwisePassage) that).store;
-        } else {
-            thatStore = new BitSet(v11n.maximumOrdinal() + 1);
+        OrdinalBitSet thatStore = getStore(that);
+        if (thatStore == null) {
+            thatStore = new OrdinalBitSet(v11n.maximumOrdinal() + 1);
 
             for (Key aKey : that) {
                 int ord = v11n.getOrdinal((Verse) aKey);
@@ -270,15 +320,13 @@ public class BitwisePassage extends AbstractPassage {
             raiseNormalizeProtection();
 
             int maximumOrdinal = getVersification().maximumOrdinal();
-            BitSet newStore = new BitSet(maximumOrdinal + 1);
+            OrdinalBitSet newStore = new OrdinalBitSet(maximumOrdinal + 1);
 
             for (int i = store.nextSetBit(0); i >= 0; i = store.nextSetBit(i + 1)) {
                 int start = Math.max(1, i - verses);
                 int end = Math.min(maximumOrdinal, i + verses);
 
-                for (int j = start; j <= end; j++) {
-                    newStore.set(j);
-                }
+                newStore.set(start, end + 1);
             }
 
             store = newStore;
@@ -290,6 +338,63 @@ public class BitwisePassage extends AbstractPassage {
         }
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        OrdinalBitSet thatStore = obj instanceof Key ? getStore((Key) obj) : null;
+        if (thatStore != null && !PassageUtil.isPersistentNaming()) {
+            return store.equals(thatStore);
+        }
+
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Get the bits of another key, if it is a BitwisePassage of the same
+     * versification as this, so that an operation can work on them directly.
+     * 
+     * @param key
+     *            the other key
+     * @return the bits of the other key or null if it is not bit-backed
+     */
+    private OrdinalBitSet getStore(Key key) {
+        if (key instanceof BitwisePassage) {
+            BitwisePassage that = (BitwisePassage) key;
+            if (that.getVersification() == getVersification()) {
+                return that.store;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether this contains the verses with the given ordinals. As in
+     * {@link #contains(Key)}, a verse 0 need not be present.
+     * 
+     * @param thatStore
+     *            the ordinals to look for
+     * @return true if all of them are present
+     */
+    private boolean containsOrdinals(OrdinalBitSet thatStore) {
+        if (store.containsAll(thatStore)) {
+            return true;
+        }
+
+        OrdinalBitSet missing = thatStore.clone();
+        missing.andNot(store);
+        Versification v11n = getVersification();
+        for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+            if (v11n.decodeOrdinal(i).getVerse() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Iterate over the Verses
      * 
@@ -386,18 +491,30 @@ public class BitwisePassage extends AbstractPassage {
         String v11nName = in.readUTF();
         Versification v11n = Versifications.instance().getVersification(v11nName);
 
-        store = new BitSet(v11n.maximumOrdinal() + 1);
+        store = new OrdinalBitSet(v11n.maximumOrdinal() + 1);
 
         readObjectSupport(in);
     }
 
+    /**
+     * Get the ordinals of the verses in this passage as a
+     * {@link java.util.BitSet}, the form in which they used to be stored.
+     * 
+     * @return a copy of the ordinals
+     */
+    protected BitSet getBitSet() {
+        return store.toBitSet();
+    }
+
     /**
      * To make serialization work across new versions
      */
     static final long serialVersionUID = -5931560451407396276L;
 
     /**
-     * The place the real data is stored
+     * The place the real data is stored. This used to be a
+     * {@link java.util.BitSet}; subclasses that need one should use
+     * {@link #getBitSet()}.
      */
-    protected transient BitSet store;
+    protected transient OrdinalBitSet store;
 }
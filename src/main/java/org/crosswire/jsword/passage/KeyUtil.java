@@ -23,6 +23,7 @@ package org.crosswire.jsword.passage;
 
 import org.crosswire.common.util.Logger;
 import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.VersificationMapping;
 import org.crosswire.jsword.versification.system.Versifications;
 
 /**
@@ -128,6 +129,44 @@ public final class KeyUtil {
         return (Passage) ref;
     }
 
+    /**
+     * Convert a Passage from one Versification to another. The verses are
+     * mapped a run of verses at a time rather than a verse at a time, so this
+     * is cheap even for large passages. A PassageTally is converted to a
+     * PassageTally, keeping its ranks, and anything else to a RocketPassage.
+     * 
+     * @param passage
+     *            The Passage to convert, which must be of the Versification
+     *            the mapping is from
+     * @param mapping
+     *            How to convert the verses
+     * @return the Passage in the Versification the mapping is to
+     */
+    public static Passage map(Passage passage, VersificationMapping mapping) {
+        Versification source = mapping.getSource();
+        if (passage.getVersification() != source) {
+            throw new IllegalArgumentException("Passage is not of the " + source.getName() + " versification");
+        }
+
+        if (passage instanceof PassageTally) {
+            return ((PassageTally) passage).map(mapping);
+        }
+
+        OrdinalBitSet ordinals = null;
+        if (passage instanceof BitwisePassage) {
+            ordinals = ((BitwisePassage) passage).store;
+        } else {
+            ordinals = new OrdinalBitSet(source.maximumOrdinal() + 1);
+            for (Key key : passage) {
+                ordinals.set(source.getOrdinal((Verse) key));
+            }
+        }
+
+        RocketPassage mapped = new RocketPassage(mapping.getTarget());
+        mapping.map(ordinals, mapped.store);
+        return mapped;
+    }
+
     /**
      * How we create Passages
      */
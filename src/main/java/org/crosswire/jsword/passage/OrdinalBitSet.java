@@ -0,0 +1,568 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A fixed size set of verse ordinals, held one bit to an ordinal in an array
+ * of longs. Unlike {@link java.util.BitSet} it knows how many ordinals it
+ * holds without counting them again, and can find the ordinal at a given
+ * position, or the position of a given ordinal, without walking the set
+ * from the start. Set operations between two of them work a long at a time.
+ * 
+ * <p>
+ * Changing a set is not thread safe. Once it has been filled, a set can be
+ * read by any number of threads at once. The counts that reads need are
+ * worked out into an array of their own, which is then published whole, so
+ * a read never changes what another read sees.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class OrdinalBitSet implements Cloneable {
+    /**
+     * Create an empty set that can hold the ordinals from 0 up to but not
+     * including size.
+     * 
+     * @param size
+     *            one more than the largest ordinal to hold
+     */
+    public OrdinalBitSet(int size) {
+        words = new long[(size + WORD_MASK) >>> WORD_SHIFT];
+    }
+
+    /**
+     * @param ordinal
+     *            the ordinal to look for
+     * @return whether the ordinal is in the set
+     */
+    public boolean get(int ordinal) {
+        int index = ordinal >>> WORD_SHIFT;
+        return index < words.length && (words[index] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Add an ordinal to the set.
+     * 
+     * @param ordinal
+     *            the ordinal to add
+     */
+    public void set(int ordinal) {
+        int index = ordinal >>> WORD_SHIFT;
+        long bit = 1L << ordinal;
+        if ((words[index] & bit) == 0) {
+            words[index] |= bit;
+            counted(1);
+        }
+    }
+
+    /**
+     * Add the ordinals from one up to but not including another.
+     * 
+     * @param from
+     *            the first ordinal to add
+     * @param to
+     *            the ordinal after the last to add
+     */
+    public void set(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+
+        int first = from >>> WORD_SHIFT;
+        int last = (to - 1) >>> WORD_SHIFT;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+        } else {
+            words[first] |= firstMask;
+            for (int i = first + 1; i < last; i++) {
+                words[i] = -1L;
+            }
+            words[last] |= lastMask;
+        }
+        uncounted();
+    }
+
+    /**
+     * Remove an ordinal from the set.
+     * 
+     * @param ordinal
+     *            the ordinal to remove
+     */
+    public void clear(int ordinal) {
+        int index = ordinal >>> WORD_SHIFT;
+        if (index >= words.length) {
+            return;
+        }
+
+        long bit = 1L << ordinal;
+        if ((words[index] & bit) != 0) {
+            words[index] &= ~bit;
+            counted(-1);
+        }
+    }
+
+    /**
+     * Remove all the ordinals from the set.
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+        cardinality = 0;
+        ranks = null;
+    }
+
+    /**
+     * @return whether there are no ordinals in the set
+     */
+    public boolean isEmpty() {
+        if (cardinality >= 0) {
+            return cardinality == 0;
+        }
+
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of ordinals in the set
+     */
+    public int cardinality() {
+        int count = cardinality;
+        if (count >= 0) {
+            return count;
+        }
+        return getRanks()[words.length];
+    }
+
+    /**
+     * Find the first ordinal in the set that is not less than the given one.
+     * 
+     * @param from
+     *            the ordinal to start looking at
+     * @return the ordinal found or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        int index = from >>> WORD_SHIFT;
+        if (index >= words.length) {
+            return -1;
+        }
+
+        long word = words[index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (index << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    /**
+     * Find the last ordinal in the set.
+     * 
+     * @return the ordinal found or -1 if the set is empty
+     */
+    public int lastSetBit() {
+        for (int i = words.length - 1; i >= 0; i--) {
+            if (words[i] != 0) {
+                return (i << WORD_SHIFT) + WORD_MASK - Long.numberOfLeadingZeros(words[i]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Count the ordinals in the set that are less than the given one. For an
+     * ordinal in the set this is its position.
+     * 
+     * @param ordinal
+     *            the ordinal to count up to
+     * @return the number of smaller ordinals in the set
+     */
+    public int rank(int ordinal) {
+        int index = ordinal >>> WORD_SHIFT;
+        if (index >= words.length) {
+            return cardinality();
+        }
+
+        return getRanks()[index] + Long.bitCount(words[index] & ~(-1L << ordinal));
+    }
+
+    /**
+     * Find the ordinal at a position in the set, counting from 0 in order of
+     * the ordinals.
+     * 
+     * @param position
+     *            the position of the wanted ordinal
+     * @return the ordinal or -1 if there are not that many in the set
+     */
+    public int select(int position) {
+        if (position < 0 || position >= cardinality()) {
+            return -1;
+        }
+
+        // Find the last word with fewer ordinals before it than the position
+        int[] before = getRanks();
+        int low = 0;
+        int high = words.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (before[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        long word = words[low];
+        for (int skip = position - before[low]; skip > 0; skip--) {
+            word &= word - 1;
+        }
+        return (low << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @param that
+     *            the other set
+     * @return whether every ordinal in the other set is in this one
+     */
+    public boolean containsAll(OrdinalBitSet that) {
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            if ((that.words[i] & ~words[i]) != 0) {
+                return false;
+            }
+        }
+        for (int i = common; i < that.words.length; i++) {
+            if (that.words[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param that
+     *            the other set
+     * @return whether any ordinal is in both sets
+     */
+    public boolean intersects(OrdinalBitSet that) {
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            if ((that.words[i] & words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the ordinals in the other set to this one.
+     * 
+     * @param that
+     *            the other set
+     */
+    public void or(OrdinalBitSet that) {
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] |= that.words[i];
+        }
+        uncounted();
+    }
+
+    /**
+     * Add the ordinals in part of the other set to this one, moved by an
+     * offset. That is, for each ordinal from <code>from</code> up to but not
+     * including <code>to</code> in the other set, add that ordinal plus
+     * <code>offset</code>. This is done up to a long at a time.
+     *
+     * @param that
+     *            the other set
+     * @param from
+     *            the first ordinal of the other set to add
+     * @param to
+     *            the ordinal after the last of the other set to add
+     * @param offset
+     *            how far to move the ordinals
+     */
+    public void or(OrdinalBitSet that, int from, int to, int offset) {
+        int i = from;
+        while (i < to) {
+            int dest = i + offset;
+            // Take as many bits as fit in the rest of the destination word
+            int count = Math.min(WORD_MASK + 1 - (dest & WORD_MASK), to - i);
+            long bits = that.getBits(i);
+            if (count <= WORD_MASK) {
+                bits &= (1L << count) - 1;
+            }
+            words[dest >>> WORD_SHIFT] |= bits << dest;
+            i += count;
+        }
+        uncounted();
+    }
+
+    /**
+     * Keep only the ordinals that are also in the other set.
+     * 
+     * @param that
+     *            the other set
+     */
+    public void and(OrdinalBitSet that) {
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] &= that.words[i];
+        }
+        Arrays.fill(words, common, words.length, 0L);
+        uncounted();
+    }
+
+    /**
+     * Remove the ordinals that are in the other set.
+     * 
+     * @param that
+     *            the other set
+     */
+    public void andNot(OrdinalBitSet that) {
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] &= ~that.words[i];
+        }
+        uncounted();
+    }
+
+    /**
+     * Keep the ordinals that are in one set but not both.
+     * 
+     * @param that
+     *            the other set
+     */
+    public void xor(OrdinalBitSet that) {
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] ^= that.words[i];
+        }
+        uncounted();
+    }
+
+    /**
+     * Copy the set into a {@link java.util.BitSet}, for code that works with
+     * those.
+     * 
+     * @return a new BitSet holding the same ordinals
+     */
+    public BitSet toBitSet() {
+        BitSet bits = new BitSet(words.length << WORD_SHIFT);
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            bits.set(i);
+        }
+        return bits;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public OrdinalBitSet clone() {
+        OrdinalBitSet clone = null;
+        try {
+            clone = (OrdinalBitSet) super.clone();
+            clone.words = words.clone();
+        } catch (CloneNotSupportedException e) {
+            assert false : e;
+        }
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof OrdinalBitSet)) {
+            return false;
+        }
+
+        OrdinalBitSet that = (OrdinalBitSet) obj;
+        if (cardinality >= 0 && that.cardinality >= 0 && cardinality != that.cardinality) {
+            return false;
+        }
+
+        long[] longer = words.length >= that.words.length ? words : that.words;
+        int common = Math.min(words.length, that.words.length);
+        for (int i = 0; i < common; i++) {
+            if (words[i] != that.words[i]) {
+                return false;
+            }
+        }
+        for (int i = common; i < longer.length; i++) {
+            if (longer[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        // The same as java.util.BitSet
+        long h = 1234;
+        for (int i = words.length; --i >= 0;) {
+            h ^= words[i] * (i + 1);
+        }
+        return (int) ((h >> 32) ^ h);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append('{');
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (buf.length() > 1) {
+                buf.append(", ");
+            }
+            buf.append(i);
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+
+    /**
+     * Note that the set has changed by a known number of ordinals.
+     * 
+     * @param delta
+     *            the change in the number of ordinals
+     */
+    private void counted(int delta) {
+        int count = cardinality;
+        int[] before = ranks;
+        if (count < 0 && before != null) {
+            count = before[words.length];
+        }
+        cardinality = count < 0 ? -1 : count + delta;
+        ranks = null;
+    }
+
+    /**
+     * Note that the set has changed and the ordinals need counting again.
+     */
+    private void uncounted() {
+        ranks = null;
+        cardinality = -1;
+    }
+
+    /**
+     * Get the 64 bits that start at an ordinal, lowest first.
+     *
+     * @param ordinal
+     *            the first ordinal
+     * @return the bits, with 0s past the end of the set
+     */
+    private long getBits(int ordinal) {
+        int index = ordinal >>> WORD_SHIFT;
+        if (index >= words.length) {
+            return 0;
+        }
+
+        int shift = ordinal & WORD_MASK;
+        long bits = words[index] >>> shift;
+        if (shift != 0 && index + 1 < words.length) {
+            bits |= words[index + 1] << (WORD_MASK + 1 - shift);
+        }
+        return bits;
+    }
+
+    /**
+     * Get the number of ordinals before each word, with the number in the
+     * whole set after them, working them out if need be. They are worked out
+     * into a new array that is only published once it is filled, so that
+     * concurrent readers either see it whole or work it out for themselves.
+     * 
+     * @return the counts, which must not be changed
+     */
+    private int[] getRanks() {
+        int[] before = ranks;
+        if (before == null) {
+            before = new int[words.length + 1];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                before[i] = count;
+                count += Long.bitCount(words[i]);
+            }
+            before[words.length] = count;
+            ranks = before;
+        }
+        return before;
+    }
+
+    /**
+     * Shift an ordinal right by this to get the index of its word.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * Mask an ordinal with this to get the index of its bit in its word.
+     */
+    private static final int WORD_MASK = 63;
+
+    /**
+     * The ordinals, 64 to a word.
+     */
+    private long[] words;
+
+    /**
+     * The number of ordinals in the set, or -1 if it needs counting. It is
+     * only changed by the methods that change the set.
+     */
+    private int cardinality;
+
+    /**
+     * The number of ordinals before each word, followed by the number in the
+     * set, or null if they need counting.
+     */
+    private volatile int[] ranks;
+}
@@ -0,0 +1,249 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.BitSet;
+
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * A fast parser for lists of OSIS verse references, such as the osisRef of a
+ * cross reference, e.g. "Gen.1.1 Gen.1.3-Gen.1.5". The verses are written as
+ * ordinals straight into a BitSet or a BitwisePassage, and no objects are
+ * created for each reference.
+ * 
+ * <p>
+ * Only whole verse references and ranges between them are understood, with
+ * the references separated by whitespace, ';' or ','. When the text is
+ * anything else, e.g. a reference to a whole chapter or a verse that is not
+ * in the versification, nothing is written and false is returned. The caller
+ * can then fall back to {@link PassageKeyFactory#getKey(Versification, String)},
+ * which understands much more.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class OsisRefParser {
+    /**
+     * Prevent instantiation
+     */
+    private OsisRefParser() {
+    }
+
+    /**
+     * Set the ordinals of the verses referred to by part of some text.
+     * 
+     * @param v11n
+     *            the versification of the references
+     * @param refs
+     *            the text holding the references
+     * @param start
+     *            the index of the first character of the references
+     * @param end
+     *            the index after the last character of the references
+     * @param ordinals
+     *            where to set the ordinals of the verses
+     * @return true if the references were understood, otherwise false and
+     *         nothing is set
+     */
+    public static boolean parse(Versification v11n, CharSequence refs, int start, int end, BitSet ordinals) {
+        Tokenizer tokenizer = tokenizers.get();
+        if (!tokenizer.scan(v11n, refs, start, end, null, null)) {
+            return false;
+        }
+        tokenizer.scan(v11n, refs, start, end, ordinals, null);
+        return true;
+    }
+
+    /**
+     * Add the verses referred to by some text to a passage.
+     * 
+     * @param refs
+     *            the text holding the references
+     * @param passage
+     *            the passage to which the verses are added
+     * @return true if the references were understood, otherwise false and
+     *         nothing is added
+     */
+    public static boolean parse(CharSequence refs, BitwisePassage passage) {
+        Versification v11n = passage.getVersification();
+        Tokenizer tokenizer = tokenizers.get();
+        if (!tokenizer.scan(v11n, refs, 0, refs.length(), null, null)) {
+            return false;
+        }
+
+        passage.optimizeWrites();
+        tokenizer.scan(v11n, refs, 0, refs.length(), null, passage.store);
+
+        // we do an extra check here because the cost of calculating the
+        // params is non-zero and may be wasted
+        if (passage.suppressEvents == 0) {
+            passage.fireIntervalAdded(passage, null, null);
+        }
+        return true;
+    }
+
+    /**
+     * Walks the text of the references. Each thread reuses its own, so
+     * parsing does not create one for each reference.
+     */
+    private static final class Tokenizer {
+        /**
+         * Check the references and, when there is somewhere to put them, set
+         * their ordinals in either a BitSet or the bits of a passage.
+         * 
+         * @return true if all the references were understood
+         */
+        boolean scan(Versification refSystem, CharSequence refs, int start, int end, BitSet ordinals, OrdinalBitSet store) {
+            v11n = refSystem;
+            text = refs;
+            pos = start;
+            limit = end;
+            try {
+                while (skipSeparators()) {
+                    int first = nextVerse();
+                    if (first < 0) {
+                        return false;
+                    }
+
+                    int last = first;
+                    if (pos < limit && text.charAt(pos) == '-') {
+                        pos++;
+                        last = nextVerse();
+                        if (last < first) {
+                            return false;
+                        }
+                    }
+
+                    if (pos < limit && !isSeparator(text.charAt(pos))) {
+                        return false;
+                    }
+
+                    if (ordinals != null) {
+                        ordinals.set(first, last + 1);
+                    }
+                    if (store != null) {
+                        store.set(first, last + 1);
+                    }
+                }
+                return true;
+            } finally {
+                // Don't hold on to the caller's objects
+                v11n = null;
+                text = null;
+            }
+        }
+
+        /**
+         * Move past any separators.
+         * 
+         * @return true if there is more to read
+         */
+        private boolean skipSeparators() {
+            while (pos < limit && isSeparator(text.charAt(pos))) {
+                pos++;
+            }
+            return pos < limit;
+        }
+
+        /**
+         * Read a reference to a single verse, e.g. Gen.1.1
+         * 
+         * @return the ordinal of the verse or -1 if it is not understood
+         */
+        private int nextVerse() {
+            int bookStart = pos;
+            while (pos < limit && Character.isLetterOrDigit(text.charAt(pos))) {
+                pos++;
+            }
+
+            BibleBook book = BibleBook.fromOSIS(text, bookStart, pos);
+            if (book == null || !v11n.getBooks().contains(book)) {
+                return -1;
+            }
+
+            int chapter = nextNumber();
+            if (chapter < 1 || chapter > v11n.getLastChapter(book)) {
+                return -1;
+            }
+
+            int verse = nextNumber();
+            if (verse < 1 || verse > v11n.getLastVerse(book, chapter)) {
+                return -1;
+            }
+
+            return v11n.getOrdinal(book, chapter, verse);
+        }
+
+        /**
+         * Read a '.' and the number after it.
+         * 
+         * @return the number or -1 if there is none
+         */
+        private int nextNumber() {
+            if (pos >= limit || text.charAt(pos) != '.') {
+                return -1;
+            }
+            pos++;
+
+            int value = 0;
+            int digits = 0;
+            while (pos < limit && digits < MAX_DIGITS) {
+                char c = text.charAt(pos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + c - '0';
+                pos++;
+                digits++;
+            }
+            return digits == 0 ? -1 : value;
+        }
+
+        private static boolean isSeparator(char c) {
+            return c == ';' || c == ',' || Character.isWhitespace(c);
+        }
+
+        private Versification v11n;
+        private CharSequence text;
+        private int pos;
+        private int limit;
+    }
+
+    /**
+     * No chapter or verse number is longer than this
+     */
+    private static final int MAX_DIGITS = 5;
+
+    /**
+     * The tokenizer of each thread
+     */
+    private static final ThreadLocal<Tokenizer> tokenizers = new ThreadLocal<Tokenizer>() {
+        @Override
+        protected Tokenizer initialValue() {
+            return new Tokenizer();
+        }
+    };
+}
@@ -24,14 +24,18 @@ package org.crosswire.jsword.passage;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.crosswire.common.util.Logger;
 import org.crosswire.jsword.JSOtherMsg;
 import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.VersificationMapping;
 
 /**
  * Similar to a Passage, but that stores a ranking for each of the Verses that
@@ -90,6 +94,12 @@ import org.crosswire.jsword.versification.Versification;
  * </p>
  * 
  * <p>
+ * The verses with a non-zero rank are also marked in an OrdinalBitSet, so a
+ * tally with few verses, as most search results are, is walked a long at a
+ * time rather than an int at a time.
+ * </p>
+ * 
+ * <p>
  * To think about - I've upped the MAX_TALLY to 20000 to help the new mapper
  * program. I'm not sure why it was originally 100?
  * 
@@ -110,6 +120,7 @@ public class PassageTally extends AbstractPassage {
     public PassageTally(Versification v11n) {
         super(v11n);
         board = new int[v11n.maximumOrdinal() + 1];
+        used = new OrdinalBitSet(board.length);
     }
 
     /**
@@ -125,6 +136,7 @@ public class PassageTally extends AbstractPassage {
     public PassageTally(Versification v11n, String refs) throws NoSuchVerseException {
         super(v11n, refs);
         board = new int[v11n.maximumOrdinal() + 1];
+        used = new OrdinalBitSet(board.length);
         addVerses(refs);
     }
 
@@ -182,6 +194,7 @@ public class PassageTally extends AbstractPassage {
         PassageTally copy = (PassageTally) super.clone();
 
         copy.board = board.clone();
+        copy.used = used.clone();
 
         return copy;
     }
@@ -230,7 +243,7 @@ public class PassageTally extends AbstractPassage {
                 max_count = Integer.MAX_VALUE;
             }
 
-            Iterator<Key> it = new OrderedVerseIterator(getVersification(), board);
+            Iterator<Key> it = new OrderedVerseIterator(getVersification(), board, used, max_count);
             Key current = null;
             int count = 0;
 
@@ -275,7 +288,7 @@ public class PassageTally extends AbstractPassage {
             max_count = Integer.MAX_VALUE;
         }
 
-        OrderedVerseIterator it = new OrderedVerseIterator(getVersification(), board);
+        OrderedVerseIterator it = new OrderedVerseIterator(getVersification(), board, used, max_count);
         int count = 0;
 
         while (it.hasNext() && count < max_count) {
@@ -304,7 +317,24 @@ public class PassageTally extends AbstractPassage {
         if (order == Order.BIBLICAL) {
             return new VerseIterator();
         }
-        return new OrderedVerseIterator(getVersification(), board);
+        return new OrderedVerseIterator(getVersification(), board, used, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Iterate through no more than the given number of verse elements in the
+     * current sort order. When sorted by rank only the best verses are
+     * sorted, so this is much quicker than {@link #iterator()} for a large
+     * tally of which only the first few are wanted.
+     * 
+     * @param count
+     *            The most verses to iterate through
+     * @return A verse Iterator
+     */
+    public Iterator<Key> iterator(int count) {
+        if (order == Order.BIBLICAL) {
+            return new VerseIterator(count);
+        }
+        return new OrderedVerseIterator(getVersification(), board, used, count);
     }
 
     @Override
@@ -431,8 +461,8 @@ public class PassageTally extends AbstractPassage {
         if (that instanceof PassageTally) {
             PassageTally that_rt = (PassageTally) that;
 
-            int vib = getVersification().maximumOrdinal();
-            for (int i = 0; i <= vib; i++) {
+            OrdinalBitSet that_used = that_rt.used;
+            for (int i = that_used.nextSetBit(0); i >= 0; i = that_used.nextSetBit(i + 1)) {
                 increment(i, that_rt.board[i]);
             }
 
@@ -462,8 +492,8 @@ public class PassageTally extends AbstractPassage {
         if (that instanceof PassageTally) {
             PassageTally that_rt = (PassageTally) that;
 
-            int vib = getVersification().maximumOrdinal();
-            for (int i = 0; i <= vib; i++) {
+            OrdinalBitSet that_used = that_rt.used;
+            for (int i = that_used.nextSetBit(0); i >= 0; i = that_used.nextSetBit(i + 1)) {
                 increment(i, -that_rt.board[i]);
             }
         } else {
@@ -490,11 +520,9 @@ public class PassageTally extends AbstractPassage {
         if (that instanceof PassageTally) {
             PassageTally that_rt = (PassageTally) that;
 
-            int vib = getVersification().maximumOrdinal();
-            for (int i = 0; i <= vib; i++) {
-                if (that_rt.board[i] != 0) {
-                    kill(i);
-                }
+            OrdinalBitSet that_used = that_rt.used;
+            for (int i = that_used.nextSetBit(0); i >= 0; i = that_used.nextSetBit(i + 1)) {
+                kill(i);
             }
         } else {
             for (Key aKey : that) {
@@ -514,10 +542,8 @@ public class PassageTally extends AbstractPassage {
     public void clear() {
         optimizeWrites();
 
-        for (int i = 0; i < board.length; i++) {
-            board[i] = 0;
-        }
-
+        Arrays.fill(board, 0);
+        used.clear();
         size = 0;
 
         fireIntervalRemoved(this, null, null);
@@ -539,26 +565,40 @@ public class PassageTally extends AbstractPassage {
     public Passage trimVerses(int count) {
         optimizeWrites();
 
-        int i = 0;
-        boolean overflow = false;
+        if (size <= count) {
+            return null;
+        }
 
-        Passage remainder = this.clone();
+        // Find the verses to keep without building a Verse for each
+        // Biblical order, like the VerseIterator, starts after ordinal 0.
+        int first = order == Order.BIBLICAL ? 1 : 0;
+        OrdinalBitSet keep = new OrdinalBitSet(board.length);
+        if (order == Order.BIBLICAL) {
+            int kept = 0;
+            for (int i = used.nextSetBit(first); i >= 0 && kept < count; i = used.nextSetBit(i + 1)) {
+                keep.set(i);
+                kept++;
+            }
+        } else {
+            TalliedVerse[] best = rank(board, used, count);
+            for (int i = 0; i < best.length; i++) {
+                keep.set(best[i].ord);
+            }
+        }
 
-        for (Key verse : this) {
-            i++;
-            if (i > count) {
-                remove(verse);
-                overflow = true;
+        PassageTally remainder = this.clone();
+        for (int i = used.nextSetBit(first); i >= 0; i = used.nextSetBit(i + 1)) {
+            if (keep.get(i)) {
+                remainder.kill(i);
             } else {
-                remainder.remove(verse);
+                kill(i);
             }
-
         }
 
-        if (overflow) {
-            return remainder;
-        }
-        return null;
+        fireIntervalRemoved(this, null, null);
+        remainder.fireIntervalRemoved(remainder, null, null);
+
+        return remainder;
     }
 
     /**
@@ -568,15 +608,30 @@ public class PassageTally extends AbstractPassage {
     public void flatten() {
         optimizeWrites();
 
-        for (int i = 0; i < board.length; i++) {
-            if (board[i] != 0) {
-                board[i] = 1;
-            }
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+            board[i] = 1;
         }
 
         max = 1;
     }
 
+    /**
+     * Convert this tally to another Versification. When several verses map
+     * to one, their ranks are added.
+     * 
+     * @param mapping
+     *            How to convert the verses
+     * @return a new tally in the Versification the mapping is to
+     */
+    PassageTally map(VersificationMapping mapping) {
+        PassageTally mapped = new PassageTally(mapping.getTarget());
+        mapping.map(board, mapped.board);
+        mapped.total = total;
+        mapped.order = order;
+        mapped.resetMax();
+        return mapped;
+    }
+
     @Override
     public void blur(int verses, RestrictionType restrict) {
         assert verses > 0;
@@ -600,38 +655,7 @@ public class PassageTally extends AbstractPassage {
                 }
             }
         } else {
-            int[] new_board = new int[board.length];
-
-            for (int i = 0; i < board.length; i++) {
-                if (board[i] != 0) {
-                    // This could be re-written more simply:
-                    // for (int j = -verses; j <= verses; j++) {
-                    //     int k = i + j;
-                    //     if (k >= 0 && k <= BibleInfo.maximumOrdinal()) {
-                    //         new_board[k] += board[i] + verses - mod(j);
-                    //     }
-                    // }
-                    // However splitting the loop in 2 will speed it up quite a bit.
-
-                    for (int j = -verses; j < 0; j++) {
-                        int k = i + j;
-                        if (k >= 0) {
-                            new_board[k] += board[i] + verses + j;
-                        }
-                    }
-
-                    new_board[i] += board[i] + verses;
-
-                    for (int j = 1; j <= verses; j++) {
-                        int k = i + j;
-                        if (k < board.length - 1) {
-                            new_board[k] += board[i] + verses - j;
-                        }
-                    }
-                }
-            }
-
-            board = new_board;
+            board = blur(board, verses);
         }
 
         resetMax();
@@ -642,6 +666,66 @@ public class PassageTally extends AbstractPassage {
         }
     }
 
+    /**
+     * Spread the ranks on a board over the verses around them. Each ranked
+     * verse adds its rank plus <code>verses</code> to itself, and one less to
+     * each verse either side of it for <code>verses</code> verses. That is:
+     * 
+     * <pre>
+     * for (int j = -verses; j &lt;= verses; j++) {
+     *     int k = i + j;
+     *     if (k &gt;= 0 &amp;&amp; k &lt; board.length) {
+     *         blurred[k] += board[i] + verses - Math.abs(j);
+     *     }
+     * }
+     * </pre>
+     * 
+     * <p>
+     * Rather than spreading each verse in turn, each verse gathers from its
+     * neighbours, using running sums, so the time taken does not depend on
+     * how far the ranks are spread. The ranks gathered are a window sum of
+     * the board. The sloping part is a window sum of the window sums of the
+     * ranked verses, as two windows of <code>verses</code> verses overlap by
+     * <code>verses - |j|</code> verses when they start <code>j</code> apart.
+     * </p>
+     * 
+     * @param board
+     *            The ranks to spread
+     * @param verses
+     *            How far to spread them
+     * @return A new board of the spread ranks
+     */
+    private static int[] blur(int[] board, int verses) {
+        int length = board.length;
+
+        // ranks[i] is the sum of the ranks before i, and
+        // ranked[i] the number of ranked verses before i.
+        int[] ranks = new int[length + 1];
+        int[] ranked = new int[length + 1];
+        for (int i = 0; i < length; i++) {
+            ranks[i + 1] = ranks[i] + board[i];
+            ranked[i + 1] = ranked[i] + (board[i] != 0 ? 1 : 0);
+        }
+
+        // slopes[x] is the sum, for each y before x, of the number of ranked
+        // verses from y - verses + 1 to y.
+        int span = length + verses;
+        int[] slopes = new int[span + 1];
+        for (int y = 0; y < span; y++) {
+            int from = Math.max(0, y - verses + 1);
+            int to = Math.min(length, y + 1);
+            slopes[y + 1] = slopes[y] + (from < to ? ranked[to] - ranked[from] : 0);
+        }
+
+        int[] blurred = new int[length];
+        for (int k = 0; k < length; k++) {
+            int from = Math.max(0, k - verses);
+            int to = Math.min(length, k + verses + 1);
+            blurred[k] = ranks[to] - ranks[from] + slopes[k + verses] - slopes[k];
+        }
+        return blurred;
+    }
+
     /**
      * Sometimes we end up not knowing what the max is - this makes sure we know
      * accurately. Same with size.
@@ -651,9 +735,11 @@ public class PassageTally extends AbstractPassage {
 
         max = 0;
         size = 0;
+        used.clear();
         for (int i = 0; i < board.length; i++) {
             if (board[i] > 0) {
                 size++;
+                used.set(i);
             }
             if (board[i] > max) {
                 max = board[i];
@@ -661,6 +747,46 @@ public class PassageTally extends AbstractPassage {
         }
     }
 
+    /**
+     * Find the best ranked verses, best first. Verses of equal rank are in
+     * Biblical order. Only the best <code>count</code> are kept while looking,
+     * in a heap with the worst of them on top, so only they are sorted.
+     * 
+     * @param board
+     *            The ranks of the verses
+     * @param used
+     *            The verses with a non-zero rank
+     * @param count
+     *            The most verses to find
+     * @return the best verses
+     */
+    private static TalliedVerse[] rank(int[] board, OrdinalBitSet used, int count) {
+        int total = used.cardinality();
+        TalliedVerse[] best = null;
+        if (count >= total) {
+            best = new TalliedVerse[total];
+            int n = 0;
+            for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+                best[n++] = new TalliedVerse(i, board[i]);
+            }
+        } else {
+            PriorityQueue<TalliedVerse> heap = new PriorityQueue<TalliedVerse>(count + 1, Collections.reverseOrder());
+            for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+                if (heap.size() < count) {
+                    heap.add(new TalliedVerse(i, board[i]));
+                } else if (count > 0 && board[i] > heap.peek().tally) {
+                    // Any later verse of equal rank comes after the worst
+                    heap.poll();
+                    heap.add(new TalliedVerse(i, board[i]));
+                }
+            }
+            best = heap.toArray(new TalliedVerse[heap.size()]);
+        }
+
+        Arrays.sort(best);
+        return best;
+    }
+
     /**
      * Increment/Decrement this verses in the rankings
      * 
@@ -702,8 +828,10 @@ public class PassageTally extends AbstractPassage {
         // Recompute the size
         if (exists && board[ord] == 0) {
             size--;
+            used.clear(ord);
         } else if (!exists && board[ord] > 0) {
             size++;
+            used.set(ord);
         }
     }
 
@@ -732,6 +860,7 @@ public class PassageTally extends AbstractPassage {
     private void kill(int ord) {
         if (board[ord] > 0) {
             size--;
+            used.clear(ord);
         }
 
         board[ord] = 0;
@@ -770,6 +899,13 @@ public class PassageTally extends AbstractPassage {
 
         in.defaultReadObject();
 
+        used = new OrdinalBitSet(board.length);
+        for (int i = 0; i < board.length; i++) {
+            if (board[i] > 0) {
+                used.set(i);
+            }
+        }
+
         readObjectSupport(in);
     }
 
@@ -808,6 +944,11 @@ public class PassageTally extends AbstractPassage {
      */
     protected int[] board;
 
+    /**
+     * The verses on the board with a non-zero rank
+     */
+    private transient OrdinalBitSet used;
+
     /**
      * The maximum tally possible
      */
@@ -838,6 +979,17 @@ public class PassageTally extends AbstractPassage {
          * Find the first unused verse
          */
         public VerseIterator() {
+            this(Integer.MAX_VALUE);
+        }
+
+        /**
+         * Find the first unused verse
+         * 
+         * @param count
+         *            The most verses to iterate through
+         */
+        public VerseIterator(int count) {
+            remaining = count;
             calculateNext();
         }
 
@@ -845,18 +997,19 @@ public class PassageTally extends AbstractPassage {
          * @see java.util.Iterator#hasNext()
          */
         public boolean hasNext() {
-            return next <= board.length - 1;
+            return next >= 0 && remaining > 0;
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#next()
          */
         public Key next() throws NoSuchElementException {
-            if (next >= board.length) {
+            if (!hasNext()) {
                 throw new NoSuchElementException();
             }
 
             Key retcode = getVersification().decodeOrdinal(next);
+            remaining--;
             calculateNext();
 
             return retcode;
@@ -873,13 +1026,14 @@ public class PassageTally extends AbstractPassage {
          * Find the next bit
          */
         private void calculateNext() {
-            do {
-                next++;
-            } while (next < board.length && board[next] == 0);
+            next = used.nextSetBit(next + 1);
         }
 
         /** What is the next Verse to be considered */
         private int next;
+
+        /** How many more Verses may be returned */
+        private int remaining;
     }
 
     /**
@@ -891,18 +1045,9 @@ public class PassageTally extends AbstractPassage {
         /**
          * Find the first unused verse
          */
-        protected OrderedVerseIterator(Versification v11n, int[] board) {
+        protected OrderedVerseIterator(Versification v11n, int[] board, OrdinalBitSet used, int count) {
             referenceSystem = v11n;
-            TreeSet<TalliedVerse> output = new TreeSet<TalliedVerse>();
-
-            int vib = board.length - 1;
-            for (int i = 0; i <= vib; i++) {
-                if (board[i] != 0) {
-                    output.add(new TalliedVerse(i, board[i]));
-                }
-            }
-
-            it = output.iterator();
+            output = rank(board, used, count);
             last = null;
         }
 
@@ -910,14 +1055,18 @@ public class PassageTally extends AbstractPassage {
          * @see java.util.Iterator#hasNext()
          */
         public boolean hasNext() {
-            return it.hasNext();
+            return next < output.length;
         }
 
         /* (non-Javadoc)
          * @see java.util.Iterator#next()
          */
         public Key next() throws NoSuchElementException {
-            last = it.next();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            last = output[next++];
             return referenceSystem.decodeOrdinal(last.ord);
         }
 
@@ -950,9 +1099,14 @@ public class PassageTally extends AbstractPassage {
         private TalliedVerse last;
 
         /**
-         * The Iterator we are converting
+         * The verses in rank order
          */
-        private Iterator<TalliedVerse> it;
+        private TalliedVerse[] output;
+
+        /**
+         * The index of the next verse in the output
+         */
+        private int next;
     }
 
     /**
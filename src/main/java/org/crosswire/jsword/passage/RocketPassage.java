@@ -31,7 +31,9 @@ import org.crosswire.jsword.versification.Versification;
  * A RocketPassage is a bit and heavy implementation of Passage that goes fairly
  * quickly once let of the leash. It manages its speed by creating contained
  * instances of DistinctPassage and RangedPassage and selects the fastest
- * implementation for each of its methods from the 3 available.
+ * implementation for each of its methods from the 3 available. Counting,
+ * indexing and comparing with other bit-backed passages are left to the bits,
+ * which are quicker at them than the contained passages.
  * 
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's authors.
@@ -127,20 +129,6 @@ public class RocketPassage extends BitwisePassage {
         return super.countRanges(restrict);
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.crosswire.jsword.passage.Passage#countVerses()
-     */
-    @Override
-    public int countVerses() {
-        if (distinct != null) {
-            return distinct.countVerses();
-        }
-
-        return super.countVerses();
-    }
-
     /*
      * (non-Javadoc)
      * 
@@ -169,34 +157,6 @@ public class RocketPassage extends BitwisePassage {
         return super.rangeIterator(restrict);
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.crosswire.jsword.passage.Passage#isEmpty()
-     */
-    @Override
-    public boolean isEmpty() {
-        if (distinct != null) {
-            return distinct.isEmpty();
-        }
-
-        return super.isEmpty();
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.crosswire.jsword.passage.Passage#getVerseAt(int)
-     */
-    @Override
-    public Verse getVerseAt(int offset) throws ArrayIndexOutOfBoundsException {
-        if (distinct != null) {
-            return distinct.getVerseAt(offset);
-        }
-
-        return super.getVerseAt(offset);
-    }
-
     /*
      * (non-Javadoc)
      * 
@@ -234,7 +194,8 @@ public class RocketPassage extends BitwisePassage {
      */
     @Override
     public boolean containsAll(Passage that) {
-        if (ranged != null) {
+        // Bits are quicker to compare than ranges
+        if (ranged != null && !(that instanceof BitwisePassage)) {
             return ranged.containsAll(that);
         }
 
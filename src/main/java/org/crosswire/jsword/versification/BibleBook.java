@@ -210,6 +210,47 @@ public enum BibleBook {
         return osisMap.get(match);
     }
 
+    /**
+     * Case insensitive search for BibleBook for an OSIS name held in part of
+     * a CharSequence. Unlike {@link #fromOSIS(String)}, this creates no
+     * objects, so it is suited to parsing large numbers of references.
+     *
+     * @param text
+     *            the text holding the OSIS name
+     * @param start
+     *            the index of the first character of the name
+     * @param end
+     *            the index after the last character of the name
+     * @return the matching BibleBook or null
+     */
+    public static BibleBook fromOSIS(CharSequence text, int start, int end) {
+        int mask = osisTable.length - 1;
+        for (int i = hashOSIS(text, start, end) & mask; osisTable[i] != null; i = (i + 1) & mask) {
+            String osis = osisTable[i].osis;
+            if (osis.length() == end - start) {
+                int j = 0;
+                while (j < osis.length() && Character.toLowerCase(osis.charAt(j)) == Character.toLowerCase(text.charAt(start + j))) {
+                    j++;
+                }
+                if (j == osis.length()) {
+                    return osisTable[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compute a case insensitive hash of an OSIS name.
+     */
+    private static int hashOSIS(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
     /**
      * Get the BookName.
      *
@@ -292,6 +333,26 @@ public enum BibleBook {
         return getBook(find) != null;
     }
 
+    /**
+     * Is the given string an abbreviation that could stand for more than one
+     * book. If it is, getBook() returns the first of them.
+     *
+     * @param find
+     *            The string to identify
+     * @return true when the book name matches more than one book
+     */
+    public static boolean isAmbiguous(String find) {
+        if (!containsLetter(find) || fromOSIS(find) != null) {
+            return false;
+        }
+
+        if (bibleNames.getBook(find) != null) {
+            return bibleNames.isAmbiguous(find);
+        }
+
+        return englishBibleNames != null && englishBibleNames.isAmbiguous(find);
+    }
+
     /* package */ static BibleBook[] getBooks() {
         return books;
     }
@@ -331,6 +392,12 @@ public enum BibleBook {
     /** A quick lookup based on OSIS name for the book */
     private static Map<String, BibleBook> osisMap = new HashMap<String, BibleBook>();
 
+    /**
+     * An open addressed hash table of the books by OSIS name, which can be
+     * searched without creating a String
+     */
+    private static BibleBook[] osisTable;
+
     /** The universe of ordered books, allowing for efficient previous next */
     private static BibleBook[] books = BibleBook.values();
 
@@ -344,6 +411,18 @@ public enum BibleBook {
         for (BibleBook book : BibleBook.values()) {
             osisMap.put(BookName.normalize(book.getOSIS(), Locale.ENGLISH), book);
         }
+
+        // Keep the table no more than a quarter full so probes are short
+        int size = Integer.highestOneBit(BibleBook.values().length) * 4;
+        osisTable = new BibleBook[size];
+        for (BibleBook book : BibleBook.values()) {
+            String osis = book.getOSIS();
+            int i = hashOSIS(osis, 0, osis.length()) & (size - 1);
+            while (osisTable[i] != null) {
+                i = (i + 1) & (size - 1);
+            }
+            osisTable[i] = book;
+        }
         initialize();
     }
 
@@ -21,6 +21,7 @@
  */
 package org.crosswire.jsword.versification;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -113,16 +114,33 @@ import org.crosswire.common.util.StringUtil;
             return bookName.getBook();
         }
 
-        for (int i = 0; i < books.length; i++) {
-            bookName = books[i];
-            if (bookName.match(match)) {
-                return bookName.getBook();
-            }
+        // Otherwise the first book to match by prefix, as BookName.match
+        int ordinal = prefixes.find(match);
+        if (ordinal >= 0) {
+            return books[ordinal].getBook();
         }
 
         return null;
     }
 
+    /**
+     * Determine whether the given string is an abbreviation that could stand
+     * for more than one book. Such a string is still resolved by getBook(),
+     * to the first of the books in canonical order, but the caller may want
+     * to warn the user. Full, short and alternate names are not ambiguous.
+     *
+     * @param find
+     *            The string to identify
+     * @return true if more than one book matches
+     */
+    /* package */ boolean isAmbiguous(String find) {
+        String match = BookName.normalize(find, locale);
+        if (fullBooksMap.containsKey(match) || shortBooksMap.containsKey(match) || altBooksMap.containsKey(match)) {
+            return false;
+        }
+        return prefixes.count(match) > 1;
+    }
+
     /**
      * Is the given string a valid book name. If this method returns true then
      * getBook() will return a BibleBook and not null.
@@ -150,6 +168,8 @@ import org.crosswire.common.util.StringUtil;
 
         altBooksMap = new HashMap<String, BookName>(booksInBible);
 
+        prefixes = new PrefixTrie();
+
         String className = BibleNames.class.getName();
         String shortClassName = ClassUtil.getShortClassName(className);
         ResourceBundle resources = ResourceBundle.getBundle(shortClassName, locale, CWClassLoader.instance(BibleNames.class));
@@ -177,8 +197,12 @@ import org.crosswire.common.util.StringUtil;
 
             for (int j = 0; j < alternates.length; j++) {
                 altBooksMap.put(alternates[j], bookName);
+                prefixes.add(alternates[j], book.ordinal(), true);
             }
 
+            prefixes.add(bookName.getNormalizedLongName(), book.ordinal(), false);
+            prefixes.add(bookName.getNormalizedShortName(), book.ordinal(), true);
+
         }
     }
 
@@ -194,6 +218,129 @@ import org.crosswire.common.util.StringUtil;
         return null;
     }
 
+    /**
+     * A trie of the normalized names of the books, which finds the books that
+     * match a name by prefix, as in {@link BookName#match(String)}, with one
+     * walk of the name rather than by trying each name of each book. Books
+     * are identified by their ordinal, which is their position in books.
+     */
+    private static final class PrefixTrie {
+        /**
+         * Add a name of a book.
+         *
+         * @param name
+         *            the normalized name
+         * @param ordinal
+         *            the ordinal of the book
+         * @param matchLonger
+         *            whether the name also matches names that it is a prefix
+         *            of
+         */
+        void add(String name, int ordinal, boolean matchLonger) {
+            Node node = root;
+            node.through.set(ordinal);
+            for (int i = 0; i < name.length(); i++) {
+                node = node.getChild(name.charAt(i), true);
+                node.through.set(ordinal);
+            }
+            if (matchLonger) {
+                node.ends.set(ordinal);
+            }
+        }
+
+        /**
+         * Find the first book that matches the name by prefix. That is, the
+         * name is a prefix of one of its names, or one of its short or
+         * alternate names is a prefix of the name.
+         *
+         * @param name
+         *            the normalized name
+         * @return the lowest ordinal of the matching books, or -1 if none
+         */
+        int find(String name) {
+            int first = Integer.MAX_VALUE;
+            Node node = root;
+            for (int i = 0; i < name.length(); i++) {
+                first = lower(first, node.ends.nextSetBit(0));
+                node = node.getChild(name.charAt(i), false);
+                if (node == null) {
+                    return first == Integer.MAX_VALUE ? -1 : first;
+                }
+            }
+            first = lower(first, node.through.nextSetBit(0));
+            return first == Integer.MAX_VALUE ? -1 : first;
+        }
+
+        /**
+         * Count the books that match the name by prefix.
+         *
+         * @param name
+         *            the normalized name
+         * @return the number of matching books
+         */
+        int count(String name) {
+            BitSet matches = new BitSet();
+            Node node = root;
+            for (int i = 0; i < name.length(); i++) {
+                matches.or(node.ends);
+                node = node.getChild(name.charAt(i), false);
+                if (node == null) {
+                    return matches.cardinality();
+                }
+            }
+            matches.or(node.through);
+            return matches.cardinality();
+        }
+
+        private static int lower(int first, int ordinal) {
+            return ordinal >= 0 && ordinal < first ? ordinal : first;
+        }
+
+        /**
+         * A node of the trie, for the prefix spelled by the path to it.
+         */
+        private static final class Node {
+            Node getChild(char c, boolean create) {
+                for (int i = 0; i < size; i++) {
+                    if (keys[i] == c) {
+                        return children[i];
+                    }
+                }
+
+                if (!create) {
+                    return null;
+                }
+
+                if (size == keys.length) {
+                    char[] newKeys = new char[size * 2];
+                    System.arraycopy(keys, 0, newKeys, 0, size);
+                    keys = newKeys;
+                    Node[] newChildren = new Node[size * 2];
+                    System.arraycopy(children, 0, newChildren, 0, size);
+                    children = newChildren;
+                }
+
+                Node child = new Node();
+                keys[size] = c;
+                children[size] = child;
+                size++;
+                return child;
+            }
+
+            /** The books with a name that starts with this prefix */
+            final BitSet through = new BitSet();
+
+            /** The books with a short or alternate name of this prefix */
+            final BitSet ends = new BitSet();
+
+            private char[] keys = new char[2];
+            private Node[] children = new Node[2];
+            private int size;
+        }
+
+        private final Node root = new Node();
+    }
+
     private static final String FULL_KEY = ".Full";
     private static final String SHORT_KEY = ".Short";
     private static final String ALT_KEY = ".Alt";
@@ -219,4 +366,10 @@ import org.crosswire.common.util.StringUtil;
      * generated at runtime
      */
     private Map<String, BookName> altBooksMap;
+
+    /**
+     * All the names of the books of the Bible, normalized, for matching by
+     * prefix.
+     */
+    private PrefixTrie prefixes;
 }
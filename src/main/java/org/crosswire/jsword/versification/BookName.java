@@ -22,7 +22,6 @@
 package org.crosswire.jsword.versification;
 
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 import org.crosswire.common.util.StringUtil;
 import org.crosswire.jsword.book.CaseType;
@@ -224,7 +223,16 @@ public final class BookName {
      * @return the normalized string
      */
     public static String normalize(String str, Locale locale) {
-        return normPattern.matcher(str).replaceAll("").toLowerCase(locale);
+        int len = str.length();
+        StringBuilder buf = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            // remove spaces and some punctuation in Book Name (make sure , is allowed)
+            if (c != '.' && c != ' ') {
+                buf.append(c);
+            }
+        }
+        return buf.toString().toLowerCase(locale);
     }
 
     /**
@@ -298,9 +306,6 @@ public final class BookName {
         return BookName.bookCase;
     }
 
-    /** remove spaces and some punctuation in Book Name (make sure , is allowed) */
-    private static Pattern normPattern = Pattern.compile("[. ]");
-
     private BibleBook book;
     private String longName;
     private String normalizedLongName;
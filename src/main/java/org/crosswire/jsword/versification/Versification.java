@@ -500,7 +500,24 @@ public class Versification implements ReferenceSystem, Serializable {
      * @return The ordinal number of verses
      */
     public int getOrdinal(Verse verse) {
-        return chapterStarts[bookList.getOrdinal(verse.getBook())][verse.getChapter()] + verse.getVerse();
+        return getOrdinal(verse.getBook(), verse.getChapter(), verse.getVerse());
+    }
+
+    /**
+     * Where does this verse come in the Bible. This is the same as
+     * {@link #getOrdinal(Verse)}, for when there is no Verse at hand. The
+     * reference is not validated.
+     *
+     * @param book
+     *            The book of the verse, which must be in this Versification
+     * @param chapter
+     *            The chapter of the verse
+     * @param verse
+     *            The verse number of the verse
+     * @return The ordinal number of the verse
+     */
+    public int getOrdinal(BibleBook book, int chapter, int verse) {
+        return chapterStarts[bookList.getOrdinal(book)][chapter] + verse;
     }
 
     /**
@@ -0,0 +1,273 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.versification;
+
+import java.util.Map;
+
+import org.crosswire.jsword.passage.OrdinalBitSet;
+import org.crosswire.jsword.passage.Verse;
+
+/**
+ * A table from the ordinals of the verses of one Versification to the
+ * ordinals of the same verses in another. Each verse maps to no verse, to
+ * one verse or, when the other Versification splits it, to several verses,
+ * which are flagged. Several verses may map to the same verse.
+ *
+ * <p>
+ * Most of the Bible is numbered the same in most Versifications, so the
+ * table is also kept as runs of verses that map to consecutive verses. Sets
+ * of ordinals are mapped a run at a time, and so up to a long at a time,
+ * rather than a verse at a time.
+ * </p>
+ *
+ * <p>
+ * Mappings are built by {@link VersificationMappings}.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class VersificationMapping {
+    /**
+     * Build a mapping from its table.
+     *
+     * @param source
+     *            the Versification mapped from
+     * @param target
+     *            the Versification mapped to
+     * @param targets
+     *            for each ordinal of the source, the first ordinal of the
+     *            target it maps to, or -1 if it does not map
+     * @param extra
+     *            the further ordinals of the target for the source ordinals
+     *            that map to more than one
+     */
+    VersificationMapping(Versification source, Versification target, int[] targets, Map<Integer, int[]> extra) {
+        this.source = source;
+        this.target = target;
+        this.targets = targets;
+        this.extra = extra;
+
+        oneToMany = new OrdinalBitSet(targets.length);
+        for (Integer ordinal : extra.keySet()) {
+            oneToMany.set(ordinal.intValue());
+        }
+
+        // Find the runs of source ordinals that map to consecutive targets
+        int count = 0;
+        int[] starts = new int[targets.length];
+        int[] ends = new int[targets.length];
+        int i = 0;
+        while (i < targets.length) {
+            if (targets[i] < 0) {
+                i++;
+                continue;
+            }
+
+            int end = i + 1;
+            while (end < targets.length && targets[end] == targets[end - 1] + 1) {
+                end++;
+            }
+            starts[count] = i;
+            ends[count] = end;
+            count++;
+            i = end;
+        }
+        runStarts = new int[count];
+        runEnds = new int[count];
+        System.arraycopy(starts, 0, runStarts, 0, count);
+        System.arraycopy(ends, 0, runEnds, 0, count);
+    }
+
+    /**
+     * @return the Versification that is mapped from
+     */
+    public Versification getSource() {
+        return source;
+    }
+
+    /**
+     * @return the Versification that is mapped to
+     */
+    public Versification getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the ordinal of the target to which an ordinal of the source maps.
+     * If it maps to more than one, this is the first of them.
+     *
+     * @param ordinal
+     *            the ordinal of a verse of the source
+     * @return the ordinal of the verse of the target, or -1 if there is none
+     */
+    public int map(int ordinal) {
+        if (ordinal < 0 || ordinal >= targets.length) {
+            return -1;
+        }
+        return targets[ordinal];
+    }
+
+    /**
+     * Get all the ordinals of the target to which an ordinal of the source
+     * maps.
+     *
+     * @param ordinal
+     *            the ordinal of a verse of the source
+     * @return the ordinals of the verses of the target, possibly none
+     */
+    public int[] mapAll(int ordinal) {
+        int first = map(ordinal);
+        if (first < 0) {
+            return new int[0];
+        }
+
+        int[] more = isOneToMany(ordinal) ? extra.get(Integer.valueOf(ordinal)) : null;
+        if (more == null) {
+            return new int[] { first };
+        }
+
+        int[] all = new int[more.length + 1];
+        all[0] = first;
+        System.arraycopy(more, 0, all, 1, more.length);
+        return all;
+    }
+
+    /**
+     * @param ordinal
+     *            the ordinal of a verse of the source
+     * @return whether the verse maps to more than one verse of the target
+     */
+    public boolean isOneToMany(int ordinal) {
+        return oneToMany.get(ordinal);
+    }
+
+    /**
+     * Get the verse of the target to which a verse of the source maps. If it
+     * maps to more than one, this is the first of them.
+     *
+     * @param verse
+     *            the verse of the source
+     * @return the verse of the target, or null if there is none
+     */
+    public Verse map(Verse verse) {
+        int ordinal = map(source.getOrdinal(verse));
+        return ordinal < 0 ? null : target.decodeOrdinal(ordinal);
+    }
+
+    /**
+     * Add the target ordinals of a set of source ordinals to another set.
+     *
+     * @param from
+     *            the ordinals of the source
+     * @param to
+     *            where to add the ordinals of the target
+     */
+    public void map(OrdinalBitSet from, OrdinalBitSet to) {
+        for (int i = 0; i < runStarts.length; i++) {
+            int start = runStarts[i];
+            to.or(from, start, runEnds[i], targets[start] - start);
+        }
+
+        for (int i = oneToMany.nextSetBit(0); i >= 0; i = oneToMany.nextSetBit(i + 1)) {
+            if (from.get(i)) {
+                int[] more = extra.get(Integer.valueOf(i));
+                for (int j = 0; j < more.length; j++) {
+                    to.set(more[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a count for each source ordinal to the count of each target ordinal
+     * it maps to. When several verses map to one, their counts are added.
+     *
+     * @param from
+     *            the counts, indexed by source ordinal
+     * @param to
+     *            where to add the counts, indexed by target ordinal
+     */
+    public void map(int[] from, int[] to) {
+        int length = Math.min(from.length, targets.length);
+        for (int i = 0; i < length; i++) {
+            int count = from[i];
+            if (count == 0 || targets[i] < 0) {
+                continue;
+            }
+
+            to[targets[i]] += count;
+            if (oneToMany.get(i)) {
+                int[] more = extra.get(Integer.valueOf(i));
+                for (int j = 0; j < more.length; j++) {
+                    to[more[j]] += count;
+                }
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return source.getName() + " -> " + target.getName();
+    }
+
+    /**
+     * The Versification mapped from
+     */
+    private final Versification source;
+
+    /**
+     * The Versification mapped to
+     */
+    private final Versification target;
+
+    /**
+     * The first target ordinal of each source ordinal, or -1
+     */
+    private final int[] targets;
+
+    /**
+     * The source ordinals that map to more than one target ordinal
+     */
+    private final OrdinalBitSet oneToMany;
+
+    /**
+     * The target ordinals after the first, of those that map to more than one
+     */
+    private final Map<Integer, int[]> extra;
+
+    /**
+     * The first source ordinal of each run
+     */
+    private final int[] runStarts;
+
+    /**
+     * The source ordinal after the last of each run
+     */
+    private final int[] runEnds;
+}
@@ -0,0 +1,387 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.versification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.IOUtil;
+import org.crosswire.common.util.Logger;
+import org.crosswire.common.util.PropertyMap;
+import org.crosswire.common.util.ResourceUtil;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.system.SystemKJVA;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * The VersificationMappings class builds the mappings between Versifications
+ * as they are needed, and keeps them.
+ *
+ * <p>
+ * Each Versification is mapped to and from a common numbering, which is that
+ * of the KJV together with its Apocrypha. A verse is taken to have the same
+ * book, chapter and verse number in the common numbering as it has in its own
+ * Versification, unless the rules for its Versification say otherwise. The
+ * rules are found in <code>versification/<i>name</i>.properties</code>, where
+ * each line maps a verse or a range of verses in the Versification to a verse
+ * or a range of verses in the common numbering, using OSIS references:
+ * </p>
+ *
+ * <pre>
+ * Ps.9.22-Ps.9.39=Ps.10.1-Ps.10.18
+ * Rom.14.24-Rom.14.26=Rom.16.25-Rom.16.27
+ * 3John.1.14-3John.1.15=3John.1.14
+ * Dan.3.24-Dan.3.90=
+ * </pre>
+ *
+ * <p>
+ * The ranges either side are of the same length, or one side is a single
+ * verse, which is split or joined. Nothing on the right means the verses are
+ * not found in the common numbering. A Versification without rules is
+ * numbered as the KJV.
+ * </p>
+ *
+ * <p>
+ * A mapping from one Versification to another goes through the common
+ * numbering, and is compiled into a table of ordinals the first time it is
+ * asked for.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class VersificationMappings {
+    /**
+     * This class is a singleton, enforced by a private constructor.
+     */
+    private VersificationMappings() {
+        mappings = new ConcurrentHashMap<String, VersificationMapping>();
+        rules = new HashMap<String, Map<Integer, int[]>>();
+    }
+
+    /**
+     * Get the singleton instance of VersificationMappings.
+     *
+     * @return the singleton
+     */
+    public static VersificationMappings instance() {
+        return instance;
+    }
+
+    /**
+     * Get the mapping between two Versifications, given by their names.
+     *
+     * @param source
+     *            the name of the Versification to map from
+     * @param target
+     *            the name of the Versification to map to
+     * @return the mapping or null if either Versification is not known
+     */
+    public VersificationMapping getMapping(String source, String target) {
+        Versifications versifications = Versifications.instance();
+        Versification from = versifications.getVersification(source);
+        Versification to = versifications.getVersification(target);
+        if (from == null || to == null) {
+            return null;
+        }
+        return getMapping(from, to);
+    }
+
+    /**
+     * Get the mapping between two Versifications.
+     *
+     * @param source
+     *            the Versification to map from
+     * @param target
+     *            the Versification to map to
+     * @return the mapping
+     */
+    public VersificationMapping getMapping(Versification source, Versification target) {
+        String key = source.getName() + KEY_SEPARATOR + target.getName();
+        VersificationMapping mapping = mappings.get(key);
+        if (mapping == null) {
+            // Only build each mapping once.
+            synchronized (this) {
+                mapping = mappings.get(key);
+                if (mapping == null) {
+                    mapping = build(source, target);
+                    mappings.put(key, mapping);
+                }
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Compile the table of a mapping. The caller must hold the lock.
+     */
+    private VersificationMapping build(Versification source, Versification target) {
+        int size = source.maximumOrdinal() + 1;
+        int[] targets = new int[size];
+        Map<Integer, int[]> extra = new HashMap<Integer, int[]>();
+
+        if (source == target) {
+            for (int i = 0; i < size; i++) {
+                targets[i] = i;
+            }
+            return new VersificationMapping(source, target, targets, extra);
+        }
+
+        Map<Integer, int[]> sourceRules = getRules(source);
+        Map<Integer, int[]> common = getCommonToOrdinals(target);
+        int[] found = new int[16];
+        for (int i = 0; i < size; i++) {
+            int[] keys = sourceRules.get(Integer.valueOf(i));
+            if (keys == null) {
+                keys = new int[] { getCommonKey(source.decodeOrdinal(i)) };
+            }
+
+            int count = 0;
+            for (int j = 0; j < keys.length; j++) {
+                int[] ordinals = common.get(Integer.valueOf(keys[j]));
+                if (ordinals == null) {
+                    continue;
+                }
+                if (count + ordinals.length > found.length) {
+                    int[] bigger = new int[2 * (count + ordinals.length)];
+                    System.arraycopy(found, 0, bigger, 0, count);
+                    found = bigger;
+                }
+                System.arraycopy(ordinals, 0, found, count, ordinals.length);
+                count += ordinals.length;
+            }
+
+            if (count == 0) {
+                targets[i] = -1;
+                continue;
+            }
+
+            // Order the verses found and drop any found twice
+            Arrays.sort(found, 0, count);
+            int distinct = 1;
+            for (int j = 1; j < count; j++) {
+                if (found[j] != found[distinct - 1]) {
+                    found[distinct++] = found[j];
+                }
+            }
+
+            targets[i] = found[0];
+            if (distinct > 1) {
+                int[] more = new int[distinct - 1];
+                System.arraycopy(found, 1, more, 0, more.length);
+                extra.put(Integer.valueOf(i), more);
+            }
+        }
+
+        return new VersificationMapping(source, target, targets, extra);
+    }
+
+    /**
+     * Find, for each verse in the common numbering, the ordinals of the
+     * verses of a Versification that map to it.
+     */
+    private Map<Integer, int[]> getCommonToOrdinals(Versification v11n) {
+        Map<Integer, int[]> v11nRules = getRules(v11n);
+        Map<Integer, int[]> common = new HashMap<Integer, int[]>();
+        int size = v11n.maximumOrdinal() + 1;
+        for (int i = 0; i < size; i++) {
+            int[] keys = v11nRules.get(Integer.valueOf(i));
+            if (keys == null) {
+                keys = new int[] { getCommonKey(v11n.decodeOrdinal(i)) };
+            }
+
+            for (int j = 0; j < keys.length; j++) {
+                Integer key = Integer.valueOf(keys[j]);
+                int[] ordinals = common.get(key);
+                if (ordinals == null) {
+                    ordinals = new int[] { i };
+                } else {
+                    int[] more = new int[ordinals.length + 1];
+                    System.arraycopy(ordinals, 0, more, 0, ordinals.length);
+                    more[ordinals.length] = i;
+                    ordinals = more;
+                }
+                common.put(key, ordinals);
+            }
+        }
+        return common;
+    }
+
+    /**
+     * Get the rules of a Versification, as the common numbering of each
+     * ordinal that a rule covers. The caller must hold the lock.
+     */
+    private Map<Integer, int[]> getRules(Versification v11n) {
+        Map<Integer, int[]> v11nRules = rules.get(v11n.getName());
+        if (v11nRules == null) {
+            v11nRules = loadRules(v11n);
+            rules.put(v11n.getName(), v11nRules);
+        }
+        return v11nRules;
+    }
+
+    /**
+     * Read and compile the rules of a Versification.
+     */
+    private Map<Integer, int[]> loadRules(Versification v11n) {
+        Map<Integer, int[]> v11nRules = new HashMap<Integer, int[]>();
+
+        PropertyMap lines = new PropertyMap();
+        String resource = DIR_MAPPINGS + '/' + v11n.getName() + FileUtil.EXTENSION_PROPERTIES;
+        InputStream in = null;
+        try {
+            in = ResourceUtil.getResourceAsStream(VersificationMappings.class, resource);
+            lines.load(in);
+        } catch (MissingResourceException e) {
+            // No rules, so it is numbered as the KJV
+            return v11nRules;
+        } catch (IOException e) {
+            log.error("Unable to read the mapping rules in " + resource, e);
+            return v11nRules;
+        } finally {
+            IOUtil.close(in);
+        }
+
+        Versification common = Versifications.instance().getVersification(SystemKJVA.V11N_NAME);
+        for (Map.Entry<String, String> entry : lines.entrySet()) {
+            int[] from = parseRange(v11n, entry.getKey());
+            int[] to = entry.getValue().trim().length() == 0 ? new int[0] : parseRange(common, entry.getValue());
+            if (from == null || to == null) {
+                log.warn("Ignoring bad mapping rule for " + v11n.getName() + ": " + entry.getKey() + '=' + entry.getValue());
+                continue;
+            }
+
+            for (int i = 0; i < to.length; i++) {
+                to[i] = getCommonKey(common.decodeOrdinal(to[i]));
+            }
+
+            if (from.length == to.length) {
+                for (int i = 0; i < from.length; i++) {
+                    v11nRules.put(Integer.valueOf(from[i]), new int[] { to[i] });
+                }
+            } else if (from.length == 1) {
+                v11nRules.put(Integer.valueOf(from[0]), to);
+            } else if (to.length <= 1) {
+                for (int i = 0; i < from.length; i++) {
+                    v11nRules.put(Integer.valueOf(from[i]), to);
+                }
+            } else {
+                log.warn("Ignoring mapping rule of unequal ranges for " + v11n.getName() + ": " + entry.getKey() + '=' + entry.getValue());
+            }
+        }
+        return v11nRules;
+    }
+
+    /**
+     * Get the ordinals of an OSIS reference to a verse or a range of verses,
+     * such as Gen.1.1 or Gen.1.1-Gen.1.5.
+     *
+     * @return the ordinals or null if the reference is not understood
+     */
+    private static int[] parseRange(Versification v11n, String ref) {
+        String text = ref.trim();
+        int dash = text.indexOf('-');
+        int start = parseVerse(v11n, dash < 0 ? text : text.substring(0, dash));
+        int end = dash < 0 ? start : parseVerse(v11n, text.substring(dash + 1));
+        if (start < 0 || end < start) {
+            return null;
+        }
+
+        int[] ordinals = new int[end - start + 1];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = start + i;
+        }
+        return ordinals;
+    }
+
+    /**
+     * Get the ordinal of an OSIS reference to a verse, such as Gen.1.1.
+     *
+     * @return the ordinal or -1 if the reference is not to a verse of the
+     *         Versification
+     */
+    private static int parseVerse(Versification v11n, String ref) {
+        String[] parts = ref.trim().split("\\.");
+        if (parts.length != 3) {
+            return -1;
+        }
+
+        BibleBook book = BibleBook.fromOSIS(parts[0]);
+        if (book == null || !v11n.getBooks().contains(book)) {
+            return -1;
+        }
+
+        try {
+            int chapter = Integer.parseInt(parts[1]);
+            int verse = Integer.parseInt(parts[2]);
+            if (chapter < 0 || chapter > v11n.getLastChapter(book) || verse < 0 || verse > v11n.getLastVerse(book, chapter)) {
+                return -1;
+            }
+            return v11n.getOrdinal(book, chapter, verse);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the number of a verse in the common numbering.
+     */
+    private static int getCommonKey(Verse verse) {
+        return (verse.getBook().ordinal() << 20) | (verse.getChapter() << 10) | verse.getVerse();
+    }
+
+    /**
+     * The directory of the rules
+     */
+    private static final String DIR_MAPPINGS = "versification";
+
+    /**
+     * Separates the names of the Versifications in the key of a mapping
+     */
+    private static final char KEY_SEPARATOR = '>';
+
+    /**
+     * The mappings that have been built, given by the names of the
+     * Versifications they map from and to.
+     */
+    private final ConcurrentMap<String, VersificationMapping> mappings;
+
+    /**
+     * The compiled rules of the Versifications, given by their names.
+     */
+    private final Map<String, Map<Integer, int[]>> rules;
+
+    /**
+     * The log stream
+     */
+    private static final Logger log = Logger.getLogger(VersificationMappings.class);
+
+    private static final VersificationMappings instance = new VersificationMappings();
+}
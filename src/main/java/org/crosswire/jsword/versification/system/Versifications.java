@@ -21,16 +21,18 @@
  */
 package org.crosswire.jsword.versification.system;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.crosswire.jsword.versification.Versification;
 
 /**
  * The Versifications class manages the creation of Versifications as needed.
  * It delays the construction of the Versification until getVersification(String name) is called.
+ * Looking up a Versification that has been built takes no lock, so it can be
+ * done freely from many threads.
  *
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's authors.
@@ -58,7 +60,7 @@ public class Versifications {
      *
      * @return the default Versification.
      */
-    public synchronized Versification getDefaultVersification() {
+    public Versification getDefaultVersification() {
         return getVersification(DEFAULT_V11N);
     }
 
@@ -68,7 +70,7 @@ public class Versifications {
      * @param name the name of the Versification
      * @return the Versification or null if it is not known.
      */
-    public synchronized Versification getVersification(String name) {
+    public Versification getVersification(String name) {
         String actual = name;
         if (actual == null) {
             actual = DEFAULT_V11N;
@@ -78,9 +80,15 @@ public class Versifications {
         // actually needed.
         Versification rs = fluffed.get(actual);
         if (rs == null) {
-            rs = fluff(actual);
-            if (rs != null) {
-                fluffed.put(actual, rs);
+            // Only build each Versification once.
+            synchronized (this) {
+                rs = fluffed.get(actual);
+                if (rs == null) {
+                    rs = fluff(actual);
+                    if (rs != null) {
+                        fluffed.put(actual, rs);
+                    }
+                }
             }
         }
 
@@ -93,7 +101,7 @@ public class Versifications {
      * @param name the name of the Versification
      * @return true when the Versification is available for use
      */
-    public synchronized boolean isDefined(String name) {
+    public boolean isDefined(String name) {
         return name == null || known.contains(name);
     }
 
@@ -159,7 +167,7 @@ public class Versifications {
      * This class is a singleton, enforced by a private constructor.
      */
     private Versifications() {
-        known = new HashSet<String>();
+        known = new CopyOnWriteArraySet<String>();
         known.add(SystemCatholic.V11N_NAME);
         known.add(SystemCatholic2.V11N_NAME);
         known.add(SystemGerman.V11N_NAME);
@@ -173,18 +181,18 @@ public class Versifications {
         known.add(SystemSynodal.V11N_NAME);
         known.add(SystemSynodalP.V11N_NAME);
         known.add(SystemVulg.V11N_NAME);
-        fluffed = new HashMap<String, Versification>();
+        fluffed = new ConcurrentHashMap<String, Versification>();
     }
 
     /**
      * The set of v11n names.
      */
-    private Set<String> known;
+    private final Set<String> known;
 
     /**
      * The map of instantiated Versifications, given by their names.
      */
-    private Map<String, Versification> fluffed;
+    private final ConcurrentMap<String, Versification> fluffed;
 
     private static final Versifications instance = new Versifications();
 }
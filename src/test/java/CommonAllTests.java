@@ -39,6 +39,7 @@ public class CommonAllTests extends TestCase {
     public static Test suite() {
         TestSuite suite = new TestSuite();
         suite.addTest(org.crosswire.common.compress.AllTests.suite());
+        suite.addTest(org.crosswire.common.crypt.AllTests.suite());
         suite.addTest(org.crosswire.common.diff.AllTests.suite());
         suite.addTest(org.crosswire.common.history.AllTests.suite());
         suite.addTest(org.crosswire.common.icu.AllTests.suite());
@@ -40,8 +40,10 @@ public class JSwordAllTests extends TestCase {
         TestSuite suite = new TestSuite();
         suite.addTest(org.crosswire.jsword.book.AllTests.suite());
         suite.addTest(org.crosswire.jsword.book.sword.AllTests.suite());
+        suite.addTest(org.crosswire.jsword.book.filter.thml.AllTests.suite());
         suite.addTest(org.crosswire.jsword.passage.AllTests.suite());
         suite.addTest(org.crosswire.jsword.bridge.AllTests.suite());
+        suite.addTest(org.crosswire.jsword.index.lucene.AllTests.suite());
         suite.addTest(org.crosswire.jsword.index.lucene.analysis.AllTests.suite());
         suite.addTest(org.crosswire.jsword.versification.AllTests.suite());
         return suite;
@@ -36,6 +36,7 @@ public class AllTests {
         TestSuite suite = new TestSuite("Test for org.crosswire.common.compress");
         // $JUnit-BEGIN$
         suite.addTest(new TestSuite(LZSSTest.class));
+        suite.addTest(new TestSuite(ZipTest.class));
         // $JUnit-END$
         return suite;
     }
@@ -0,0 +1,129 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.crosswire.common.util.ResourceUtil;
+
+/**
+ * LZSSSpeed is a simple benchmark that compares how fast LZSS compressed text
+ * is uncompressed through a stream with {@link LZSS#uncompress(int)} and from
+ * an array with {@link LZSS#uncompress(byte[], int, int, int)}, with zlib as a
+ * yardstick. The text is Genesis from the KJV, cut into blocks the size of a
+ * chapter, as a book would be. It is run by hand rather than as part of the
+ * tests:
+ * 
+ * <pre>
+ * java org.crosswire.common.compress.LZSSSpeed [rounds]
+ * </pre>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class LZSSSpeed {
+    /**
+     * Prevent instantiation
+     */
+    private LZSSSpeed() {
+    }
+
+    /**
+     * Time each way of uncompressing, after a round to warm up.
+     * 
+     * @param args
+     *            the number of rounds, which defaults to 200
+     */
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        InputStream in = ResourceUtil.getResourceAsStream("kjv_genesis.txt");
+        byte[] text = new byte[0];
+        byte[] buf = new byte[Compressor.BUF_SIZE];
+        for (int count = in.read(buf); count != -1; count = in.read(buf)) {
+            byte[] more = new byte[text.length + count];
+            System.arraycopy(text, 0, more, 0, text.length);
+            System.arraycopy(buf, 0, more, text.length, count);
+            text = more;
+        }
+        in.close();
+
+        int blocks = (text.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[][] lzss = new byte[blocks][];
+        byte[][] zip = new byte[blocks][];
+        int[] sizes = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            sizes[i] = Math.min(BLOCK_SIZE, text.length - i * BLOCK_SIZE);
+            ByteArrayInputStream block = new ByteArrayInputStream(text, i * BLOCK_SIZE, sizes[i]);
+            lzss[i] = new LZSS(block).compress().toByteArray();
+            block.reset();
+            zip[i] = new Zip(block).compress().toByteArray();
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean report = pass > 0;
+            int warm = report ? rounds : rounds / 10 + 1;
+
+            long start = System.nanoTime();
+            long total = 0;
+            for (int r = 0; r < warm; r++) {
+                for (int i = 0; i < blocks; i++) {
+                    total += new LZSS(new ByteArrayInputStream(lzss[i])).uncompress(sizes[i]).size();
+                }
+            }
+            report(report, "LZSS stream", start, total);
+
+            start = System.nanoTime();
+            total = 0;
+            for (int r = 0; r < warm; r++) {
+                for (int i = 0; i < blocks; i++) {
+                    total += LZSS.uncompress(lzss[i], 0, lzss[i].length, sizes[i]).length;
+                }
+            }
+            report(report, "LZSS array", start, total);
+
+            start = System.nanoTime();
+            total = 0;
+            for (int r = 0; r < warm; r++) {
+                for (int i = 0; i < blocks; i++) {
+                    total += Zip.uncompress(zip[i], 0, zip[i].length, sizes[i]).length;
+                }
+            }
+            report(report, "Zip array", start, total);
+        }
+    }
+
+    private static void report(boolean report, String name, long start, long total) {
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.println(name + ": " + (elapsed / 1000000) + "ms, " + (total * 1000 / Math.max(elapsed, 1)) + "MB/s");
+        }
+    }
+
+    /**
+     * About the size of a chapter.
+     */
+    private static final int BLOCK_SIZE = 4096;
+}
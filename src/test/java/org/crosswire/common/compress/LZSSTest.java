@@ -26,6 +26,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.MissingResourceException;
 
 import junit.framework.TestCase;
@@ -131,4 +132,43 @@ public class LZSSTest extends TestCase {
         }
 
     }
+
+    public void testUncompressArray() throws IOException {
+        InputStream kjvGenesis = ResourceUtil.getResourceAsStream("kjv_genesis.txt");
+        byte[] compressed = new LZSS(kjvGenesis).compress().toByteArray();
+        byte[] expected = new LZSS(new ByteArrayInputStream(compressed)).uncompress().toByteArray();
+
+        assertTrue(Arrays.equals(expected, LZSS.uncompress(compressed, 0, compressed.length, expected.length)));
+        // The expected length is only a hint
+        assertTrue(Arrays.equals(expected, LZSS.uncompress(compressed, 0, compressed.length, 10)));
+        assertTrue(Arrays.equals(expected, LZSS.uncompress(compressed, 0, compressed.length, expected.length * 2)));
+
+        byte[] padded = new byte[compressed.length + 20];
+        System.arraycopy(compressed, 0, padded, 7, compressed.length);
+        assertTrue(Arrays.equals(expected, CompressorType.LZSS.uncompress(padded, 7, compressed.length, expected.length)));
+    }
+
+    public void testUncompressArrayRing() throws IOException {
+        // Pairs that refer to the ring buffer as it starts out, to where the
+        // next character goes and to characters that are being copied.
+        byte[] compressed = {
+                // a literal, then four pairs
+                0x01,
+                'a',
+                // 3 from 4080, which starts out as zeros
+                (byte) 0xF0, (byte) 0xF0,
+                // 5 from 4082, which is where the next character goes
+                (byte) 0xF2, (byte) 0xF2,
+                // 6 from 4078, where the 'a' went
+                (byte) 0xEE, (byte) 0xF3,
+                // 10 from 4092, the last character, wrapping round the end
+                (byte) 0xFC, (byte) 0xF7,
+        };
+        byte[] expected = new LZSS(new ByteArrayInputStream(compressed)).uncompress().toByteArray();
+        assertTrue(Arrays.equals(expected, LZSS.uncompress(compressed, 0, compressed.length, 0)));
+
+        // Cut short in the middle of a pair
+        expected = new LZSS(new ByteArrayInputStream(compressed, 0, 9)).uncompress().toByteArray();
+        assertTrue(Arrays.equals(expected, LZSS.uncompress(compressed, 0, 9, 0)));
+    }
 }
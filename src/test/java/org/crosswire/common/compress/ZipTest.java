@@ -0,0 +1,113 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipException;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class ZipTest extends TestCase {
+    @Override
+    protected void setUp() throws IOException {
+        StringBuilder buf = new StringBuilder();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            buf.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        text = buf.toString().getBytes("UTF-8");
+        compressed = new Zip(new ByteArrayInputStream(text)).compress().toByteArray();
+    }
+
+    public void testUncompressStream() throws IOException {
+        assertTrue(Arrays.equals(text, new Zip(new ByteArrayInputStream(compressed)).uncompress().toByteArray()));
+        assertTrue(Arrays.equals(text, new Zip(new ByteArrayInputStream(compressed)).uncompress(text.length).toByteArray()));
+        assertTrue(Arrays.equals(text, new Zip(new ByteArrayInputStream(compressed)).uncompress(0).toByteArray()));
+    }
+
+    public void testUncompressArray() throws IOException {
+        assertTrue(Arrays.equals(text, Zip.uncompress(compressed, 0, compressed.length, text.length)));
+        // The expected length is only a hint
+        assertTrue(Arrays.equals(text, Zip.uncompress(compressed, 0, compressed.length, 10)));
+        assertTrue(Arrays.equals(text, Zip.uncompress(compressed, 0, compressed.length, 0)));
+        assertTrue(Arrays.equals(text, Zip.uncompress(compressed, 0, compressed.length, text.length * 3)));
+    }
+
+    public void testUncompressRegion() throws IOException {
+        byte[] padded = new byte[compressed.length + 20];
+        System.arraycopy(compressed, 0, padded, 7, compressed.length);
+        assertTrue(Arrays.equals(text, Zip.uncompress(padded, 7, compressed.length, text.length)));
+        assertTrue(Arrays.equals(text, CompressorType.ZIP.uncompress(padded, 7, compressed.length, text.length)));
+    }
+
+    public void testUncompressInto() throws IOException {
+        byte[] output = new byte[text.length + 10];
+        assertEquals(text.length, Zip.uncompress(compressed, 0, compressed.length, output, 5, text.length + 5));
+        byte[] result = new byte[text.length];
+        System.arraycopy(output, 5, result, 0, text.length);
+        assertTrue(Arrays.equals(text, result));
+
+        // Not enough room
+        assertEquals(-1, Zip.uncompress(compressed, 0, compressed.length, output, 0, text.length - 1));
+    }
+
+    public void testTruncated() throws IOException {
+        try {
+            Zip.uncompress(compressed, 0, compressed.length / 2, text.length);
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    public void testCorrupt() throws IOException {
+        byte[] corrupt = compressed.clone();
+        corrupt[0] = 0;
+        try {
+            Zip.uncompress(corrupt, 0, corrupt.length, text.length);
+            fail();
+        } catch (ZipException e) {
+            // expected
+        }
+
+        // The pool is not spoilt by a failure
+        assertTrue(Arrays.equals(text, Zip.uncompress(compressed, 0, compressed.length, text.length)));
+    }
+
+    private static final String[] WORDS = {
+            "In", "the", "beginning", "God", "created", "heaven", "and", "earth", "\u03b8\u03b5\u03bf\u03c2"
+    };
+
+    private byte[] text;
+    private byte[] compressed;
+}
@@ -0,0 +1,98 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.crypt;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class SapphireTest extends TestCase {
+    public void testCipherRegion() {
+        byte[] data = randomBytes(1000);
+
+        byte[] expected = data.clone();
+        Sapphire single = new Sapphire(KEY);
+        for (int i = 10; i < 990; i++) {
+            expected[i] = single.cipher(expected[i]);
+        }
+
+        byte[] actual = data.clone();
+        new Sapphire(KEY).cipher(actual, 10, 980);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testCipherInPieces() {
+        byte[] data = randomBytes(500);
+
+        byte[] expected = data.clone();
+        new Sapphire(KEY).cipher(expected, 0, expected.length);
+
+        // The state carries from one region to the next.
+        byte[] actual = data.clone();
+        Sapphire cipher = new Sapphire(KEY);
+        cipher.cipher(actual, 0, 123);
+        cipher.cipher(actual, 123, 0);
+        cipher.cipher(actual, 123, 377);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testClone() {
+        byte[] data = randomBytes(300);
+
+        byte[] expected = data.clone();
+        new Sapphire(KEY).cipher(expected, 0, expected.length);
+
+        Sapphire keyed = new Sapphire(KEY);
+        Sapphire first = keyed.clone();
+        Sapphire second = keyed.clone();
+
+        byte[] actual = data.clone();
+        first.cipher(actual, 0, actual.length);
+        assertTrue(Arrays.equals(expected, actual));
+
+        // Using or burning a copy leaves the others as they were.
+        first.burn();
+        actual = data.clone();
+        second.cipher(actual, 0, actual.length);
+        assertTrue(Arrays.equals(expected, actual));
+
+        actual = data.clone();
+        keyed.cipher(actual, 0, actual.length);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    private static final byte[] KEY = "abcd1234".getBytes();
+}
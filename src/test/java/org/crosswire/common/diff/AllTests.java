@@ -36,6 +36,7 @@ public class AllTests {
         TestSuite suite = new TestSuite("Test for org.crosswire.common.diff");
         // $JUnit-BEGIN$
         suite.addTest(new TestSuite(BitapTest.class));
+        suite.addTest(new TestSuite(BitParallelDifferenceEngineTest.class));
         suite.addTest(new TestSuite(CommonalityTest.class));
         suite.addTest(new TestSuite(DiffCleanupTest.class));
         suite.addTest(new TestSuite(DifferenceEngineTest.class));
@@ -0,0 +1,154 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class BitParallelDifferenceEngineTest extends TestCase {
+    @Override
+    protected void tearDown() {
+        BitParallelDifferenceEngine.setMaxWords(MAXWORDS);
+        Diff.setBitParallel(false);
+    }
+
+    public void testEmpty() {
+        assertEquals(diffList(), new BitParallelDifferenceEngine("", "").generate());
+        assertEquals(diffList(new Difference(EditType.DELETE, "abc")), new BitParallelDifferenceEngine("abc", "").generate());
+        assertEquals(diffList(new Difference(EditType.INSERT, "abc")), new BitParallelDifferenceEngine("", "abc").generate());
+    }
+
+    public void testGenerate() {
+        assertEquals(diffList(new Difference(EditType.EQUAL, "abc")), new BitParallelDifferenceEngine("abc", "abc").generate());
+        assertEquals(diffList(new Difference(EditType.DELETE, "abc"), new Difference(EditType.INSERT, "xyz")),
+                new BitParallelDifferenceEngine("abc", "xyz").generate());
+        assertEquals(diffList(new Difference(EditType.EQUAL, "a"), new Difference(EditType.DELETE, "b"), new Difference(EditType.EQUAL, "c")),
+                new BitParallelDifferenceEngine("abc", "ac").generate());
+        assertEquals(diffList(new Difference(EditType.EQUAL, "a"), new Difference(EditType.INSERT, "b"), new Difference(EditType.EQUAL, "c")),
+                new BitParallelDifferenceEngine("ac", "abc").generate());
+        assertEquals(
+                diffList(new Difference(EditType.EQUAL, "a"), new Difference(EditType.DELETE, "b"), new Difference(EditType.INSERT, "x"), new Difference(EditType.EQUAL, "c")),
+                new BitParallelDifferenceEngine("abc", "axc").generate());
+    }
+
+    public void testVerse() {
+        String kjv = "In the beginning God created the heaven and the earth.";
+        String asv = "In the beginning God created the heavens and the earth.";
+        assertEquals(
+                diffList(new Difference(EditType.EQUAL, "In the beginning God created the heaven"), new Difference(EditType.INSERT, "s"), new Difference(EditType.EQUAL, " and the earth.")),
+                new BitParallelDifferenceEngine(kjv, asv).generate());
+    }
+
+    public void testLongerThanWord() {
+        Random random = new Random(1);
+        for (int n = 0; n < 200; n++) {
+            String source = randomText(random, random.nextInt(300));
+            String target = randomText(random, random.nextInt(300));
+            List<Difference> diffs = new BitParallelDifferenceEngine(source, target).generate();
+            assertEquals(source, text(diffs, EditType.INSERT));
+            assertEquals(target, text(diffs, EditType.DELETE));
+            assertEquals(lcs(source, target), equalLength(diffs));
+        }
+    }
+
+    public void testTooLarge() {
+        BitParallelDifferenceEngine.setMaxWords(10);
+        assertNull(new BitParallelDifferenceEngine("abcdefghijkl", "mnopqrstuvwx").generate());
+    }
+
+    public void testDiff() {
+        Diff.setBitParallel(true);
+        String source = "And God said, Let there be light: and there was light.";
+        String target = "Then God said, \"Let there be light\"; and there was light.";
+        List<Difference> diffs = new Diff(source, target, false).compare();
+        assertEquals(source, text(diffs, EditType.INSERT));
+        assertEquals(target, text(diffs, EditType.DELETE));
+    }
+
+    // Private function for quickly building lists of diffs.
+    private static <T> List<T> diffList(T... items) {
+        List<T> list = new ArrayList<T>();
+        list.addAll(Arrays.asList(items));
+        return list;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            buf.append((char) ('a' + random.nextInt(4)));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * The text of the differences, leaving out those of the given type.
+     */
+    private static String text(List<Difference> diffs, EditType omit) {
+        StringBuilder buf = new StringBuilder();
+        for (Difference diff : diffs) {
+            if (!omit.equals(diff.getEditType())) {
+                buf.append(diff.getText());
+            }
+        }
+        return buf.toString();
+    }
+
+    private static int equalLength(List<Difference> diffs) {
+        int length = 0;
+        for (Difference diff : diffs) {
+            if (EditType.EQUAL.equals(diff.getEditType())) {
+                length += diff.getText().length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The length of the longest common subsequence, the slow way.
+     */
+    private static int lcs(String source, String target) {
+        int[][] table = new int[source.length() + 1][target.length() + 1];
+        for (int i = 1; i <= source.length(); i++) {
+            for (int j = 1; j <= target.length(); j++) {
+                if (source.charAt(i - 1) == target.charAt(j - 1)) {
+                    table[i][j] = table[i - 1][j - 1] + 1;
+                } else {
+                    table[i][j] = Math.max(table[i - 1][j], table[i][j - 1]);
+                }
+            }
+        }
+        return table[source.length()][target.length()];
+    }
+
+    private static final int MAXWORDS = BitParallelDifferenceEngine.getMaxWords();
+}
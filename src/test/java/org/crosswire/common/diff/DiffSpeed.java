@@ -0,0 +1,176 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.diff;
+
+import java.util.List;
+
+/**
+ * DiffSpeed is a simple benchmark that compares how fast the
+ * {@link DifferenceEngine} and the {@link BitParallelDifferenceEngine} find
+ * the differences between the same verse in two translations, both on their
+ * own and through {@link Diff}, as when books are compared. It is run by hand
+ * rather than as part of the tests:
+ * 
+ * <pre>
+ * java org.crosswire.common.diff.DiffSpeed [rounds]
+ * </pre>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class DiffSpeed {
+    /**
+     * Prevent instantiation
+     */
+    private DiffSpeed() {
+    }
+
+    /**
+     * Time each way of finding the differences, after a round to warm up.
+     * 
+     * @param args
+     *            the number of rounds, which defaults to 2000
+     */
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean report = pass > 0;
+            int warm = report ? rounds : rounds / 10 + 1;
+
+            time("DifferenceEngine", warm, report, new Task() {
+                public int run(String source, String target) {
+                    return new DifferenceEngine(source, target).generate().size();
+                }
+            });
+            time("BitParallelDifferenceEngine", warm, report, new Task() {
+                public int run(String source, String target) {
+                    return new BitParallelDifferenceEngine(source, target).generate().size();
+                }
+            });
+
+            Diff.setBitParallel(false);
+            time("Diff", warm, report, new Task() {
+                public int run(String source, String target) {
+                    return compare(source, target);
+                }
+            });
+            Diff.setBitParallel(true);
+            time("Diff (bit-parallel)", warm, report, new Task() {
+                public int run(String source, String target) {
+                    return compare(source, target);
+                }
+            });
+            Diff.setBitParallel(false);
+        }
+    }
+
+    /**
+     * Find the differences as a comparison of books does.
+     */
+    static int compare(String source, String target) {
+        List<Difference> diffs = new Diff(source, target, false).compare();
+        DiffCleanup.cleanupSemantic(diffs);
+        return diffs.size();
+    }
+
+    /**
+     * Run a task over all the verse pairs a number of times and report how
+     * long it took.
+     */
+    private static void time(String name, int rounds, boolean report, Task task) {
+        long start = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (int j = 0; j < VERSES.length; j++) {
+                count += task.run(VERSES[j][0], VERSES[j][1]);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            long pairs = (long) rounds * VERSES.length;
+            System.out.println(name + ": " + (elapsed / 1000000) + "ms, " + (elapsed / pairs) + "ns per verse, " + count + " differences");
+        }
+    }
+
+    /**
+     * A way of finding the differences between two verses.
+     */
+    private interface Task {
+        int run(String source, String target);
+    }
+
+    /**
+     * The same verses in the KJV and the ASV.
+     */
+    private static final String[][] VERSES = {
+            {
+                    "In the beginning God created the heaven and the earth.",
+                    "In the beginning God created the heavens and the earth."
+            },
+            {
+                    "And the earth was without form, and void; and darkness was upon the face of the deep. And the Spirit of God moved upon the face of the waters.",
+                    "And the earth was waste and void; and darkness was upon the face of the deep: and the Spirit of God moved upon the face of the waters."
+            },
+            {
+                    "And God said, Let there be a firmament in the midst of the waters, and let it divide the waters from the waters.",
+                    "And God said, Let there be a firmament in the midst of the waters, and let it divide the waters from the waters."
+            },
+            {
+                    "The LORD is my shepherd; I shall not want.",
+                    "Jehovah is my shepherd; I shall not want."
+            },
+            {
+                    "Yea, though I walk through the valley of the shadow of death, I will fear no evil: for thou art with me; thy rod and thy staff they comfort me.",
+                    "Yea, thou I walk through the valley of the shadow of death, I will fear no evil; for thou art with me; Thy rod and thy staff, they comfort me."
+            },
+            {
+                    "Trust in the LORD with all thine heart; and lean not unto thine own understanding.",
+                    "Trust in Jehovah with all thy heart, And lean not upon thine own understanding:"
+            },
+            {
+                    "In the beginning was the Word, and the Word was with God, and the Word was God.",
+                    "In the beginning was the Word, and the Word was with God, and the Word was God."
+            },
+            {
+                    "For God so loved the world, that he gave his only begotten Son, that whosoever believeth in him should not perish, but have everlasting life.",
+                    "For God so loved the world, that he gave his only begotten Son, that whosoever believeth on him should not perish, but have eternal life."
+            },
+            {
+                    "And we know that all things work together for good to them that love God, to them who are the called according to his purpose.",
+                    "And we know that to them that love God all things work together for good, even to them that are called according to his purpose."
+            },
+            {
+                    "Though I speak with the tongues of men and of angels, and have not charity, I am become as sounding brass, or a tinkling cymbal.",
+                    "If I speak with the tongues of men and of angels, but have not love, I am become sounding brass, or a clanging cymbal."
+            },
+            {
+                    "Now faith is the substance of things hoped for, the evidence of things not seen.",
+                    "Now faith is assurance of things hoped for, a conviction of things not seen."
+            },
+            {
+                    "Behold, I stand at the door, and knock: if any man hear my voice, and open the door, I will come in to him, and will sup with him, and he with me.",
+                    "Behold, I stand at the door and knock: if any man hear my voice and open the door, I will come in to him, and will sup with him, and he with me."
+            },
+    };
+}
@@ -38,6 +38,7 @@ public class AllTests {
         suite.addTest(new TestSuite(HelpDeskTest.class));
         suite.addTest(new TestSuite(StringUtilTest.class));
         suite.addTest(new TestSuite(PropertyMapTest.class));
+        suite.addTest(new TestSuite(SizedLRUCacheTest.class));
         // $JUnit-END$
         return suite;
     }
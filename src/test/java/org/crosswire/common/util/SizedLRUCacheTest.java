@@ -0,0 +1,112 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.common.util;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class SizedLRUCacheTest extends TestCase {
+    @Override
+    protected void setUp() {
+        // Each value is measured by its length
+        cache = new SizedLRUCache<String, String>(100) {
+            @Override
+            protected long sizeOf(String key, String value) {
+                return value.length();
+            }
+        };
+    }
+
+    public void testGetPut() {
+        String value = create(10);
+        assertNull(cache.get("a"));
+        cache.put("a", value);
+        assertSame(value, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(10, cache.getSize());
+
+        // Replacing a value gives back the room it took
+        cache.put("a", create(20));
+        assertEquals(20, cache.getSize());
+        cache.clear();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testCounts() {
+        cache.get("a");
+        cache.put("a", create(10));
+        cache.get("a");
+        cache.get("a");
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testEviction() {
+        cache.put("a", create(40));
+        cache.put("b", create(40));
+        // Using a makes b the least recently used
+        assertNotNull(cache.get("a"));
+        cache.put("c", create(40));
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getSize());
+    }
+
+    public void testTooLarge() {
+        cache.put("a", create(101));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testMaxSize() {
+        cache.put("a", create(40));
+        cache.put("b", create(40));
+        cache.setMaxSize(50);
+        assertEquals(50, cache.getMaxSize());
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+
+        // A cache of no size holds nothing
+        cache.setMaxSize(0);
+        assertEquals(0, cache.getSize());
+        cache.put("c", create(0));
+        assertNull(cache.get("c"));
+    }
+
+    private String create(int length) {
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            buf.append('x');
+        }
+        return buf.toString();
+    }
+
+    private SizedLRUCache<String, String> cache;
+}
@@ -62,6 +62,43 @@ public class XMLUtilTest extends TestCase {
         assertEquals("-&amp;-\u00A0-&lt;-&gt;-&quot;-\u00A3-\u20AC-", XMLUtil.cleanAllEntities("-&amp;-&nbsp;-&lt;-&gt;-&quot;-&pound;-&euro;-"));
     }
 
+    public void testCleanAllCharacters() {
+        assertNull(XMLUtil.cleanAllCharacters(null));
+
+        assertEquals("", XMLUtil.cleanAllCharacters(""));
+        assertEquals("aa\taa\r\naa", XMLUtil.cleanAllCharacters("aa\taa\r\naa"));
+        assertEquals("aa aa", XMLUtil.cleanAllCharacters("aa\u0001aa"));
+        assertEquals("aa aa", XMLUtil.cleanAllCharacters("aa\uFFFFaa"));
+        assertEquals("aa aa", XMLUtil.cleanAllCharacters("aa\uD800aa"));
+        assertEquals("aa\uD800\uDC00aa", XMLUtil.cleanAllCharacters("aa\uD800\uDC00aa"));
+    }
+
+    public void testCloseEmptyTags() {
+        assertNull(XMLUtil.closeEmptyTags(null));
+
+        assertEquals("aa<br/>aa", XMLUtil.closeEmptyTags("aa<br>aa"));
+        assertEquals("aa<br/>aa", XMLUtil.closeEmptyTags("aa<br/>aa"));
+        assertEquals("aa<BR />aa", XMLUtil.closeEmptyTags("aa<BR >aa"));
+        assertEquals("<hr/><img src=\"a\"/>", XMLUtil.closeEmptyTags("<hr><img src=\"a\">"));
+        assertEquals("<br></br>", XMLUtil.closeEmptyTags("<br></br>"));
+        assertEquals("<br ></BR >", XMLUtil.closeEmptyTags("<br ></BR >"));
+        assertEquals("<bread><br/></bread>", XMLUtil.closeEmptyTags("<bread><br></bread>"));
+        assertEquals("<hr/><hrule></hrule>", XMLUtil.closeEmptyTags("<hr><hrule></hrule>"));
+        assertEquals("<bread>", XMLUtil.closeEmptyTags("<bread>"));
+        assertEquals("<br", XMLUtil.closeEmptyTags("<br"));
+    }
+
+    public void testRepair() {
+        assertNull(XMLUtil.repair(null));
+
+        String good = "<aa>aa &amp; aa<br/></aa>";
+        assertSame(good, XMLUtil.repair(good));
+
+        assertEquals("\u00A0aa &amp; <br/> ", XMLUtil.repair("&nbsp;aa & <br>\u0001"));
+        assertEquals("aa &amp;&amp; aa", XMLUtil.repair("aa &&amp; aa"));
+        assertEquals("&#123; &amp;#x1F;", XMLUtil.repair("&#123; &#x1F;"));
+    }
+
     public void testCleanAllTags() {
         assertNull(XMLUtil.cleanAllTags(null));
 
@@ -37,7 +37,9 @@ public class AllTests {
         // $JUnit-BEGIN$
         suite.addTestSuite(BooksTest.class);
         suite.addTestSuite(BookMetaDataTest.class);
+        suite.addTestSuite(BookDataTest.class);
         suite.addTestSuite(SentenceUtilTest.class);
+        suite.addTestSuite(DiffCacheTest.class);
 
         // run independently:
         // suite.addTestSuite(ReadEverything.class);
@@ -0,0 +1,136 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.crosswire.common.util.LucidRuntimeException;
+import org.crosswire.jsword.book.sword.ModuleWriter;
+import org.crosswire.jsword.book.sword.RawBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.book.sword.processing.RawTextToXmlProcessor;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.jdom.Content;
+
+/**
+ * JUnit Test. Reads a generated Bible that fails to read one chapter, to check
+ * how the failure reaches the reader.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class BookDataTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        v11n = Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        Map<Integer, String> verses = new TreeMap<Integer, String>();
+        for (int chapter = 1; chapter <= 3; chapter++) {
+            for (int verse = 1; verse <= 3; verse++) {
+                verses.put(Integer.valueOf(v11n.getOrdinal(new Verse(BibleBook.GEN, chapter, verse))), "Verse " + verse);
+            }
+        }
+
+        root = ModuleWriter.createRoot();
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Test", "RawText", "modules/texts/rawtext/test/", "Lang=en\n");
+        ModuleWriter.writeRawText(new File(root, "modules/texts/rawtext/test"), v11n, verses, 2);
+        final Verse bad = new Verse(BibleBook.GEN, 2, 1);
+        book = new SwordBook(bmd, new RawBackend(bmd, 2)) {
+            @Override
+            protected List<Content> getOsis(Key key, RawTextToXmlProcessor processor) throws BookException {
+                if (((VerseRange) key).contains(bad)) {
+                    throw new BookException("bad chapter");
+                }
+                return super.getOsis(key, processor);
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() {
+        ModuleWriter.deleteRoot(root);
+    }
+
+    public void testRead() throws Exception {
+        Key key = book.getKey("Gen 1:1-3, Gen 3:1-3");
+        String text = OSISUtil.getCanonicalText(new BookData(book, key).getOsisFragment());
+        assertEquals(6, text.split("Verse").length - 1);
+    }
+
+    public void testFirstRangeFailure() throws Exception {
+        try {
+            book.getOsisIterator(book.getKey("Gen 2:1-3"), false);
+            fail("The failure to read was lost");
+        } catch (BookException e) {
+            assertEquals("bad chapter", e.getMessage());
+        }
+    }
+
+    public void testLaterRangeFailure() throws Exception {
+        Key key = book.getKey("Gen 1-3");
+        // The first chapter can be read, so the failure comes while iterating
+        Iterator<Content> iter = book.getOsisIterator(key, false);
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+            fail("The failure to read was lost");
+        } catch (LucidRuntimeException e) {
+            assertTrue(e.getCause() instanceof BookException);
+            assertEquals("bad chapter", e.getCause().getMessage());
+        }
+
+        // BookData gives back the BookException
+        try {
+            new BookData(book, key).getOsisFragment();
+            fail("The failure to read was lost");
+        } catch (BookException e) {
+            assertEquals("bad chapter", e.getMessage());
+        }
+
+        // So does comparing books
+        try {
+            new BookData(new Book[] {
+                    book, book
+            }, key, false).getOsisFragment();
+            fail("The failure to read was lost");
+        } catch (BookException e) {
+            assertEquals("bad chapter", e.getMessage());
+        }
+    }
+
+    private Versification v11n;
+    private File root;
+    private Book book;
+}
@@ -0,0 +1,114 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.crosswire.common.diff.Difference;
+import org.crosswire.common.diff.EditType;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class DiffCacheTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        oldMaxSize = DiffCache.getMaxSize();
+        DiffCache.clear();
+        DiffCache.setMaxSize(100);
+        book1 = new SwordBook(new SwordBookMetaData("[Book1]\nDescription=Book 1\nModDrv=RawText\n".getBytes("UTF-8"), "Book1"), null);
+        book2 = new SwordBook(new SwordBookMetaData("[Book2]\nDescription=Book 2\nModDrv=RawText\n".getBytes("UTF-8"), "Book2"), null);
+    }
+
+    @Override
+    protected void tearDown() {
+        DiffCache.clear();
+        DiffCache.setMaxSize(oldMaxSize);
+    }
+
+    public void testCompare() {
+        List<Difference> diffs = DiffCache.compare("in the beginning", "in a beginning");
+        StringBuilder from = new StringBuilder();
+        StringBuilder to = new StringBuilder();
+        for (Difference diff : diffs) {
+            if (!EditType.INSERT.equals(diff.getEditType())) {
+                from.append(diff.getText());
+            }
+            if (!EditType.DELETE.equals(diff.getEditType())) {
+                to.append(diff.getText());
+            }
+        }
+        assertEquals("in the beginning", from.toString());
+        assertEquals("in a beginning", to.toString());
+    }
+
+    public void testGetAndPut() {
+        long hits = DiffCache.getHits();
+        long misses = DiffCache.getMisses();
+        assertNull(DiffCache.get(book1, book2, "Gen.1.1", "in the beginning", "in a beginning"));
+        List<Difference> diffs = DiffCache.compare("in the beginning", "in a beginning");
+        DiffCache.put(book1, book2, "Gen.1.1", "in the beginning", "in a beginning", diffs);
+        assertEquals(diffs, DiffCache.get(book1, book2, "Gen.1.1", "in the beginning", "in a beginning"));
+        assertEquals(hits + 1, DiffCache.getHits());
+        assertEquals(misses + 1, DiffCache.getMisses());
+        assertNull(DiffCache.get(book2, book1, "Gen.1.1", "in the beginning", "in a beginning"));
+        assertNull(DiffCache.get(book1, book2, "Gen.1.2", "in the beginning", "in a beginning"));
+    }
+
+    public void testChangedText() {
+        put("Gen.1.1", "in the beginning", "in a beginning");
+        assertNull(DiffCache.get(book1, book2, "Gen.1.1", "in the beginning", "in the beginning"));
+    }
+
+    public void testNoVerse() {
+        put(null, "in the beginning", "in a beginning");
+        assertEquals(0, DiffCache.getSize());
+        assertNull(DiffCache.get(book1, book2, null, "in the beginning", "in a beginning"));
+    }
+
+    public void testSize() {
+        // An entry holds 2 texts of 10 and differences of 10 or more
+        put("Gen.1.1", "0123456789", "0123456789");
+        assertEquals(30, DiffCache.getSize());
+        put("Gen.1.1", "0123456789", "01234");
+        assertEquals(30 + 25, DiffCache.getSize());
+    }
+
+    /**
+     * Cache the differences between the texts of a verse of the two books.
+     */
+    private void put(String osisID, String fromText, String toText) {
+        DiffCache.put(book1, book2, osisID, fromText, toText, DiffCache.compare(fromText, toText));
+    }
+
+    private long oldMaxSize;
+    private Book book1;
+    private Book book2;
+}
@@ -0,0 +1,100 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.filter.thml;
+
+import java.util.List;
+
+import javax.xml.parsers.SAXParser;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.jdom.Content;
+import org.jdom.Element;
+import org.jdom.Text;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class THMLFilterTest extends TestCase {
+    @Override
+    protected void setUp() {
+        filter = new THMLFilter();
+        key = new Verse(BibleBook.GEN, 1, 1);
+    }
+
+    public void testPlain() {
+        List<Content> content = filter.toOSIS(null, key, "In the beginning\tGod");
+        assertEquals(1, content.size());
+        assertEquals("In the beginning\tGod", ((Text) content.get(0)).getText());
+        assertTrue(filter.toOSIS(null, key, "").isEmpty());
+
+        // Plain text is not parsed, so no parser is needed
+        assertTrue(filter.getParsers().isEmpty());
+    }
+
+    public void testTagged() {
+        List<Content> content = filter.toOSIS(null, key, "In the <b>beginning</b> God");
+        assertEquals(3, content.size());
+        assertTrue(content.get(1) instanceof Element);
+        assertEquals("In the beginning God", getText(content));
+
+        // Entities and bad characters are parsed too
+        assertEquals("Cain & Abel", getText(filter.toOSIS(null, key, "Cain &amp; Abel")));
+        assertEquals("1 < 2", getText(filter.toOSIS(null, key, "1 &lt; 2")));
+    }
+
+    public void testBadTags() {
+        // A tag that cannot be repaired is replaced by a space
+        assertEquals("In the  beginning God", getText(filter.toOSIS(null, key, "In the <b>beginning God")));
+    }
+
+    public void testParserReuse() {
+        THMLFilter clone = filter.clone();
+        assertSame(filter.getParsers(), clone.getParsers());
+
+        clone.toOSIS(null, key, "<b>In the beginning</b>");
+        assertEquals(1, filter.getParsers().size());
+        SAXParser parser = filter.getParsers().peek();
+
+        // The parser that the clone returned is used by the original
+        filter.toOSIS(null, key, "<i>In the beginning</i>");
+        assertEquals(1, filter.getParsers().size());
+        assertSame(parser, filter.getParsers().peek());
+    }
+
+    private String getText(List<Content> content) {
+        Element div = OSISUtil.factory().createDiv();
+        div.addContent(content);
+        return OSISUtil.getCanonicalText(div);
+    }
+
+    private THMLFilter filter;
+    private Key key;
+}
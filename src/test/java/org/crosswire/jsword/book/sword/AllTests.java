@@ -14,9 +14,17 @@ public class AllTests {
     public static Test suite() {
         TestSuite suite = new TestSuite("Test for org.crosswire.jsword.book.sword");
         // $JUnit-BEGIN$
+        suite.addTest(new TestSuite(BlockCacheTest.class));
+        suite.addTest(new TestSuite(CompactTreeIndexTest.class));
         suite.addTest(new TestSuite(ConfigEntryTableTest.class));
         suite.addTest(new TestSuite(GenBookTest.class));
+        suite.addTest(new TestSuite(OpenFileStateManagerTest.class));
+        suite.addTest(new TestSuite(MappedReadTest.class));
+        suite.addTest(new TestSuite(RangeReadTest.class));
         suite.addTest(new TestSuite(RawFileBackendTest.class));
+        suite.addTest(new TestSuite(FileStampTest.class));
+        suite.addTest(new TestSuite(RawLDKeyIndexTest.class));
+        suite.addTest(new TestSuite(RawLDBackendTest.class));
         suite.addTest(new TestSuite(SwordBookDriverTest.class));
         suite.addTest(new TestSuite(SwordBookMetaDataTest.class));
         suite.addTest(new TestSuite(SwordBookTest.class));
@@ -0,0 +1,185 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.versification.Testament;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class BlockCacheTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        oldMaxSize = BlockCache.getMaxSize();
+        BlockCache.clear();
+        BlockCache.setMaxSize(100);
+        book1 = new SwordBookMetaData("[Book1]\nDescription=Book 1\n".getBytes("UTF-8"), "Book1");
+        book2 = new SwordBookMetaData("[Book2]\nDescription=Book 2\n".getBytes("UTF-8"), "Book2");
+    }
+
+    @Override
+    protected void tearDown() {
+        BlockCache.clear();
+        BlockCache.setMaxSize(oldMaxSize);
+    }
+
+    public void testGetPut() {
+        // Blocks are told apart by book, testament and number
+        byte[] block = new byte[10];
+        assertNull(BlockCache.get(book1, Testament.OLD, 1));
+        BlockCache.put(book1, Testament.OLD, 1, block);
+        assertSame(block, BlockCache.get(book1, Testament.OLD, 1));
+        assertNull(BlockCache.get(book1, Testament.NEW, 1));
+        assertNull(BlockCache.get(book1, Testament.OLD, 2));
+        assertNull(BlockCache.get(book2, Testament.OLD, 1));
+        assertEquals(10, BlockCache.getSize());
+    }
+
+    public void testGetOrLoad() throws IOException {
+        final byte[] block = new byte[10];
+        final AtomicInteger loads = new AtomicInteger();
+        BlockCache.Loader loader = new BlockCache.Loader() {
+            public byte[] load() {
+                loads.incrementAndGet();
+                return block;
+            }
+        };
+        assertSame(block, BlockCache.getOrLoad(book1, Testament.OLD, 1, loader));
+        assertSame(block, BlockCache.getOrLoad(book1, Testament.OLD, 1, loader));
+        assertSame(block, BlockCache.get(book1, Testament.OLD, 1));
+        assertEquals(1, loads.get());
+
+        // Nothing is cached for a block that is not found
+        assertNull(BlockCache.getOrLoad(book1, Testament.OLD, 2, new BlockCache.Loader() {
+            public byte[] load() {
+                return null;
+            }
+        }));
+        assertEquals(10, BlockCache.getSize());
+    }
+
+    public void testLoadFailure() throws IOException {
+        try {
+            BlockCache.getOrLoad(book1, null, 1, new BlockCache.Loader() {
+                public byte[] load() throws IOException {
+                    throw new IOException("bad block");
+                }
+            });
+            fail("The failure of the load was lost");
+        } catch (IOException e) {
+            assertEquals("bad block", e.getMessage());
+        }
+
+        // A failed load is not remembered
+        byte[] block = new byte[10];
+        assertSame(block, BlockCache.getOrLoad(book1, null, 1, new FixedLoader(block)));
+    }
+
+    public void testSingleFlight() throws Exception {
+        final byte[] block = new byte[10];
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final BlockCache.Loader loader = new BlockCache.Loader() {
+            public byte[] load() throws IOException {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+                return block;
+            }
+        };
+
+        final byte[][] results = new byte[4][];
+        Thread[] readers = new Thread[results.length];
+        for (int i = 0; i < readers.length; i++) {
+            final int reader = i;
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        results[reader] = BlockCache.getOrLoad(book1, Testament.NEW, 7, loader);
+                    } catch (IOException e) {
+                        // leave it null
+                    }
+                }
+            };
+        }
+
+        // Let the first reader start loading before the others ask for it
+        readers[0].start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < readers.length; i++) {
+            readers[i].start();
+        }
+        // Give the others time to find the load under way
+        Thread.sleep(100);
+        release.countDown();
+        for (int i = 0; i < readers.length; i++) {
+            readers[i].join(10000);
+            assertSame(block, results[i]);
+        }
+        assertEquals(1, loads.get());
+    }
+
+    public void testLoadUncached() throws IOException {
+        // Loads still happen when the cache is off, but nothing is kept
+        BlockCache.setMaxSize(0);
+        byte[] block = new byte[10];
+        assertSame(block, BlockCache.getOrLoad(book1, null, 1, new FixedLoader(block)));
+        assertNull(BlockCache.get(book1, null, 1));
+        assertEquals(0, BlockCache.getSize());
+    }
+
+    /**
+     * Loads the same block every time.
+     */
+    private static class FixedLoader implements BlockCache.Loader {
+        FixedLoader(byte[] block) {
+            this.block = block;
+        }
+
+        public byte[] load() {
+            return block;
+        }
+
+        private byte[] block;
+    }
+
+    private long oldMaxSize;
+    private SwordBookMetaData book1;
+    private SwordBookMetaData book2;
+}
@@ -0,0 +1,168 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class CompactTreeIndexTest extends TestCase {
+    @Override
+    protected void setUp() throws IOException {
+        idxFile = File.createTempFile("jsword", ".idx");
+        datFile = File.createTempFile("jsword", ".dat");
+    }
+
+    @Override
+    protected void tearDown() {
+        idxFile.delete();
+        datFile.delete();
+    }
+
+    public void testTree() throws IOException {
+        CompactTreeIndex tree = buildTree();
+        assertEquals(NODES, tree.size());
+
+        assertEquals(1, tree.find("/Preface"));
+        assertEquals(2, tree.find("/Chapter 1"));
+        assertEquals("Part", tree.getName(4));
+        assertEquals(4, tree.find("/Preface/Part"));
+        assertEquals(5, tree.find("/Chapter 1/Section"));
+        assertEquals(-1, tree.find("/Chapter 1/Part"));
+        assertEquals(-1, tree.find("/Preface/Section"));
+        assertEquals(-1, tree.find("/Chapter 2"));
+
+        // The first of two siblings with the same name is found, but the
+        // children of both can be
+        assertEquals(6, tree.find("/Preface/Other"));
+
+        assertEquals(-1, tree.getParent(0));
+        assertEquals(1, tree.getFirstChild(0));
+        assertEquals(2, tree.getNextSibling(1));
+        assertEquals(-1, tree.getNextSibling(3));
+        assertEquals(-1, tree.getFirstChild(4));
+        assertEquals(2, tree.getParent(5));
+        assertEquals("Section", tree.getName(5));
+
+        assertEquals(100, tree.getDataOffset(4));
+        assertEquals(20, tree.getDataSize(4));
+        assertEquals(-1, tree.getDataOffset(5));
+        assertEquals(-1, tree.getDataOffset(0));
+    }
+
+    public void testLoop() throws IOException {
+        // The last child of the root claims the first as its next sibling.
+        int[][] links = {
+                { -1, -1, 1 }, { 0, 2, -1 }, { 0, 1, -1 }
+        };
+        String[] names = { "", "A", "B" };
+        byte[] dat = records(links, names, new int[3][]);
+        CompactTreeIndex tree = new CompactTreeIndex(idxFile, datFile);
+        tree.build(idx(), dat, "test", "UTF-8");
+        assertEquals(1, tree.find("/A"));
+        assertEquals(2, tree.find("/B"));
+    }
+
+    private CompactTreeIndex buildTree() {
+        // parent, next sibling, first child
+        int[][] links = {
+                { -1, -1, 1 },
+                { 0, 2, 4 },
+                { 0, 3, 5 },
+                { 0, -1, 6 },
+                { 1, -1, -1 },
+                { 2, -1, -1 },
+                { 3, -1, -1 },
+        };
+        String[] names = { "", "Preface", "Chapter 1", "Preface", " Part ", "Section", "Other" };
+        int[][] bodies = new int[NODES][];
+        bodies[4] = new int[] { 100, 20 };
+        bodies[6] = new int[] { 120, 5 };
+
+        byte[] dat = records(links, names, bodies);
+        CompactTreeIndex tree = new CompactTreeIndex(idxFile, datFile);
+        tree.build(idx(), dat, "test", "UTF-8");
+        return tree;
+    }
+
+    /**
+     * Write the records of the data file, remembering where each starts.
+     */
+    private byte[] records(int[][] links, String[] names, int[][] bodies) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        starts = new int[links.length];
+        try {
+            for (int i = 0; i < links.length; i++) {
+                starts[i] = out.size();
+                for (int j = 0; j < 3; j++) {
+                    write32(out, links[i][j] < 0 ? -1 : links[i][j] * 4);
+                }
+                out.write(names[i].getBytes("UTF-8"));
+                out.write(0);
+                if (bodies[i] == null) {
+                    out.write(0);
+                    out.write(0);
+                } else {
+                    out.write(8);
+                    out.write(0);
+                    write32(out, bodies[i][0]);
+                    write32(out, bodies[i][1]);
+                }
+            }
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the index file for the records last written.
+     */
+    private byte[] idx() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < starts.length; i++) {
+            write32(out, starts[i]);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write32(ByteArrayOutputStream out, int value) {
+        byte[] buffer = new byte[4];
+        SwordUtil.encodeLittleEndian32(value, buffer, 0);
+        out.write(buffer, 0, 4);
+    }
+
+    private static final int NODES = 7;
+
+    private File idxFile;
+    private File datFile;
+    private int[] starts;
+}
@@ -0,0 +1,80 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class FileStampTest extends TestCase {
+    @Override
+    protected void setUp() throws IOException {
+        checkInterval = FileStamp.getCheckInterval();
+        idxFile = File.createTempFile("jsword", ".idx");
+        datFile = File.createTempFile("jsword", ".dat");
+    }
+
+    @Override
+    protected void tearDown() {
+        FileStamp.setCheckInterval(checkInterval);
+        idxFile.delete();
+        datFile.delete();
+    }
+
+    public void testIsCurrent() throws IOException {
+        FileStamp stamp = new FileStamp(idxFile, datFile);
+        assertTrue(stamp.isCurrent());
+
+        FileOutputStream out = new FileOutputStream(datFile);
+        out.write(new byte[] {
+                'A', '\n'
+        });
+        out.close();
+        assertFalse(stamp.isCurrent());
+    }
+
+    public void testCheckDue() {
+        FileStamp.setCheckInterval(60000);
+        FileStamp stamp = new FileStamp(idxFile, datFile);
+        assertFalse(stamp.isCheckDue());
+        FileStamp.setCheckInterval(0);
+        assertTrue(stamp.isCheckDue());
+
+        // A check that finds the files unchanged puts off the next one
+        FileStamp.setCheckInterval(60000);
+        assertTrue(stamp.isCurrent());
+        assertFalse(stamp.isCheckDue());
+    }
+
+    private long checkInterval;
+    private File idxFile;
+    private File datFile;
+}
@@ -0,0 +1,187 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.book.sword.state.OpenFileState;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.book.sword.state.ZVerseBackendState;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * JUnit Test. Reads generated modules through memory maps and through random
+ * access files, which must give the same text.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class MappedReadTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        mapped = OpenFileStateManager.isMapped();
+        OpenFileStateManager.closeIdle();
+
+        v11n = Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        verses = new TreeMap<Integer, String>();
+        addChapter(BibleBook.GEN, 1);
+        addChapter(BibleBook.GEN, 2);
+        addChapter(BibleBook.MAL, 4);
+        addChapter(BibleBook.MATT, 1);
+        addChapter(BibleBook.REV, 22);
+        // Leave a gap in the middle of a chapter
+        verses.remove(Integer.valueOf(v11n.getOrdinal(new Verse(BibleBook.GEN, 2, 7))));
+
+        root = ModuleWriter.createRoot();
+    }
+
+    @Override
+    protected void tearDown() {
+        OpenFileStateManager.setMapped(mapped);
+        OpenFileStateManager.closeIdle();
+        ModuleWriter.deleteRoot(root);
+    }
+
+    public void testRawText() throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Raw", "RawText", "modules/texts/rawtext/raw/", "");
+        ModuleWriter.writeRawText(new File(root, "modules/texts/rawtext/raw"), v11n, verses, 2);
+        RawBackend backend = new RawBackend(bmd, 2);
+
+        List<String> expected = read(backend, false);
+        assertEquals(expected, read(backend, true));
+        checkText(expected);
+
+        // Every mapped state of the book shares the one mapping
+        OpenFileStateManager.setMapped(true);
+        RawBackendState first = backend.initState();
+        RawBackendState second = backend.initState();
+        assertNotSame(first, second);
+        assertTrue(first.isMapped());
+        assertSame(first.getOtTextBuffer(), second.getOtTextBuffer());
+        assertSame(first.getNtIdxBuffer(), second.getNtIdxBuffer());
+        first.close();
+        second.close();
+    }
+
+    public void testZText() throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Comp", "zText", "modules/texts/ztext/comp/", "BlockType=CHAPTER\nCompressType=ZIP\n");
+        ModuleWriter.writeZText(new File(root, "modules/texts/ztext/comp"), v11n, verses);
+        ZVerseBackend backend = new ZVerseBackend(bmd, BlockType.BLOCK_CHAPTER);
+
+        BlockCache.clear();
+        List<String> expected = read(backend, false);
+        BlockCache.clear();
+        assertEquals(expected, read(backend, true));
+        checkText(expected);
+
+        OpenFileStateManager.setMapped(true);
+        ZVerseBackendState first = backend.initState();
+        ZVerseBackendState second = backend.initState();
+        assertTrue(first.isMapped());
+        assertSame(first.getOtCompBuffer(), second.getOtCompBuffer());
+        assertSame(first.getNtTextBuffer(), second.getNtTextBuffer());
+        first.close();
+        second.close();
+    }
+
+    public void testSharedBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {
+                1, 2, 3, 4, 5
+        });
+        buffer.position(1);
+        assertTrue(Arrays.equals(new byte[] {
+                3, 4
+        }, SwordUtil.readBuffer(buffer, 2, 2)));
+        assertTrue(Arrays.equals(new byte[] {
+                4, 5
+        }, SwordUtil.readBuffer(buffer, 3, 9)));
+        // A bad offset from a corrupt index reads nothing
+        assertEquals(0, SwordUtil.readBuffer(buffer, -1, 2).length);
+        assertEquals(0, SwordUtil.readBuffer(buffer, 5, 2).length);
+        // The read does not move the buffer
+        assertEquals(1, buffer.position());
+    }
+
+    /**
+     * Read each verse, one at a time and by chapter, through a state that is
+     * mapped or not.
+     */
+    private <T extends OpenFileState> List<String> read(AbstractBackend<T> backend, boolean map) throws Exception {
+        OpenFileStateManager.setMapped(map);
+        OpenFileStateManager.closeIdle();
+        List<String> texts = new ArrayList<String>();
+        T state = backend.initState();
+        try {
+            for (Integer ordinal : verses.keySet()) {
+                Verse verse = v11n.decodeOrdinal(ordinal.intValue());
+                texts.add(backend.readRawContent(state, verse, verse.getName()));
+            }
+            texts.addAll(Arrays.asList(backend.readRawContent(state, chapter(BibleBook.GEN, 2))));
+            texts.addAll(Arrays.asList(backend.readRawContent(state, chapter(BibleBook.MATT, 1))));
+            texts.addAll(Arrays.asList(backend.readRawContent(state, chapter(BibleBook.REV, 22))));
+        } finally {
+            state.close();
+        }
+        return texts;
+    }
+
+    /**
+     * Check the verses read one at a time against the text that was written.
+     */
+    private void checkText(List<String> texts) {
+        int i = 0;
+        for (String text : verses.values()) {
+            assertEquals(text, texts.get(i++));
+        }
+    }
+
+    private void addChapter(BibleBook book, int chapter) {
+        int last = v11n.getLastVerse(book, chapter);
+        for (int verse = 1; verse <= last; verse++) {
+            Verse v = new Verse(book, chapter, verse);
+            verses.put(Integer.valueOf(v11n.getOrdinal(v)), v.getName() + " text of " + verse);
+        }
+    }
+
+    private VerseRange chapter(BibleBook book, int chapter) {
+        return new VerseRange(v11n, new Verse(book, chapter, 1), new Verse(book, chapter, v11n.getLastVerse(book, chapter)));
+    }
+
+    private boolean mapped;
+    private Versification v11n;
+    private Map<Integer, String> verses;
+    private File root;
+}
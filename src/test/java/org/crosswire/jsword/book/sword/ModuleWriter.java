@@ -0,0 +1,285 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.IOUtil;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.versification.Testament;
+import org.crosswire.jsword.versification.Versification;
+
+/**
+ * Writes small Sword modules into a temporary directory, so that backends can
+ * be tested against files whose content is known.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public final class ModuleWriter {
+    /**
+     * Prevent instantiation
+     */
+    private ModuleWriter() {
+    }
+
+    /**
+     * Create an empty directory to hold the modules of a test.
+     */
+    public static File createRoot() throws IOException {
+        File root = File.createTempFile("jsword", "");
+        if (!root.delete() || !root.mkdir()) {
+            throw new IOException("Could not create " + root);
+        }
+        return root;
+    }
+
+    /**
+     * Delete the directory made by {@link #createRoot()}. The idle file states
+     * are closed first, as they are pooled by book name, so they would
+     * otherwise be reused by a later module of the same name.
+     */
+    public static void deleteRoot(File root) {
+        OpenFileStateManager.closeIdle();
+        FileUtil.delete(root);
+    }
+
+    /**
+     * Create the configuration of a module and the directory for its data.
+     * 
+     * @param root
+     *            the library that holds the module
+     * @param name
+     *            the initials of the module
+     * @param modDrv
+     *            the driver of the module, e.g. RawText
+     * @param dataPath
+     *            the path of the data, relative to the library
+     * @param extra
+     *            other lines of the configuration, each ending with a new line
+     * @return the meta data of the module
+     */
+    public static SwordBookMetaData createMetaData(File root, String name, String modDrv, String dataPath, String extra) throws IOException {
+        String conf = "[" + name + "]\nDescription=" + name + "\nModDrv=" + modDrv + "\nDataPath=./" + dataPath + '\n' + extra;
+        SwordBookMetaData bmd = new SwordBookMetaData(conf.getBytes("UTF-8"), name);
+        bmd.setLibrary(root.toURI());
+        File dir = new File(root, dataPath);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        return bmd;
+    }
+
+    /**
+     * Write the text and index of a testament of a RawText or RawText4
+     * module. Each index entry gives the start and the size of a verse, which
+     * need not follow one another, so that gaps and shared text can be made.
+     * 
+     * @param dir
+     *            the data directory of the module
+     * @param testament
+     *            the testament to write
+     * @param starts
+     *            the start of each verse in the text
+     * @param sizes
+     *            the size of each verse
+     * @param text
+     *            the text of the testament
+     * @param datasize
+     *            the number of bytes that hold a size, 2 or 4
+     */
+    public static void writeRaw(File dir, Testament testament, int[] starts, int[] sizes, byte[] text, int datasize) throws IOException {
+        String name = testament == Testament.OLD ? SwordConstants.FILE_OT : SwordConstants.FILE_NT;
+        ByteArrayOutputStream idx = new ByteArrayOutputStream();
+        for (int i = 0; i < starts.length; i++) {
+            writeLittleEndian(idx, starts[i], 4);
+            writeLittleEndian(idx, sizes[i], datasize);
+        }
+        write(new File(dir, name + SwordConstants.EXTENSION_VSS), idx.toByteArray());
+        write(new File(dir, name), text);
+    }
+
+    /**
+     * Write a RawText or RawText4 module holding the given verses, one after
+     * another. Verses that are not given are left empty.
+     * 
+     * @param dir
+     *            the data directory of the module
+     * @param v11n
+     *            the versification of the module
+     * @param verses
+     *            the text of the verses, by ordinal
+     * @param datasize
+     *            the number of bytes that hold a size, 2 or 4
+     */
+    public static void writeRawText(File dir, Versification v11n, Map<Integer, String> verses, int datasize) throws IOException {
+        for (Testament testament : Testament.values()) {
+            int count = getIndexSize(v11n, testament);
+            int[] starts = new int[count];
+            int[] sizes = new int[count];
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            for (Map.Entry<Integer, String> entry : verses.entrySet()) {
+                int ordinal = entry.getKey().intValue();
+                if (v11n.getTestament(ordinal) == testament) {
+                    byte[] data = entry.getValue().getBytes("UTF-8");
+                    int index = v11n.getTestamentOrdinal(ordinal);
+                    starts[index] = text.size();
+                    sizes[index] = data.length;
+                    text.write(data);
+                }
+            }
+            writeRaw(dir, testament, starts, sizes, text.toByteArray(), datasize);
+        }
+    }
+
+    /**
+     * Write the index and data files of a RawLD or RawLD4 module. Each entry
+     * is written as its key, a new line and its text, one after another.
+     * 
+     * @param path
+     *            the data path of the module, to which the extensions of the
+     *            files are added
+     * @param entries
+     *            the key and the text of each entry, in the order of the
+     *            index
+     * @param datasize
+     *            the number of bytes that hold a size, 2 or 4
+     */
+    public static void writeRawLD(File path, String[][] entries, int datasize) throws IOException {
+        ByteArrayOutputStream idx = new ByteArrayOutputStream();
+        ByteArrayOutputStream dat = new ByteArrayOutputStream();
+        for (String[] entry : entries) {
+            byte[] data = (entry[0] + '\n' + entry[1]).getBytes("UTF-8");
+            writeLittleEndian(idx, dat.size(), 4);
+            writeLittleEndian(idx, data.length, datasize);
+            dat.write(data);
+        }
+        write(new File(path.getPath() + SwordConstants.EXTENSION_INDEX), idx.toByteArray());
+        write(new File(path.getPath() + SwordConstants.EXTENSION_DATA), dat.toByteArray());
+    }
+
+    /**
+     * Write a zText module holding the given verses, compressed with ZIP in
+     * a block per chapter. Verses that are not given are left empty.
+     * 
+     * @param dir
+     *            the data directory of the module
+     * @param v11n
+     *            the versification of the module
+     * @param verses
+     *            the text of the verses, by ordinal
+     */
+    public static void writeZText(File dir, Versification v11n, Map<Integer, String> verses) throws IOException {
+        for (Testament testament : Testament.values()) {
+            ByteArrayOutputStream comp = new ByteArrayOutputStream();
+            ByteArrayOutputStream idx = new ByteArrayOutputStream();
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            int blockNum = 0;
+            String chapter = null;
+            int count = getIndexSize(v11n, testament);
+            for (int index = 0; index < count; index++) {
+                int ordinal = testament == Testament.OLD ? index : v11n.getCount(Testament.OLD) + index - 1;
+                String verse = index == 0 && testament == Testament.NEW ? null : verses.get(Integer.valueOf(ordinal));
+                if (verse == null) {
+                    writeLittleEndian(comp, 0, 4);
+                    writeLittleEndian(comp, 0, 4);
+                    writeLittleEndian(comp, 0, 2);
+                    continue;
+                }
+
+                String name = v11n.decodeOrdinal(ordinal).getName();
+                String thisChapter = name.substring(0, name.lastIndexOf(':'));
+                if (chapter != null && !chapter.equals(thisChapter)) {
+                    writeBlock(idx, text, block);
+                    blockNum++;
+                }
+                chapter = thisChapter;
+
+                byte[] data = verse.getBytes("UTF-8");
+                writeLittleEndian(comp, blockNum, 4);
+                writeLittleEndian(comp, block.size(), 4);
+                writeLittleEndian(comp, data.length, 2);
+                block.write(data);
+            }
+            if (block.size() > 0) {
+                writeBlock(idx, text, block);
+            }
+
+            String name = (testament == Testament.OLD ? SwordConstants.FILE_OT : SwordConstants.FILE_NT) + '.' + BlockType.BLOCK_CHAPTER.getIndicator() + 'z';
+            write(new File(dir, name + 'v'), comp.toByteArray());
+            write(new File(dir, name + 's'), idx.toByteArray());
+            write(new File(dir, name + 'z'), text.toByteArray());
+        }
+    }
+
+    /**
+     * The number of entries in the index of a testament.
+     */
+    public static int getIndexSize(Versification v11n, Testament testament) {
+        int last = testament == Testament.OLD ? v11n.getCount(Testament.OLD) - 1 : v11n.maximumOrdinal();
+        return v11n.getTestamentOrdinal(last) + 1;
+    }
+
+    /**
+     * Compress a block onto the end of the text and index it.
+     */
+    private static void writeBlock(ByteArrayOutputStream idx, ByteArrayOutputStream text, ByteArrayOutputStream block) {
+        byte[] uncompressed = block.toByteArray();
+        Deflater deflater = new Deflater();
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        byte[] buf = new byte[uncompressed.length + 64];
+        int length = deflater.deflate(buf);
+        deflater.end();
+
+        writeLittleEndian(idx, text.size(), 4);
+        writeLittleEndian(idx, length, 4);
+        writeLittleEndian(idx, uncompressed.length, 4);
+        text.write(buf, 0, length);
+        block.reset();
+    }
+
+    public static void writeLittleEndian(ByteArrayOutputStream out, int value, int size) {
+        for (int i = 0; i < size; i++) {
+            out.write((value >>> (8 * i)) & 0xFF);
+        }
+    }
+
+    public static void write(File file, byte[] data) throws IOException {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(data);
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.state.GenBookBackendState;
+import org.crosswire.jsword.book.sword.state.OpenFileState;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class OpenFileStateManagerTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        maxOpen = OpenFileStateManager.getMaxOpen();
+        maxWait = OpenFileStateManager.getMaxWait();
+        maxIdle = OpenFileStateManager.getMaxIdle();
+        minIdle = OpenFileStateManager.getMinIdle();
+        idleTimeout = OpenFileStateManager.getIdleTimeout();
+        OpenFileStateManager.closeIdle();
+
+        book1 = createBook("Book1");
+        book2 = createBook("Book2");
+    }
+
+    @Override
+    protected void tearDown() {
+        OpenFileStateManager.setMaxOpen(maxOpen);
+        OpenFileStateManager.setMaxWait(maxWait);
+        OpenFileStateManager.setMaxIdle(maxIdle);
+        OpenFileStateManager.setMinIdle(minIdle);
+        OpenFileStateManager.setIdleTimeout(idleTimeout);
+        OpenFileStateManager.closeIdle();
+    }
+
+    public void testReuse() throws BookException {
+        long created = OpenFileStateManager.getCreated();
+        int open = OpenFileStateManager.getOpenCount();
+
+        GenBookBackendState first = OpenFileStateManager.getGenBookBackendState(book1);
+        GenBookBackendState second = OpenFileStateManager.getGenBookBackendState(book1);
+        assertNotSame(first, second);
+        assertEquals(open + 2, OpenFileStateManager.getOpenCount());
+        first.close();
+        second.close();
+        assertEquals(2, OpenFileStateManager.getIdleCount());
+
+        // The last released is the first reused
+        assertSame(second, OpenFileStateManager.getGenBookBackendState(book1));
+        assertEquals(1, OpenFileStateManager.getIdleCount());
+        assertEquals(created + 2, OpenFileStateManager.getCreated());
+
+        // A state of another book is not reused
+        GenBookBackendState other = OpenFileStateManager.getGenBookBackendState(book2);
+        assertNotSame(first, other);
+        assertEquals(created + 3, OpenFileStateManager.getCreated());
+        second.close();
+        other.close();
+        assertEquals(open + 3, OpenFileStateManager.getOpenCount());
+    }
+
+    public void testMaxOpen() throws BookException {
+        int open = OpenFileStateManager.getOpenCount();
+        OpenFileStateManager.setMaxOpen(open + 2);
+        OpenFileStateManager.setMaxWait(50);
+
+        GenBookBackendState first = OpenFileStateManager.getGenBookBackendState(book1);
+        GenBookBackendState second = OpenFileStateManager.getGenBookBackendState(book2);
+        long waits = OpenFileStateManager.getWaits();
+        try {
+            OpenFileStateManager.getGenBookBackendState(book1);
+            fail("More states were opened than allowed");
+        } catch (BookException e) {
+            // expected
+        }
+        assertEquals(waits + 1, OpenFileStateManager.getWaits());
+        assertTrue(OpenFileStateManager.getWaitTime() >= 50);
+
+        // An idle state of another book is closed to make room
+        long evicted = OpenFileStateManager.getEvicted();
+        second.close();
+        GenBookBackendState third = OpenFileStateManager.getGenBookBackendState(book1);
+        assertNotSame(second, third);
+        assertEquals(evicted + 1, OpenFileStateManager.getEvicted());
+        assertEquals(open + 2, OpenFileStateManager.getOpenCount());
+
+        // A state released while waiting is handed over
+        OpenFileStateManager.setMaxWait(10000);
+        final GenBookBackendState released = first;
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // carry on
+                }
+                released.close();
+            }
+        };
+        releaser.start();
+        assertSame(first, OpenFileStateManager.getGenBookBackendState(book1));
+        first.close();
+        third.close();
+    }
+
+    public void testMaxIdle() throws BookException {
+        OpenFileStateManager.setMaxIdle(1);
+        long evicted = OpenFileStateManager.getEvicted();
+        int open = OpenFileStateManager.getOpenCount();
+
+        GenBookBackendState first = OpenFileStateManager.getGenBookBackendState(book1);
+        GenBookBackendState second = OpenFileStateManager.getGenBookBackendState(book1);
+        first.close();
+        second.close();
+        assertEquals(1, OpenFileStateManager.getIdleCount());
+        assertEquals(open + 1, OpenFileStateManager.getOpenCount());
+        assertEquals(evicted + 1, OpenFileStateManager.getEvicted());
+    }
+
+    public void testReaper() throws BookException, InterruptedException {
+        OpenFileStateManager.setMinIdle(1);
+        OpenFileStateManager.setIdleTimeout(1);
+
+        GenBookBackendState first = OpenFileStateManager.getGenBookBackendState(book1);
+        GenBookBackendState second = OpenFileStateManager.getGenBookBackendState(book1);
+        GenBookBackendState third = OpenFileStateManager.getGenBookBackendState(book2);
+        first.close();
+        second.close();
+        third.close();
+        assertEquals(3, OpenFileStateManager.getIdleCount());
+
+        // One of each book is kept
+        for (int i = 0; i < 50 && OpenFileStateManager.getIdleCount() > 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, OpenFileStateManager.getIdleCount());
+        assertSame(second, OpenFileStateManager.getGenBookBackendState(book1));
+        second.close();
+    }
+
+    public void testCloseOutsideLock() throws BookException, InterruptedException {
+        TestState idleState = pool(new TestState(book1, false));
+        OpenFileStateManager.closeIdle();
+        assertTrue(idleState.closed);
+        assertTrue("Closed while holding the pool lock", idleState.unlocked);
+
+        OpenFileStateManager.setIdleTimeout(1);
+        TestState expiredState = pool(new TestState(book1, false));
+        waitForClose(expiredState);
+        assertTrue("Reaped while holding the pool lock", expiredState.unlocked);
+    }
+
+    public void testReaperSurvivesFailure() throws BookException, InterruptedException {
+        OpenFileStateManager.setIdleTimeout(1);
+        int open = OpenFileStateManager.getOpenCount();
+
+        TestState failing = pool(new TestState(book1, true));
+        waitForClose(failing);
+
+        // The reaper carries on after a state fails to close
+        TestState next = pool(new TestState(book2, false));
+        waitForClose(next);
+        assertEquals(open, OpenFileStateManager.getOpenCount());
+    }
+
+    /**
+     * Put a test state in the pool, in the room of a state that was opened
+     * for it, so that the counts stay right.
+     */
+    private TestState pool(TestState state) throws BookException {
+        OpenFileStateManager.getGenBookBackendState(state.getBookMetaData()).releaseResources();
+        OpenFileStateManager.release(state);
+        return state;
+    }
+
+    private void waitForClose(TestState state) throws InterruptedException {
+        for (int i = 0; i < 50 && !state.closed; i++) {
+            Thread.sleep(100);
+        }
+        assertTrue("Idle state was not reaped", state.closed);
+    }
+
+    /**
+     * Create a general book whose files are missing, so that its states
+     * hold no files.
+     */
+    private SwordBookMetaData createBook(String name) throws Exception {
+        String conf = "[" + name + "]\nDescription=" + name + "\nModDrv=RawGenBook\nDataPath=./modules/genbook/rawgenbook/" + name + "/" + name + "\n";
+        SwordBookMetaData book = new SwordBookMetaData(conf.getBytes("UTF-8"), name);
+        book.setLibrary(new URI("file:///jsword/missing/"));
+        return book;
+    }
+
+    /**
+     * A state that notes whether the pool could be used while it was being
+     * closed, and that may fail to close.
+     */
+    private static class TestState implements OpenFileState {
+        TestState(SwordBookMetaData bookMetaData, boolean failing) {
+            this.bookMetaData = bookMetaData;
+            this.failing = failing;
+        }
+
+        public SwordBookMetaData getBookMetaData() {
+            return bookMetaData;
+        }
+
+        public void releaseResources() {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    OpenFileStateManager.getOpenCount();
+                }
+            };
+            reader.start();
+            try {
+                reader.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            unlocked = !reader.isAlive();
+            closed = true;
+            if (failing) {
+                throw new IllegalStateException("Unable to close " + bookMetaData.getInitials());
+            }
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        public void setLastAccess(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+
+        public void close() {
+            OpenFileStateManager.release(this);
+        }
+
+        private SwordBookMetaData bookMetaData;
+        private boolean failing;
+        private long lastAccess;
+        volatile boolean unlocked;
+        volatile boolean closed;
+    }
+
+    private SwordBookMetaData book1;
+    private SwordBookMetaData book2;
+    private int maxOpen;
+    private long maxWait;
+    private int maxIdle;
+    private int minIdle;
+    private long idleTimeout;
+}
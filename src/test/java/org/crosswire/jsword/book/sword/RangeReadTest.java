@@ -0,0 +1,259 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.processing.RawTextToXmlProcessor;
+import org.crosswire.jsword.book.sword.state.OpenFileState;
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.book.sword.state.RawBackendState;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Testament;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.jdom.Content;
+
+/**
+ * JUnit Test. Reads ranges of generated modules at one go, which must give the
+ * same text as reading the verses one at a time, whatever the layout of the
+ * verses in the text file.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class RangeReadTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        mapped = OpenFileStateManager.isMapped();
+        OpenFileStateManager.closeIdle();
+        v11n = Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        root = ModuleWriter.createRoot();
+    }
+
+    @Override
+    protected void tearDown() {
+        OpenFileStateManager.setMapped(mapped);
+        OpenFileStateManager.closeIdle();
+        ModuleWriter.deleteRoot(root);
+    }
+
+    public void testGapsAndLinks() throws Exception {
+        // verse 1, a gap, verse 2, verse 3 is empty, verse 4 is linked to
+        // verse 2 and verse 6 overlaps verse 5
+        RawBackend backend = createRaw("OnexxxxTwoThree words", new int[] {
+                0, 7, 0, 7, 10, 16
+        }, new int[] {
+                3, 3, 0, 3, 11, 5
+        });
+        check(backend, "One", "Two", "", "Two", "Three words", "words");
+    }
+
+    public void testFarLink() throws Exception {
+        // verse 2 is far from the others, so they are read one at a time
+        StringBuilder text = new StringBuilder("OneThree");
+        while (text.length() < 10000) {
+            text.append('x');
+        }
+        text.append("Two");
+        RawBackend backend = createRaw(text.toString(), new int[] {
+                0, 10000, 3
+        }, new int[] {
+                3, 3, 5
+        });
+        check(backend, "One", "Two", "Three");
+    }
+
+    public void testShortRead() throws Exception {
+        // verse 3 runs past the end of the text and verse 4 starts after it
+        RawBackend backend = createRaw("OneTwoThr", new int[] {
+                0, 3, 6, 20
+        }, new int[] {
+                3, 3, 5, 3
+        });
+        check(backend, "One", "Two", "Thr", "");
+    }
+
+    public void testShortIndex() throws Exception {
+        // The index ends part of the way through the range
+        RawBackend backend = createRaw("OneTwo", new int[] {
+                0, 3
+        }, new int[] {
+                3, 3
+        });
+        check(backend, "One", "Two", "", "");
+    }
+
+    public void testRawTextAcrossTestaments() throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Raw", "RawText", "modules/texts/rawtext/raw/", "");
+        ModuleWriter.writeRawText(new File(root, "modules/texts/rawtext/raw"), v11n, getMalToMatt(), 2);
+        checkAcrossTestaments(new RawBackend(bmd, 2));
+    }
+
+    public void testZTextAcrossTestaments() throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Comp", "zText", "modules/texts/ztext/comp/", "BlockType=CHAPTER\nCompressType=ZIP\n");
+        ModuleWriter.writeZText(new File(root, "modules/texts/ztext/comp"), v11n, getMalToMatt());
+        BlockCache.clear();
+        checkAcrossTestaments(new ZVerseBackend(bmd, BlockType.BLOCK_CHAPTER));
+    }
+
+    public void testFailedVerse() throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Raw", "RawText", "modules/texts/rawtext/raw/", "");
+        ModuleWriter.writeRawText(new File(root, "modules/texts/rawtext/raw"), v11n, getMalToMatt(), 2);
+        final Verse failing = new Verse(BibleBook.MAL, 4, 5);
+        RawBackend backend = new RawBackend(bmd, 2) {
+            @Override
+            public String[] readRawContent(RawBackendState state, VerseRange range) throws IOException {
+                throw new IOException("Unable to read " + range.getName());
+            }
+
+            @Override
+            public String readRawContent(RawBackendState state, Key key, String keyName) throws IOException {
+                if (failing.equals(key)) {
+                    throw new IOException("Unable to read " + keyName);
+                }
+                return super.readRawContent(state, key, keyName);
+            }
+        };
+
+        // The error names the verse that failed, not its chapter
+        try {
+            backend.readToOsis(new VerseRange(v11n, new Verse(BibleBook.MAL, 4, 1), new Verse(BibleBook.MAL, 4, 6)), new RawTextToXmlProcessor() {
+                public void init(List<Content> partialDom) {
+                    // no op
+                }
+
+                public void preRange(VerseRange range, List<Content> partialDom) {
+                    // no op
+                }
+
+                public void postVerse(Key verse, List<Content> partialDom, String rawText) {
+                    // no op
+                }
+            });
+            fail("The verse was read");
+        } catch (BookException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf(failing.getName()) != -1);
+        }
+    }
+
+    /**
+     * Write a RawText module whose Old Testament starts at Gen 1:1 with
+     * verses at the given places in the text.
+     */
+    private RawBackend createRaw(String text, int[] verseStarts, int[] verseSizes) throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Raw", "RawText", "modules/texts/rawtext/raw/", "");
+        File dir = new File(root, "modules/texts/rawtext/raw");
+
+        // The index may stop short of the end of the testament
+        int first = v11n.getTestamentOrdinal(v11n.getOrdinal(new Verse(BibleBook.GEN, 1, 1)));
+        int[] starts = new int[first + verseStarts.length];
+        int[] sizes = new int[first + verseStarts.length];
+        System.arraycopy(verseStarts, 0, starts, first, verseStarts.length);
+        System.arraycopy(verseSizes, 0, sizes, first, verseSizes.length);
+        ModuleWriter.writeRaw(dir, Testament.OLD, starts, sizes, text.getBytes("UTF-8"), 2);
+        ModuleWriter.writeRaw(dir, Testament.NEW, new int[0], new int[0], new byte[0], 2);
+        return new RawBackend(bmd, 2);
+    }
+
+    /**
+     * Read Gen 1:1 and the verses that follow it as a range, mapped and not,
+     * and one verse at a time.
+     */
+    private void check(RawBackend backend, String... expected) throws Exception {
+        VerseRange range = new VerseRange(v11n, new Verse(BibleBook.GEN, 1, 1), new Verse(BibleBook.GEN, 1, expected.length));
+        for (boolean map : new boolean[] {
+                false, true
+        }) {
+            assertEquals(Arrays.asList(expected), read(backend, range, map));
+            assertEquals(Arrays.asList(expected), readVerses(backend, range, map));
+        }
+    }
+
+    private <T extends OpenFileState> void checkAcrossTestaments(AbstractBackend<T> backend) throws Exception {
+        VerseRange range = new VerseRange(v11n, new Verse(BibleBook.MAL, 4, 5), new Verse(BibleBook.MATT, 1, 2));
+        for (boolean map : new boolean[] {
+                false, true
+        }) {
+            List<String> texts = read(backend, range, map);
+            assertEquals(readVerses(backend, range, map), texts);
+            assertEquals(new Verse(BibleBook.MAL, 4, 5).getName(), texts.get(0));
+            assertEquals(new Verse(BibleBook.MAL, 4, 6).getName(), texts.get(1));
+            assertEquals(new Verse(BibleBook.MATT, 1, 1).getName(), texts.get(texts.size() - 2));
+            assertEquals(new Verse(BibleBook.MATT, 1, 2).getName(), texts.get(texts.size() - 1));
+        }
+    }
+
+    private Map<Integer, String> getMalToMatt() {
+        Map<Integer, String> verses = new TreeMap<Integer, String>();
+        for (int verse = 1; verse <= 6; verse++) {
+            Verse v = new Verse(BibleBook.MAL, 4, verse);
+            verses.put(Integer.valueOf(v11n.getOrdinal(v)), v.getName());
+            v = new Verse(BibleBook.MATT, 1, verse);
+            verses.put(Integer.valueOf(v11n.getOrdinal(v)), v.getName());
+        }
+        return verses;
+    }
+
+    private <T extends OpenFileState> List<String> read(AbstractBackend<T> backend, VerseRange range, boolean map) throws Exception {
+        OpenFileStateManager.setMapped(map);
+        OpenFileStateManager.closeIdle();
+        T state = backend.initState();
+        try {
+            return Arrays.asList(backend.readRawContent(state, range));
+        } finally {
+            state.close();
+        }
+    }
+
+    private <T extends OpenFileState> List<String> readVerses(AbstractBackend<T> backend, VerseRange range, boolean map) throws Exception {
+        OpenFileStateManager.setMapped(map);
+        OpenFileStateManager.closeIdle();
+        List<String> texts = new ArrayList<String>();
+        T state = backend.initState();
+        try {
+            for (Key verse : range) {
+                texts.add(backend.readRawContent(state, verse, verse.getName()));
+            }
+        } finally {
+            state.close();
+        }
+        return texts;
+    }
+
+    private boolean mapped;
+    private Versification v11n;
+    private File root;
+}
@@ -0,0 +1,218 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.book.sword.state.OpenFileStateManager;
+import org.crosswire.jsword.passage.DefaultLeafKeyList;
+
+/**
+ * JUnit Test. Finds the keys of generated dictionaries through the index of
+ * keys, which must give what a search that reads each entry as it goes gives.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class RawLDBackendTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        checkInterval = FileStamp.getCheckInterval();
+        root = ModuleWriter.createRoot();
+    }
+
+    @Override
+    protected void tearDown() {
+        FileStamp.setCheckInterval(checkInterval);
+        ModuleWriter.deleteRoot(root);
+    }
+
+    public void testRawLD() throws Exception {
+        check(create("RawLD", getEntries(false), 2));
+    }
+
+    public void testRawLD4() throws Exception {
+        // Entries larger than the window, one with a key longer than is read
+        // to find a key
+        check(create("RawLD4", getEntries(true), 4));
+    }
+
+    public void testShortData() throws Exception {
+        String[][] entries = getEntries(false);
+        RawLDBackend<?> backend = create("RawLD", entries, 2);
+
+        // The data file ends part of the way through the text of the last but
+        // one entry, so the key of the last one cannot be read
+        File dat = new File(root, "modules/lexdict/rawld/test/test" + SwordConstants.EXTENSION_DATA);
+        RandomAccessFile raf = new RandomAccessFile(dat, "rw");
+        raf.setLength(raf.length() - entries[entries.length - 1][0].length() - entries[entries.length - 1][1].length() - 3);
+        raf.close();
+        FileStamp.setCheckInterval(0);
+        check(backend);
+        assertEquals(entries.length - 2, backend.indexOf(new DefaultLeafKeyList(entries[entries.length - 2][0])));
+    }
+
+    public void testReinstall() throws Exception {
+        FileStamp.setCheckInterval(60000);
+        RawLDBackend<?> backend = create("RawLD", new String[][] {
+                {
+                        "ALPHA", "first"
+                }, {
+                        "GAMMA", "third"
+                }
+        }, 2);
+        assertEquals(1, backend.indexOf(new DefaultLeafKeyList("gamma")));
+
+        String[][] reinstalled = {
+                {
+                        "ALPHA", "first"
+                }, {
+                        "BETA", "second"
+                }, {
+                        "GAMMA", "third"
+                }
+        };
+        ModuleWriter.writeRawLD(new File(root, "modules/lexdict/rawld/test/test"), reinstalled, 2);
+        OpenFileStateManager.closeIdle();
+
+        // The files are not looked at until the check is due
+        assertEquals(1, backend.indexOf(new DefaultLeafKeyList("gamma")));
+        FileStamp.setCheckInterval(0);
+        assertEquals(2, backend.indexOf(new DefaultLeafKeyList("gamma")));
+        assertEquals(1, backend.indexOf(new DefaultLeafKeyList("beta")));
+    }
+
+    private RawLDBackend<?> create(String modDrv, String[][] entries, int datasize) throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Test", modDrv, "modules/lexdict/rawld/test/test", "");
+        ModuleWriter.writeRawLD(new File(root, "modules/lexdict/rawld/test/test"), entries, datasize);
+        return new RawLDBackend(bmd, datasize);
+    }
+
+    /**
+     * Make the entries of a dictionary, sorted by key. There are enough of
+     * them to need several windows of the data file.
+     */
+    private String[][] getEntries(boolean large) {
+        List<String[]> entries = new ArrayList<String[]>();
+        entries.add(new String[] {
+                "Introduction", "Entries that follow"
+        });
+        for (int i = 0; i < 3000; i++) {
+            entries.add(new String[] {
+                    String.format("A%04d", Integer.valueOf(i)), "The text of entry " + i + " of this dictionary"
+            });
+        }
+        entries.add(new String[] {
+                "B" + repeat('X', 1500), "A key longer than is read to find a key"
+        });
+        if (large) {
+            // The key of the second is not in the window, nor in what is read
+            // of an entry to find its key
+            entries.add(new String[] {
+                    "C", repeat('T', 100000)
+            });
+            entries.add(new String[] {
+                    "D" + repeat('Y', 1500), repeat('T', 100000)
+            });
+        }
+        entries.add(new String[] {
+                "E", "The last but two"
+        });
+        entries.add(new String[] {
+                "echo", "A key that is not upper case"
+        });
+        entries.add(new String[] {
+                "F", "The last"
+        });
+        return entries.toArray(new String[entries.size()][]);
+    }
+
+    /**
+     * Find each key, and a few that are not there, with the backend and with
+     * a search that reads each entry.
+     */
+    private void check(RawLDBackend<?> backend) {
+        int count = backend.getCardinality();
+        List<String> keys = new ArrayList<String>(count);
+        List<String> targets = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            String key = backend.get(i).getName();
+            keys.add(key.toUpperCase(Locale.US));
+            targets.add(key);
+        }
+        targets.add("");
+        targets.add("0");
+        targets.add("A0000X");
+        targets.add("A5");
+        targets.add("B");
+        targets.add("ECHO");
+        targets.add("Z");
+
+        for (String target : targets) {
+            assertEquals(target, search(keys, target.toUpperCase(Locale.US)), backend.indexOf(new DefaultLeafKeyList(target)));
+        }
+    }
+
+    /**
+     * The binary search of the backend, done on keys that have been read an
+     * entry at a time.
+     */
+    private int search(List<String> keys, String target) {
+        int total = keys.size();
+        int low = 0;
+        int high = total;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            int cmp = keys.get(mid).compareTo(target);
+            if (cmp < 0) {
+                low = mid;
+            } else if (cmp > 0) {
+                high = mid;
+            } else {
+                return mid;
+            }
+        }
+
+        if (total > 0 && keys.get(0).compareTo(target) == 0) {
+            return 0;
+        }
+        return -(high + 1);
+    }
+
+    private String repeat(char c, int count) {
+        StringBuilder buf = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
+    private long checkInterval;
+    private File root;
+}
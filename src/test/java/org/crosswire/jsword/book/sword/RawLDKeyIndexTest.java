@@ -0,0 +1,78 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class RawLDKeyIndexTest extends TestCase {
+    @Override
+    protected void setUp() throws IOException {
+        idxFile = File.createTempFile("jsword", ".idx");
+        datFile = File.createTempFile("jsword", ".dat");
+    }
+
+    @Override
+    protected void tearDown() {
+        idxFile.delete();
+        datFile.delete();
+    }
+
+    public void testCompareTo() {
+        String[] keys = {
+                "", "A", "AARON", "G0001", "G00010", "\u00dcBER", "\ud801\udc00", "\ufb01"
+        };
+        RawLDKeyIndex index = new RawLDKeyIndex(idxFile, datFile, keys.length);
+        for (String key : keys) {
+            index.add(key);
+        }
+        assertEquals(keys.length, index.size());
+
+        // The order is that of String
+        for (int i = 0; i < keys.length; i++) {
+            for (String target : keys) {
+                assertEquals(Integer.signum(keys[i].compareTo(target)), Integer.signum(index.compareTo(i, target)));
+            }
+            assertEquals(Integer.signum(keys[i].compareTo("G0")), Integer.signum(index.compareTo(i, "G0")));
+        }
+    }
+
+    public void testGrow() {
+        RawLDKeyIndex index = new RawLDKeyIndex(idxFile, datFile, 2);
+        index.add("A MUCH LONGER KEY THAN EXPECTED");
+        index.add("B");
+        assertEquals(0, index.compareTo(0, "A MUCH LONGER KEY THAN EXPECTED"));
+        assertEquals(0, index.compareTo(1, "B"));
+    }
+
+    private File idxFile;
+    private File datFile;
+}
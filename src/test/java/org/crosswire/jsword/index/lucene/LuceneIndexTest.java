@@ -0,0 +1,243 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.crosswire.common.activate.Activator;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.sword.ModuleWriter;
+import org.crosswire.jsword.book.sword.RawBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.book.sword.processing.RawTextToXmlProcessor;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.jdom.Content;
+
+/**
+ * JUnit Test. Builds indexes of a small generated Bible and searches them.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class LuceneIndexTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        keepOpen = LuceneIndex.isKeepOpen();
+        indexThreads = LuceneIndex.getIndexThreads();
+        v11n = Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        root = ModuleWriter.createRoot();
+        verses = new TreeMap<Integer, String>();
+        addChapter(BibleBook.GEN, 1, "light");
+        addChapter(BibleBook.JOHN, 1, "word");
+        verses.put(Integer.valueOf(v11n.getOrdinal(new Verse(BibleBook.GEN, 1, 3))), "Let there be light");
+    }
+
+    @Override
+    protected void tearDown() {
+        LuceneIndex.setKeepOpen(keepOpen);
+        LuceneIndex.setIndexThreads(indexThreads);
+        ModuleWriter.deleteRoot(root);
+    }
+
+    public void testFind() throws Exception {
+        LuceneIndex index = createIndex(createBook());
+        try {
+            assertEquals(v11n.getLastVerse(BibleBook.GEN, 1), index.find("light").getCardinality());
+            assertEquals(v11n.getLastVerse(BibleBook.JOHN, 1), index.find("word").getCardinality());
+            assertEquals(1, index.find("there").getCardinality());
+            assertEquals(0, index.find("darkness").getCardinality());
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testParallelBuild() throws Exception {
+        LuceneIndex.setIndexThreads(3);
+        LuceneIndex index = createIndex(createBook());
+        try {
+            assertEquals(v11n.getLastVerse(BibleBook.JOHN, 1), index.find("word").getCardinality());
+        } finally {
+            index.close();
+        }
+    }
+
+    public void testParallelBuildFailure() throws Exception {
+        LuceneIndex.setIndexThreads(3);
+        SwordBookMetaData bmd = createModule();
+        final Verse bad = new Verse(BibleBook.JOHN, 1, 7);
+        Book book = new SwordBook(bmd, new RawBackend(bmd, 2)) {
+            @Override
+            protected List<Content> getOsis(Key key, RawTextToXmlProcessor processor) throws BookException {
+                if (key instanceof VerseRange && ((VerseRange) key).contains(bad)) {
+                    throw new IllegalStateException("bad verse");
+                }
+                return super.getOsis(key, processor);
+            }
+        };
+
+        File dir = new File(root, "index");
+        try {
+            new LuceneIndex(book, dir.toURI(), true);
+            fail("The failure of a thread building the index was lost");
+        } catch (IllegalStateException e) {
+            assertEquals("bad verse", e.getMessage());
+        }
+        assertFalse(dir.exists());
+    }
+
+    public void testDeactivateWhileAcquired() throws Exception {
+        LuceneIndex index = createIndex(createBook());
+        LuceneIndex.IndexHolder held = index.acquireIndex();
+        Directory directory = held.getDirectory();
+        Activator.deactivate(index);
+        assertNull(index.directory);
+
+        // The index stays open until it is released
+        directory.listAll();
+        assertEquals(v11n.getLastVerse(BibleBook.GEN, 1), held.getSearcher().search(new TermQuery(new Term(LuceneIndex.FIELD_BODY, "light")), 100).totalHits);
+        index.releaseIndex(held);
+        try {
+            directory.listAll();
+            fail("The index was not closed");
+        } catch (AlreadyClosedException e) {
+            // expected
+        }
+
+        // The next search opens it again
+        assertEquals(v11n.getLastVerse(BibleBook.GEN, 1), index.find("light").getCardinality());
+        index.close();
+    }
+
+    public void testDeactivateWhileSearching() throws Exception {
+        checkDeactivateWhileSearching(true);
+    }
+
+    public void testCloseEachSearch() throws Exception {
+        checkDeactivateWhileSearching(false);
+    }
+
+    /**
+     * Search on several threads while the index is deactivated over and over
+     * again. No search may find the index closed beneath it.
+     */
+    private void checkDeactivateWhileSearching(boolean open) throws Exception {
+        LuceneIndex.setKeepOpen(open);
+        final LuceneIndex index = createIndex(createBook());
+        final int expected = v11n.getLastVerse(BibleBook.GEN, 1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] searchers = new Thread[4];
+        for (int i = 0; i < searchers.length; i++) {
+            searchers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            Key found = index.find("light");
+                            if (found.getCardinality() != expected) {
+                                throw new AssertionError("found " + found.getCardinality());
+                            }
+
+                            LuceneIndex.IndexHolder held = index.acquireIndex();
+                            try {
+                                Thread.yield();
+                                held.getDirectory().listAll();
+                            } finally {
+                                index.releaseIndex(held);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            searchers[i].start();
+        }
+
+        for (Thread searcher : searchers) {
+            while (searcher.isAlive()) {
+                Activator.deactivate(index);
+                Thread.yield();
+            }
+        }
+        index.close();
+
+        if (!failures.isEmpty()) {
+            Throwable failure = failures.get(0);
+            AssertionError error = new AssertionError("A search failed: " + failure);
+            error.initCause(failure);
+            throw error;
+        }
+    }
+
+    /**
+     * Build the index of a book and open it.
+     */
+    private LuceneIndex createIndex(Book book) throws Exception {
+        File dir = new File(root, "index");
+        new LuceneIndex(book, dir.toURI(), true);
+        return new LuceneIndex(book, dir.toURI());
+    }
+
+    private Book createBook() throws Exception {
+        SwordBookMetaData bmd = createModule();
+        return new SwordBook(bmd, new RawBackend(bmd, 2));
+    }
+
+    private SwordBookMetaData createModule() throws Exception {
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Test", "RawText", "modules/texts/rawtext/test/", "");
+        ModuleWriter.writeRawText(new File(root, "modules/texts/rawtext/test"), v11n, verses, 2);
+        return bmd;
+    }
+
+    private void addChapter(BibleBook book, int chapter, String word) {
+        int last = v11n.getLastVerse(book, chapter);
+        for (int verse = 1; verse <= last; verse++) {
+            Verse v = new Verse(book, chapter, verse);
+            verses.put(Integer.valueOf(v11n.getOrdinal(v)), "The " + word + " of verse " + verse);
+        }
+    }
+
+    private boolean keepOpen;
+    private int indexThreads;
+    private Versification v11n;
+    private File root;
+    private Map<Integer, String> verses;
+}
@@ -0,0 +1,189 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.book.sword.ModuleWriter;
+import org.crosswire.jsword.book.sword.RawBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.index.query.AndNotQuery;
+import org.crosswire.jsword.index.query.AndQuery;
+import org.crosswire.jsword.index.query.BaseQuery;
+import org.crosswire.jsword.index.query.BlurQuery;
+import org.crosswire.jsword.index.query.NullQuery;
+import org.crosswire.jsword.index.query.OrQuery;
+import org.crosswire.jsword.index.query.Query;
+import org.crosswire.jsword.index.query.RangeQuery;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.RestrictionType;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * JUnit Test. Evaluates queries as operations on verse ordinals and checks
+ * the results against those of the queries' own find methods, which work on
+ * Passages.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class OrdinalQueryEvaluatorTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        blurRestriction = RestrictionType.getBlurRestriction();
+        v11n = Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        verses = new TreeMap<Integer, String>();
+        addChapter(BibleBook.GEN, 1, "genbook");
+        addChapter(BibleBook.GEN, 2, "genbook");
+        addChapter(BibleBook.MAL, 4, "malbook");
+        addChapter(BibleBook.MATT, 1, "mattbook");
+        addChapter(BibleBook.REV, 22, "revbook");
+
+        root = ModuleWriter.createRoot();
+        SwordBookMetaData bmd = ModuleWriter.createMetaData(root, "Test", "RawText", "modules/texts/rawtext/test/", "");
+        ModuleWriter.writeRawText(new File(root, "modules/texts/rawtext/test"), v11n, verses, 2);
+        File dir = new File(root, "index");
+        SwordBook book = new SwordBook(bmd, new RawBackend(bmd, 2));
+        new LuceneIndex(book, dir.toURI(), true);
+        index = new LuceneIndex(book, dir.toURI());
+        evaluator = new OrdinalQueryEvaluator(index);
+    }
+
+    @Override
+    protected void tearDown() {
+        RestrictionType.setBlurRestriction(blurRestriction);
+        index.close();
+        ModuleWriter.deleteRoot(root);
+    }
+
+    public void testBase() throws Exception {
+        check(new BaseQuery("fizz"));
+        check(new BaseQuery("nothing"));
+        check(new NullQuery());
+    }
+
+    public void testAnd() throws Exception {
+        check(new AndQuery(new BaseQuery("fizz"), new BaseQuery("buzz")));
+        check(new AndQuery(new BaseQuery("genbook"), new BaseQuery("fizz")));
+        check(new AndQuery(new BaseQuery("nothing"), new BaseQuery("fizz")));
+    }
+
+    public void testOr() throws Exception {
+        check(new OrQuery(new BaseQuery("fizz"), new BaseQuery("buzz")));
+        check(new OrQuery(new BaseQuery("nothing"), new BaseQuery("revbook")));
+    }
+
+    public void testAndNot() throws Exception {
+        check(new AndNotQuery(new BaseQuery("genbook"), new BaseQuery("fizz")));
+        check(new AndNotQuery(new BaseQuery("fizz"), new BaseQuery("buzz")));
+        check(new AndNotQuery(new BaseQuery("nothing"), new BaseQuery("buzz")));
+    }
+
+    public void testRange() throws Exception {
+        check(new AndQuery(new BaseQuery("fizz"), new RangeQuery("Gen 1:5-2:10")));
+        check(new AndQuery(new BaseQuery("omega"), new RangeQuery("Mal 4:3-Matt 1:2")));
+        check(new OrQuery(new RangeQuery("Gen 2"), new RangeQuery("Rev 22:20-21")));
+    }
+
+    public void testBlur() throws Exception {
+        RestrictionType.setBlurRestriction(RestrictionType.NONE.toInteger());
+        checkBlurs();
+        assertEquals("Mal.4.4-Mal.4.6 Matt.1.1-Matt.1.3", evaluate(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Mal 4:6-Matt 1:1"), 2)));
+        // The introductions of Matthew and its first chapter come before it
+        assertEquals("Matt.1.1-Matt.1.3", evaluate(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Matt 1:1"), 2)));
+    }
+
+    public void testBlurChapter() throws Exception {
+        RestrictionType.setBlurRestriction(RestrictionType.CHAPTER.toInteger());
+        checkBlurs();
+        // The blur stops at the ends of the chapter, and so at the ends of
+        // books and testaments
+        assertEquals("Mal.4.4-Mal.4.6", evaluate(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Mal 4:6"), 2)));
+        assertEquals("Matt.1.1-Matt.1.3", evaluate(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Matt 1:1"), 2)));
+        assertEquals("Gen.1.30-Gen.1.31", evaluate(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Gen 1:31"), 1)));
+    }
+
+    /**
+     * Blur runs of verses at the start and end of the Bible, of books and of
+     * chapters.
+     */
+    private void checkBlurs() throws Exception {
+        check(new BlurQuery(new BaseQuery("omega"), new BaseQuery("buzz"), 1));
+        check(new BlurQuery(new BaseQuery("omega"), new BaseQuery("fizz"), 2));
+        check(new BlurQuery(new BaseQuery("genbook"), new BaseQuery("malbook"), 3));
+        check(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Gen 1:1"), 3));
+        check(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Gen 1:31-2:1"), 2));
+        check(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Mal 4:6"), 2));
+        check(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Matt 1:1"), 2));
+        check(new BlurQuery(new BaseQuery("omega"), new RangeQuery("Rev 22:21"), 5));
+        check(new BlurQuery(new BaseQuery("fizz"), new BaseQuery("nothing"), 5));
+    }
+
+    /**
+     * Check that the evaluator finds the same verses as the query.
+     */
+    private void check(Query query) throws Exception {
+        Key expected = query.find(index);
+        assertEquals(query.toString(), expected.getOsisRef(), evaluate(query));
+    }
+
+    private String evaluate(Query query) throws Exception {
+        Key found = evaluator.find(query);
+        assertNotNull(found);
+        return found.getOsisRef();
+    }
+
+    /**
+     * Add the verses of a chapter. Every verse has omega and the name of its
+     * book, every third has fizz and every fifth has buzz.
+     */
+    private void addChapter(BibleBook book, int chapter, String word) {
+        int last = v11n.getLastVerse(book, chapter);
+        for (int verse = 1; verse <= last; verse++) {
+            StringBuilder buf = new StringBuilder("omega ");
+            buf.append(word);
+            if (verse % 3 == 0) {
+                buf.append(" fizz");
+            }
+            if (verse % 5 == 0) {
+                buf.append(" buzz");
+            }
+            verses.put(Integer.valueOf(v11n.getOrdinal(new Verse(book, chapter, verse))), buf.toString());
+        }
+    }
+
+    private int blurRestriction;
+    private Versification v11n;
+    private Map<Integer, String> verses;
+    private File root;
+    private LuceneIndex index;
+    private OrdinalQueryEvaluator evaluator;
+}
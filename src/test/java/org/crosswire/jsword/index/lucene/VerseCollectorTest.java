@@ -0,0 +1,128 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageType;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * JUnit Test. Searches an index in which some documents have ordinals and
+ * some, as in indexes built before ordinals were added, do not.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class VerseCollectorTest extends TestCase {
+    @Override
+    protected void setUp() throws Exception {
+        v11n = Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+        // A segment mixing documents with and without ordinals
+        addVerse(writer, new Verse(BibleBook.GEN, 1, 1), true);
+        addVerse(writer, new Verse(BibleBook.GEN, 1, 2), false);
+        addVerse(writer, new Verse(BibleBook.GEN, 1, 3), true);
+        writer.commit();
+        // A segment without ordinals
+        addVerse(writer, new Verse(BibleBook.JOHN, 1, 1), false);
+        addVerse(writer, new Verse(BibleBook.JOHN, 1, 2), false);
+        writer.close();
+        searcher = new IndexSearcher(directory, true);
+        query = new TermQuery(new Term(LuceneIndex.FIELD_BODY, "light"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        searcher.close();
+        directory.close();
+    }
+
+    public void testOrdinals() throws Exception {
+        BitSet hits = new BitSet();
+        searcher.search(query, new VerseCollector(v11n, searcher, hits));
+        BitSet expected = new BitSet();
+        expected.set(v11n.getOrdinal(new Verse(BibleBook.GEN, 1, 1)));
+        expected.set(v11n.getOrdinal(new Verse(BibleBook.GEN, 1, 2)));
+        expected.set(v11n.getOrdinal(new Verse(BibleBook.GEN, 1, 3)));
+        expected.set(v11n.getOrdinal(new Verse(BibleBook.JOHN, 1, 1)));
+        expected.set(v11n.getOrdinal(new Verse(BibleBook.JOHN, 1, 2)));
+        assertEquals(expected, hits);
+        assertFalse(hits.get(0));
+    }
+
+    public void testPassages() throws Exception {
+        for (PassageType type : PassageType.values()) {
+            Passage results = type.createEmptyPassage(v11n);
+            searcher.search(query, new VerseCollector(v11n, searcher, results));
+            assertEquals(type.toString(), type.createPassage(v11n, "Gen 1:1-3, John 1:1-2").getName(), results.getName());
+        }
+    }
+
+    public void testOrdinalZero() throws Exception {
+        // The only verse that really has the ordinal 0
+        Key intro = v11n.decodeOrdinal(0);
+        IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED);
+        addVerse(writer, (Verse) intro, true);
+        writer.close();
+        searcher.close();
+        searcher = new IndexSearcher(directory, true);
+
+        BitSet hits = new BitSet();
+        searcher.search(query, new VerseCollector(v11n, searcher, hits));
+        assertTrue(hits.get(0));
+        assertEquals(6, hits.cardinality());
+    }
+
+    private void addVerse(IndexWriter writer, Verse verse, boolean withOrdinal) throws Exception {
+        Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, verse.getOsisRef(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        if (withOrdinal) {
+            doc.add(new Field(LuceneIndex.FIELD_ORDINAL, Integer.toString(v11n.getOrdinal(verse)), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        }
+        doc.add(new Field(LuceneIndex.FIELD_BODY, "light", Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    private Versification v11n;
+    private RAMDirectory directory;
+    private IndexSearcher searcher;
+    private Query query;
+}
@@ -15,6 +15,8 @@ public class AllTests {
         TestSuite suite = new TestSuite("Test for org.crosswire.jsword.passage");
         // $JUnit-BEGIN$
         suite.addTestSuite(AccuracyTypeTest.class);
+        suite.addTestSuite(OsisRefParserTest.class);
+        suite.addTestSuite(OrdinalBitSetTest.class);
         suite.addTestSuite(PassageConstantsTest.class);
         suite.addTestSuite(PassageMixTest.class);
         suite.addTestSuite(PassageSizeTest.class);
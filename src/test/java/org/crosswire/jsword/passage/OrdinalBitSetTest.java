@@ -0,0 +1,285 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class OrdinalBitSetTest extends TestCase {
+    public OrdinalBitSetTest(String s) {
+        super(s);
+    }
+
+    private static final int SIZE = 1000;
+
+    public void testSetClear() {
+        OrdinalBitSet bits = new OrdinalBitSet(SIZE);
+        assertTrue(bits.isEmpty());
+        assertEquals(0, bits.cardinality());
+        assertEquals(-1, bits.nextSetBit(0));
+        assertEquals(-1, bits.lastSetBit());
+
+        bits.set(5);
+        bits.set(5);
+        bits.set(64);
+        bits.set(SIZE - 1);
+        assertEquals(3, bits.cardinality());
+        assertTrue(bits.get(64));
+        assertFalse(bits.get(63));
+        assertFalse(bits.get(SIZE + 100));
+        assertEquals(5, bits.nextSetBit(0));
+        assertEquals(64, bits.nextSetBit(6));
+        assertEquals(SIZE - 1, bits.lastSetBit());
+
+        bits.clear(5);
+        bits.clear(5);
+        assertEquals(2, bits.cardinality());
+        bits.clear();
+        assertTrue(bits.isEmpty());
+
+        bits.set(60, 130);
+        assertEquals(70, bits.cardinality());
+        assertEquals(60, bits.nextSetBit(0));
+        assertEquals(129, bits.lastSetBit());
+        bits.set(3, 4);
+        bits.set(10, 10);
+        assertEquals(71, bits.cardinality());
+    }
+
+    public void testRankSelect() {
+        OrdinalBitSet bits = new OrdinalBitSet(SIZE);
+        assertEquals(-1, bits.select(0));
+        int[] ordinals = { 1, 2, 63, 64, 65, 200, 511, 512, 999 };
+        for (int i = 0; i < ordinals.length; i++) {
+            bits.set(ordinals[i]);
+        }
+        for (int i = 0; i < ordinals.length; i++) {
+            assertEquals(ordinals[i], bits.select(i));
+            assertEquals(i, bits.rank(ordinals[i]));
+        }
+        assertEquals(-1, bits.select(ordinals.length));
+        assertEquals(-1, bits.select(-1));
+        assertEquals(0, bits.rank(0));
+        assertEquals(ordinals.length, bits.rank(SIZE + 64));
+
+        // The ranks must follow changes
+        bits.clear(2);
+        assertEquals(63, bits.select(1));
+        bits.set(0);
+        assertEquals(0, bits.select(0));
+        assertEquals(2, bits.rank(63));
+    }
+
+    public void testAgainstBitSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            BitSet expectedLeft = new BitSet();
+            BitSet expectedRight = new BitSet();
+            OrdinalBitSet left = randomSet(random, expectedLeft);
+            OrdinalBitSet right = randomSet(random, expectedRight);
+
+            assertEquals(expectedLeft.intersects(expectedRight), left.intersects(right));
+            BitSet missing = (BitSet) expectedRight.clone();
+            missing.andNot(expectedLeft);
+            assertEquals(missing.isEmpty(), left.containsAll(right));
+
+            int op = round % 4;
+            if (op == 0) {
+                left.or(right);
+                expectedLeft.or(expectedRight);
+            } else if (op == 1) {
+                left.and(right);
+                expectedLeft.and(expectedRight);
+            } else if (op == 2) {
+                left.andNot(right);
+                expectedLeft.andNot(expectedRight);
+            } else {
+                left.xor(right);
+                expectedLeft.xor(expectedRight);
+            }
+            assertSame(expectedLeft, left);
+
+            OrdinalBitSet copy = left.clone();
+            assertEquals(left, copy);
+            assertEquals(left.hashCode(), copy.hashCode());
+            copy.set(SIZE - 1 - (round % 3));
+            copy.clear(round);
+            assertSame(expectedLeft, left);
+        }
+    }
+
+    public void testOrRange() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            BitSet expectedLeft = new BitSet();
+            BitSet expectedRight = new BitSet();
+            OrdinalBitSet left = randomSet(random, expectedLeft);
+            OrdinalBitSet right = randomSet(random, expectedRight);
+
+            int from = random.nextInt(SIZE);
+            int to = from + random.nextInt(SIZE - from + 1);
+            int offset = random.nextInt(SIZE - to + from + 1) - from;
+            left.or(right, from, to, offset);
+            for (int i = expectedRight.nextSetBit(from); i >= 0 && i < to; i = expectedRight.nextSetBit(i + 1)) {
+                expectedLeft.set(i + offset);
+            }
+            assertSame(expectedLeft, left);
+        }
+    }
+
+    public void testToBitSet() {
+        Random random = new Random(3);
+        BitSet expected = new BitSet();
+        OrdinalBitSet bits = randomSet(random, expected);
+        assertEquals(expected, bits.toBitSet());
+    }
+
+    public void testCountAfterRead() {
+        // A change after a read that counted the set keeps the count
+        OrdinalBitSet bits = new OrdinalBitSet(SIZE);
+        bits.set(10, 20);
+        assertEquals(5, bits.rank(15));
+        bits.set(100);
+        bits.clear(10);
+        assertEquals(10, bits.cardinality());
+        assertEquals(100, bits.select(9));
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final BitSet expected = new BitSet();
+        final OrdinalBitSet bits = randomSet(new Random(11), expected);
+        // Changed since last counted, so the readers race to count it
+        bits.set(SIZE - 1);
+        expected.set(SIZE - 1);
+
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] readers = new Thread[8];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    int position = 0;
+                    for (int j = expected.nextSetBit(0); j >= 0; j = expected.nextSetBit(j + 1)) {
+                        if (bits.select(position) != j || bits.rank(j) != position || bits.cardinality() != expected.cardinality()) {
+                            failures.incrementAndGet();
+                        }
+                        position++;
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < readers.length; i++) {
+            readers[i].start();
+        }
+        for (int i = 0; i < readers.length; i++) {
+            readers[i].join(10000);
+        }
+        assertEquals(0, failures.get());
+    }
+
+    public void testPassage() throws Exception {
+        Versification v11n = Versifications.instance().getDefaultVersification();
+        PassageKeyFactory keyf = PassageKeyFactory.instance();
+        Passage big = (Passage) keyf.getKey(v11n, "Gen 1:1-5:3, Exo 3, Mat 5:3-12, Rev 22");
+        Passage small = (Passage) keyf.getKey(v11n, "Gen 2:4-10, Mat 5:4, Rev 22:21");
+        assertTrue(big instanceof BitwisePassage);
+
+        assertTrue(big.containsAll(small));
+        assertFalse(small.containsAll(big));
+        assertTrue(big.contains(small));
+        assertEquals(new Verse(BibleBook.GEN, 2, 4), small.getVerseAt(0));
+        assertEquals(new Verse(BibleBook.REV, 22, 21), small.getVerseAt(small.countVerses() - 1));
+        try {
+            small.getVerseAt(small.countVerses());
+            fail();
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            // expected
+        }
+
+        Passage copy = (Passage) big.clone();
+        copy.removeAll(small);
+        assertEquals(big.countVerses() - small.countVerses(), copy.countVerses());
+        assertFalse(copy.equals(big));
+        copy.addAll(small);
+        assertEquals(big, copy);
+        copy.retainAll(small);
+        assertEquals(small, copy);
+        assertEquals(small.getName(), copy.getName());
+
+        // The ordinals can still be had as a BitSet
+        BitSet ordinals = ((BitwisePassage) copy).getBitSet();
+        assertEquals(small.countVerses(), ordinals.cardinality());
+        assertTrue(ordinals.get(v11n.getOrdinal(new Verse(BibleBook.REV, 22, 21))));
+    }
+
+    private OrdinalBitSet randomSet(Random random, BitSet expected) {
+        OrdinalBitSet bits = new OrdinalBitSet(SIZE);
+        int density = random.nextInt(SIZE);
+        for (int i = 0; i < density; i++) {
+            int ordinal = random.nextInt(SIZE);
+            if (random.nextInt(8) == 0) {
+                int to = Math.min(SIZE, ordinal + random.nextInt(200));
+                bits.set(ordinal, to);
+                expected.set(ordinal, to);
+            } else if (random.nextBoolean()) {
+                bits.set(ordinal);
+                expected.set(ordinal);
+            } else {
+                bits.clear(ordinal);
+                expected.clear(ordinal);
+            }
+        }
+        assertSame(expected, bits);
+        return bits;
+    }
+
+    private void assertSame(BitSet expected, OrdinalBitSet bits) {
+        assertEquals(expected.cardinality(), bits.cardinality());
+        assertEquals(expected.isEmpty(), bits.isEmpty());
+        assertEquals(expected.length() - 1, bits.lastSetBit());
+        int position = 0;
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1)) {
+            assertEquals(i, bits.select(position));
+            assertEquals(position, bits.rank(i));
+            position++;
+        }
+        assertEquals(-1, bits.select(position));
+        for (int i = 0; i < SIZE; i += 7) {
+            assertEquals(expected.get(i), bits.get(i));
+            assertEquals(expected.nextSetBit(i), bits.nextSetBit(i));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.BitSet;
+
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class OsisRefParserTest extends TestCase {
+    public OsisRefParserTest(String s) {
+        super(s);
+    }
+
+    private static PassageKeyFactory keyf = PassageKeyFactory.instance();
+    private Versification v11n;
+
+    @Override
+    protected void setUp() throws Exception {
+        v11n = Versifications.instance().getDefaultVersification();
+    }
+
+    public void testParse() throws Exception {
+        assertParsed("Gen.1.1");
+        assertParsed("gen.1.1");
+        assertParsed("Gen.1.1 Gen.1.3-Gen.1.5");
+        assertParsed("Gen.1.1;Rev.22.21");
+        assertParsed("1Cor.13.1-1Cor.13.13, Matt.5.3");
+        assertParsed("Gen.50.26-Exod.1.3");
+        assertParsed(" Gen.1.1 ");
+    }
+
+    public void testRejected() {
+        assertRejected("Gen.1");
+        assertRejected("Gen");
+        assertRejected("Gen.1.1-3");
+        assertRejected("Gen.1.1 Gen.1");
+        assertRejected("Gen 1:1");
+        assertRejected("Gen.1.32");
+        assertRejected("Gen.51.1");
+        assertRejected("Gen.1.0");
+        assertRejected("Gen.1.5-Gen.1.1");
+        assertRejected("Tob.1.1");
+        assertRejected("Foo.1.1");
+        assertRejected("Gen.1.1.1");
+    }
+
+    public void testRange() {
+        String refs = "xx Gen.1.1 Gen.1.2 xx";
+        BitSet ordinals = new BitSet();
+        assertTrue(OsisRefParser.parse(v11n, refs, 3, 18, ordinals));
+        assertEquals(2, ordinals.cardinality());
+        assertFalse(OsisRefParser.parse(v11n, refs, 0, refs.length(), ordinals));
+        assertEquals(2, ordinals.cardinality());
+    }
+
+    private void assertParsed(String refs) throws Exception {
+        BitwisePassage passage = new RocketPassage(v11n);
+        assertTrue(refs, OsisRefParser.parse(refs, passage));
+        assertEquals(refs, keyf.getKey(v11n, refs), passage);
+    }
+
+    private void assertRejected(String refs) {
+        BitwisePassage passage = new RocketPassage(v11n);
+        assertFalse(refs, OsisRefParser.parse(refs, passage));
+        assertTrue(refs, passage.isEmpty());
+    }
+}
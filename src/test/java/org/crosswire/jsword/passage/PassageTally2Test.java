@@ -304,6 +304,71 @@ public class PassageTally2Test extends TestCase {
         // "Gen 1:1, 3, 5, 7, 2:1, 3:1");
     }
 
+    public void testBlurWide() {
+        temp = tally.clone();
+        int size = 200;
+        int verses = 6;
+        int[] before = new int[size];
+        for (int i = 0; i < size; i++) {
+            before[i] = temp.getTallyOf(v11n.decodeOrdinal(i));
+        }
+
+        temp.blur(verses, RestrictionType.NONE);
+
+        // Spread each verse out in turn, as blur is defined
+        int[] after = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (before[i] != 0) {
+                for (int j = -verses; j <= verses; j++) {
+                    int k = i + j;
+                    if (k >= 0 && k < size) {
+                        after[k] += before[i] + verses - Math.abs(j);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            assertEquals(after[i], temp.getTallyOf(v11n.decodeOrdinal(i)));
+        }
+
+        // The blur reaches the last verse of the Bible
+        temp = new PassageTally(v11n);
+        temp.add(new Verse(BibleBook.REV, 22, 19));
+        temp.blur(3, RestrictionType.NONE);
+        assertEquals(2, temp.getTallyOf(new Verse(BibleBook.REV, 22, 21)));
+        assertEquals(4, temp.getTallyOf(new Verse(BibleBook.REV, 22, 19)));
+    }
+
+    public void testIteratorCount() {
+        Iterator<Key> it = tally.iterator(3);
+        assertEquals(gen11, it.next());
+        assertEquals(gen15, it.next());
+        assertEquals(gen13, it.next());
+        assertFalse(it.hasNext());
+        assertFalse(tally.iterator(0).hasNext());
+
+        temp = tally.clone();
+        temp.setOrdering(PassageTally.Order.BIBLICAL);
+        it = temp.iterator(2);
+        assertEquals(gen11, it.next());
+        assertEquals(gen13, it.next());
+        assertFalse(it.hasNext());
+    }
+
+    public void testTrimVerses() {
+        temp = tally.clone();
+        assertNull(temp.trimVerses(6));
+        Passage rest = temp.trimVerses(2);
+        assertEquals("Gen 1:1, 5", temp.getName());
+        assertEquals("Gen 1:3, 7, 2:1, 3:1", rest.getName());
+
+        temp = tally.clone();
+        temp.setOrdering(PassageTally.Order.BIBLICAL);
+        rest = temp.trimVerses(2);
+        assertEquals("Gen 1:1, 3", temp.getName());
+        assertEquals(4, rest.countVerses());
+    }
+
     public void testFlatten() {
         temp = tally.clone();
         temp.flatten();
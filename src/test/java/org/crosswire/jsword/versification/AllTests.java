@@ -40,6 +40,7 @@ public class AllTests {
         suite.addTestSuite(BibleBookTest.class);
         suite.addTestSuite(BibleBookListTest.class);
         suite.addTestSuite(VersificationTest.class);
+        suite.addTestSuite(VersificationMappingTest.class);
         // $JUnit-END$
         return suite;
     }
@@ -51,6 +51,28 @@ public class BibleNamesTest extends TestCase {
         super.tearDown();
     }
 
+    public void testPrefix() {
+        BibleNames names = new BibleNames(Locale.ENGLISH);
+        assertEquals(BibleBook.GEN, names.getBook("Genesis"));
+        assertEquals(BibleBook.GEN, names.getBook("gen"));
+        assertEquals(BibleBook.GEN, names.getBook("Ge"));
+        assertEquals(BibleBook.JOSH, names.getBook("Jo"));
+        assertEquals(BibleBook.JOHN, names.getBook("Joh"));
+        assertEquals(BibleBook.REV, names.getBook("Revelations"));
+        // A short name that is a prefix of what was given matches
+        assertEquals(BibleBook.GEN, names.getBook("Genx"));
+        assertNull(names.getBook("qqq"));
+    }
+
+    public void testAmbiguous() {
+        BibleNames names = new BibleNames(Locale.ENGLISH);
+        assertTrue(names.isAmbiguous("Jo"));
+        assertTrue(names.isAmbiguous("j"));
+        assertFalse(names.isAmbiguous("John"));
+        assertFalse(names.isAmbiguous("Gen"));
+        assertFalse(names.isAmbiguous("qqq"));
+    }
+
     public void testLoadEnglish() {
         new BibleNames(Locale.ENGLISH);
     }
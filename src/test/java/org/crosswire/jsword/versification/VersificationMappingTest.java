@@ -0,0 +1,135 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2012
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id$
+ */
+package org.crosswire.jsword.versification;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.system.Versifications;
+
+/**
+ * JUnit Test.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author DM Smith [dmsmith555 at yahoo dot com]
+ */
+public class VersificationMappingTest extends TestCase {
+    public VersificationMappingTest(String s) {
+        super(s);
+    }
+
+    private Versification kjv;
+    private Versification synodal;
+    private VersificationMapping toKJV;
+    private VersificationMapping toSynodal;
+
+    @Override
+    protected void setUp() {
+        kjv = Versifications.instance().getVersification("KJV");
+        synodal = Versifications.instance().getVersification("Synodal");
+        toKJV = VersificationMappings.instance().getMapping(synodal, kjv);
+        toSynodal = VersificationMappings.instance().getMapping(kjv, synodal);
+    }
+
+    public void testCached() {
+        assertSame(toKJV, VersificationMappings.instance().getMapping("Synodal", "KJV"));
+        assertNull(VersificationMappings.instance().getMapping("Synodal", "NoSuchVersification"));
+    }
+
+    public void testIdentity() {
+        VersificationMapping same = VersificationMappings.instance().getMapping(kjv, kjv);
+        for (int i = 0; i <= kjv.maximumOrdinal(); i++) {
+            assertEquals(i, same.map(i));
+        }
+    }
+
+    public void testVerses() {
+        // Numbered the same
+        assertEquals(new Verse(BibleBook.GEN, 1, 1), toKJV.map(new Verse(BibleBook.GEN, 1, 1)));
+        assertEquals(new Verse(BibleBook.MATT, 5, 3), toSynodal.map(new Verse(BibleBook.MATT, 5, 3)));
+
+        // Psalms 9 and 10 are one Psalm in the Synodal
+        assertEquals(new Verse(BibleBook.PS, 10, 1), toKJV.map(new Verse(BibleBook.PS, 9, 22)));
+        assertEquals(new Verse(BibleBook.PS, 9, 22), toSynodal.map(new Verse(BibleBook.PS, 10, 1)));
+        assertEquals(new Verse(BibleBook.PS, 23, 1), toKJV.map(new Verse(BibleBook.PS, 22, 1)));
+        assertEquals(new Verse(BibleBook.PS, 22, 1), toSynodal.map(new Verse(BibleBook.PS, 23, 1)));
+
+        // Titles are verses in the Synodal
+        assertEquals(new Verse(BibleBook.PS, 51, 1), toKJV.map(new Verse(BibleBook.PS, 50, 3)));
+        assertEquals(new Verse(BibleBook.PS, 50, 3), toSynodal.map(new Verse(BibleBook.PS, 51, 1)));
+
+        assertEquals(new Verse(BibleBook.ROM, 16, 25), toKJV.map(new Verse(BibleBook.ROM, 14, 24)));
+        assertEquals(new Verse(BibleBook.JONAH, 2, 1), toSynodal.map(new Verse(BibleBook.JONAH, 1, 17)));
+
+        // Not in the KJV
+        assertNull(toKJV.map(new Verse(BibleBook.DAN, 3, 50)));
+        assertNull(toKJV.map(new Verse(BibleBook.PS, 151, 1)));
+    }
+
+    public void testOneToMany() {
+        // 3 John 1:14 is split in the Synodal
+        int ordinal = kjv.getOrdinal(new Verse(BibleBook.JOHN3, 1, 14));
+        assertTrue(toSynodal.isOneToMany(ordinal));
+        int[] all = toSynodal.mapAll(ordinal);
+        assertEquals(2, all.length);
+        assertEquals(new Verse(BibleBook.JOHN3, 1, 14), synodal.decodeOrdinal(all[0]));
+        assertEquals(new Verse(BibleBook.JOHN3, 1, 15), synodal.decodeOrdinal(all[1]));
+        assertFalse(toSynodal.isOneToMany(ordinal - 1));
+        assertEquals(1, toSynodal.mapAll(ordinal - 1).length);
+    }
+
+    public void testPassage() throws Exception {
+        PassageKeyFactory keyf = PassageKeyFactory.instance();
+        Passage ref = (Passage) keyf.getKey(synodal, "Gen 1:1-3, Ps 9:22-23, Ps 22, Rom 14:24, 3John 1:15");
+        Passage mapped = KeyUtil.map(ref, toKJV);
+        assertEquals(kjv, mapped.getVersification());
+        assertEquals(keyf.getKey(kjv, "Gen 1:1-3, Ps 10:1-2, Ps 23, Rom 16:25, 3John 1:14"), mapped);
+
+        // The same, a verse at a time
+        Passage expected = (Passage) keyf.createEmptyKeyList(kjv);
+        for (Key key : ref) {
+            int[] all = toKJV.mapAll(synodal.getOrdinal((Verse) key));
+            for (int j = 0; j < all.length; j++) {
+                expected.add(kjv.decodeOrdinal(all[j]));
+            }
+        }
+        assertEquals(expected, mapped);
+    }
+
+    public void testTally() throws Exception {
+        PassageTally tally = new PassageTally(synodal);
+        tally.add(new Verse(BibleBook.PS, 9, 22), 3);
+        tally.add(new Verse(BibleBook.JOHN3, 1, 14), 2);
+        tally.add(new Verse(BibleBook.JOHN3, 1, 15), 1);
+        PassageTally mapped = (PassageTally) KeyUtil.map(tally, toKJV);
+        assertEquals(kjv, mapped.getVersification());
+        assertEquals(2, mapped.countVerses());
+        assertEquals(3, mapped.getTallyOf(new Verse(BibleBook.PS, 10, 1)));
+        assertEquals(3, mapped.getTallyOf(new Verse(BibleBook.JOHN3, 1, 14)));
+    }
+}